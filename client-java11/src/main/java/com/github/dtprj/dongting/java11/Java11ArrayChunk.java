@@ -0,0 +1,73 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.java11;
+
+import com.github.dtprj.dongting.queue.ArrayChunk;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * @author huangli
+ */
+public class Java11ArrayChunk<E> extends ArrayChunk<E> {
+
+    private static final VarHandle NEXT;
+    private static final VarHandle ARRAY = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            NEXT = l.findVarHandle(ArrayChunk.class, "next", ArrayChunk.class);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+
+    private final Object[] array;
+
+    public Java11ArrayChunk(long index, ArrayChunk<E> prev, int size) {
+        super(index, prev);
+        this.array = new Object[size];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected E getAcquire(int i) {
+        return (E) ARRAY.getAcquire(array, i);
+    }
+
+    @Override
+    protected void setRelease(int i, E value) {
+        ARRAY.setRelease(array, i, value);
+    }
+
+    @Override
+    protected void setPlain(int i, E value) {
+        array[i] = value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected ArrayChunk<E> getNextAcquire() {
+        return (ArrayChunk<E>) NEXT.getAcquire(this);
+    }
+
+    @Override
+    protected boolean casNext(ArrayChunk<E> expect, ArrayChunk<E> update) {
+        return NEXT.compareAndSet(this, expect, update);
+    }
+}
@@ -17,6 +17,7 @@ package com.github.dtprj.dongting.java11;
 
 import com.github.dtprj.dongting.common.AbstractRefCountUpdater;
 import com.github.dtprj.dongting.common.VersionFactory;
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueue;
 import com.github.dtprj.dongting.queue.MpscLinkedQueue;
 
 /**
@@ -34,4 +35,9 @@ public class Java11Factory extends VersionFactory {
     public <E> MpscLinkedQueue<E> newMpscLinkedQueue() {
         return new Java11MpscLinkedQueue<>();
     }
+
+    @Override
+    public <E> MpscChunkedArrayQueue<E> newMpscChunkedArrayQueue(int chunkSize, long capacity) {
+        return new Java11MpscChunkedArrayQueue<>(chunkSize, capacity);
+    }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.java11;
+
+import com.github.dtprj.dongting.queue.ArrayChunk;
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueue;
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueueConsumerFields;
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueueProducerFields;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * @author huangli
+ */
+public class Java11MpscChunkedArrayQueue<E> extends MpscChunkedArrayQueue<E> {
+    private static final VarHandle PRODUCER_INDEX;
+    private static final VarHandle CONSUMER_INDEX;
+    private static final VarHandle PRODUCER_CHUNK;
+
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            PRODUCER_INDEX = l.findVarHandle(MpscChunkedArrayQueueProducerFields.class, "producerIndex", long.class);
+            CONSUMER_INDEX = l.findVarHandle(MpscChunkedArrayQueueConsumerFields.class, "consumerIndex", long.class);
+            PRODUCER_CHUNK = l.findVarHandle(MpscChunkedArrayQueueProducerFields.class, "producerChunk", ArrayChunk.class);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+
+    public Java11MpscChunkedArrayQueue(int chunkSize, long capacity) {
+        super(chunkSize, capacity);
+    }
+
+    @Override
+    protected long getAndIncrementProducerIndex() {
+        return (long) PRODUCER_INDEX.getAndAdd(this, 1L);
+    }
+
+    @Override
+    protected boolean casProducerChunk(ArrayChunk<E> expect, ArrayChunk<E> update) {
+        return PRODUCER_CHUNK.compareAndSet(this, expect, update);
+    }
+
+    @Override
+    protected void setConsumerIndexRelease(long value) {
+        CONSUMER_INDEX.setRelease(this, value);
+    }
+
+    @Override
+    protected ArrayChunk<E> newChunk(long index, ArrayChunk<E> prev, int chunkSize) {
+        return new Java11ArrayChunk<>(index, prev, chunkSize);
+    }
+}
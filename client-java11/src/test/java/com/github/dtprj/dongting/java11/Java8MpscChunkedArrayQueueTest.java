@@ -13,39 +13,17 @@
  * License for the specific language governing permissions and limitations
  * under the License.
  */
-package com.github.dtprj.dongting.common;
+package com.github.dtprj.dongting.java11;
+
+import com.github.dtprj.dongting.java8.Java8Factory;
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueue;
 
 /**
  * @author huangli
  */
-class IntMapNode<V> {
-    @SuppressWarnings("FieldMayBeFinal")
-    private int key;
-    private V value;
-    private IntMapNode<V> next;
-
-    public IntMapNode(int key, V value) {
-        this.key = key;
-        this.value = value;
-    }
-
-    public int getKey() {
-        return key;
-    }
-
-    public V getValue() {
-        return value;
-    }
-
-    public IntMapNode<V> getNext() {
-        return next;
-    }
-
-    public void setNext(IntMapNode<V> next) {
-        this.next = next;
-    }
-
-    public void setValue(V value) {
-        this.value = value;
+public class Java8MpscChunkedArrayQueueTest extends MpscChunkedArrayQueueTest {
+    @Override
+    protected <E> MpscChunkedArrayQueue<E> create(int chunkSize, long capacity) {
+        return new Java8Factory().newMpscChunkedArrayQueue(chunkSize, capacity);
     }
 }
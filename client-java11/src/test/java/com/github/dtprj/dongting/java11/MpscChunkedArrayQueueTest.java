@@ -0,0 +1,164 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.java11;
+
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueue;
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueueConsumerFields;
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueueProducerFields;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author huangli
+ */
+public class MpscChunkedArrayQueueTest {
+
+    protected <E> MpscChunkedArrayQueue<E> create(int chunkSize, long capacity) {
+        return MpscChunkedArrayQueue.newInstance(chunkSize, capacity);
+    }
+
+    private static long offset(Class<?> c, String name) throws Exception {
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        Field f = unsafeClass.getDeclaredField("theUnsafe");
+        f.setAccessible(true);
+        Method m = unsafeClass.getMethod("objectFieldOffset", Field.class);
+        return (long) m.invoke(f.get(null), c.getDeclaredField(name));
+    }
+
+    @Test
+    public void testPadding() throws Exception {
+        long producerIndex = offset(MpscChunkedArrayQueueProducerFields.class, "producerIndex");
+        long producerChunk = offset(MpscChunkedArrayQueueProducerFields.class, "producerChunk");
+        long consumerIndex = offset(MpscChunkedArrayQueueConsumerFields.class, "consumerIndex");
+        long consumerChunk = offset(MpscChunkedArrayQueueConsumerFields.class, "consumerChunk");
+        long readOnly = Math.min(Math.min(offset(MpscChunkedArrayQueue.class, "capacity"),
+                        offset(MpscChunkedArrayQueue.class, "chunkSize")),
+                Math.min(offset(MpscChunkedArrayQueue.class, "chunkShift"),
+                        offset(MpscChunkedArrayQueue.class, "chunkMask")));
+        // the producer fields, the consumer fields and the read only fields are in different cache lines
+        assertTrue(Math.min(producerIndex, producerChunk) >= 128);
+        assertTrue(Math.min(consumerIndex, consumerChunk) - Math.max(producerIndex, producerChunk) >= 128);
+        assertTrue(readOnly - Math.max(consumerIndex, consumerChunk) >= 128);
+    }
+
+    @Test
+    public void simpleTest() {
+        MpscChunkedArrayQueue<String> q = create(2, MpscChunkedArrayQueue.UNBOUNDED);
+        assertTrue(q.isEmpty());
+        assertNull(q.relaxedPoll());
+        q.offer("1");
+        q.offer("2");
+        q.offer("3");
+        assertFalse(q.isEmpty());
+        assertEquals("1", q.relaxedPoll());
+        q.offer("4");
+        q.offer("5");
+        assertEquals("2", q.relaxedPoll());
+        assertEquals("3", q.relaxedPoll());
+        assertEquals("4", q.relaxedPoll());
+        assertEquals("5", q.relaxedPoll());
+        assertNull(q.relaxedPoll());
+        assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void drainTest() {
+        MpscChunkedArrayQueue<Integer> q = create(4, MpscChunkedArrayQueue.UNBOUNDED);
+        for (int i = 0; i < 10; i++) {
+            q.offer(i);
+        }
+        ArrayList<Integer> list = new ArrayList<>();
+        assertEquals(3, q.drain(list::add, 3));
+        assertEquals(7, q.drain(list::add, 100));
+        assertEquals(0, q.drain(list::add, 100));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, list.get(i));
+        }
+    }
+
+    @Test
+    public void boundTest() {
+        MpscChunkedArrayQueue<Integer> q = create(2, 3);
+        assertTrue(q.offer(1));
+        assertTrue(q.offer(2));
+        assertTrue(q.offer(3));
+        assertFalse(q.offer(4));
+        assertEquals(1, q.relaxedPoll());
+        assertTrue(q.offer(4));
+        assertFalse(q.offer(5));
+    }
+
+    @Test
+    @Timeout(30)
+    public void multiThreadTest() throws Throwable {
+        int threads = 100;
+        int loop = 20000;
+        MpscChunkedArrayQueue<Long> q = create(128, MpscChunkedArrayQueue.UNBOUNDED);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch endLatch = new CountDownLatch(threads - 1);
+        AtomicReference<Throwable> ex = new AtomicReference<>();
+        AtomicInteger threadId = new AtomicInteger(0);
+        Runnable producer = () -> {
+            try {
+                long id = (long) threadId.getAndIncrement() << 32;
+                startLatch.await();
+                for (int i = 1; i <= loop; i++) {
+                    q.offer(id | i);
+                }
+            } catch (Throwable e) {
+                ex.set(e);
+            } finally {
+                endLatch.countDown();
+            }
+        };
+        for (int i = 0; i < threads - 1; i++) {
+            new Thread(producer).start();
+        }
+        startLatch.countDown();
+
+        int[] status = new int[threads - 1];
+        long[] total = new long[]{(long) (threads - 1) * loop};
+        while (total[0] > 0) {
+            q.drain(v -> {
+                total[0]--;
+                int thread = (int) (v >>> 32);
+                int count = (int) v.longValue();
+                if (status[thread] < count) {
+                    status[thread] = count;
+                } else {
+                    throw new AssertionError();
+                }
+            }, 100);
+        }
+        endLatch.await();
+        assertNull(q.relaxedPoll());
+        if (ex.get() != null) {
+            throw ex.get();
+        }
+    }
+}
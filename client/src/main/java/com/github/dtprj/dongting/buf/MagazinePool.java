@@ -0,0 +1,650 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.buf;
+
+import com.github.dtprj.dongting.common.BitUtil;
+import com.github.dtprj.dongting.common.DtUtil;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe ByteBuffer pool, see jemalloc tcache and Bonwick's magazine allocator.
+ * <p>
+ * Each thread holds two magazines (loaded and previous) per size class, borrow and release
+ * only touch the magazines of current thread. When both magazines are empty (or full), the thread
+ * exchanges a whole magazine with a central depot, the depot is striped to reduce contention.
+ * <p>
+ * The bytes retained by the pool (in depot and thread caches) are limited by maxRetainedBytes. When the
+ * limit is reached, depot is shrunk from the largest size class, if it's still not enough the released
+ * buffer is dropped.
+ * <p>
+ * If a {@link SlabArena} is provided (direct pool only), buffers of the size classes are allocated from the arena,
+ * and dropped buffers are freed to the arena.
+ *
+ * @author huangli
+ */
+public class MagazinePool extends ByteBufferPool {
+
+    private final boolean direct;
+    private final int[] bufSizes;
+    private final int[] magazineSizes;
+    private final long timeoutNanos;
+    private final long maxRetainedBytes;
+    private final SlabArena arena;
+
+    // bytes in depot plus the bytes published by thread caches
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final ReferenceQueue<Thread> deadThreads = new ReferenceQueue<>();
+    private final Set<CacheRef> cacheRefs = ConcurrentHashMap.newKeySet();
+
+    // depots[sizeClassIndex][stripeIndex]
+    private final Depot[][] depots;
+    private final int stripeMask;
+    private final AtomicInteger stripeSeq = new AtomicInteger();
+
+    private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<>();
+
+    public static final int[] DEFAULT_BUF_SIZE = new int[]{32 * 1024, 64 * 1024, 128 * 1024, 256 * 1024,
+            512 * 1024, 1024 * 1024, 2 * 1024 * 1024, 4 * 1024 * 1024};
+    public static final int[] DEFAULT_MIN_COUNT = new int[]{16, 8, 4, 2, 1, 0, 0, 0};
+    public static final int[] DEFAULT_MAX_COUNT = new int[]{128, 128, 64, 64, 32, 16, 8, 4};
+    public static final int[] DEFAULT_MAGAZINE_SIZE = new int[]{16, 8, 8, 4, 2, 1, 1, 1};
+    public static final long DEFAULT_TIME_OUT_MILLIS = 30 * 1000;
+
+    public MagazinePool(boolean direct) {
+        this(direct, Long.MAX_VALUE);
+    }
+
+    public MagazinePool(boolean direct, long maxRetainedBytes) {
+        this(direct, DEFAULT_BUF_SIZE, DEFAULT_MIN_COUNT, DEFAULT_MAX_COUNT, DEFAULT_MAGAZINE_SIZE,
+                defaultStripeCount(), DEFAULT_TIME_OUT_MILLIS, maxRetainedBytes);
+    }
+
+    public MagazinePool(boolean direct, int[] bufSizes, int[] minCount, int[] maxCount, int[] magazineSizes,
+                        int stripeCount, long timeoutMillis) {
+        this(direct, bufSizes, minCount, maxCount, magazineSizes, stripeCount, timeoutMillis, Long.MAX_VALUE, null);
+    }
+
+    public MagazinePool(boolean direct, int[] bufSizes, int[] minCount, int[] maxCount, int[] magazineSizes,
+                        int stripeCount, long timeoutMillis, long maxRetainedBytes) {
+        this(direct, bufSizes, minCount, maxCount, magazineSizes, stripeCount, timeoutMillis, maxRetainedBytes, null);
+    }
+
+    /**
+     * @param bufSizes      buffer size of each size class, in ascending order
+     * @param minCount      buffers of each size class which will not be cleaned by timeout
+     * @param maxCount      max buffers of each size class in depot
+     * @param magazineSizes buffer count of a magazine, per size class
+     * @param stripeCount   stripe count of depot, should be power of 2
+     * @param timeoutMillis idle buffers in depot will be cleaned after timeout
+     * @param maxRetainedBytes max bytes of idle buffers retained by this pool
+     * @param arena         allocate buffers from the arena if not null, only for direct pool
+     */
+    public MagazinePool(boolean direct, int[] bufSizes, int[] minCount, int[] maxCount, int[] magazineSizes,
+                        int stripeCount, long timeoutMillis, long maxRetainedBytes, SlabArena arena) {
+        Objects.requireNonNull(bufSizes);
+        Objects.requireNonNull(minCount);
+        Objects.requireNonNull(maxCount);
+        Objects.requireNonNull(magazineSizes);
+        int classCount = bufSizes.length;
+        if (classCount == 0 || classCount != minCount.length || classCount != maxCount.length
+                || classCount != magazineSizes.length) {
+            throw new IllegalArgumentException();
+        }
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("timeout<=0. timeout=" + timeoutMillis);
+        }
+        DtUtil.checkPositive(stripeCount, "stripeCount");
+        DtUtil.checkPositive(maxRetainedBytes, "maxRetainedBytes");
+        if (arena != null && !direct) {
+            throw new IllegalArgumentException("arena only support direct pool");
+        }
+        if (BitUtil.nextHighestPowerOfTwo(stripeCount) != stripeCount) {
+            throw new IllegalArgumentException("stripeCount not power of 2: " + stripeCount);
+        }
+        for (int i = 0; i < classCount; i++) {
+            if (bufSizes[i] <= 0) {
+                throw new IllegalArgumentException("bufSize<=0");
+            }
+            if (i > 0 && bufSizes[i] <= bufSizes[i - 1]) {
+                throw new IllegalArgumentException("bufSizes not in ascending order");
+            }
+            if (minCount[i] < 0) {
+                throw new IllegalArgumentException("minCount<0");
+            }
+            if (maxCount[i] <= 0) {
+                throw new IllegalArgumentException("maxCount<=0");
+            }
+            if (maxCount[i] < minCount[i]) {
+                throw new IllegalArgumentException("maxCount<minCount");
+            }
+            if (magazineSizes[i] <= 0) {
+                throw new IllegalArgumentException("magazineSize<=0");
+            }
+        }
+        this.direct = direct;
+        this.bufSizes = bufSizes;
+        this.magazineSizes = magazineSizes;
+        this.timeoutNanos = timeoutMillis * 1000 * 1000;
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.arena = arena;
+        this.stripeMask = stripeCount - 1;
+
+        this.depots = new Depot[classCount][stripeCount];
+        for (int i = 0; i < classCount; i++) {
+            int maxMagazines = ceilDiv(ceilDiv(maxCount[i], magazineSizes[i]), stripeCount);
+            int minMagazines = ceilDiv(ceilDiv(minCount[i], magazineSizes[i]), stripeCount);
+            for (int j = 0; j < stripeCount; j++) {
+                depots[i][j] = new Depot(bufSizes[i], minMagazines, maxMagazines, arena);
+            }
+        }
+    }
+
+    static int defaultStripeCount() {
+        return Math.min(8, BitUtil.nextHighestPowerOfTwo(DtUtil.processorCount()));
+    }
+
+    private static int ceilDiv(int x, int y) {
+        return (x + y - 1) / y;
+    }
+
+    private int sizeClass(int size) {
+        int[] bufSizes = this.bufSizes;
+        int len = bufSizes.length;
+        for (int i = 0; i < len; i++) {
+            if (bufSizes[i] >= size) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int exactSizeClass(int capacity) {
+        int[] bufSizes = this.bufSizes;
+        int len = bufSizes.length;
+        for (int i = 0; i < len; i++) {
+            if (bufSizes[i] == capacity) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private ThreadCache getThreadCache() {
+        ThreadCache tc = threadCache.get();
+        if (tc == null) {
+            CacheRef ref = new CacheRef(Thread.currentThread(), deadThreads);
+            tc = new ThreadCache(stripeSeq.getAndIncrement() & stripeMask, magazineSizes, ref);
+            ref.cache = tc;
+            cacheRefs.add(ref);
+            threadCache.set(tc);
+        }
+        return tc;
+    }
+
+    @Override
+    public ByteBuffer allocate(int requestSize) {
+        if (direct) {
+            if (arena != null) {
+                ByteBuffer buf = arena.allocate(requestSize);
+                if (buf != null) {
+                    return buf;
+                }
+            }
+            try {
+                return ByteBuffer.allocateDirect(requestSize);
+            } catch (OutOfMemoryError e) {
+                // drop all idle buffers in depot, allocateDirect will trigger gc and retry
+                shrink(0);
+                return ByteBuffer.allocateDirect(requestSize);
+            }
+        } else {
+            return ByteBuffer.allocate(requestSize);
+        }
+    }
+
+    @Override
+    public ByteBuffer borrow(int requestSize) {
+        int sizeClass = sizeClass(requestSize);
+        if (sizeClass < 0) {
+            // request buffer too large, allocate without pool
+            return allocate(requestSize);
+        }
+        ThreadCache tc = getThreadCache();
+        tc.used = true;
+        int bufSize = bufSizes[sizeClass];
+        Magazine loaded = tc.loaded[sizeClass];
+        if (loaded.size > 0) {
+            tc.unpublishedBytes -= bufSize;
+            return loaded.pop();
+        }
+        Magazine previous = tc.previous[sizeClass];
+        if (previous.size > 0) {
+            tc.loaded[sizeClass] = previous;
+            tc.previous[sizeClass] = loaded;
+            tc.unpublishedBytes -= bufSize;
+            return previous.pop();
+        }
+        // both magazines are empty, exchange the empty one with a full one in depot
+        publish(tc);
+        Magazine full = takeFull(sizeClass, tc.stripe, previous);
+        if (full != null) {
+            tc.ref.publishedBytes += (long) full.size * bufSize;
+            tc.previous[sizeClass] = loaded;
+            tc.loaded[sizeClass] = full;
+            tc.unpublishedBytes -= bufSize;
+            return full.pop();
+        }
+        return allocate(bufSize);
+    }
+
+    @Override
+    public void release(ByteBuffer buf) {
+        int sizeClass = exactSizeClass(buf.capacity());
+        if (sizeClass < 0) {
+            // buffer too large, release it without pool
+            return;
+        }
+        ThreadCache tc = getThreadCache();
+        tc.used = true;
+        int bufSize = bufSizes[sizeClass];
+        if (retainedBytes.get() + tc.unpublishedBytes + bufSize > maxRetainedBytes) {
+            publish(tc);
+            if (!shrink(maxRetainedBytes - bufSize)) {
+                // still exceed the limit, drop the buffer
+                if (arena != null) {
+                    arena.free(buf);
+                }
+                return;
+            }
+        }
+        buf.clear();
+        Magazine loaded = tc.loaded[sizeClass];
+        if (loaded.size < loaded.buffers.length) {
+            tc.unpublishedBytes += bufSize;
+            loaded.push(buf);
+            return;
+        }
+        Magazine previous = tc.previous[sizeClass];
+        if (previous.size < previous.buffers.length) {
+            tc.loaded[sizeClass] = previous;
+            tc.previous[sizeClass] = loaded;
+            tc.unpublishedBytes += bufSize;
+            previous.push(buf);
+            return;
+        }
+        // both magazines are full, exchange the full one with an empty one in depot
+        publish(tc);
+        Magazine empty = putFull(tc, sizeClass, previous);
+        tc.previous[sizeClass] = loaded;
+        tc.loaded[sizeClass] = empty;
+        tc.unpublishedBytes += bufSize;
+        empty.push(buf);
+    }
+
+    private void publish(ThreadCache tc) {
+        long bytes = tc.unpublishedBytes;
+        if (bytes != 0) {
+            retainedBytes.addAndGet(bytes);
+            tc.ref.publishedBytes += bytes;
+            tc.unpublishedBytes = 0;
+        }
+    }
+
+    /**
+     * Drop idle buffers in depot, from the largest size class to the smallest, until the retained bytes
+     * not exceed targetBytes.
+     *
+     * @return true if the retained bytes not exceed targetBytes
+     */
+    private boolean shrink(long targetBytes) {
+        for (int i = depots.length - 1; i >= 0; i--) {
+            for (Depot d : depots[i]) {
+                long expectDropBytes = retainedBytes.get() - targetBytes;
+                if (expectDropBytes <= 0) {
+                    return true;
+                }
+                long dropBytes;
+                synchronized (d) {
+                    dropBytes = d.dropOldest(expectDropBytes);
+                }
+                if (dropBytes > 0) {
+                    retainedBytes.addAndGet(-dropBytes);
+                }
+            }
+        }
+        return retainedBytes.get() <= targetBytes;
+    }
+
+    private Magazine takeFull(int sizeClass, int stripe, Magazine empty) {
+        Depot[] ds = depots[sizeClass];
+        Depot own = ds[stripe];
+        Magazine full;
+        synchronized (own) {
+            full = own.takeFull();
+            if (full != null) {
+                own.putEmpty(empty);
+                return full;
+            }
+        }
+        // steal from other stripes, this is the slow path
+        for (int i = 1; i < ds.length; i++) {
+            Depot d = ds[(stripe + i) & stripeMask];
+            synchronized (d) {
+                full = d.takeFull();
+                if (full != null) {
+                    d.putEmpty(empty);
+                    return full;
+                }
+            }
+        }
+        synchronized (own) {
+            own.statTakeMissCount++;
+        }
+        return null;
+    }
+
+    private Magazine putFull(ThreadCache tc, int sizeClass, Magazine full) {
+        Depot d = depots[sizeClass][tc.stripe];
+        long bytes = (long) full.size * bufSizes[sizeClass];
+        // the bytes are moved from thread cache to depot
+        tc.ref.publishedBytes -= bytes;
+        Magazine empty;
+        synchronized (d) {
+            if (d.putFull(full)) {
+                empty = d.takeEmpty();
+            } else {
+                // too many buffers in depot, drop buffers in the magazine and reuse it
+                full.clear(arena);
+                empty = full;
+            }
+        }
+        if (empty == full) {
+            retainedBytes.addAndGet(-bytes);
+            return full;
+        }
+        return empty == null ? new Magazine(magazineSizes[sizeClass]) : empty;
+    }
+
+    @Override
+    public void clean() {
+        ThreadCache tc = threadCache.get();
+        if (tc != null) {
+            if (!tc.used) {
+                // current thread is idle since last clean, return cached buffers to depot
+                flush(tc);
+            }
+            tc.used = false;
+        }
+        cleanDeadThreads();
+        long expireNanos = System.nanoTime() - timeoutNanos;
+        for (Depot[] ds : depots) {
+            for (Depot d : ds) {
+                long dropBytes;
+                synchronized (d) {
+                    dropBytes = d.clean(expireNanos);
+                }
+                if (dropBytes > 0) {
+                    retainedBytes.addAndGet(-dropBytes);
+                }
+            }
+        }
+        if (retainedBytes.get() > maxRetainedBytes) {
+            shrink(maxRetainedBytes);
+        }
+    }
+
+    private void cleanDeadThreads() {
+        Reference<? extends Thread> r;
+        while ((r = deadThreads.poll()) != null) {
+            CacheRef ref = (CacheRef) r;
+            cacheRefs.remove(ref);
+            // drop buffers in the thread cache of the dead thread
+            retainedBytes.addAndGet(-ref.publishedBytes);
+            ThreadCache tc = ref.cache;
+            for (int i = 0; i < bufSizes.length; i++) {
+                tc.loaded[i].clear(arena);
+                tc.previous[i].clear(arena);
+            }
+        }
+    }
+
+    private void flush(ThreadCache tc) {
+        publish(tc);
+        int len = bufSizes.length;
+        for (int i = 0; i < len; i++) {
+            flush(tc, i, tc.loaded);
+            flush(tc, i, tc.previous);
+        }
+    }
+
+    private void flush(ThreadCache tc, int sizeClass, Magazine[] magazines) {
+        Magazine m = magazines[sizeClass];
+        if (m.size > 0) {
+            magazines[sizeClass] = putFull(tc, sizeClass, m);
+        }
+    }
+
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    @Override
+    public String formatStat() {
+        DecimalFormat f = new DecimalFormat("#,###");
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("retained bytes ").append(f.format(retainedBytes.get()))
+                .append(", max ").append(f.format(maxRetainedBytes))
+                .append("\ndepot buffers: ");
+        long totalMiss = 0;
+        long totalDrop = 0;
+        for (int i = 0; i < bufSizes.length; i++) {
+            long count = 0;
+            for (Depot d : depots[i]) {
+                synchronized (d) {
+                    for (int j = 0; j < d.fullCount; j++) {
+                        count += d.fulls[j].size;
+                    }
+                    totalMiss += d.statTakeMissCount;
+                    totalDrop += d.statDropCount;
+                }
+            }
+            sb.append(bufSizes[i] / 1024).append("KB:").append(f.format(count)).append(", ");
+        }
+        sb.append("depot miss ").append(f.format(totalMiss))
+                .append(", depot drop ").append(f.format(totalDrop));
+        if (arena != null) {
+            sb.append("\narena: ").append(arena.formatStat());
+        }
+        return sb.toString();
+    }
+
+    static final class CacheRef extends WeakReference<Thread> {
+        // bytes in the thread cache which are counted in retainedBytes, only updated by owner thread
+        volatile long publishedBytes;
+        // the thread cache should be accessed by other threads only after the owner thread is dead
+        ThreadCache cache;
+
+        CacheRef(Thread thread, ReferenceQueue<Thread> queue) {
+            super(thread, queue);
+        }
+    }
+
+    static final class ThreadCache {
+        final int stripe;
+        final Magazine[] loaded;
+        final Magazine[] previous;
+        final CacheRef ref;
+        // bytes changes not counted in retainedBytes yet
+        long unpublishedBytes;
+        boolean used;
+
+        ThreadCache(int stripe, int[] magazineSizes, CacheRef ref) {
+            this.stripe = stripe;
+            this.ref = ref;
+            int len = magazineSizes.length;
+            this.loaded = new Magazine[len];
+            this.previous = new Magazine[len];
+            for (int i = 0; i < len; i++) {
+                loaded[i] = new Magazine(magazineSizes[i]);
+                previous[i] = new Magazine(magazineSizes[i]);
+            }
+        }
+    }
+
+    static final class Magazine {
+        final ByteBuffer[] buffers;
+        int size;
+        long returnNanos;
+
+        Magazine(int capacity) {
+            this.buffers = new ByteBuffer[capacity];
+        }
+
+        ByteBuffer pop() {
+            int s = --size;
+            ByteBuffer buf = buffers[s];
+            buffers[s] = null;
+            return buf;
+        }
+
+        void push(ByteBuffer buf) {
+            buffers[size++] = buf;
+        }
+
+        void clear(SlabArena arena) {
+            for (int i = 0; i < size; i++) {
+                if (arena != null) {
+                    arena.free(buffers[i]);
+                }
+                buffers[i] = null;
+            }
+            size = 0;
+        }
+    }
+
+    static final class Depot {
+        // the oldest magazine at index 0
+        final Magazine[] fulls;
+        final Magazine[] empties;
+        final int bufSize;
+        final int minCount;
+        final SlabArena arena;
+        int fullCount;
+        int emptyCount;
+
+        long statTakeMissCount;
+        long statDropCount;
+
+        Depot(int bufSize, int minCount, int maxCount, SlabArena arena) {
+            this.bufSize = bufSize;
+            this.arena = arena;
+            this.minCount = minCount;
+            this.fulls = new Magazine[maxCount];
+            this.empties = new Magazine[maxCount];
+        }
+
+        Magazine takeFull() {
+            if (fullCount == 0) {
+                return null;
+            }
+            Magazine m = fulls[--fullCount];
+            fulls[fullCount] = null;
+            return m;
+        }
+
+        boolean putFull(Magazine m) {
+            if (fullCount >= fulls.length) {
+                statDropCount++;
+                return false;
+            }
+            m.returnNanos = System.nanoTime();
+            fulls[fullCount++] = m;
+            return true;
+        }
+
+        Magazine takeEmpty() {
+            if (emptyCount == 0) {
+                return null;
+            }
+            Magazine m = empties[--emptyCount];
+            empties[emptyCount] = null;
+            return m;
+        }
+
+        void putEmpty(Magazine m) {
+            if (emptyCount < empties.length) {
+                empties[emptyCount++] = m;
+            }
+        }
+
+        /**
+         * @return the bytes dropped
+         */
+        long clean(long expireNanos) {
+            int expireCount = 0;
+            while (fullCount - expireCount > minCount && fulls[expireCount].returnNanos - expireNanos <= 0) {
+                expireCount++;
+            }
+            return removeOldest(expireCount);
+        }
+
+        /**
+         * drop the oldest magazines (ignore minCount) until bytes dropped reach the expected bytes.
+         *
+         * @return the bytes dropped
+         */
+        long dropOldest(long expectBytes) {
+            int count = 0;
+            long bytes = 0;
+            while (count < fullCount && bytes < expectBytes) {
+                bytes += (long) fulls[count].size * bufSize;
+                count++;
+            }
+            return removeOldest(count);
+        }
+
+        private long removeOldest(int count) {
+            if (count == 0) {
+                return 0;
+            }
+            Magazine[] fulls = this.fulls;
+            int fullCount = this.fullCount;
+            long bytes = 0;
+            for (int i = 0; i < count; i++) {
+                Magazine m = fulls[i];
+                bytes += (long) m.size * bufSize;
+                m.clear(arena);
+                putEmpty(m);
+            }
+            System.arraycopy(fulls, count, fulls, 0, fullCount - count);
+            for (int i = fullCount - count; i < fullCount; i++) {
+                fulls[i] = null;
+            }
+            this.fullCount = fullCount - count;
+            return bytes;
+        }
+    }
+}
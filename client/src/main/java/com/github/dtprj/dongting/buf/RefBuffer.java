@@ -16,6 +16,7 @@
 package com.github.dtprj.dongting.buf;
 
 import com.github.dtprj.dongting.common.DtUtil;
+import com.github.dtprj.dongting.common.LeakDetector;
 import com.github.dtprj.dongting.common.RefCount;
 
 import java.nio.ByteBuffer;
@@ -29,7 +30,7 @@ public class RefBuffer extends RefCount {
     private final ByteBufferPool pool;
 
     RefBuffer(boolean plain, ByteBufferPool pool, int requestSize, int threshold) {
-        super(plain);
+        super(plain, requestSize > threshold);
         if (requestSize <= threshold) {
             this.buffer = pool.allocate(requestSize);
             this.pool = null;
@@ -40,7 +41,7 @@ public class RefBuffer extends RefCount {
     }
 
     private RefBuffer(ByteBuffer buffer) {
-        super(true);
+        super(true, false);
         this.buffer = buffer;
         this.pool = null;
     }
@@ -79,6 +80,9 @@ public class RefBuffer extends RefCount {
         if (DtUtil.DEBUG && isReleased()) {
             throw new IllegalStateException("buffer is released");
         }
+        if (LeakDetector.ENABLED) {
+            touch();
+        }
         return buffer;
     }
 }
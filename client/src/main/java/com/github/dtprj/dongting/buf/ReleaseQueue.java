@@ -0,0 +1,88 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.buf;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded MPSC queue for the buffers released in other threads, the owner thread drains it in bulk.
+ * The offer operation not allocate any object.
+ *
+ * @author huangli
+ */
+final class ReleaseQueue {
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final int mask;
+    private final AtomicReferenceArray<ByteBuffer> slots;
+    private final AtomicLong producerIndex = new AtomicLong();
+    // only updated by consumer, read by producers to check whether the queue is full
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    ReleaseQueue(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity should be power of 2: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * called by any thread.
+     *
+     * @return false if the queue is full
+     */
+    boolean offer(ByteBuffer buf) {
+        long p;
+        do {
+            p = producerIndex.get();
+            if (p - consumerIndex.get() > mask) {
+                return false;
+            }
+        } while (!producerIndex.compareAndSet(p, p + 1));
+        slots.lazySet((int) (p & mask), buf);
+        return true;
+    }
+
+    /**
+     * called by the owner thread, release all visible buffers to the pool.
+     *
+     * @return the number of released buffers
+     */
+    int drain(ByteBufferPool pool) {
+        long c = consumerIndex.get();
+        int count = 0;
+        while (true) {
+            int index = (int) (c & mask);
+            ByteBuffer buf = slots.get(index);
+            if (buf == null) {
+                // queue is empty, or the producer has claimed the slot but not set the buffer yet
+                break;
+            }
+            slots.lazySet(index, null);
+            c++;
+            count++;
+            pool.release(buf);
+        }
+        if (count > 0) {
+            consumerIndex.lazySet(c);
+        }
+        return count;
+    }
+}
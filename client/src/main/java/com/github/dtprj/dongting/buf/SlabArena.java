@@ -0,0 +1,203 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.buf;
+
+import com.github.dtprj.dongting.common.DtUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Objects;
+
+/**
+ * Allocate direct buffers as slices of large direct slabs, thread safe.
+ * <p>
+ * Each size class has its own slabs, so the slices in a slab have the same size, and the offset of each slice
+ * is aligned to the slice size (relative to the slab). The slices have no Cleaner, and only the slab is counted
+ * by MaxDirectMemorySize. The slab size of a size class grows from small to slabSize, so a rarely used size class
+ * not reserve too much memory. A slab is released (and reclaimed by gc) when all its slices are freed, except the
+ * last slab of the size class.
+ * <p>
+ * The slices must be freed by {@link #free(ByteBuffer)}, or the slab will never be released.
+ *
+ * @author huangli
+ */
+public class SlabArena {
+
+    private static final int INIT_SLICES_PER_SLAB = 8;
+
+    private final int[] bufSizes;
+    private final SizeClass[] sizeClasses;
+    private final IdentityHashMap<ByteBuffer, Slab> allocated = new IdentityHashMap<>();
+
+    private long statSlabCount;
+    private long statSlabBytes;
+
+    /**
+     * @param slabSize max bytes of a slab
+     * @param bufSizes the sizes which can be allocated from this arena, in ascending order
+     */
+    public SlabArena(int slabSize, int[] bufSizes) {
+        Objects.requireNonNull(bufSizes);
+        DtUtil.checkPositive(slabSize, "slabSize");
+        this.bufSizes = bufSizes;
+        this.sizeClasses = new SizeClass[bufSizes.length];
+        for (int i = 0; i < bufSizes.length; i++) {
+            DtUtil.checkPositive(bufSizes[i], "bufSize");
+            if (i > 0 && bufSizes[i] <= bufSizes[i - 1]) {
+                throw new IllegalArgumentException("bufSizes not in ascending order");
+            }
+            int maxSlices = Math.max(1, slabSize / bufSizes[i]);
+            sizeClasses[i] = new SizeClass(bufSizes[i], maxSlices);
+        }
+    }
+
+    private int sizeClass(int size) {
+        int[] bufSizes = this.bufSizes;
+        for (int i = 0; i < bufSizes.length; i++) {
+            if (bufSizes[i] == size) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * allocate a buffer from arena.
+     *
+     * @return the buffer, or null if the size is not supported by this arena
+     */
+    public synchronized ByteBuffer allocate(int size) {
+        int index = sizeClass(size);
+        if (index < 0) {
+            return null;
+        }
+        SizeClass sc = sizeClasses[index];
+        Slab slab = sc.current;
+        if (slab == null || slab.freeCount() == 0) {
+            slab = null;
+            for (Slab s : sc.slabs) {
+                if (s.freeCount() > 0) {
+                    slab = s;
+                    break;
+                }
+            }
+            if (slab == null) {
+                slab = new Slab(sc.bufSize, sc.nextSlices);
+                sc.nextSlices = Math.min(sc.nextSlices * 2, sc.maxSlices);
+                sc.slabs.add(slab);
+                statSlabCount++;
+                statSlabBytes += slab.base.capacity();
+            }
+            sc.current = slab;
+        }
+        ByteBuffer buf = slab.take();
+        allocated.put(buf, slab);
+        return buf;
+    }
+
+    /**
+     * free the buffer allocated by this arena.
+     *
+     * @return false if the buffer is not allocated by this arena
+     */
+    public synchronized boolean free(ByteBuffer buf) {
+        Slab slab = allocated.remove(buf);
+        if (slab == null) {
+            return false;
+        }
+        slab.give(buf);
+        if (slab.usedCount == 0) {
+            SizeClass sc = sizeClasses[sizeClass(slab.sliceSize)];
+            if (sc.slabs.size() > 1) {
+                // release the slab, the memory will be reclaimed by gc
+                sc.slabs.remove(slab);
+                if (sc.current == slab) {
+                    sc.current = null;
+                }
+                statSlabCount--;
+                statSlabBytes -= slab.base.capacity();
+            }
+        }
+        return true;
+    }
+
+    public synchronized long getSlabBytes() {
+        return statSlabBytes;
+    }
+
+    public synchronized String formatStat() {
+        return "slabs " + statSlabCount + ", slab bytes " + statSlabBytes + ", allocated " + allocated.size();
+    }
+
+    private static final class SizeClass {
+        final int bufSize;
+        final int maxSlices;
+        final ArrayList<Slab> slabs = new ArrayList<>();
+        int nextSlices;
+        Slab current;
+
+        SizeClass(int bufSize, int maxSlices) {
+            this.bufSize = bufSize;
+            this.maxSlices = maxSlices;
+            this.nextSlices = Math.min(INIT_SLICES_PER_SLAB, maxSlices);
+        }
+    }
+
+    private static final class Slab {
+        final ByteBuffer base;
+        final int sliceSize;
+        final int sliceCount;
+        // freed slices, reuse them first
+        final ByteBuffer[] freeSlices;
+        int freeSliceCount;
+        // slices not created yet start from this index
+        int nextIndex;
+        int usedCount;
+
+        Slab(int sliceSize, int sliceCount) {
+            this.base = ByteBuffer.allocateDirect(sliceSize * sliceCount);
+            this.sliceSize = sliceSize;
+            this.sliceCount = sliceCount;
+            this.freeSlices = new ByteBuffer[sliceCount];
+        }
+
+        int freeCount() {
+            return sliceCount - usedCount;
+        }
+
+        ByteBuffer take() {
+            usedCount++;
+            if (freeSliceCount > 0) {
+                ByteBuffer buf = freeSlices[--freeSliceCount];
+                freeSlices[freeSliceCount] = null;
+                return buf;
+            }
+            int offset = nextIndex * sliceSize;
+            nextIndex++;
+            ByteBuffer dup = base.duplicate();
+            dup.limit(offset + sliceSize);
+            dup.position(offset);
+            return dup.slice();
+        }
+
+        void give(ByteBuffer buf) {
+            usedCount--;
+            buf.clear();
+            freeSlices[freeSliceCount++] = buf;
+        }
+    }
+}
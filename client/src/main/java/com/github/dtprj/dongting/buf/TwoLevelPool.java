@@ -16,6 +16,7 @@
 package com.github.dtprj.dongting.buf;
 
 import com.github.dtprj.dongting.common.DtException;
+import com.github.dtprj.dongting.common.DtUtil;
 import com.github.dtprj.dongting.common.Timestamp;
 
 import java.nio.ByteBuffer;
@@ -33,36 +34,38 @@ public class TwoLevelPool extends ByteBufferPool {
     private final boolean releaseInOtherThread;
     private final Consumer<ByteBuffer> releaseCallback;
     private final Thread owner;
+    // shared by the instance and the instances created by toReleaseInOtherThreadInstance
+    private ReleaseQueue releaseQueue;
 
-    private static SimpleByteBufferPool GLOBAL_POOL;
+    // the global pools are shared by all TwoLevelPool instances, heap and direct buffers use different pools
+    private static MagazinePool GLOBAL_DIRECT_POOL;
+    private static MagazinePool GLOBAL_HEAP_POOL;
+
+    private static long globalDirectPoolMaxBytes = Long.parseLong(
+            System.getProperty("dt.globalDirectPoolMaxBytes", String.valueOf(64 * 1024 * 1024)));
+    private static long globalHeapPoolMaxBytes = Long.parseLong(
+            System.getProperty("dt.globalHeapPoolMaxBytes", String.valueOf(128 * 1024 * 1024)));
+    // 0 means not use SlabArena for global direct pool
+    private static int globalDirectPoolSlabSize = Integer.parseInt(
+            System.getProperty("dt.globalDirectPoolSlabSize", "0"));
 
     private static BiFunction<Timestamp, Boolean, ByteBufferPool> DEFAULT_FACTORY = (ts, direct) -> {
-        synchronized (TwoLevelPool.class) {
-            if (GLOBAL_POOL == null) {
-                int[] bufSize = new int[]{32 * 1024, 64 * 1024, 128 * 1024, 256 * 1024, 512 * 1024,
-                        1024 * 1024, 2 * 1024 * 1024, 4 * 1024 * 1024};
-                int[] minCount = new int[]{16, 8, 4, 2, 1, 0, 0, 0};
-                int[] maxCount = new int[]{128, 128, 64, 64, 32, 16, 8, 4};
-                // Thread safe pool should use a dedicated timestamp
-                GLOBAL_POOL = new SimpleByteBufferPool(null, direct, 0, true,
-                        bufSize, minCount, maxCount, 30000);
-            }
-        }
+        ByteBufferPool globalPool = getGlobalPool(direct);
         int[] bufSize = new int[]{128, 256, 512, 1024, 2048, 4096, 8192, 16384};
         int[] minCount = new int[]{128, 64, 32, 16, 16, 16, 16, 16};
         int[] maxCount = new int[]{8192, 4096, 2048, 1024, 1024, 1024, 512, 256};
         SimpleByteBufferPool p1 = new SimpleByteBufferPool(ts, direct, 64, false,
                 bufSize, minCount, maxCount, 10000);
-        return new TwoLevelPool(direct, p1, GLOBAL_POOL, 16 * 1024);
+        return new TwoLevelPool(direct, p1, globalPool, 16 * 1024);
     };
 
     public TwoLevelPool(boolean direct, ByteBufferPool smallPool, ByteBufferPool largePool, int threshold) {
-        this(direct, smallPool, largePool, threshold, false, null, null);
+        this(direct, smallPool, largePool, threshold, false, null, null, null);
     }
 
     private TwoLevelPool(boolean direct, ByteBufferPool smallPool, ByteBufferPool largePool,
                          int threshold, boolean releaseInOtherThread,
-                         Consumer<ByteBuffer> releaseCallback, Thread owner) {
+                         Consumer<ByteBuffer> releaseCallback, Thread owner, ReleaseQueue releaseQueue) {
         this.direct = direct;
         this.smallPool = smallPool;
         this.largePool = largePool;
@@ -70,6 +73,7 @@ public class TwoLevelPool extends ByteBufferPool {
         this.releaseInOtherThread = releaseInOtherThread;
         this.releaseCallback = releaseCallback;
         this.owner = owner;
+        this.releaseQueue = releaseQueue;
     }
 
     @Override
@@ -90,7 +94,10 @@ public class TwoLevelPool extends ByteBufferPool {
         int c = buf.capacity();
         if (c <= threshold) {
             if (releaseInOtherThread && owner != Thread.currentThread()) {
-                releaseCallback.accept(buf);
+                if (!releaseQueue.offer(buf)) {
+                    // the release queue is full
+                    releaseCallback.accept(buf);
+                }
             } else {
                 smallPool.release(buf);
             }
@@ -115,9 +122,27 @@ public class TwoLevelPool extends ByteBufferPool {
         return smallPool.formatStat();
     }
 
-    public TwoLevelPool toReleaseInOtherThreadInstance(Thread owner, Consumer<ByteBuffer> releaseCallback) {
+    /**
+     * Create an instance which can release buffers in other threads. The buffers released in other threads are put
+     * into a release queue shared by all instances created from this pool, the owner thread should invoke
+     * {@link #drainReleaseQueue()} in every loop. The releaseCallback is invoked only if the release queue is full.
+     */
+    public synchronized TwoLevelPool toReleaseInOtherThreadInstance(Thread owner, Consumer<ByteBuffer> releaseCallback) {
+        if (releaseQueue == null) {
+            releaseQueue = new ReleaseQueue(ReleaseQueue.DEFAULT_CAPACITY);
+        }
         return new TwoLevelPool(direct, smallPool, largePool,
-                threshold, true, releaseCallback, owner);
+                threshold, true, releaseCallback, owner, releaseQueue);
+    }
+
+    /**
+     * Release the buffers released by other threads to the small pool, should be invoked in the owner thread.
+     *
+     * @return the number of buffers released
+     */
+    public int drainReleaseQueue() {
+        ReleaseQueue q = releaseQueue;
+        return q == null ? 0 : q.drain(smallPool);
     }
 
     @SuppressWarnings("unused")
@@ -129,13 +154,63 @@ public class TwoLevelPool extends ByteBufferPool {
         return largePool;
     }
 
+    /**
+     * Get the global pool for large buffers, create it if not exists.
+     */
+    public static synchronized MagazinePool getGlobalPool(boolean direct) {
+        if (direct) {
+            if (GLOBAL_DIRECT_POOL == null) {
+                if (globalDirectPoolSlabSize > 0) {
+                    SlabArena arena = new SlabArena(globalDirectPoolSlabSize, MagazinePool.DEFAULT_BUF_SIZE);
+                    GLOBAL_DIRECT_POOL = new MagazinePool(true, MagazinePool.DEFAULT_BUF_SIZE,
+                            MagazinePool.DEFAULT_MIN_COUNT, MagazinePool.DEFAULT_MAX_COUNT,
+                            MagazinePool.DEFAULT_MAGAZINE_SIZE, MagazinePool.defaultStripeCount(),
+                            MagazinePool.DEFAULT_TIME_OUT_MILLIS, globalDirectPoolMaxBytes, arena);
+                } else {
+                    GLOBAL_DIRECT_POOL = new MagazinePool(true, globalDirectPoolMaxBytes);
+                }
+            }
+            return GLOBAL_DIRECT_POOL;
+        } else {
+            if (GLOBAL_HEAP_POOL == null) {
+                GLOBAL_HEAP_POOL = new MagazinePool(false, globalHeapPoolMaxBytes);
+            }
+            return GLOBAL_HEAP_POOL;
+        }
+    }
+
+    /**
+     * Set the max bytes retained by the global pool, should be invoked before the global pool created.
+     */
+    public static synchronized void setGlobalPoolMaxBytes(boolean direct, long maxBytes) {
+        DtUtil.checkPositive(maxBytes, "maxBytes");
+        if (direct) {
+            globalDirectPoolMaxBytes = maxBytes;
+        } else {
+            globalHeapPoolMaxBytes = maxBytes;
+        }
+    }
+
+    /**
+     * Allocate the buffers of global direct pool from slabs (for example 64MB), should be invoked before the global
+     * pool created. 0 means disabled.
+     * <p>
+     * The buffers borrowed from the global direct pool must be released to the pool, otherwise the slab
+     * will never be reclaimed.
+     */
+    public static synchronized void setGlobalDirectPoolSlabSize(int slabSize) {
+        DtUtil.checkNotNegative(slabSize, "slabSize");
+        globalDirectPoolSlabSize = slabSize;
+    }
+
     public static BiFunction<Timestamp, Boolean, ByteBufferPool> getDefaultFactory() {
         return DEFAULT_FACTORY;
     }
 
     @SuppressWarnings("unused")
-    public static void setDefaultFactory(BiFunction<Timestamp, Boolean, ByteBufferPool> defaultFactory) {
-        GLOBAL_POOL = null;
+    public static synchronized void setDefaultFactory(BiFunction<Timestamp, Boolean, ByteBufferPool> defaultFactory) {
+        GLOBAL_DIRECT_POOL = null;
+        GLOBAL_HEAP_POOL = null;
         DEFAULT_FACTORY = defaultFactory;
     }
 }
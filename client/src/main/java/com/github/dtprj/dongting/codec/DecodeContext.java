@@ -23,6 +23,7 @@ import com.github.dtprj.dongting.buf.RefBufferFactory;
 public class DecodeContext {
     private static final int THREAD_LOCAL_BUFFER_SIZE = 4 * 1024;
     private static final ThreadLocal<byte[]> THREAD_LOCAL_BUFFER = ThreadLocal.withInitial(() -> new byte[THREAD_LOCAL_BUFFER_SIZE]);
+    private static final ThreadLocal<StrInternCache> THREAD_LOCAL_STR_CACHE = ThreadLocal.withInitial(StrInternCache::new);
 
     private RefBufferFactory heapPool;
     private Object status;
@@ -30,6 +31,8 @@ public class DecodeContext {
 
     private final byte[] threadLocalBuffer = THREAD_LOCAL_BUFFER.get();
 
+    private StrInternCache strInternCache;
+
     private DecodeContext nestedContext;
 
     public DecodeContext() {
@@ -83,4 +86,13 @@ public class DecodeContext {
     public byte[] getThreadLocalBuffer() {
         return threadLocalBuffer;
     }
+
+    StrInternCache getStrInternCache() {
+        StrInternCache c = strInternCache;
+        if (c == null) {
+            c = THREAD_LOCAL_STR_CACHE.get();
+            strInternCache = c;
+        }
+        return c;
+    }
 }
@@ -24,6 +24,8 @@ public abstract class PbCallback<T> {
 
     protected PbParser parser;
 
+    private byte[] tempBytes;
+
     public boolean readVarNumber(int index, long value) {
         return true;
     }
@@ -48,6 +50,39 @@ public abstract class PbCallback<T> {
         this.parser = null;
     }
 
+    /**
+     * read the bytes field in readBytes(), the field may be split into several buffers.
+     *
+     * @return the bytes if the field is complete, otherwise null
+     */
+    protected final byte[] parseBytes(ByteBuffer buf, int fieldLen, int currentPos) {
+        byte[] bytes = currentPos == 0 ? new byte[fieldLen] : tempBytes;
+        int count = buf.remaining();
+        buf.get(bytes, currentPos, count);
+        if (currentPos + count < fieldLen) {
+            tempBytes = bytes;
+            return null;
+        } else {
+            tempBytes = null;
+            return bytes;
+        }
+    }
+
+    /**
+     * read the utf8 string field in readBytes(), the field may be split into several buffers.
+     *
+     * @return the string if the field is complete, otherwise null
+     */
+    protected final String parseUTF8(ByteBuffer buf, int fieldLen, int currentPos) {
+        if (currentPos == 0 && buf.remaining() == fieldLen && buf.hasArray()) {
+            String s = StrDecoder.decodeUTF8(buf.array(), buf.arrayOffset() + buf.position(), fieldLen);
+            buf.position(buf.limit());
+            return s;
+        }
+        byte[] bytes = parseBytes(buf, fieldLen, currentPos);
+        return bytes == null ? null : StrDecoder.decodeUTF8(bytes, 0, bytes.length);
+    }
+
     public T getResult() {
         throw new UnsupportedOperationException();
     }
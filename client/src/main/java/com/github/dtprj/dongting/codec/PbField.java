@@ -13,39 +13,28 @@
  * License for the specific language governing permissions and limitations
  * under the License.
  */
-package com.github.dtprj.dongting.common;
+package com.github.dtprj.dongting.codec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 
 /**
+ * Field of a {@link PbMessage}.
+ *
  * @author huangli
  */
-class LongMapNode<V> {
-    @SuppressWarnings("FieldMayBeFinal")
-    private long key;
-    private V value;
-    private LongMapNode<V> next;
-
-    public LongMapNode(long key, V value) {
-        this.key = key;
-        this.value = value;
-    }
-
-    public long getKey() {
-        return key;
-    }
-
-    public V getValue() {
-        return value;
-    }
-
-    public LongMapNode<V> getNext() {
-        return next;
-    }
-
-    public void setNext(LongMapNode<V> next) {
-        this.next = next;
-    }
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface PbField {
+    /**
+     * the field index of proto buffer, should be positive.
+     */
+    int index();
 
-    public void setValue(V value) {
-        this.value = value;
-    }
+    /**
+     * if true, int/long field is encoded as fixed32/fixed64, otherwise uint32/uint64.
+     */
+    boolean fixed() default false;
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.codec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Mark a class as a proto buffer message, the annotation processor in dongting-codegen generates a XxxCodec class
+ * for it, which contains the size calculation and encode method, a PbCallback to decode it, and a XxxWriteFrame.
+ * <p>
+ * The class should have a no-arg constructor. The fields annotated by {@link PbField} should be not private,
+ * or have getter and setter. Supported field types: int, long, boolean, String, byte[].
+ *
+ * @author huangli
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface PbMessage {
+}
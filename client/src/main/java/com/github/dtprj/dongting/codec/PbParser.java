@@ -21,6 +21,7 @@ import com.github.dtprj.dongting.log.DtLog;
 import com.github.dtprj.dongting.log.DtLogs;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Objects;
 
 /**
@@ -222,9 +223,12 @@ public class PbParser {
     }
 
     private int parseVarInt(ByteBuffer buf, int remain) {
+        int pendingBytes = this.pendingBytes;
+        if (pendingBytes == 0 && remain >= 8) {
+            return parseVarIntFast(buf, remain);
+        }
         int value = 0;
         int bitIndex = 0;
-        int pendingBytes = this.pendingBytes;
         if (pendingBytes > 0) {
             value = (int) this.tempValue;
             bitIndex = pendingBytes * 7;
@@ -244,36 +248,7 @@ public class PbParser {
                     status = STATUS_ERROR;
                     throw new PbException("var int too long: " + (pendingBytes + i + 1));
                 }
-                parsedBytes += i;
-                if (parsedBytes > frameLen) {
-                    status = STATUS_ERROR;
-                    throw new PbException("frame exceed " + frameLen);
-                }
-
-                /////////////////////////////////////
-                switch (status) {
-                    case STATUS_PARSE_TAG:
-                        afterTagParsed(value);
-                        break;
-                    case STATUS_PARSE_FILED_LEN:
-                        if (value < 0) {
-                            status = STATUS_ERROR;
-                            throw new PbException("bad field len: " + fieldLen);
-                        }
-                        if (parsedBytes + value > frameLen) {
-                            status = STATUS_ERROR;
-                            throw new PbException("field length overflow frame length. len=" + value + ",index=" + fieldIndex);
-                        }
-                        this.fieldLen = value;
-                        this.status = STATUS_PARSE_FILED_BODY;
-                        break;
-                    default:
-                        status = STATUS_ERROR;
-                        throw new PbException("invalid status: " + status);
-                }
-                this.parsedBytes = parsedBytes;
-                this.pendingBytes = 0;
-                /////////////////////////////////////
+                afterVarIntParsed(value, parsedBytes + i);
                 return remain - i;
             } else {
                 bitIndex += 7;
@@ -295,6 +270,72 @@ public class PbParser {
         return 0;
     }
 
+    private int parseVarIntFast(ByteBuffer buf, int remain) {
+        int pos = buf.position();
+        long word = readLongLE(buf, pos);
+        long stops = ~word & 0x8080808080808080L;
+        int len = (Long.numberOfTrailingZeros(stops) + 1) >>> 3;
+        // max 5 bytes for 32bit number in proto buffer, stops is 0 if not found in 8 bytes
+        if (stops == 0 || len > 5) {
+            status = STATUS_ERROR;
+            throw new PbException("var int too long: " + (stops == 0 ? 9 : len));
+        }
+        buf.position(pos + len);
+        afterVarIntParsed((int) decodeVarLong(word, stops), parsedBytes + len);
+        return remain - len;
+    }
+
+    private void afterVarIntParsed(int value, int parsedBytes) {
+        int frameLen = this.frameLen;
+        if (parsedBytes > frameLen) {
+            status = STATUS_ERROR;
+            throw new PbException("frame exceed " + frameLen);
+        }
+        switch (status) {
+            case STATUS_PARSE_TAG:
+                afterTagParsed(value);
+                break;
+            case STATUS_PARSE_FILED_LEN:
+                if (value < 0) {
+                    status = STATUS_ERROR;
+                    throw new PbException("bad field len: " + fieldLen);
+                }
+                if (parsedBytes + value > frameLen) {
+                    status = STATUS_ERROR;
+                    throw new PbException("field length overflow frame length. len=" + value + ",index=" + fieldIndex);
+                }
+                this.fieldLen = value;
+                this.status = STATUS_PARSE_FILED_BODY;
+                break;
+            default:
+                status = STATUS_ERROR;
+                throw new PbException("invalid status: " + status);
+        }
+        this.parsedBytes = parsedBytes;
+        this.pendingBytes = 0;
+    }
+
+    private static long readLongLE(ByteBuffer buf, int pos) {
+        long word = buf.getLong(pos);
+        return buf.order() == ByteOrder.LITTLE_ENDIAN ? word : Long.reverseBytes(word);
+    }
+
+    /**
+     * decode the var number in a little endian word without loop.
+     *
+     * @param word  8 bytes read from buffer, in little endian
+     * @param stops the msb of the bytes whose msb is 0 in word, should not be 0
+     */
+    static long decodeVarLong(long word, long stops) {
+        // keep the bytes before the first stop byte (inclusive), and remove the msb of every byte
+        long x = word & (-1L >>> (63 - Long.numberOfTrailingZeros(stops))) & 0x7F7F7F7F7F7F7F7FL;
+        // merge 7 bit groups to 14 bit groups, then 28 bit groups, then 56 bit
+        x = ((x & 0x7F007F007F007F00L) >>> 1) | (x & 0x007F007F007F007FL);
+        x = ((x & 0x3FFF00003FFF0000L) >>> 2) | (x & 0x00003FFF00003FFFL);
+        x = ((x & 0x0FFFFFFF00000000L) >>> 4) | (x & 0x000000000FFFFFFFL);
+        return x;
+    }
+
     private void afterTagParsed(int value) {
         int type = value & 0x07;
         this.fieldType = type;
@@ -321,9 +362,21 @@ public class PbParser {
     }
 
     private int parseVarLong(ByteBuffer buf, PbCallback<?> callback, int remain) {
+        int pendingBytes = this.pendingBytes;
+        if (pendingBytes == 0 && remain >= 8) {
+            int pos = buf.position();
+            long word = readLongLE(buf, pos);
+            long stops = ~word & 0x8080808080808080L;
+            // if the var number is longer than 8 bytes (large or negative number), parse it byte by byte
+            if (stops != 0) {
+                int len = (Long.numberOfTrailingZeros(stops) + 1) >>> 3;
+                buf.position(pos + len);
+                afterVarLongParsed(callback, decodeVarLong(word, stops), parsedBytes + len);
+                return remain - len;
+            }
+        }
         long value = 0;
         int bitIndex = 0;
-        int pendingBytes = this.pendingBytes;
         if (pendingBytes > 0) {
             value = this.tempValue;
             bitIndex = pendingBytes * 7;
@@ -343,25 +396,7 @@ public class PbParser {
                     status = STATUS_ERROR;
                     throw new PbException("var long too long: " + (pendingBytes + i + 1));
                 }
-                parsedBytes += i;
-                if (parsedBytes > frameLen) {
-                    status = STATUS_ERROR;
-                    throw new PbException("frame exceed " + frameLen);
-                }
-
-                try {
-                    if (callback.readVarNumber(this.fieldIndex, value)) {
-                        this.status = STATUS_PARSE_TAG;
-                    } else {
-                        this.status = STATUS_SKIP_REST;
-                    }
-                } catch (Throwable e) {
-                    log.error("proto buffer parse callback readVarInt() fail. fieldIndex={}, error={}", this.fieldIndex, e.toString());
-                    this.status = STATUS_SKIP_REST;
-                }
-
-                this.pendingBytes = 0;
-                this.parsedBytes = parsedBytes;
+                afterVarLongParsed(callback, value, parsedBytes + i);
                 return remain - i;
             } else {
                 bitIndex += 7;
@@ -383,6 +418,27 @@ public class PbParser {
         return 0;
     }
 
+    private void afterVarLongParsed(PbCallback<?> callback, long value, int parsedBytes) {
+        if (parsedBytes > frameLen) {
+            status = STATUS_ERROR;
+            throw new PbException("frame exceed " + frameLen);
+        }
+
+        try {
+            if (callback.readVarNumber(this.fieldIndex, value)) {
+                this.status = STATUS_PARSE_TAG;
+            } else {
+                this.status = STATUS_SKIP_REST;
+            }
+        } catch (Throwable e) {
+            log.error("proto buffer parse callback readVarInt() fail. fieldIndex={}, error={}", this.fieldIndex, e.toString());
+            this.status = STATUS_SKIP_REST;
+        }
+
+        this.pendingBytes = 0;
+        this.parsedBytes = parsedBytes;
+    }
+
     private int onStatusParseFieldBody(ByteBuffer buf, PbCallback<?> callback, int remain) {
         switch (this.fieldType) {
             case PbUtil.TYPE_VAR_INT:
@@ -16,6 +16,7 @@
 package com.github.dtprj.dongting.codec;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -33,19 +34,10 @@ public class PbUtil {
     private static final int MAX_UNSIGNED_LONG_LENGTH = 10;
 
     private static final int MAX_1_BYTE_INT_VALUE = 0x0000007F;//7 bits 1
-    private static final int MAX_2_BYTE_INT_VALUE = 0x00003FFF;//14 bits 1
-    private static final int MAX_3_BYTE_INT_VALUE = 0x001FFFFF;//21 bits 1
     private static final int MAX_4_BYTE_INT_VALUE = 0x0FFFFFFF;//28 bits 1
 
     private static final long MAX_1_BYTE_LONG_VALUE = 0x00000000_0000007FL;//7 bits 1
-    private static final long MAX_2_BYTE_LONG_VALUE = 0x00000000_00003FFFL;//14 bits 1
-    private static final long MAX_3_BYTE_LONG_VALUE = 0x00000000_001FFFFFL;//21 bits 1
-    private static final long MAX_4_BYTE_LONG_VALUE = 0x00000000_0FFFFFFFL;//28 bits 1
-    private static final long MAX_5_BYTE_LONG_VALUE = 0x00000007_FFFFFFFFL;//35 bits 1
-    private static final long MAX_6_BYTE_LONG_VALUE = 0x000003FF_FFFFFFFFL;//42 bits 1
-    private static final long MAX_7_BYTE_LONG_VALUE = 0x0001FFFF_FFFFFFFFL;//49 bits 1
     private static final long MAX_8_BYTE_LONG_VALUE = 0x00FFFFFF_FFFFFFFFL;//56 bits 1
-    // private static final long MAX_9_BYTE_LONG_VALUE = 0x7FFFFFFF_FFFFFFFFL;//63 bits 1
 
     public static final int TYPE_VAR_INT = 0;
     public static final int TYPE_FIX64 = 1;
@@ -74,6 +66,28 @@ public class PbUtil {
     }
 
     static void writeUnsignedInt32ValueOnly(ByteBuffer buf, int value) {
+        if ((value & ~MAX_1_BYTE_INT_VALUE) == 0) {
+            buf.put((byte) value);
+            return;
+        }
+        int pos = buf.position();
+        int remain = buf.limit() - pos;
+        if ((value & ~MAX_4_BYTE_INT_VALUE) == 0 && remain >= 4) {
+            // build the var int in a register and write it with single putInt, then move the position back
+            int len = accurateUnsignedIntSize(value);
+            int word = (value & 0x7F)
+                    | ((value & 0x3F80) << 1)
+                    | ((value & 0x1FC000) << 2)
+                    | ((value & 0xFE00000) << 3)
+                    | (0x00808080 >>> ((4 - len) << 3));
+            buf.putInt(pos, buf.order() == ByteOrder.LITTLE_ENDIAN ? word : Integer.reverseBytes(word));
+            buf.position(pos + len);
+            return;
+        }
+        if (remain >= 8) {
+            writeVarLongWord(buf, pos, value & 0xFFFFFFFFL);
+            return;
+        }
         for (int i = 0; i < 5; i++) {
             int x = value & 0x7F;
             value >>>= 7;
@@ -87,6 +101,24 @@ public class PbUtil {
         }
     }
 
+    /**
+     * write var int which has 8 bytes at most (value less than 2^56), the buf should have at least 8 bytes remaining.
+     */
+    private static void writeVarLongWord(ByteBuffer buf, int pos, long value) {
+        int len = accurateUnsignedLongSize(value);
+        long word = (value & 0x7FL)
+                | ((value & 0x3F80L) << 1)
+                | ((value & 0x1FC000L) << 2)
+                | ((value & 0xFE00000L) << 3)
+                | ((value & 0x7F0000000L) << 4)
+                | ((value & 0x3F800000000L) << 5)
+                | ((value & 0x1FC0000000000L) << 6)
+                | ((value & 0xFE000000000000L) << 7)
+                | (0x0080808080808080L >>> ((8 - len) << 3));
+        buf.putLong(pos, buf.order() == ByteOrder.LITTLE_ENDIAN ? word : Long.reverseBytes(word));
+        buf.position(pos + len);
+    }
+
     public static void writeFix32(ByteBuffer buf, int index, int value) {
         if (value == 0) {
             return;
@@ -112,6 +144,14 @@ public class PbUtil {
     }
 
     static void writeUnsignedInt64ValueOnly(ByteBuffer buf, long value) {
+        if ((value & ~MAX_1_BYTE_LONG_VALUE) == 0) {
+            buf.put((byte) value);
+            return;
+        }
+        if ((value & ~MAX_8_BYTE_LONG_VALUE) == 0 && buf.remaining() >= 8) {
+            writeVarLongWord(buf, buf.position(), value);
+            return;
+        }
         for (int i = 0; i < 10; i++) {
             long x = value & 0x7FL;
             value >>>= 7;
@@ -235,6 +275,37 @@ public class PbUtil {
         return accurateTagSize(index) + accurateUnsignedIntSize(len) + len;
     }
 
+    public static int accurateStrSizeUTF8(int index, String str) {
+        if (str == null || str.isEmpty()) {
+            return 0;
+        }
+        return accurateLengthDelimitedSize(index, utf8Length(str));
+    }
+
+    static int utf8Length(String str) {
+        int len = str.length();
+        int bytes = len;
+        for (int i = 0; i < len; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes++;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+                    // 4 bytes for 2 chars
+                    bytes += 2;
+                    i++;
+                }
+                // malformed surrogate is encoded as '?' by String.getBytes()
+            } else {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
     public static int maxUnsignedIntSize() {
         return MAX_TAG_LENGTH + MAX_UNSIGNED_INT_LENGTH;
     }
@@ -258,19 +329,8 @@ public class PbUtil {
     }
 
     static int accurateUnsignedIntSize(int value) {
-        if (value < 0) {
-            return 5;
-        } else if (value <= MAX_1_BYTE_INT_VALUE) {
-            return 1;
-        } else if (value <= MAX_2_BYTE_INT_VALUE) {
-            return 2;
-        } else if (value <= MAX_3_BYTE_INT_VALUE) {
-            return 3;
-        } else if (value <= MAX_4_BYTE_INT_VALUE) {
-            return 4;
-        } else {
-            return 5;
-        }
+        // 7 bits per byte, compute ceil(bits / 7) without branch, return 1 for 0
+        return (352 - Integer.numberOfLeadingZeros(value) * 9) >>> 6;
     }
 
     public static int accurateUnsignedLongSize(int index, long value) {
@@ -281,30 +341,10 @@ public class PbUtil {
     }
 
     static int accurateUnsignedLongSize(long value) {
-        if (value < 0L) {
-            return 10;
-        } else if (value == 0L) {
+        if (value == 0L) {
             return 0;
-        } else if (value <= MAX_1_BYTE_LONG_VALUE) {
-            return 1;
-        } else if (value <= MAX_2_BYTE_LONG_VALUE) {
-            return 2;
-        } else if (value <= MAX_3_BYTE_LONG_VALUE) {
-            return 3;
-        } else if (value <= MAX_4_BYTE_LONG_VALUE) {
-            return 4;
-        } else if (value <= MAX_5_BYTE_LONG_VALUE) {
-            return 5;
-        } else if (value <= MAX_6_BYTE_LONG_VALUE) {
-            return 6;
-        } else if (value <= MAX_7_BYTE_LONG_VALUE) {
-            return 7;
-        } else if (value <= MAX_8_BYTE_LONG_VALUE) {
-            return 8;
-        } else  {
-            // MAX_9_BYTE_LONG_VALUE==Long.MAX_VALUE, so ...
-            return 9;
         }
+        return (640 - Long.numberOfLeadingZeros(value) * 9) >>> 6;
     }
 
     public static int maxFix32Size() {
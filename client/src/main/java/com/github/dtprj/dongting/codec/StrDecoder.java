@@ -25,9 +25,33 @@ import java.nio.charset.StandardCharsets;
  */
 public class StrDecoder implements Decoder<String> {
 
-    public static final StrDecoder INSTANCE = new StrDecoder();
+    public static final StrDecoder INSTANCE = new StrDecoder(false);
 
-    private StrDecoder() {
+    /**
+     * reuse the String instances of short strings (see StrInternCache) in current thread, for the
+     * strings frequently repeated, such as keys.
+     */
+    public static final StrDecoder INTERN_INSTANCE = new StrDecoder(true);
+
+    private final boolean intern;
+
+    private StrDecoder(boolean intern) {
+        this.intern = intern;
+    }
+
+    static String decodeAscii(byte[] bytes, int offset, int len) {
+        // ISO_8859_1 decode is a simple copy, much faster than the UTF-8 decoder
+        return new String(bytes, offset, len, StandardCharsets.ISO_8859_1);
+    }
+
+    static String decodeUTF8(byte[] bytes, int offset, int len) {
+        int end = offset + len;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] < 0) {
+                return new String(bytes, offset, len, StandardCharsets.UTF_8);
+            }
+        }
+        return decodeAscii(bytes, offset, len);
     }
 
     @Override
@@ -38,7 +62,10 @@ public class StrDecoder implements Decoder<String> {
             byte[] threadLocalBuffer = decodeContext.getThreadLocalBuffer();
             if (fieldLen <= threadLocalBuffer.length) {
                 buf.get(threadLocalBuffer, 0, fieldLen);
-                return new String(threadLocalBuffer, 0, fieldLen, StandardCharsets.UTF_8);
+                if (intern && fieldLen <= StrInternCache.MAX_LEN) {
+                    return decodeContext.getStrInternCache().get(threadLocalBuffer, 0, fieldLen);
+                }
+                return decodeUTF8(threadLocalBuffer, 0, fieldLen);
             }
         }
         ByteBuffer bufferFromPool;
@@ -51,7 +78,7 @@ public class StrDecoder implements Decoder<String> {
         bufferFromPool.put(buf);
 
         if (end) {
-            String s = new String(bufferFromPool.array(), 0, bufferFromPool.position(), StandardCharsets.UTF_8);
+            String s = decodeUTF8(bufferFromPool.array(), 0, bufferFromPool.position());
             decodeContext.getHeapPool().getPool().release(bufferFromPool);
             return s;
         } else {
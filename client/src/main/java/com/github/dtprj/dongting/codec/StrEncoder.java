@@ -24,25 +24,43 @@ import java.nio.charset.StandardCharsets;
 public class StrEncoder implements Encoder<String> {
 
     private byte[] bytes;
+    private boolean ascii;
     private int pos;
 
     public StrEncoder() {
     }
 
+    private static boolean isAscii(String s) {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean encode(EncodeContext context, ByteBuffer buffer, String data) {
         if (data == null) {
             return true;
         }
-        byte[] bytes = this.bytes;
-        if (bytes == null) {
-            bytes = data.getBytes(StandardCharsets.UTF_8);
-            this.bytes = bytes;
+        if (!ascii && bytes == null) {
+            actualSize(data);
         }
-        int totalLen = bytes.length;
-        if (totalLen == 0) {
-            return true;
+        if (ascii) {
+            // write chars directly, no byte array allocated
+            int totalLen = data.length();
+            int pos = this.pos;
+            int end = pos + Math.min(buffer.remaining(), totalLen - pos);
+            for (; pos < end; pos++) {
+                buffer.put((byte) data.charAt(pos));
+            }
+            this.pos = pos;
+            return pos >= totalLen;
         }
+        byte[] bytes = this.bytes;
+        int totalLen = bytes.length;
         int pos = this.pos;
         int len = Math.min(buffer.remaining(), totalLen - pos);
         buffer.put(bytes, pos, len);
@@ -56,6 +74,10 @@ public class StrEncoder implements Encoder<String> {
         if (data == null) {
             return 0;
         }
+        if (isAscii(data)) {
+            ascii = true;
+            return data.length();
+        }
         bytes = data.getBytes(StandardCharsets.UTF_8);
         return bytes.length;
     }
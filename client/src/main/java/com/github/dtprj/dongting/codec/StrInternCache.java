@@ -0,0 +1,76 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.codec;
+
+/**
+ * Bounded direct-mapped cache to reuse the String instances decoded from same bytes, such as keys and
+ * command names. Not thread safe, each thread has its own instance, see DecodeContext.
+ * <p>
+ * Only ASCII strings are cached, they are compared with the bytes directly, so a miss allocates nothing more
+ * than the String. A string is cached when its hash is seen twice in the slot, so the strings seen only once
+ * (high cardinality keys) don't evict the cached ones.
+ *
+ * @author huangli
+ */
+final class StrInternCache {
+
+    static final int MAX_LEN = 64;
+    private static final int CAPACITY = 1024;
+
+    private final int[] hashes = new int[CAPACITY];
+    private final String[] values = new String[CAPACITY];
+    // the hash of last miss in the slot
+    private final int[] candidates = new int[CAPACITY];
+
+    String get(byte[] bytes, int offset, int len) {
+        int h = 0;
+        int neg = 0;
+        int end = offset + len;
+        for (int i = offset; i < end; i++) {
+            byte b = bytes[i];
+            h = 31 * h + b;
+            neg |= b;
+        }
+        if (neg < 0) {
+            return StrDecoder.decodeUTF8(bytes, offset, len);
+        }
+        int index = (h ^ (h >>> 16)) & (CAPACITY - 1);
+        String v = values[index];
+        if (v != null && hashes[index] == h && equals(v, bytes, offset, len)) {
+            return v;
+        }
+        String s = StrDecoder.decodeAscii(bytes, offset, len);
+        if (candidates[index] == h) {
+            hashes[index] = h;
+            values[index] = s;
+        } else {
+            candidates[index] = h;
+        }
+        return s;
+    }
+
+    private static boolean equals(String s, byte[] bytes, int offset, int len) {
+        if (s.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (s.charAt(i) != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
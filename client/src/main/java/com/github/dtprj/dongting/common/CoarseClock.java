@@ -0,0 +1,73 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Shared coarse clock, updated by a daemon thread at a fixed resolution, the readers only do a volatile load
+ * instead of System.nanoTime()/System.currentTimeMillis() calls. Disabled by default, enable it by
+ * -Ddt.coarseClock=true, the resolution (millis) is set by -Ddt.coarseClockResolution (default 1).
+ * <p>
+ * When enabled, Timestamp.refresh() reads time from this clock, except the precise Timestamp used by the raft
+ * lease check.
+ *
+ * @author huangli
+ */
+public final class CoarseClock {
+
+    public static final boolean ENABLED = Boolean.getBoolean("dt.coarseClock");
+    private static final long RESOLUTION_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            Math.max(1, Integer.getInteger("dt.coarseClockResolution", 1)));
+
+    private static volatile long nanoTime = System.nanoTime();
+    private static volatile long wallClockMillis = System.currentTimeMillis();
+
+    static {
+        if (ENABLED) {
+            Thread t = new Thread(CoarseClock::run, "DtCoarseClock");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    private CoarseClock() {
+    }
+
+    private static void run() {
+        //noinspection InfiniteLoopStatement
+        while (true) {
+            LockSupport.parkNanos(RESOLUTION_NANOS);
+            nanoTime = System.nanoTime();
+            wallClockMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * return the coarse nano time if enabled, else System.nanoTime().
+     */
+    public static long nanoTime() {
+        return ENABLED ? nanoTime : System.nanoTime();
+    }
+
+    /**
+     * return the coarse wall clock millis if enabled, else System.currentTimeMillis().
+     */
+    public static long currentTimeMillis() {
+        return ENABLED ? wallClockMillis : System.currentTimeMillis();
+    }
+}
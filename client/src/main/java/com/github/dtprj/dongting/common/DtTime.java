@@ -25,12 +25,12 @@ public class DtTime {
     private final long deadline;
 
     public DtTime() {
-        this.createTime = System.nanoTime();
+        this.createTime = CoarseClock.nanoTime();
         this.deadline = createTime;
     }
 
     public DtTime(long timeout, TimeUnit unit) {
-        this.createTime = System.nanoTime();
+        this.createTime = CoarseClock.nanoTime();
         this.deadline = createTime + unit.toNanos(timeout);
     }
 
@@ -44,12 +44,20 @@ public class DtTime {
         this.deadline = createTime + unit.toNanos(timeout);
     }
 
+    public long getCreateNanos() {
+        return createTime;
+    }
+
+    public long getDeadlineNanos() {
+        return deadline;
+    }
+
     public long elapse(TimeUnit unit) {
-        return unit.convert(System.nanoTime() - createTime, TimeUnit.NANOSECONDS);
+        return unit.convert(CoarseClock.nanoTime() - createTime, TimeUnit.NANOSECONDS);
     }
 
     public long rest(TimeUnit unit) {
-        return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        return unit.convert(deadline - CoarseClock.nanoTime(), TimeUnit.NANOSECONDS);
     }
 
     public long rest(TimeUnit unit, Timestamp ts) {
@@ -57,7 +65,7 @@ public class DtTime {
     }
 
     public boolean isTimeout() {
-        return deadline - System.nanoTime() <= 0;
+        return deadline - CoarseClock.nanoTime() <= 0;
     }
 
     public boolean isTimeout(Timestamp ts) {
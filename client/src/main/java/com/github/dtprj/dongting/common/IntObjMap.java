@@ -15,19 +15,22 @@
  */
 package com.github.dtprj.dongting.common;
 
-import com.github.dtprj.dongting.log.BugLog;
-
 import java.util.Objects;
 
 /**
+ * Open addressing hash map with int key, use linear probing, no node allocated in put operation.
+ * Null value is not allowed. This class is not thread safe.
+ *
  * @author huangli
  */
 public class IntObjMap<V> {
     private static final int MAX_ARRAY_SIZE = 1 << 30;
+    private final int initCapacity;
     private int size;
     private int resizeThreshold;
     private final float loadFactor;
     private int[] keys;
+    // null means the slot is empty
     private Object[] values;
     private boolean inVisit;
 
@@ -38,180 +41,158 @@ public class IntObjMap<V> {
     public IntObjMap(int initSize, float loadFactor) {
         DtUtil.checkPositive(initSize, "initSize");
         DtUtil.checkPositive(loadFactor, "loadFactor");
-        resizeThreshold = BitUtil.nextHighestPowerOfTwo(initSize);
+        if (loadFactor >= 1) {
+            throw new IllegalArgumentException("loadFactor should less than 1: " + loadFactor);
+        }
+        this.initCapacity = Math.max(2, BitUtil.nextHighestPowerOfTwo(initSize));
         this.loadFactor = loadFactor;
     }
 
     protected int hashCode(int v) {
-        return v;
+        // the keys are usually sequential (ids, seq numbers), mix the bits to avoid clustering
+        int h = v * 0x9E3779B9;
+        return h ^ (h >>> 16);
     }
 
-    public V get(int key) {
-        return find(key, false);
+    private int threshold(int capacity) {
+        // keep at least one empty slot, so the probe loop always terminates
+        return Math.min(capacity - 1, (int) (capacity * loadFactor));
     }
 
-    @SuppressWarnings("unchecked")
-    private V find(int key, boolean remove) {
-        int h = hashCode(key);
+    private int indexOf(int key) {
         Object[] values = this.values;
         if (values == null) {
-            return null;
-        }
-        int idx = h & (values.length - 1);
-        Object existData = values[idx];
-        if (existData == null) {
-            return null;
+            return -1;
         }
-        if (existData instanceof IntMapNode) {
-            @SuppressWarnings("unchecked")
-            IntMapNode<V> mn = (IntMapNode<V>) existData;
-            if (mn.getKey() == key) {
-                if (remove) {
-                    IntMapNode<V> next = mn.getNext();
-                    values[idx] = next;
-                    if (next != null) {
-                        keys[idx] = next.getKey();
-                    } else {
-                        keys[idx] = 0;
-                    }
-                    size--;
-                }
-                return mn.getValue();
-            }
-            IntMapNode<V> next;
-            while ((next = mn.getNext()) != null) {
-                if (next.getKey() == key) {
-                    if (remove) {
-                        mn.setNext(next.getNext());
-                        size--;
-                    }
-                    return next.getValue();
-                }
-                mn = next;
-            }
-            return null;
-        } else {
-            int[] keys = this.keys;
+        int[] keys = this.keys;
+        int mask = values.length - 1;
+        int idx = hashCode(key) & mask;
+        while (values[idx] != null) {
             if (keys[idx] == key) {
-                if (remove) {
-                    size--;
-                    keys[idx] = 0;
-                    values[idx] = null;
-                }
-                return (V) existData;
-            } else {
-                return null;
+                return idx;
             }
+            idx = (idx + 1) & mask;
         }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int idx = indexOf(key);
+        return idx < 0 ? null : (V) values[idx];
     }
 
+    @SuppressWarnings("unchecked")
     public V put(int key, V value) {
         Objects.requireNonNull(value);
         if (inVisit) {
             throw new IllegalStateException("can modify the map during iteration");
         }
-        int[] keys = resize();
+        if (values == null) {
+            keys = new int[initCapacity];
+            values = new Object[initCapacity];
+            resizeThreshold = threshold(initCapacity);
+        }
+        int[] keys = this.keys;
         Object[] values = this.values;
-        V r = put0(keys, values, key, value, keys.length - 1);
-        if (r == null) {
-            size++;
+        int mask = values.length - 1;
+        int idx = hashCode(key) & mask;
+        Object old;
+        while ((old = values[idx]) != null) {
+            if (keys[idx] == key) {
+                values[idx] = value;
+                return (V) old;
+            }
+            idx = (idx + 1) & mask;
         }
-        return r;
-    }
-
-    @SuppressWarnings("unchecked")
-    private V put0(int[] keys, Object[] values, int key, V value, int mask) {
-        int h = hashCode(key);
-        int idx = h & mask;
-        Object existData = values[idx];
-        if (existData == null) {
+        if (size >= resizeThreshold) {
+            if (values.length >= MAX_ARRAY_SIZE) {
+                throw new IllegalStateException("map is full");
+            }
+            rehash(values.length << 1);
+            put0(this.keys, this.values, key, value);
+        } else {
             keys[idx] = key;
             values[idx] = value;
-            return null;
-        } else {
-            IntMapNode<V> mn;
-            if (existData instanceof IntMapNode) {
-                mn = (IntMapNode<V>) existData;
-                while (true) {
-                    if (mn.getKey() == key) {
-                        V old = mn.getValue();
-                        mn.setValue(value);
-                        return old;
-                    }
-                    IntMapNode<V> next = mn.getNext();
-                    if (next == null) {
-                        IntMapNode<V> newNode = new IntMapNode<>(key, value);
-                        mn.setNext(newNode);
-                        return null;
-                    } else {
-                        mn = next;
-                    }
-                }
-            } else {
-                if (keys[idx] == key) {
-                    values[idx] = value;
-                    return (V) existData;
-                } else {
-                    mn = new IntMapNode<>(keys[idx], (V) existData);
-                    values[idx] = mn;
-                    IntMapNode<V> newNode = new IntMapNode<>(key, value);
-                    mn.setNext(newNode);
-                    return null;
-                }
-            }
         }
+        size++;
+        return null;
     }
 
-    @SuppressWarnings("unchecked")
-    private int[] resize() {
-        int threshold = this.resizeThreshold;
-        int[] oldKeys = this.keys;
-        if (oldKeys == null) {
-            keys = new int[threshold];
-            values = new Object[threshold];
-            this.resizeThreshold = (int) (loadFactor * threshold);
-            return keys;
-        }
-        if (size < threshold) {
-            return oldKeys;
+    private void put0(int[] keys, Object[] values, int key, Object value) {
+        int mask = values.length - 1;
+        int idx = hashCode(key) & mask;
+        while (values[idx] != null) {
+            idx = (idx + 1) & mask;
         }
+        keys[idx] = key;
+        values[idx] = value;
+    }
 
-        int oldArrayLength = oldKeys.length;
-        if (oldArrayLength >= MAX_ARRAY_SIZE) {
-            return oldKeys;
-        }
-        int newSize = oldKeys.length << 1;
-        this.resizeThreshold = (int) (loadFactor * newSize);
-        int mask = newSize - 1;
-        int[] newKeys = new int[newSize];
-        Object[] newValues = new Object[newSize];
-        Object[] values = this.values;
-        int len = values.length;
+    private void rehash(int newCapacity) {
+        int[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        int[] newKeys = new int[newCapacity];
+        Object[] newValues = new Object[newCapacity];
+        int len = oldValues.length;
         for (int i = 0; i < len; i++) {
-            Object v = values[i];
-            if (v == null) {
-                continue;
-            }
-            if (v instanceof IntMapNode) {
-                IntMapNode<V> mn = (IntMapNode<V>) v;
-                do {
-                    put0(newKeys, newValues, mn.getKey(), mn.getValue(), mask);
-                    mn = mn.getNext();
-                } while (mn != null);
-            } else {
-                put0(newKeys, newValues, keys[i], (V) v, mask);
+            Object v = oldValues[i];
+            if (v != null) {
+                put0(newKeys, newValues, oldKeys[i], v);
             }
         }
         this.keys = newKeys;
         this.values = newValues;
-        return newKeys;
+        this.resizeThreshold = threshold(newCapacity);
     }
 
+    @SuppressWarnings("unchecked")
     public V remove(int key) {
         if (inVisit) {
             throw new IllegalStateException("can modify the map during iteration");
         }
-        return find(key, true);
+        int idx = indexOf(key);
+        if (idx < 0) {
+            return null;
+        }
+        V old = (V) values[idx];
+        removeAt(idx);
+        shrinkIfNecessary();
+        return old;
+    }
+
+    /**
+     * Remove the slot and shift back the following entries of the same probe sequence, so no tombstone is needed.
+     * The entries are only moved to lower positions (cyclic) of the same cluster.
+     */
+    private void removeAt(int idx) {
+        int[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = values.length - 1;
+        int hole = idx;
+        int i = (idx + 1) & mask;
+        Object v;
+        while ((v = values[i]) != null) {
+            int home = hashCode(keys[i]) & mask;
+            // move the entry to the hole if its home slot is not in (hole, i]
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = v;
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[hole] = 0;
+        values[hole] = null;
+        size--;
+    }
+
+    private void shrinkIfNecessary() {
+        Object[] values = this.values;
+        int len = values.length;
+        if (len > initCapacity && size < (resizeThreshold >>> 2)) {
+            rehash(Math.max(initCapacity, len >>> 1));
+        }
     }
 
     public int size() {
@@ -228,68 +209,34 @@ public class IntObjMap<V> {
         } finally {
             inVisit = false;
         }
+        if (values != null) {
+            shrinkIfNecessary();
+        }
     }
 
+    @SuppressWarnings("unchecked")
     private void forEach0(Visitor<V> visitor) {
-        int[] keys = this.keys;
-        if (keys == null) {
+        Object[] values = this.values;
+        if (values == null || size == 0) {
             return;
         }
-        Object[] values = this.values;
-        int len = values.length;
-        for (int i = 0; i < len; i++) {
+        int[] keys = this.keys;
+        int mask = values.length - 1;
+        // start from an empty slot, so no cluster cross the start point, and the entries shifted by
+        // removeAt are always the ones not visited yet
+        int start = 0;
+        while (values[start] != null) {
+            start++;
+        }
+        int i = (start + 1) & mask;
+        while (i != start) {
             Object v = values[i];
-            if (v == null) {
+            if (v != null && !visitor.visit(keys[i], (V) v)) {
+                removeAt(i);
+                // another entry may be shifted to this slot, check it again
                 continue;
             }
-            if (v instanceof IntMapNode) {
-                IntMapNode<V> prev = null;
-                boolean first = true;
-                @SuppressWarnings("unchecked")
-                IntMapNode<V> mn = (IntMapNode<V>) v;
-                do {
-                    boolean keep = visitor.visit(mn.getKey(), mn.getValue());
-                    if (!keep) {
-                        if (first) {
-                            IntMapNode<V> next = mn.getNext();
-                            if (next == null) {
-                                BugLog.getLog().error("IntObjMap: next is null");
-                            } else {
-                                keys[i] = next.getKey();
-                                if (next.getNext() == null) {
-                                    values[i] = next.getValue();
-                                } else {
-                                    values[i] = next;
-                                }
-                            }
-                        } else {
-                            if (prev != null) {
-                                prev.setNext(mn.getNext());
-                            } else {
-                                keys[i] = mn.getKey();
-                                if (mn.getNext() == null) {
-                                    values[i] = mn.getValue();
-                                } else {
-                                    values[i] = mn;
-                                }
-                            }
-                        }
-                        size--;
-                    } else {
-                        prev = mn;
-                    }
-                    mn = mn.getNext();
-                    first = false;
-                } while (mn != null);
-            } else {
-                @SuppressWarnings("unchecked")
-                boolean keep = visitor.visit(keys[i], (V) v);
-                if (!keep) {
-                    values[i] = null;
-                    keys[i] = 0;
-                    size--;
-                }
-            }
+            i = (i + 1) & mask;
         }
     }
 
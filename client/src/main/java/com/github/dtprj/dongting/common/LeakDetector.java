@@ -0,0 +1,135 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.common;
+
+import com.github.dtprj.dongting.log.DtLog;
+import com.github.dtprj.dongting.log.DtLogs;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sampled leak detector for {@link RefCount}, enabled by -Ddt.leakDetect=true.
+ * <p>
+ * A sampled object records the allocation site and the last access site (retain/release). If it is collected by gc
+ * before released, a leak is reported to the log. If it is released again after the final release, the site of
+ * the final release is reported too.
+ * <p>
+ * The ENABLED flag is static final, so the JIT removes the tracking code from the hot path when it is disabled.
+ *
+ * @author huangli
+ */
+public class LeakDetector {
+    private static final DtLog log = DtLogs.getLogger(LeakDetector.class);
+
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("dt.leakDetect", "false"));
+
+    /**
+     * track 1 of every SAMPLE_INTERVAL objects, 1 means track all objects.
+     */
+    private static final int SAMPLE_INTERVAL = Math.max(1,
+            Integer.parseInt(System.getProperty("dt.leakDetectSampleInterval", "128")));
+
+    private static final ReferenceQueue<RefCount> QUEUE = new ReferenceQueue<>();
+    // keep the traces reachable until the tracked object is released or collected
+    private static final Set<LeakTrace> LIVE = ConcurrentHashMap.newKeySet();
+    private static final AtomicLong LEAK_COUNT = new AtomicLong();
+    private static final AtomicLong BAD_RELEASE_COUNT = new AtomicLong();
+
+    private LeakDetector() {
+    }
+
+    static LeakTrace track(RefCount obj) {
+        if (SAMPLE_INTERVAL > 1 && ThreadLocalRandom.current().nextInt(SAMPLE_INTERVAL) != 0) {
+            return null;
+        }
+        return newTrace(obj);
+    }
+
+    static LeakTrace newTrace(RefCount obj) {
+        reportLeaks();
+        LeakTrace trace = new LeakTrace(obj);
+        LIVE.add(trace);
+        return trace;
+    }
+
+    /**
+     * report the tracked objects which are collected by gc before released, this method is called when a new
+     * object is tracked, so it is not necessary to call it manually.
+     */
+    public static void reportLeaks() {
+        LeakTrace trace;
+        while ((trace = (LeakTrace) QUEUE.poll()) != null) {
+            if (LIVE.remove(trace)) {
+                LEAK_COUNT.incrementAndGet();
+                DtException ex = new DtException("LEAK: " + trace.className
+                        + " is collected by gc before released");
+                ex.addSuppressed(trace.allocateSite);
+                Throwable lastAccess = trace.lastAccessSite;
+                if (lastAccess != null) {
+                    ex.addSuppressed(lastAccess);
+                }
+                log.error("", ex);
+            }
+        }
+    }
+
+    public static long getLeakCount() {
+        return LEAK_COUNT.get();
+    }
+
+    public static long getBadReleaseCount() {
+        return BAD_RELEASE_COUNT.get();
+    }
+
+    static final class LeakTrace extends WeakReference<RefCount> {
+        private final String className;
+        private final Throwable allocateSite;
+        private volatile Throwable lastAccessSite;
+        private volatile Throwable releaseSite;
+
+        private LeakTrace(RefCount obj) {
+            super(obj, QUEUE);
+            this.className = obj.getClass().getName();
+            this.allocateSite = new Throwable("allocated at");
+        }
+
+        void touch() {
+            lastAccessSite = new Throwable("last accessed at");
+        }
+
+        void close() {
+            releaseSite = new Throwable("released at");
+            LIVE.remove(this);
+            clear();
+        }
+
+        void reportBadRelease(Throwable e) {
+            BAD_RELEASE_COUNT.incrementAndGet();
+            DtException ex = new DtException("bad release of " + className, e);
+            ex.addSuppressed(allocateSite);
+            Throwable r = releaseSite;
+            if (r != null) {
+                ex.addSuppressed(r);
+            }
+            log.error("", ex);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.common;
+
+/**
+ * Open addressing hash map with primitive long key and value, use linear probing. Key 0 is used to mark
+ * the empty slot, so the value of key 0 is stored separately. This class is not thread safe.
+ *
+ * @author huangli
+ */
+public class LongLongMap {
+    private static final int MAX_ARRAY_SIZE = 1 << 30;
+    private final int initCapacity;
+    private final float loadFactor;
+    private final long missingValue;
+    // not include key 0
+    private int size;
+    private int resizeThreshold;
+    private long[] keys;
+    private long[] values;
+    private boolean hasZeroKey;
+    private long zeroKeyValue;
+    private boolean inVisit;
+
+    public LongLongMap() {
+        this(8, 0.75f, 0L);
+    }
+
+    /**
+     * @param missingValue the value returned by get/put/remove if the key is not exists
+     */
+    public LongLongMap(int initSize, float loadFactor, long missingValue) {
+        DtUtil.checkPositive(initSize, "initSize");
+        DtUtil.checkPositive(loadFactor, "loadFactor");
+        if (loadFactor >= 1) {
+            throw new IllegalArgumentException("loadFactor should less than 1: " + loadFactor);
+        }
+        this.initCapacity = Math.max(2, BitUtil.nextHighestPowerOfTwo(initSize));
+        this.loadFactor = loadFactor;
+        this.missingValue = missingValue;
+    }
+
+    private static int hashCode(long v) {
+        long h = v * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int threshold(int capacity) {
+        return Math.min(capacity - 1, (int) (capacity * loadFactor));
+    }
+
+    private int indexOf(long key) {
+        long[] keys = this.keys;
+        if (keys == null) {
+            return -1;
+        }
+        int mask = keys.length - 1;
+        int idx = hashCode(key) & mask;
+        long k;
+        while ((k = keys[idx]) != 0L) {
+            if (k == key) {
+                return idx;
+            }
+            idx = (idx + 1) & mask;
+        }
+        return -1;
+    }
+
+    public long get(long key) {
+        if (key == 0L) {
+            return hasZeroKey ? zeroKeyValue : missingValue;
+        }
+        int idx = indexOf(key);
+        return idx < 0 ? missingValue : values[idx];
+    }
+
+    public boolean containsKey(long key) {
+        return key == 0L ? hasZeroKey : indexOf(key) >= 0;
+    }
+
+    public long put(long key, long value) {
+        if (inVisit) {
+            throw new IllegalStateException("can modify the map during iteration");
+        }
+        if (key == 0L) {
+            long old = hasZeroKey ? zeroKeyValue : missingValue;
+            hasZeroKey = true;
+            zeroKeyValue = value;
+            return old;
+        }
+        if (keys == null) {
+            keys = new long[initCapacity];
+            values = new long[initCapacity];
+            resizeThreshold = threshold(initCapacity);
+        }
+        long[] keys = this.keys;
+        int mask = keys.length - 1;
+        int idx = hashCode(key) & mask;
+        long k;
+        while ((k = keys[idx]) != 0L) {
+            if (k == key) {
+                long old = values[idx];
+                values[idx] = value;
+                return old;
+            }
+            idx = (idx + 1) & mask;
+        }
+        if (size >= resizeThreshold) {
+            if (keys.length >= MAX_ARRAY_SIZE) {
+                throw new IllegalStateException("map is full");
+            }
+            rehash(keys.length << 1);
+            put0(this.keys, this.values, key, value);
+        } else {
+            keys[idx] = key;
+            values[idx] = value;
+        }
+        size++;
+        return missingValue;
+    }
+
+    private static void put0(long[] keys, long[] values, long key, long value) {
+        int mask = keys.length - 1;
+        int idx = hashCode(key) & mask;
+        while (keys[idx] != 0L) {
+            idx = (idx + 1) & mask;
+        }
+        keys[idx] = key;
+        values[idx] = value;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = this.keys;
+        long[] oldValues = this.values;
+        long[] newKeys = new long[newCapacity];
+        long[] newValues = new long[newCapacity];
+        int len = oldKeys.length;
+        for (int i = 0; i < len; i++) {
+            long k = oldKeys[i];
+            if (k != 0L) {
+                put0(newKeys, newValues, k, oldValues[i]);
+            }
+        }
+        this.keys = newKeys;
+        this.values = newValues;
+        this.resizeThreshold = threshold(newCapacity);
+    }
+
+    public long remove(long key) {
+        if (inVisit) {
+            throw new IllegalStateException("can modify the map during iteration");
+        }
+        if (key == 0L) {
+            if (hasZeroKey) {
+                hasZeroKey = false;
+                return zeroKeyValue;
+            }
+            return missingValue;
+        }
+        int idx = indexOf(key);
+        if (idx < 0) {
+            return missingValue;
+        }
+        long old = values[idx];
+        removeAt(idx);
+        shrinkIfNecessary();
+        return old;
+    }
+
+    // see IntObjMap.removeAt
+    private void removeAt(int idx) {
+        long[] keys = this.keys;
+        long[] values = this.values;
+        int mask = keys.length - 1;
+        int hole = idx;
+        int i = (idx + 1) & mask;
+        long k;
+        while ((k = keys[i]) != 0L) {
+            int home = hashCode(k) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = k;
+                values[hole] = values[i];
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[hole] = 0L;
+        values[hole] = 0L;
+        size--;
+    }
+
+    private void shrinkIfNecessary() {
+        int len = keys.length;
+        if (len > initCapacity && size < (resizeThreshold >>> 2)) {
+            rehash(Math.max(initCapacity, len >>> 1));
+        }
+    }
+
+    public int size() {
+        return hasZeroKey ? size + 1 : size;
+    }
+
+    public void forEach(Visitor visitor) {
+        if (inVisit) {
+            throw new IllegalStateException("can not iterate the map during iteration");
+        }
+        inVisit = true;
+        try {
+            if (hasZeroKey && !visitor.visit(0L, zeroKeyValue)) {
+                hasZeroKey = false;
+            }
+            forEach0(visitor);
+        } finally {
+            inVisit = false;
+        }
+        if (keys != null) {
+            shrinkIfNecessary();
+        }
+    }
+
+    // see IntObjMap.forEach0
+    private void forEach0(Visitor visitor) {
+        long[] keys = this.keys;
+        if (keys == null || size == 0) {
+            return;
+        }
+        long[] values = this.values;
+        int mask = keys.length - 1;
+        int start = 0;
+        while (keys[start] != 0L) {
+            start++;
+        }
+        int i = (start + 1) & mask;
+        while (i != start) {
+            long k = keys[i];
+            if (k != 0L && !visitor.visit(k, values[i])) {
+                removeAt(i);
+                continue;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * return ture if this K/V should keep in Map, else remove it
+         */
+        boolean visit(long key, long value);
+    }
+}
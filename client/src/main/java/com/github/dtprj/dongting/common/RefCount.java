@@ -31,6 +31,7 @@ public class RefCount {
     private static final AbstractRefCountUpdater UPDATER = VersionFactory.getInstance().newRefCountUpdater(false);
     private static final AbstractRefCountUpdater PLAIN_UPDATER = VersionFactory.getInstance().newRefCountUpdater(true);
     private final AbstractRefCountUpdater updater;
+    private final LeakDetector.LeakTrace leakTrace;
 
     @SuppressWarnings({"unused", "FieldMayBeFinal"})
     protected volatile int refCnt;
@@ -39,12 +40,30 @@ public class RefCount {
      * @param plain if true, the RefCount is not thread safe.
      */
     public RefCount(boolean plain) {
-        this(plain ? PLAIN_UPDATER : UPDATER);
+        this(plain ? PLAIN_UPDATER : UPDATER, true);
+    }
+
+    /**
+     * @param plain if true, the RefCount is not thread safe.
+     * @param trackLeak if false, this object is never tracked by {@link LeakDetector}, used by the objects
+     *                  which need not release.
+     */
+    protected RefCount(boolean plain, boolean trackLeak) {
+        this(plain ? PLAIN_UPDATER : UPDATER, trackLeak);
     }
 
     protected RefCount(AbstractRefCountUpdater updater) {
+        this(updater, true);
+    }
+
+    private RefCount(AbstractRefCountUpdater updater, boolean trackLeak) {
         this.updater = updater;
         updater.init(this);
+        if (LeakDetector.ENABLED && trackLeak) {
+            this.leakTrace = LeakDetector.track(this);
+        } else {
+            this.leakTrace = null;
+        }
     }
 
     public void retain() {
@@ -53,6 +72,9 @@ public class RefCount {
 
     public void retain(int increment) {
         updater.retain(this, increment);
+        if (LeakDetector.ENABLED) {
+            touch();
+        }
     }
 
     public boolean release() {
@@ -60,6 +82,9 @@ public class RefCount {
     }
 
     public boolean release(int decrement) {
+        if (LeakDetector.ENABLED && leakTrace != null) {
+            return releaseWithTrace(decrement);
+        }
         boolean r = updater.release(this, decrement);
         if (r) {
             doClean();
@@ -67,6 +92,32 @@ public class RefCount {
         return r;
     }
 
+    private boolean releaseWithTrace(int decrement) {
+        boolean r;
+        try {
+            r = updater.release(this, decrement);
+        } catch (RuntimeException e) {
+            leakTrace.reportBadRelease(e);
+            throw e;
+        }
+        if (r) {
+            leakTrace.close();
+            doClean();
+        } else {
+            leakTrace.touch();
+        }
+        return r;
+    }
+
+    /**
+     * record the last access site if this object is tracked by {@link LeakDetector}.
+     */
+    protected void touch() {
+        if (LeakDetector.ENABLED && leakTrace != null) {
+            leakTrace.touch();
+        }
+    }
+
     protected boolean isReleased() {
         return updater.isReleased(this);
     }
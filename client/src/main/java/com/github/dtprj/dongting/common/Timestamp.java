@@ -21,15 +21,26 @@ package com.github.dtprj.dongting.common;
 public class Timestamp {
     private long nanoTime;
     private long wallClockMillis;
+    private final boolean precise;
 
     public Timestamp() {
-        nanoTime = System.nanoTime();
-        wallClockMillis = System.currentTimeMillis();
+        this(false);
+    }
+
+    /**
+     * @param precise if true, read System.nanoTime()/currentTimeMillis() even if CoarseClock is enabled. The raft
+     *                lease check needs it, a stalled clock thread should not freeze the time and extend the lease.
+     */
+    public Timestamp(boolean precise) {
+        this.precise = precise;
+        nanoTime = precise ? System.nanoTime() : CoarseClock.nanoTime();
+        wallClockMillis = precise ? System.currentTimeMillis() : CoarseClock.currentTimeMillis();
     }
 
     public Timestamp(long nanoTime, long wallClockMillis) {
         this.nanoTime = nanoTime;
         this.wallClockMillis = wallClockMillis;
+        this.precise = false;
     }
 
     public long getNanoTime() {
@@ -41,11 +52,11 @@ public class Timestamp {
     }
 
     public boolean refresh(long millisDiff) {
-        long t = System.currentTimeMillis();
+        long t = precise ? System.currentTimeMillis() : CoarseClock.currentTimeMillis();
         long old = this.wallClockMillis;
         if (t < old || t - old >= millisDiff) {
             this.wallClockMillis = t;
-            this.nanoTime = System.nanoTime();
+            this.nanoTime = precise ? System.nanoTime() : CoarseClock.nanoTime();
             return true;
         } else {
             return false;
@@ -18,6 +18,7 @@ package com.github.dtprj.dongting.common;
 import com.github.dtprj.dongting.java8.Java8Factory;
 import com.github.dtprj.dongting.log.DtLog;
 import com.github.dtprj.dongting.log.DtLogs;
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueue;
 import com.github.dtprj.dongting.queue.MpscLinkedQueue;
 
 /**
@@ -32,6 +33,8 @@ public abstract class VersionFactory {
     public abstract AbstractRefCountUpdater newRefCountUpdater(boolean plain);
 
     public abstract <E> MpscLinkedQueue<E> newMpscLinkedQueue();
+
+    public abstract <E> MpscChunkedArrayQueue<E> newMpscChunkedArrayQueue(int chunkSize, long capacity);
 }
 
 class VfHolder {
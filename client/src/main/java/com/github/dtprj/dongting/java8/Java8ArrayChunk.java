@@ -0,0 +1,69 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.java8;
+
+import com.github.dtprj.dongting.queue.ArrayChunk;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * @author huangli
+ */
+public class Java8ArrayChunk<E> extends ArrayChunk<E> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<ArrayChunk, ArrayChunk> NEXT;
+
+    static {
+        NEXT = AtomicReferenceFieldUpdater.newUpdater(ArrayChunk.class, ArrayChunk.class, "next");
+    }
+
+    private final AtomicReferenceArray<E> array;
+
+    public Java8ArrayChunk(long index, ArrayChunk<E> prev, int size) {
+        super(index, prev);
+        this.array = new AtomicReferenceArray<>(size);
+    }
+
+    @Override
+    protected E getAcquire(int i) {
+        // volatile read
+        return array.get(i);
+    }
+
+    @Override
+    protected void setRelease(int i, E value) {
+        array.lazySet(i, value);
+    }
+
+    @Override
+    protected void setPlain(int i, E value) {
+        // no plain set in java 8
+        array.lazySet(i, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected ArrayChunk<E> getNextAcquire() {
+        return (ArrayChunk<E>) NEXT.get(this);
+    }
+
+    @Override
+    protected boolean casNext(ArrayChunk<E> expect, ArrayChunk<E> update) {
+        return NEXT.compareAndSet(this, expect, update);
+    }
+}
@@ -17,6 +17,7 @@ package com.github.dtprj.dongting.java8;
 
 import com.github.dtprj.dongting.common.AbstractRefCountUpdater;
 import com.github.dtprj.dongting.common.VersionFactory;
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueue;
 import com.github.dtprj.dongting.queue.MpscLinkedQueue;
 
 /**
@@ -33,4 +34,9 @@ public class Java8Factory extends VersionFactory {
     public <E> MpscLinkedQueue<E> newMpscLinkedQueue() {
         return new Java8MpscLinkedQueue<>();
     }
+
+    @Override
+    public <E> MpscChunkedArrayQueue<E> newMpscChunkedArrayQueue(int chunkSize, long capacity) {
+        return new Java8MpscChunkedArrayQueue<>(chunkSize, capacity);
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.java8;
+
+import com.github.dtprj.dongting.queue.ArrayChunk;
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueue;
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueueConsumerFields;
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueueProducerFields;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * @author huangli
+ */
+public class Java8MpscChunkedArrayQueue<E> extends MpscChunkedArrayQueue<E> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<MpscChunkedArrayQueueProducerFields> PRODUCER_INDEX;
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<MpscChunkedArrayQueueConsumerFields> CONSUMER_INDEX;
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MpscChunkedArrayQueueProducerFields, ArrayChunk> PRODUCER_CHUNK;
+
+    static {
+        PRODUCER_INDEX = AtomicLongFieldUpdater.newUpdater(MpscChunkedArrayQueueProducerFields.class, "producerIndex");
+        CONSUMER_INDEX = AtomicLongFieldUpdater.newUpdater(MpscChunkedArrayQueueConsumerFields.class, "consumerIndex");
+        PRODUCER_CHUNK = AtomicReferenceFieldUpdater.newUpdater(MpscChunkedArrayQueueProducerFields.class, ArrayChunk.class, "producerChunk");
+    }
+
+    public Java8MpscChunkedArrayQueue(int chunkSize, long capacity) {
+        super(chunkSize, capacity);
+    }
+
+    @Override
+    protected long getAndIncrementProducerIndex() {
+        return PRODUCER_INDEX.getAndIncrement(this);
+    }
+
+    @Override
+    protected boolean casProducerChunk(ArrayChunk<E> expect, ArrayChunk<E> update) {
+        return PRODUCER_CHUNK.compareAndSet(this, expect, update);
+    }
+
+    @Override
+    protected void setConsumerIndexRelease(long value) {
+        CONSUMER_INDEX.lazySet(this, value);
+    }
+
+    @Override
+    protected ArrayChunk<E> newChunk(long index, ArrayChunk<E> prev, int chunkSize) {
+        return new Java8ArrayChunk<>(index, prev, chunkSize);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.log;
+
+/**
+ * @author huangli
+ */
+class AsyncLog implements DtLog {
+    private final AsyncLogFactory factory;
+    private final DtLog log;
+
+    AsyncLog(AsyncLogFactory factory, DtLog log) {
+        this.factory = factory;
+        this.log = log;
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return log.isDebugEnabled();
+    }
+
+    @Override
+    public void debug(String message) {
+        if (log.isDebugEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_DEBUG, message, 0, null, null, null, null);
+        }
+    }
+
+    @Override
+    public void debug(String format, Object arg) {
+        if (log.isDebugEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_DEBUG, format, 1, arg, null, null, null);
+        }
+    }
+
+    @Override
+    public void debug(String format, Object arg1, Object arg2) {
+        if (log.isDebugEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_DEBUG, format, 2, arg1, arg2, null, null);
+        }
+    }
+
+    @Override
+    public void debug(String format, Object... args) {
+        if (log.isDebugEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_DEBUG, format, args == null ? 0 : 3, null, null, args, null);
+        }
+    }
+
+    @Override
+    public void debug(String message, Throwable t) {
+        if (log.isDebugEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_DEBUG, message, 0, null, null, null, t);
+        }
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return log.isInfoEnabled();
+    }
+
+    @Override
+    public void info(String message) {
+        if (log.isInfoEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_INFO, message, 0, null, null, null, null);
+        }
+    }
+
+    @Override
+    public void info(String format, Object arg) {
+        if (log.isInfoEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_INFO, format, 1, arg, null, null, null);
+        }
+    }
+
+    @Override
+    public void info(String format, Object arg1, Object arg2) {
+        if (log.isInfoEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_INFO, format, 2, arg1, arg2, null, null);
+        }
+    }
+
+    @Override
+    public void info(String format, Object... args) {
+        if (log.isInfoEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_INFO, format, args == null ? 0 : 3, null, null, args, null);
+        }
+    }
+
+    @Override
+    public void info(String message, Throwable t) {
+        if (log.isInfoEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_INFO, message, 0, null, null, null, t);
+        }
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return log.isWarnEnabled();
+    }
+
+    @Override
+    public void warn(String message) {
+        if (log.isWarnEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_WARN, message, 0, null, null, null, null);
+        }
+    }
+
+    @Override
+    public void warn(String format, Object arg) {
+        if (log.isWarnEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_WARN, format, 1, arg, null, null, null);
+        }
+    }
+
+    @Override
+    public void warn(String format, Object arg1, Object arg2) {
+        if (log.isWarnEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_WARN, format, 2, arg1, arg2, null, null);
+        }
+    }
+
+    @Override
+    public void warn(String format, Object... args) {
+        if (log.isWarnEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_WARN, format, args == null ? 0 : 3, null, null, args, null);
+        }
+    }
+
+    @Override
+    public void warn(String message, Throwable t) {
+        if (log.isWarnEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_WARN, message, 0, null, null, null, t);
+        }
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return log.isErrorEnabled();
+    }
+
+    @Override
+    public void error(String message) {
+        if (log.isErrorEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_ERROR, message, 0, null, null, null, null);
+        }
+    }
+
+    @Override
+    public void error(String format, Object arg) {
+        if (log.isErrorEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_ERROR, format, 1, arg, null, null, null);
+        }
+    }
+
+    @Override
+    public void error(String format, Object arg1, Object arg2) {
+        if (log.isErrorEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_ERROR, format, 2, arg1, arg2, null, null);
+        }
+    }
+
+    @Override
+    public void error(String format, Object... args) {
+        if (log.isErrorEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_ERROR, format, args == null ? 0 : 3, null, null, args, null);
+        }
+    }
+
+    @Override
+    public void error(String message, Throwable t) {
+        if (log.isErrorEnabled()) {
+            factory.publish(log, AsyncLogFactory.LEVEL_ERROR, message, 0, null, null, null, t);
+        }
+    }
+}
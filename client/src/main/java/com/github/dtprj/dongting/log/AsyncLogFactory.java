@@ -0,0 +1,288 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.log;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wraps another DtLogFactory, the loggers only capture the level, template and arguments into a preallocated
+ * ring buffer, the formatting and writing is done in a background thread.
+ * <p>
+ * The arguments are formatted later, so they should not be modified after the log call. The location info
+ * inferred by the delegate (if any) is the background thread.
+ *
+ * @author huangli
+ */
+public class AsyncLogFactory implements DtLogFactory {
+
+    static final int LEVEL_DEBUG = 1;
+    static final int LEVEL_INFO = 2;
+    static final int LEVEL_WARN = 3;
+    static final int LEVEL_ERROR = 4;
+
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final DtLogFactory delegate;
+    private final DtLog selfLog;
+    private final boolean blockWhenFull;
+
+    private final Event[] slots;
+    private final int mask;
+    private final AtomicLong producerIndex = new AtomicLong();
+    // only updated by the writer thread
+    private volatile long consumerIndex;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private long reportedDroppedCount;
+
+    private final Thread thread;
+    private volatile boolean writerWaiting;
+    private volatile boolean closed;
+
+    static final class Event {
+        // Vyukov style sequence: equals to the index when the slot is free, index + 1 when it's published
+        volatile long seq;
+
+        DtLog log;
+        int level;
+        String format;
+        // 0: no args, 1 or 2: use arg1 and arg2, otherwise use args
+        int argCount;
+        Object arg1;
+        Object arg2;
+        Object[] args;
+        Throwable throwable;
+
+        void clear() {
+            log = null;
+            format = null;
+            arg1 = null;
+            arg2 = null;
+            args = null;
+            throwable = null;
+        }
+    }
+
+    /**
+     * @param delegate      the factory which do the actual formatting and writing
+     * @param bufferSize    the ring buffer size, will be round up to power of 2
+     * @param blockWhenFull if true the caller waits when the buffer is full, otherwise the event is dropped
+     */
+    public AsyncLogFactory(DtLogFactory delegate, int bufferSize, boolean blockWhenFull) {
+        Objects.requireNonNull(delegate);
+        if (bufferSize <= 0 || bufferSize > (1 << 30)) {
+            throw new IllegalArgumentException("bad bufferSize: " + bufferSize);
+        }
+        this.delegate = delegate;
+        this.selfLog = delegate.getLogger(AsyncLogFactory.class);
+        this.blockWhenFull = blockWhenFull;
+        int size = 1 << (32 - Integer.numberOfLeadingZeros(bufferSize - 1));
+        this.slots = new Event[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Event();
+            slots[i].seq = i;
+        }
+        this.mask = size - 1;
+        this.thread = new Thread(this::run, "DtAsyncLog");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public DtLog getLogger(String name) {
+        return new AsyncLog(this, delegate.getLogger(name));
+    }
+
+    @Override
+    public DtLog getLogger(Class<?> clazz) {
+        return new AsyncLog(this, delegate.getLogger(clazz));
+    }
+
+    void publish(DtLog log, int level, String format, int argCount, Object arg1, Object arg2,
+                 Object[] args, Throwable throwable) {
+        if (closed || Thread.currentThread() == thread) {
+            // write directly, should not wait for self
+            write(log, level, format, argCount, arg1, arg2, args, throwable);
+            return;
+        }
+        Event e = claim();
+        if (e == null) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        e.log = log;
+        e.level = level;
+        e.format = format;
+        e.argCount = argCount;
+        e.arg1 = arg1;
+        e.arg2 = arg2;
+        e.args = args;
+        e.throwable = throwable;
+        e.seq = e.seq + 1;
+        if (writerWaiting) {
+            writerWaiting = false;
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private Event claim() {
+        while (true) {
+            long p = producerIndex.get();
+            Event e = slots[(int) (p & mask)];
+            long seq = e.seq;
+            if (seq == p) {
+                if (producerIndex.compareAndSet(p, p + 1)) {
+                    return e;
+                }
+            } else if (seq < p) {
+                // full
+                if (!blockWhenFull || closed) {
+                    return null;
+                }
+                LockSupport.parkNanos(1000);
+            }
+            // else another producer claimed the slot, retry
+        }
+    }
+
+    private void run() {
+        long c = consumerIndex;
+        while (true) {
+            Event e = slots[(int) (c & mask)];
+            if (e.seq == c + 1) {
+                try {
+                    write(e.log, e.level, e.format, e.argCount, e.arg1, e.arg2, e.args, e.throwable);
+                } catch (Throwable ex) {
+                    // the delegate should not throw exception, ignore it to keep the writer thread alive
+                }
+                e.clear();
+                e.seq = c + slots.length;
+                c++;
+                consumerIndex = c;
+                continue;
+            }
+            reportDropped();
+            if (closed) {
+                // the producers may still in progress after close, but they write directly after see closed
+                if (producerIndex.get() == c) {
+                    return;
+                }
+                Thread.yield();
+                continue;
+            }
+            writerWaiting = true;
+            if (e.seq != c + 1 && !closed) {
+                LockSupport.parkNanos(this, MAX_PARK_NANOS);
+            }
+            writerWaiting = false;
+        }
+    }
+
+    private void reportDropped() {
+        long dropped = droppedCount.get();
+        if (dropped != reportedDroppedCount) {
+            selfLog.warn("{} log events dropped since the async log buffer is full", dropped - reportedDroppedCount);
+            reportedDroppedCount = dropped;
+        }
+    }
+
+    private static void write(DtLog log, int level, String format, int argCount, Object arg1, Object arg2,
+                              Object[] args, Throwable throwable) {
+        String msg;
+        if (argCount == 0) {
+            msg = format;
+        } else {
+            FormattingTuple ft;
+            if (argCount == 1) {
+                ft = MessageFormatter.arrayFormat(format, new Object[]{arg1});
+            } else if (argCount == 2) {
+                ft = MessageFormatter.arrayFormat(format, new Object[]{arg1, arg2});
+            } else {
+                ft = MessageFormatter.arrayFormat(format, args);
+            }
+            msg = ft.getMessage();
+            throwable = ft.getThrowable();
+        }
+        switch (level) {
+            case LEVEL_DEBUG:
+                if (throwable == null) {
+                    log.debug(msg);
+                } else {
+                    log.debug(msg, throwable);
+                }
+                break;
+            case LEVEL_INFO:
+                if (throwable == null) {
+                    log.info(msg);
+                } else {
+                    log.info(msg, throwable);
+                }
+                break;
+            case LEVEL_WARN:
+                if (throwable == null) {
+                    log.warn(msg);
+                } else {
+                    log.warn(msg, throwable);
+                }
+                break;
+            default:
+                if (throwable == null) {
+                    log.error(msg);
+                } else {
+                    log.error(msg, throwable);
+                }
+                break;
+        }
+    }
+
+    /**
+     * wait until all events published before this call are written.
+     *
+     * @return false if timeout
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        long target = producerIndex.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (consumerIndex < target) {
+            if (!thread.isAlive() || deadline - System.nanoTime() <= 0) {
+                return consumerIndex >= target;
+            }
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(100_000);
+        }
+        return true;
+    }
+
+    /**
+     * stop the writer thread after all buffered events are written, the subsequent log calls are written
+     * in the caller thread.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+}
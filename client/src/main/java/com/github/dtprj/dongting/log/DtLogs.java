@@ -16,17 +16,29 @@
 package com.github.dtprj.dongting.log;
 
 /**
+ * Use -Ddt.log.async=true to write logs in a background thread, see {@link AsyncLogFactory}. The buffer size
+ * is set by -Ddt.log.asyncBufferSize (default 8192), the events are dropped when the buffer is full unless
+ * -Ddt.log.asyncBlockWhenFull=true.
+ *
  * @author huangli
  */
 public class DtLogs {
     private static DtLogFactory instance;
 
     static {
+        DtLogFactory f;
         if (Slf4jFactory.slf4jExists()) {
-            instance = Slf4jFactory.INSTANCE;
+            f = Slf4jFactory.INSTANCE;
         } else {
-            instance = JdkFactory.INSTANCE;
+            f = JdkFactory.INSTANCE;
+        }
+        if (Boolean.getBoolean("dt.log.async")) {
+            AsyncLogFactory af = new AsyncLogFactory(f, Integer.getInteger("dt.log.asyncBufferSize", 8192),
+                    Boolean.getBoolean("dt.log.asyncBlockWhenFull"));
+            Runtime.getRuntime().addShutdownHook(new Thread(af::close, "DtAsyncLogShutdown"));
+            f = af;
         }
+        instance = f;
     }
 
     public static DtLog getLogger(String name) {
@@ -31,4 +31,7 @@ public interface Commands {
     int RAFT_REQUEST_VOTE = 102;
     int RAFT_INSTALL_SNAPSHOT = 103;
     int RAFT_LEADER_TRANSFER = 104;
+    // multi-group envelope, contains the small raft requests/responses to the same node
+    int RAFT_BATCH = 105;
+    int RAFT_QUERY_READ_INDEX = 106;
 }
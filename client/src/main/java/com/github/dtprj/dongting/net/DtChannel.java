@@ -25,7 +25,7 @@ import com.github.dtprj.dongting.codec.PbException;
 import com.github.dtprj.dongting.codec.PbParser;
 import com.github.dtprj.dongting.codec.StrDecoder;
 import com.github.dtprj.dongting.common.BitUtil;
-import com.github.dtprj.dongting.common.DtTime;
+import com.github.dtprj.dongting.common.CoarseClock;
 import com.github.dtprj.dongting.common.Timestamp;
 import com.github.dtprj.dongting.log.DtLog;
 import com.github.dtprj.dongting.log.DtLogs;
@@ -333,7 +333,7 @@ class DtChannel extends PbCallback<Object> {
     private void processIncomingRequest(ReadFrame req, ReqProcessor p, Timestamp roundTime) {
         NioStatus nioStatus = this.nioStatus;
         ReqContext reqContext = new ReqContext();
-        reqContext.setTimeout(new DtTime(roundTime, req.getTimeout(), TimeUnit.NANOSECONDS));
+        reqContext.setTimeout(roundTime.getNanoTime(), req.getTimeout());
         if (p.getExecutor() == null) {
             if (timeout(req, channelContext, reqContext, roundTime)) {
                 return;
@@ -344,18 +344,18 @@ class DtChannel extends PbCallback<Object> {
             } catch (NetCodeException e) {
                 log.warn("ReqProcessor.process fail, command={}, code={}, msg={}",
                         req.getCommand(), e.getCode(), e.getMessage());
-                writeErrorInIoThread(req, e.getCode(), e.getMessage(), reqContext.getTimeout());
+                writeErrorInIoThread(req, e.getCode(), e.getMessage(), reqContext);
                 return;
             } catch (Throwable e) {
                 log.warn("ReqProcessor.process fail", e);
-                writeErrorInIoThread(req, CmdCodes.BIZ_ERROR, e.toString(), reqContext.getTimeout());
+                writeErrorInIoThread(req, CmdCodes.BIZ_ERROR, e.toString(), reqContext);
                 return;
             }
             if (resp != null) {
                 resp.setCommand(req.getCommand());
                 resp.setFrameType(FrameType.TYPE_RESP);
                 resp.setSeq(req.getSeq());
-                subQueue.enqueue(new WriteData(this, resp, reqContext.getTimeout()));
+                subQueue.enqueue(new WriteData(this, resp, reqContext.getCreateNanos(), reqContext.getDeadlineNanos()));
             }
         } else {
             AtomicLong bytes = nioStatus.getInReqBytes();
@@ -368,7 +368,7 @@ class DtChannel extends PbCallback<Object> {
                 log.debug("catch RejectedExecutionException, write response code FLOW_CONTROL to client, maxInRequests={}",
                         nioConfig.getMaxInRequests());
                 writeErrorInIoThread(req, CmdCodes.FLOW_CONTROL,
-                        "max incoming request: " + nioConfig.getMaxInRequests(), reqContext.getTimeout());
+                        "max incoming request: " + nioConfig.getMaxInRequests(), reqContext);
                 if (bytes != null) {
                     bytes.addAndGet(-currentReadFrameSize);
                 }
@@ -377,12 +377,12 @@ class DtChannel extends PbCallback<Object> {
     }
 
     static boolean timeout(ReadFrame rf, ChannelContext channelContext, ReqContext reqContext, Timestamp ts) {
-        DtTime t = reqContext.getTimeout();
-        boolean timeout = ts == null ? t.isTimeout() : t.isTimeout(ts);
+        long now = ts == null ? CoarseClock.nanoTime() : ts.getNanoTime();
+        boolean timeout = reqContext.getDeadlineNanos() - now <= 0;
         if (timeout) {
             String type = rf.getFrameType() == FrameType.TYPE_REQ ? "request" : "response";
             log.debug("drop timeout {}, remote={}, seq={}, timeout={}ms", type,
-                    channelContext.getRemoteAddr(), rf.getSeq(), t.getTimeout(TimeUnit.MILLISECONDS));
+                    channelContext.getRemoteAddr(), rf.getSeq(), reqContext.getTimeoutMillis());
             return true;
         } else {
             return false;
@@ -390,16 +390,21 @@ class DtChannel extends PbCallback<Object> {
     }
 
     private void writeErrorInIoThread(Frame req, int code, String msg) {
-        writeErrorInIoThread(req, code, msg, new DtTime(10, TimeUnit.SECONDS));
+        long now = CoarseClock.nanoTime();
+        writeErrorInIoThread(req, code, msg, now, now + TimeUnit.SECONDS.toNanos(10));
     }
 
-    private void writeErrorInIoThread(Frame req, int code, String msg, DtTime timeout) {
+    private void writeErrorInIoThread(Frame req, int code, String msg, ReqContext reqContext) {
+        writeErrorInIoThread(req, code, msg, reqContext.getCreateNanos(), reqContext.getDeadlineNanos());
+    }
+
+    private void writeErrorInIoThread(Frame req, int code, String msg, long createNanos, long deadlineNanos) {
         EmptyBodyRespFrame resp = new EmptyBodyRespFrame(code);
         resp.setCommand(req.getCommand());
         resp.setFrameType(FrameType.TYPE_RESP);
         resp.setSeq(req.getSeq());
         resp.setMsg(msg);
-        subQueue.enqueue(new WriteData(this, resp, timeout));
+        subQueue.enqueue(new WriteData(this, resp, createNanos, deadlineNanos));
     }
 
     public int getAndIncSeq() {
@@ -498,7 +503,7 @@ class ProcessInBizThreadTask implements Runnable {
             }
         }
         if (resp != null) {
-            dtc.getRespWriter().writeRespInBizThreads(req, resp, reqContext.getTimeout());
+            dtc.getRespWriter().writeRespInBizThreads(req, resp, reqContext);
         }
     }
 }
\ No newline at end of file
@@ -17,16 +17,18 @@ package com.github.dtprj.dongting.net;
 
 import com.github.dtprj.dongting.log.DtLog;
 import com.github.dtprj.dongting.log.DtLogs;
-import com.github.dtprj.dongting.queue.MpscLinkedQueue;
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueue;
 
 import java.util.ArrayList;
+import java.util.function.Consumer;
 
 /**
  * @author huangli
  */
 class IoQueue {
     private static final DtLog log = DtLogs.getLogger(IoQueue.class);
-    private final MpscLinkedQueue<Object> queue = MpscLinkedQueue.newInstance();
+    private final MpscChunkedArrayQueue<Object> queue = MpscChunkedArrayQueue.newInstance();
+    private final Consumer<Object> dispatcher = this::dispatch;
     private final ArrayList<DtChannel> channels;
     private final boolean server;
     private int invokeIndex;
@@ -55,13 +57,14 @@ class IoQueue {
     }
 
     public void dispatchActions() {
-        Object data;
-        while ((data = queue.relaxedPoll()) != null) {
-            if (data instanceof WriteData) {
-                processWriteData((WriteData) data);
-            } else {
-                ((Runnable) data).run();
-            }
+        queue.drain(dispatcher, Integer.MAX_VALUE);
+    }
+
+    private void dispatch(Object data) {
+        if (data instanceof WriteData) {
+            processWriteData((WriteData) data);
+        } else {
+            ((Runnable) data).run();
         }
     }
 
@@ -19,14 +19,12 @@ import com.github.dtprj.dongting.buf.ByteBufferPool;
 import com.github.dtprj.dongting.buf.RefBufferFactory;
 import com.github.dtprj.dongting.codec.EncodeContext;
 import com.github.dtprj.dongting.common.BitUtil;
-import com.github.dtprj.dongting.common.DtTime;
 import com.github.dtprj.dongting.common.Timestamp;
 import com.github.dtprj.dongting.log.DtLog;
 import com.github.dtprj.dongting.log.DtLogs;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author huangli
@@ -36,7 +34,6 @@ class IoSubQueue {
 
     private static final int MAX_BUFFER_SIZE = 512 * 1024;
     private final ByteBufferPool directPool;
-    private final ByteBufferPool heapPool;
     private final WorkerStatus workerStatus;
     private final DtChannel dtc;
     private Runnable registerForWrite;
@@ -53,7 +50,6 @@ class IoSubQueue {
 
     public IoSubQueue(WorkerStatus workerStatus, DtChannel dtc, RefBufferFactory heapPool) {
         this.directPool = workerStatus.getDirectPool();
-        this.heapPool = workerStatus.getHeapPool();
         this.workerStatus = workerStatus;
         this.dtc = dtc;
         this.encodeContext = new EncodeContext(heapPool);
@@ -116,7 +112,7 @@ class IoSubQueue {
             // no packet to write
             return null;
         }
-        ByteBuffer buf = subQueueBytes <= MAX_BUFFER_SIZE ? heapPool.borrow(subQueueBytes) : heapPool.borrow(MAX_BUFFER_SIZE);
+        ByteBuffer buf = subQueueBytes <= MAX_BUFFER_SIZE ? directPool.borrow(subQueueBytes) : directPool.borrow(MAX_BUFFER_SIZE);
 
         WriteData wd = this.lastWriteData;
         try {
@@ -175,19 +171,18 @@ class IoSubQueue {
     private boolean encode(ByteBuffer buf, WriteData wd, Timestamp roundTime) {
         WriteFrame f = wd.getData();
         boolean request = f.getFrameType() == FrameType.TYPE_REQ;
-        DtTime t = wd.getTimeout();
-        long rest = t.rest(TimeUnit.NANOSECONDS, roundTime);
+        long rest = wd.restNanos(roundTime);
         if (rest <= 0) {
             if (request) {
-                String msg = "timeout before send: " + t.getTimeout(TimeUnit.MILLISECONDS) + "ms";
+                String msg = "timeout before send: " + wd.getTimeoutMillis() + "ms";
                 log.info("request timeout before send: {}ms, channel={}",
-                        t.getTimeout(TimeUnit.MILLISECONDS), wd.getDtc().getChannel());
+                        wd.getTimeoutMillis(), wd.getDtc().getChannel());
                 if (wd.getFuture() != null) {
                     wd.getFuture().completeExceptionally(new NetTimeoutException(msg));
                 }
             } else {
                 log.info("response timeout before send: {}ms, seq={}, channel={}",
-                        t.getTimeout(TimeUnit.MILLISECONDS), f.getSeq(), wd.getDtc().getChannel());
+                        wd.getTimeoutMillis(), f.getSeq(), wd.getDtc().getChannel());
             }
             workerStatus.setFramesToWrite(workerStatus.getFramesToWrite() - 1);
             return true;
@@ -16,6 +16,7 @@
 package com.github.dtprj.dongting.net;
 
 import com.github.dtprj.dongting.codec.Decoder;
+import com.github.dtprj.dongting.common.CoarseClock;
 import com.github.dtprj.dongting.common.DtTime;
 import com.github.dtprj.dongting.common.DtUtil;
 import com.github.dtprj.dongting.log.BugLog;
@@ -140,6 +141,18 @@ public class NioClient extends NioNet {
         return (CompletableFuture<ReadFrame<T>>) f;
     }
 
+    /**
+     * same as sendRequest(Peer, WriteFrame, Decoder, DtTime), but no DtTime object is created, the timeout
+     * starts from now (CoarseClock).
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<ReadFrame<T>> sendRequest(Peer peer, WriteFrame request, Decoder<T> decoder,
+                                                            long timeout, TimeUnit unit) {
+        long now = CoarseClock.nanoTime();
+        CompletableFuture<?> f = sendRequest(worker, peer, request, decoder, now, now + unit.toNanos(timeout));
+        return (CompletableFuture<ReadFrame<T>>) f;
+    }
+
     @Override
     protected void doStop() {
         DtTime timeout = new DtTime(config.getCloseTimeout(), TimeUnit.MILLISECONDS);
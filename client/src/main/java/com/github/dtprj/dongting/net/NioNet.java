@@ -24,6 +24,7 @@ import com.github.dtprj.dongting.common.DtUtil;
 import com.github.dtprj.dongting.log.DtLog;
 import com.github.dtprj.dongting.log.DtLogs;
 
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
@@ -76,6 +77,12 @@ public abstract class NioNet extends AbstractLifeCircle {
 
     CompletableFuture<ReadFrame<?>> sendRequest(NioWorker worker, Peer peer, WriteFrame request,
                                                 Decoder<?> decoder, DtTime timeout) {
+        Objects.requireNonNull(timeout);
+        return sendRequest(worker, peer, request, decoder, timeout.getCreateNanos(), timeout.getDeadlineNanos());
+    }
+
+    CompletableFuture<ReadFrame<?>> sendRequest(NioWorker worker, Peer peer, WriteFrame request,
+                                                Decoder<?> decoder, long createNanos, long deadlineNanos) {
         request.setFrameType(FrameType.TYPE_REQ);
         DtUtil.checkPositive(request.getCommand(), "request.command");
         boolean acquire = false;
@@ -86,16 +93,17 @@ public abstract class NioNet extends AbstractLifeCircle {
             }
 
             if (this.semaphore != null) {
-                acquire = this.semaphore.tryAcquire(timeout.getTimeout(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+                long timeoutNanos = deadlineNanos - createNanos;
+                acquire = this.semaphore.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
                 if (!acquire) {
                     return errorFuture(new NetTimeoutException(
                             "too many pending requests, client wait permit timeout in "
-                                    + timeout.getTimeout(TimeUnit.MILLISECONDS) + " ms"));
+                                    + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms"));
                 }
             }
 
             CompletableFuture<ReadFrame<?>> future = new CompletableFuture<>();
-            worker.writeReqInBizThreads(peer, request, decoder, timeout, future);
+            worker.writeReqInBizThreads(peer, request, decoder, createNanos, deadlineNanos, future);
             write = true;
             return registerReqCallback(future);
 
@@ -16,6 +16,7 @@
 package com.github.dtprj.dongting.net;
 
 import com.github.dtprj.dongting.buf.ByteBufferPool;
+import com.github.dtprj.dongting.buf.TwoLevelPool;
 import com.github.dtprj.dongting.codec.Decoder;
 import com.github.dtprj.dongting.common.AbstractLifeCircle;
 import com.github.dtprj.dongting.common.DtTime;
@@ -154,8 +155,10 @@ class NioWorker extends AbstractLifeCircle implements Runnable {
         while (this.stopStatus <= SS_PRE_STOP) {
             try {
                 run0(selector, ts);
+                if (heapPool instanceof TwoLevelPool) {
+                    ((TwoLevelPool) heapPool).drainReleaseQueue();
+                }
                 if (cleanIntervalNanos <= 0 || ts.getNanoTime() - lastCleanNano > cleanIntervalNanos) {
-                    // TODO shrink channels map if the it's internal array is too large
                     cleanTimeoutReq(ts);
                     cleanTimeoutConnect(ts);
                     directPool.clean();
@@ -543,18 +546,17 @@ class NioWorker extends AbstractLifeCircle implements Runnable {
 
     private void cleanTimeoutReq(Timestamp roundStartTime) {
         this.pendingOutgoingRequests.forEach((key, wd) -> {
-            DtTime t = wd.getTimeout();
             if (wd.getDtc().isClosed()) {
                 if (wd.getFuture() != null) {
                     wd.getFuture().completeExceptionally(new NetException("channel closed, future cancelled by timeout cleaner"));
                 }
                 return false;
-            } else if (t.isTimeout(roundStartTime)) {
+            } else if (wd.isTimeout(roundStartTime)) {
                 log.debug("drop timeout request: {}ms, seq={}, {}",
-                        t.getTimeout(TimeUnit.MILLISECONDS), wd.getData().getSeq(),
+                        wd.getTimeoutMillis(), wd.getData().getSeq(),
                         wd.getDtc());
                 if (wd.getFuture() != null) {
-                    String msg = "timeout: " + t.getTimeout(TimeUnit.MILLISECONDS) + "ms";
+                    String msg = "timeout: " + wd.getTimeoutMillis() + "ms";
                     wd.getFuture().completeExceptionally(new NetTimeoutException(msg));
                 }
                 return false;
@@ -579,11 +581,10 @@ class NioWorker extends AbstractLifeCircle implements Runnable {
 
     // invoke by other threads
     public void writeReqInBizThreads(Peer peer, WriteFrame frame, Decoder<?> decoder,
-                                     DtTime timeout, CompletableFuture<ReadFrame<?>> future) {
-        Objects.requireNonNull(timeout);
+                                     long createNanos, long deadlineNanos, CompletableFuture<ReadFrame<?>> future) {
         Objects.requireNonNull(future);
 
-        WriteData data = new WriteData(peer, frame, timeout, future, decoder);
+        WriteData data = new WriteData(peer, frame, createNanos, deadlineNanos, future, decoder);
         this.ioQueue.writeFromBizThread(data);
         wakeup();
     }
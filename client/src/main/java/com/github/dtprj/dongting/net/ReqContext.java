@@ -16,18 +16,55 @@
 package com.github.dtprj.dongting.net;
 
 import com.github.dtprj.dongting.common.DtTime;
+import com.github.dtprj.dongting.common.Timestamp;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author huangli
  */
 public class ReqContext {
+    private long createNanos;
+    private long deadlineNanos;
     private DtTime timeout;
 
+    /**
+     * Create DtTime object lazily, use getDeadlineNanos() in hot path to avoid allocation.
+     */
     public DtTime getTimeout() {
-        return timeout;
+        DtTime t = timeout;
+        if (t == null) {
+            t = new DtTime(createNanos, deadlineNanos - createNanos, TimeUnit.NANOSECONDS);
+            timeout = t;
+        }
+        return t;
     }
 
     public void setTimeout(DtTime timeout) {
         this.timeout = timeout;
+        this.createNanos = timeout.getCreateNanos();
+        this.deadlineNanos = timeout.getDeadlineNanos();
+    }
+
+    void setTimeout(long createNanos, long timeoutNanos) {
+        this.timeout = null;
+        this.createNanos = createNanos;
+        this.deadlineNanos = createNanos + timeoutNanos;
+    }
+
+    public long getCreateNanos() {
+        return createNanos;
+    }
+
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    public boolean isTimeout(Timestamp ts) {
+        return deadlineNanos - ts.getNanoTime() <= 0;
+    }
+
+    public long getTimeoutMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - createNanos);
     }
 }
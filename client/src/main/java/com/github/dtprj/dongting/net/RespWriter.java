@@ -34,12 +34,16 @@ public class RespWriter {
 
     // invoke by other threads
     public void writeRespInBizThreads(WriteFrame resp, DtTime timeout) {
+        writeRespInBizThreads(resp, timeout.getCreateNanos(), timeout.getDeadlineNanos());
+    }
+
+    private void writeRespInBizThreads(WriteFrame resp, long createNanos, long deadlineNanos) {
         if (dtc.isClosed()) {
             // not restrict, but we will check again in io thread
             return;
         }
         resp.setFrameType(FrameType.TYPE_RESP);
-        WriteData data = new WriteData(dtc, resp, timeout);
+        WriteData data = new WriteData(dtc, resp, createNanos, deadlineNanos);
         ioQueue.writeFromBizThread(data);
         wakeupRunnable.run();
     }
@@ -50,4 +54,11 @@ public class RespWriter {
         resp.setCommand(req.getCommand());
         writeRespInBizThreads(resp, timeout);
     }
+
+    // invoke by other threads, use the deadline of the request context, no DtTime object created
+    public void writeRespInBizThreads(ReadFrame req, WriteFrame resp, ReqContext reqContext) {
+        resp.setSeq(req.getSeq());
+        resp.setCommand(req.getCommand());
+        writeRespInBizThreads(resp, reqContext.getCreateNanos(), reqContext.getDeadlineNanos());
+    }
 }
@@ -16,9 +16,10 @@
 package com.github.dtprj.dongting.net;
 
 import com.github.dtprj.dongting.codec.Decoder;
-import com.github.dtprj.dongting.common.DtTime;
+import com.github.dtprj.dongting.common.Timestamp;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author huangli
@@ -28,26 +29,29 @@ final class WriteData {
     private final Peer peer;
 
     private final WriteFrame data;
-    private final DtTime timeout;
+    private final long createNanos;
+    private final long deadlineNanos;
     private final CompletableFuture<ReadFrame<?>> future;
     private final Decoder<?> respDecoder;
 
     private int estimateSize;
 
-    public WriteData(Peer peer, WriteFrame data, DtTime timeout,
+    public WriteData(Peer peer, WriteFrame data, long createNanos, long deadlineNanos,
                      CompletableFuture<ReadFrame<?>> future, Decoder<?> respDecoder) {
         this.peer = peer;
         this.data = data;
-        this.timeout = timeout;
+        this.createNanos = createNanos;
+        this.deadlineNanos = deadlineNanos;
         this.future = future;
         this.respDecoder = respDecoder;
     }
 
-    public WriteData(DtChannel dtc, WriteFrame data, DtTime timeout) {
+    public WriteData(DtChannel dtc, WriteFrame data, long createNanos, long deadlineNanos) {
         this.dtc = dtc;
         this.peer = null;
         this.data = data;
-        this.timeout = timeout;
+        this.createNanos = createNanos;
+        this.deadlineNanos = deadlineNanos;
         this.future = null;
         this.respDecoder = null;
     }
@@ -68,8 +72,20 @@ final class WriteData {
         return data;
     }
 
-    public DtTime getTimeout() {
-        return timeout;
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    public long restNanos(Timestamp ts) {
+        return deadlineNanos - ts.getNanoTime();
+    }
+
+    public boolean isTimeout(Timestamp ts) {
+        return deadlineNanos - ts.getNanoTime() <= 0;
+    }
+
+    public long getTimeoutMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - createNanos);
     }
 
     public CompletableFuture<ReadFrame<?>> getFuture() {
@@ -0,0 +1,45 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.queue;
+
+/**
+ * Chunk of MpscChunkedArrayQueue.
+ *
+ * @author huangli
+ */
+public abstract class ArrayChunk<E> {
+    final long index;
+
+    // used by the producer to find the chunk it claimed, cleared by consumer when the consumer enter this chunk
+    ArrayChunk<E> prev;
+
+    protected volatile ArrayChunk<E> next;
+
+    protected ArrayChunk(long index, ArrayChunk<E> prev) {
+        this.index = index;
+        this.prev = prev;
+    }
+
+    protected abstract E getAcquire(int i);
+
+    protected abstract void setRelease(int i, E value);
+
+    protected abstract void setPlain(int i, E value);
+
+    protected abstract ArrayChunk<E> getNextAcquire();
+
+    protected abstract boolean casNext(ArrayChunk<E> expect, ArrayChunk<E> update);
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.queue;
+
+import com.github.dtprj.dongting.common.BitUtil;
+import com.github.dtprj.dongting.common.DtUtil;
+import com.github.dtprj.dongting.common.VersionFactory;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Multi-producer single-consumer queue backed by linked array chunks. The producer claims a slot by
+ * an atomic increment of the producer index, the chunks are created and linked lazily, so there is
+ * one array allocation per chunk instead of one node per offer.
+ * <p>
+ * The capacity is optional, it's a soft bound: the queue may exceed it by the count of concurrent producers.
+ * <p>
+ * The producer fields and the consumer fields are padded to avoid false share. The padding is done by the class
+ * hierarchy (pad, producer fields, pad, consumer fields, pad), since the JVM may reorder the fields in one class
+ * (longs first, then the references), but the fields of super class are laid out before the sub class. The pads
+ * are byte fields, so they leave no alignment gap which the JVM may fill with the fields of sub class.
+ *
+ * @author huangli
+ */
+public abstract class MpscChunkedArrayQueue<E> extends MpscChunkedArrayQueuePad3<E> {
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+    public static final long UNBOUNDED = Long.MAX_VALUE;
+
+    private final int chunkShift;
+    private final int chunkMask;
+    private final int chunkSize;
+    private final long capacity;
+
+    protected MpscChunkedArrayQueue(int chunkSize, long capacity) {
+        DtUtil.checkPositive(chunkSize, "chunkSize");
+        DtUtil.checkPositive(capacity, "capacity");
+        chunkSize = BitUtil.nextHighestPowerOfTwo(chunkSize);
+        this.chunkSize = chunkSize;
+        this.chunkMask = chunkSize - 1;
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        this.capacity = capacity;
+        ArrayChunk<E> c = newChunk(0, null, chunkSize);
+        consumerChunk = c;
+        producerChunk = c;
+    }
+
+    public static <E> MpscChunkedArrayQueue<E> newInstance() {
+        return newInstance(DEFAULT_CHUNK_SIZE, UNBOUNDED);
+    }
+
+    public static <E> MpscChunkedArrayQueue<E> newInstance(int chunkSize, long capacity) {
+        return VersionFactory.getInstance().newMpscChunkedArrayQueue(chunkSize, capacity);
+    }
+
+    /**
+     * called by any thread.
+     *
+     * @return false if the queue is bounded and full
+     */
+    public boolean offer(E value) {
+        Objects.requireNonNull(value);
+        if (capacity != UNBOUNDED && producerIndex - consumerIndex >= capacity) {
+            return false;
+        }
+        long p = getAndIncrementProducerIndex();
+        long chunkIndex = p >>> chunkShift;
+        ArrayChunk<E> chunk = producerChunk;
+        // the chunks between producerChunk and the consumer's chunk are not released,
+        // since the consumer can't pass the slot not filled
+        while (chunk.index > chunkIndex) {
+            chunk = chunk.prev;
+        }
+        while (chunk.index < chunkIndex) {
+            ArrayChunk<E> next = chunk.getNextAcquire();
+            if (next == null) {
+                ArrayChunk<E> newChunk = newChunk(chunk.index + 1, chunk, chunkSize);
+                next = chunk.casNext(null, newChunk) ? newChunk : chunk.getNextAcquire();
+            }
+            chunk = next;
+        }
+        ArrayChunk<E> pc;
+        while ((pc = producerChunk).index < chunk.index && !casProducerChunk(pc, chunk)) {
+            // retry
+        }
+        chunk.setRelease((int) p & chunkMask, value);
+        return true;
+    }
+
+    /**
+     * called by the consumer thread.
+     */
+    public E relaxedPoll() {
+        long c = consumerIndex;
+        ArrayChunk<E> chunk = nextChunkIfNecessary(c);
+        if (chunk == null) {
+            return null;
+        }
+        int offset = (int) c & chunkMask;
+        E value = chunk.getAcquire(offset);
+        if (value == null) {
+            return null;
+        }
+        chunk.setPlain(offset, null);
+        setConsumerIndexRelease(c + 1);
+        return value;
+    }
+
+    /**
+     * called by the consumer thread, poll at most limit elements and pass them to the consumer.
+     *
+     * @return the count of polled elements
+     */
+    public int drain(Consumer<E> consumer, int limit) {
+        long c = consumerIndex;
+        int count = 0;
+        try {
+            while (count < limit) {
+                ArrayChunk<E> chunk = nextChunkIfNecessary(c);
+                if (chunk == null) {
+                    break;
+                }
+                int offset = (int) c & chunkMask;
+                E value = chunk.getAcquire(offset);
+                if (value == null) {
+                    break;
+                }
+                chunk.setPlain(offset, null);
+                c++;
+                count++;
+                consumer.accept(value);
+            }
+        } finally {
+            if (count > 0) {
+                setConsumerIndexRelease(c);
+            }
+        }
+        return count;
+    }
+
+    private ArrayChunk<E> nextChunkIfNecessary(long consumerIndex) {
+        ArrayChunk<E> chunk = consumerChunk;
+        if (chunk.index != (consumerIndex >>> chunkShift)) {
+            // the producer link the new chunk before fill the slot, so the element is not available if next is null
+            chunk = chunk.getNextAcquire();
+            if (chunk == null) {
+                return null;
+            }
+            chunk.prev = null;
+            consumerChunk = chunk;
+        }
+        return chunk;
+    }
+
+    public boolean isEmpty() {
+        return producerIndex == consumerIndex;
+    }
+
+    protected abstract long getAndIncrementProducerIndex();
+
+    protected abstract boolean casProducerChunk(ArrayChunk<E> expect, ArrayChunk<E> update);
+
+    protected abstract void setConsumerIndexRelease(long value);
+
+    protected abstract ArrayChunk<E> newChunk(long index, ArrayChunk<E> prev, int chunkSize);
+}
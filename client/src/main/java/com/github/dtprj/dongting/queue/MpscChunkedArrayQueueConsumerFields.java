@@ -0,0 +1,27 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.queue;
+
+/**
+ * The fields updated by the consumer of MpscChunkedArrayQueue.
+ *
+ * @author huangli
+ */
+public abstract class MpscChunkedArrayQueueConsumerFields<E> extends MpscChunkedArrayQueuePad2<E> {
+    // only updated by consumer, read by producers to check the capacity
+    protected volatile long consumerIndex;
+    protected ArrayChunk<E> consumerChunk;
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.queue;
+
+/**
+ * 128 bytes padding before the producer fields of MpscChunkedArrayQueue, see MpscChunkedArrayQueue.
+ *
+ * @author huangli
+ */
+@SuppressWarnings({"unused"})
+abstract class MpscChunkedArrayQueuePad1<E> {
+    byte b000, b001, b002, b003, b004, b005, b006, b007, b008, b009, b00a, b00b, b00c, b00d, b00e, b00f;
+    byte b010, b011, b012, b013, b014, b015, b016, b017, b018, b019, b01a, b01b, b01c, b01d, b01e, b01f;
+    byte b020, b021, b022, b023, b024, b025, b026, b027, b028, b029, b02a, b02b, b02c, b02d, b02e, b02f;
+    byte b030, b031, b032, b033, b034, b035, b036, b037, b038, b039, b03a, b03b, b03c, b03d, b03e, b03f;
+    byte b040, b041, b042, b043, b044, b045, b046, b047, b048, b049, b04a, b04b, b04c, b04d, b04e, b04f;
+    byte b050, b051, b052, b053, b054, b055, b056, b057, b058, b059, b05a, b05b, b05c, b05d, b05e, b05f;
+    byte b060, b061, b062, b063, b064, b065, b066, b067, b068, b069, b06a, b06b, b06c, b06d, b06e, b06f;
+    byte b070, b071, b072, b073, b074, b075, b076, b077, b078, b079, b07a, b07b, b07c, b07d, b07e, b07f;
+}
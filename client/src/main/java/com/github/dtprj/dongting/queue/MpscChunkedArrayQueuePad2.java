@@ -0,0 +1,33 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.queue;
+
+/**
+ * 128 bytes padding between the producer fields and the consumer fields of MpscChunkedArrayQueue.
+ *
+ * @author huangli
+ */
+@SuppressWarnings({"unused"})
+abstract class MpscChunkedArrayQueuePad2<E> extends MpscChunkedArrayQueueProducerFields<E> {
+    byte b100, b101, b102, b103, b104, b105, b106, b107, b108, b109, b10a, b10b, b10c, b10d, b10e, b10f;
+    byte b110, b111, b112, b113, b114, b115, b116, b117, b118, b119, b11a, b11b, b11c, b11d, b11e, b11f;
+    byte b120, b121, b122, b123, b124, b125, b126, b127, b128, b129, b12a, b12b, b12c, b12d, b12e, b12f;
+    byte b130, b131, b132, b133, b134, b135, b136, b137, b138, b139, b13a, b13b, b13c, b13d, b13e, b13f;
+    byte b140, b141, b142, b143, b144, b145, b146, b147, b148, b149, b14a, b14b, b14c, b14d, b14e, b14f;
+    byte b150, b151, b152, b153, b154, b155, b156, b157, b158, b159, b15a, b15b, b15c, b15d, b15e, b15f;
+    byte b160, b161, b162, b163, b164, b165, b166, b167, b168, b169, b16a, b16b, b16c, b16d, b16e, b16f;
+    byte b170, b171, b172, b173, b174, b175, b176, b177, b178, b179, b17a, b17b, b17c, b17d, b17e, b17f;
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.queue;
+
+/**
+ * 128 bytes padding after the consumer fields of MpscChunkedArrayQueue.
+ *
+ * @author huangli
+ */
+@SuppressWarnings({"unused"})
+abstract class MpscChunkedArrayQueuePad3<E> extends MpscChunkedArrayQueueConsumerFields<E> {
+    byte b200, b201, b202, b203, b204, b205, b206, b207, b208, b209, b20a, b20b, b20c, b20d, b20e, b20f;
+    byte b210, b211, b212, b213, b214, b215, b216, b217, b218, b219, b21a, b21b, b21c, b21d, b21e, b21f;
+    byte b220, b221, b222, b223, b224, b225, b226, b227, b228, b229, b22a, b22b, b22c, b22d, b22e, b22f;
+    byte b230, b231, b232, b233, b234, b235, b236, b237, b238, b239, b23a, b23b, b23c, b23d, b23e, b23f;
+    byte b240, b241, b242, b243, b244, b245, b246, b247, b248, b249, b24a, b24b, b24c, b24d, b24e, b24f;
+    byte b250, b251, b252, b253, b254, b255, b256, b257, b258, b259, b25a, b25b, b25c, b25d, b25e, b25f;
+    byte b260, b261, b262, b263, b264, b265, b266, b267, b268, b269, b26a, b26b, b26c, b26d, b26e, b26f;
+    byte b270, b271, b272, b273, b274, b275, b276, b277, b278, b279, b27a, b27b, b27c, b27d, b27e, b27f;
+}
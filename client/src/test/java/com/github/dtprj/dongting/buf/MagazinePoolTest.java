@@ -0,0 +1,255 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.buf;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author huangli
+ */
+public class MagazinePoolTest {
+
+    private static MagazinePool create(int stripeCount, long timeoutMillis) {
+        return new MagazinePool(false, new int[]{128, 256}, new int[]{0, 0}, new int[]{4, 4},
+                new int[]{2, 1}, stripeCount, timeoutMillis);
+    }
+
+    @Test
+    public void testConstructor() {
+        assertThrows(IllegalArgumentException.class, () -> new MagazinePool(false, new int[]{128, 256},
+                new int[]{0, 0}, new int[]{4}, new int[]{2, 1}, 1, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new MagazinePool(false, new int[]{256, 128},
+                new int[]{0, 0}, new int[]{4, 4}, new int[]{2, 1}, 1, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new MagazinePool(false, new int[]{128, 256},
+                new int[]{5, 0}, new int[]{4, 4}, new int[]{2, 1}, 1, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new MagazinePool(false, new int[]{128, 256},
+                new int[]{0, 0}, new int[]{4, 4}, new int[]{0, 1}, 1, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new MagazinePool(false, new int[]{128, 256},
+                new int[]{0, 0}, new int[]{4, 4}, new int[]{2, 1}, 3, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new MagazinePool(false, new int[]{128, 256},
+                new int[]{0, 0}, new int[]{4, 4}, new int[]{2, 1}, 1, 0));
+    }
+
+    @Test
+    public void testBorrowAndRelease() {
+        MagazinePool pool = create(1, 1000);
+        ByteBuffer b1 = pool.borrow(1);
+        ByteBuffer b2 = pool.borrow(129);
+        ByteBuffer b3 = pool.borrow(257);
+        assertEquals(128, b1.capacity());
+        assertEquals(256, b2.capacity());
+        assertEquals(257, b3.capacity());
+        b1.put((byte) 1);
+        pool.release(b1);
+        pool.release(b2);
+        pool.release(b3);
+        ByteBuffer b4 = pool.borrow(100);
+        assertSame(b1, b4);
+        assertEquals(0, b4.position());
+        assertSame(b2, pool.borrow(256));
+        assertNotSame(b3, pool.borrow(257));
+    }
+
+    @Test
+    public void testExchangeWithDepot() throws Exception {
+        MagazinePool pool = create(1, 1000);
+        ByteBuffer[] bufs = new ByteBuffer[6];
+        for (int i = 0; i < bufs.length; i++) {
+            bufs[i] = pool.allocate(128);
+        }
+        // 2 magazines in thread cache, 1 full magazine in depot
+        for (ByteBuffer buf : bufs) {
+            pool.release(buf);
+        }
+        AtomicReference<ByteBuffer> ref = new AtomicReference<>();
+        Thread t = new Thread(() -> ref.set(pool.borrow(128)));
+        t.start();
+        t.join();
+        boolean found = false;
+        for (ByteBuffer buf : bufs) {
+            if (buf == ref.get()) {
+                found = true;
+                break;
+            }
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void testStealFromOtherStripe() throws Exception {
+        MagazinePool pool = create(2, 1000);
+        ByteBuffer[] bufs = new ByteBuffer[3];
+        for (int i = 0; i < bufs.length; i++) {
+            bufs[i] = pool.allocate(256);
+        }
+        Thread t1 = new Thread(() -> {
+            for (ByteBuffer buf : bufs) {
+                pool.release(buf);
+            }
+        });
+        t1.start();
+        t1.join();
+        AtomicReference<ByteBuffer> ref = new AtomicReference<>();
+        Thread t2 = new Thread(() -> ref.set(pool.borrow(256)));
+        t2.start();
+        t2.join();
+        assertSame(bufs[0], ref.get());
+    }
+
+    @Test
+    public void testDepotFull() throws Exception {
+        MagazinePool pool = create(1, 1000);
+        ByteBuffer[] bufs = new ByteBuffer[10];
+        for (int i = 0; i < bufs.length; i++) {
+            bufs[i] = pool.allocate(256);
+        }
+        // magazine size is 1, 2 buffers in thread cache, depot accept 4 magazines, others dropped
+        Thread t1 = new Thread(() -> {
+            for (ByteBuffer buf : bufs) {
+                pool.release(buf);
+            }
+        });
+        t1.start();
+        t1.join();
+        Set<ByteBuffer> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        Collections.addAll(set, bufs);
+        AtomicInteger hit = new AtomicInteger();
+        Thread t2 = new Thread(() -> {
+            for (int i = 0; i < bufs.length; i++) {
+                if (set.contains(pool.borrow(256))) {
+                    hit.incrementAndGet();
+                }
+            }
+        });
+        t2.start();
+        t2.join();
+        assertEquals(4, hit.get());
+    }
+
+    @Test
+    public void testClean() throws Exception {
+        MagazinePool pool = create(1, 1);
+        ByteBuffer[] bufs = new ByteBuffer[4];
+        for (int i = 0; i < bufs.length; i++) {
+            bufs[i] = pool.allocate(128);
+            pool.release(bufs[i]);
+        }
+        // first clean mark thread cache unused, second clean flush thread cache to depot
+        pool.clean();
+        pool.clean();
+        Thread.sleep(2);
+        pool.clean();
+        for (int i = 0; i < bufs.length; i++) {
+            ByteBuffer buf = pool.borrow(128);
+            for (ByteBuffer old : bufs) {
+                assertNotSame(old, buf);
+            }
+        }
+    }
+
+    @Test
+    public void testMaxRetainedBytes() {
+        MagazinePool pool = new MagazinePool(false, new int[]{128, 256}, new int[]{0, 0}, new int[]{4, 4},
+                new int[]{1, 1}, 1, 1000, 1024);
+        ByteBuffer[] bufs = new ByteBuffer[4];
+        for (int i = 0; i < bufs.length; i++) {
+            bufs[i] = pool.allocate(256);
+        }
+        // 2 buffers in thread cache, 2 buffers in depot, the last released buffer not published yet
+        for (ByteBuffer buf : bufs) {
+            pool.release(buf);
+        }
+        assertEquals(768, pool.getRetainedBytes());
+
+        ByteBuffer small = pool.allocate(128);
+        pool.release(small);
+        // depot of the largest size class is shrunk to make room for the small buffer
+        assertEquals(768, pool.getRetainedBytes());
+        assertSame(small, pool.borrow(128));
+
+        Set<ByteBuffer> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        Collections.addAll(set, bufs);
+        int hit = 0;
+        for (int i = 0; i < bufs.length; i++) {
+            if (set.contains(pool.borrow(256))) {
+                hit++;
+            }
+        }
+        assertEquals(3, hit);
+
+        // the buffer exceeds limit is dropped
+        MagazinePool pool2 = new MagazinePool(false, new int[]{128, 256}, new int[]{0, 0}, new int[]{4, 4},
+                new int[]{1, 1}, 1, 1000, 256);
+        ByteBuffer b1 = pool2.allocate(256);
+        ByteBuffer b2 = pool2.allocate(128);
+        pool2.release(b1);
+        pool2.release(b2);
+        assertSame(b1, pool2.borrow(256));
+        assertNotSame(b2, pool2.borrow(128));
+    }
+
+    @Test
+    public void testMultiThread() throws Exception {
+        MagazinePool pool = new MagazinePool(false);
+        int threadCount = 4;
+        Thread[] threads = new Thread[threadCount];
+        AtomicReference<Throwable> ex = new AtomicReference<>();
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    Random r = new Random();
+                    ByteBuffer[] bufs = new ByteBuffer[16];
+                    for (int j = 0; j < 10000; j++) {
+                        int index = r.nextInt(bufs.length);
+                        if (bufs[index] == null) {
+                            bufs[index] = pool.borrow(r.nextInt(1024 * 1024) + 1);
+                            bufs[index].put((byte) 1);
+                        } else {
+                            pool.release(bufs[index]);
+                            bufs[index] = null;
+                        }
+                        if (j % 1000 == 0) {
+                            pool.clean();
+                        }
+                    }
+                } catch (Throwable e) {
+                    ex.set(e);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(ex.get());
+        pool.formatStat();
+    }
+}
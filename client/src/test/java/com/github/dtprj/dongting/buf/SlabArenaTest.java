@@ -0,0 +1,108 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.buf;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author huangli
+ */
+public class SlabArenaTest {
+
+    @Test
+    public void testConstructor() {
+        assertThrows(IllegalArgumentException.class, () -> new SlabArena(0, new int[]{128}));
+        assertThrows(IllegalArgumentException.class, () -> new SlabArena(1024, new int[]{256, 128}));
+    }
+
+    @Test
+    public void testAllocate() {
+        SlabArena arena = new SlabArena(4096, new int[]{128, 256});
+        assertNull(arena.allocate(100));
+        ByteBuffer b1 = arena.allocate(128);
+        ByteBuffer b2 = arena.allocate(128);
+        assertTrue(b1.isDirect());
+        assertEquals(128, b1.capacity());
+        assertEquals(128, b2.capacity());
+        // first slab of a size class has 8 slices
+        assertEquals(8 * 128, arena.getSlabBytes());
+
+        // slices not overlap
+        b1.put(0, (byte) 1);
+        b1.put(127, (byte) 1);
+        assertEquals(0, b2.get(0));
+        b2.position(10);
+        assertTrue(arena.free(b2));
+        assertEquals(0, b2.position());
+        assertSame(b2, arena.allocate(128));
+        assertFalse(arena.free(ByteBuffer.allocateDirect(128)));
+        assertFalse(arena.free(ByteBuffer.allocateDirect(100)));
+    }
+
+    @Test
+    public void testSlabGrowAndRelease() {
+        SlabArena arena = new SlabArena(4096, new int[]{128, 256});
+        ByteBuffer[] bufs = new ByteBuffer[8 + 16 + 1];
+        for (int i = 0; i < bufs.length; i++) {
+            bufs[i] = arena.allocate(256);
+        }
+        // 8 slices, 16 slices (4096/256=16 is max)
+        assertEquals((8 + 16 + 16) * 256, arena.getSlabBytes());
+        for (int i = 8; i < bufs.length; i++) {
+            assertTrue(arena.free(bufs[i]));
+        }
+        // the empty slabs are released
+        assertEquals(8 * 256, arena.getSlabBytes());
+        for (int i = 0; i < 8; i++) {
+            assertTrue(arena.free(bufs[i]));
+        }
+        // the last slab is kept
+        assertEquals(8 * 256, arena.getSlabBytes());
+        assertFalse(arena.free(bufs[0]));
+    }
+
+    @Test
+    public void testMagazinePoolWithArena() {
+        SlabArena arena = new SlabArena(4096, new int[]{128, 256});
+        assertThrows(IllegalArgumentException.class, () -> new MagazinePool(false, new int[]{128, 256},
+                new int[]{0, 0}, new int[]{1, 1}, new int[]{1, 1}, 1, 1000, 1024, arena));
+        MagazinePool pool = new MagazinePool(true, new int[]{128, 256}, new int[]{0, 0}, new int[]{1, 1},
+                new int[]{1, 1}, 1, 1000, 1024, arena);
+        ByteBuffer[] bufs = new ByteBuffer[4];
+        for (int i = 0; i < bufs.length; i++) {
+            bufs[i] = pool.borrow(200);
+        }
+        assertEquals(8 * 256, arena.getSlabBytes());
+        for (ByteBuffer buf : bufs) {
+            pool.release(buf);
+        }
+        // 2 buffers in thread cache, 1 in depot, 1 dropped and freed to arena
+        assertTrue(arena.formatStat().endsWith("allocated 3"));
+        ByteBuffer big = pool.borrow(1024);
+        assertTrue(big.isDirect());
+        assertEquals(1024, big.capacity());
+        pool.release(big);
+    }
+}
@@ -24,7 +24,11 @@ import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * @author huangli
@@ -86,7 +90,29 @@ public class TwoLevelPoolTest {
         Thread t = new Thread(() -> p2.release(b1));
         t.start();
         t.join();
-        assertEquals(1, releaseCount.get());
+        // put into release queue, not invoke callback
+        assertEquals(0, releaseCount.get());
+        assertEquals(1, p2.drainReleaseQueue());
+        assertEquals(0, p.drainReleaseQueue());
+        assertSame(b1, p2.borrow(1));
+    }
+
+    @Test
+    public void testReleaseQueueFull() throws Exception {
+        TwoLevelPool p = new TwoLevelPool(false, p1, p2, 32);
+        AtomicInteger releaseCount = new AtomicInteger(0);
+        TwoLevelPool p2 = p.toReleaseInOtherThreadInstance(Thread.currentThread(), buf -> releaseCount.incrementAndGet());
+        int count = ReleaseQueue.DEFAULT_CAPACITY + 10;
+        Thread t = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                p2.release(ByteBuffer.allocate(32));
+            }
+        });
+        t.start();
+        t.join();
+        assertEquals(10, releaseCount.get());
+        assertEquals(ReleaseQueue.DEFAULT_CAPACITY, p.drainReleaseQueue());
+        assertEquals(0, p.drainReleaseQueue());
     }
 
     @Test
@@ -101,4 +127,15 @@ public class TwoLevelPoolTest {
         t.join();
         assertEquals(0, releaseCount.get());
     }
+
+    @Test
+    public void testGlobalPool() {
+        TwoLevelPool heap = (TwoLevelPool) TwoLevelPool.getDefaultFactory().apply(new Timestamp(), false);
+        TwoLevelPool direct = (TwoLevelPool) TwoLevelPool.getDefaultFactory().apply(new Timestamp(), true);
+        assertNotSame(heap.getLargePool(), direct.getLargePool());
+        assertSame(TwoLevelPool.getGlobalPool(false), heap.getLargePool());
+        assertSame(TwoLevelPool.getGlobalPool(true), direct.getLargePool());
+        assertFalse(heap.borrow(64 * 1024).isDirect());
+        assertTrue(direct.borrow(64 * 1024).isDirect());
+    }
 }
@@ -393,6 +393,28 @@ public class PbParserTest {
         assertEquals(0, callback.endFailCount);
     }
 
+    @Test
+    public void testDecodeVarLong() {
+        Random r = new Random();
+        for (int i = 0; i < 10000; i++) {
+            // at most 56 bits, so the var number is in 8 bytes
+            long v = r.nextLong() >>> (8 + r.nextInt(56));
+            ByteBuffer buf = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            long x = v;
+            while ((x & ~0x7FL) != 0) {
+                buf.put((byte) ((x & 0x7F) | 0x80));
+                x >>>= 7;
+            }
+            buf.put((byte) x);
+            // fill garbage
+            while (buf.hasRemaining()) {
+                buf.put((byte) r.nextInt());
+            }
+            long word = buf.getLong(0);
+            assertEquals(v, PbParser.decodeVarLong(word, ~word & 0x8080808080808080L));
+        }
+    }
+
     @Test
     public void testSingleParse() {
         Callback callback = new Callback(100, 200, "msg", "body", 100, 200, new NestedMsg(30000, "abc"));
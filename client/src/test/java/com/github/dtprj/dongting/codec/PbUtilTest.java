@@ -19,6 +19,7 @@ import org.junit.jupiter.api.Test;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Random;
 
 import static com.github.dtprj.dongting.codec.PbUtil.TYPE_VAR_INT;
 import static com.github.dtprj.dongting.codec.PbUtil.accurateFix32Size;
@@ -376,6 +377,32 @@ public class PbUtilTest {
         assertEquals(buf.position(), accurateUnsignedIntSize(value));
     }
 
+    @Test
+    public void testWriteVarNumberInWord() {
+        Random r = new Random();
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer buf = ByteBuffer.allocate(64).order(order);
+            for (int i = 0; i < 10000; i++) {
+                int v1 = r.nextInt() >>> r.nextInt(32);
+                long v2 = r.nextLong() >>> r.nextInt(64);
+                buf.clear();
+                // fill garbage to make sure the extra bytes written by putInt/putLong not affect result
+                for (int j = 0; j < 64; j++) {
+                    buf.put(j, (byte) -1);
+                }
+                writeUnsignedInt32ValueOnly(buf, v1);
+                assertEquals(accurateUnsignedIntSize(v1), buf.position());
+                writeUnsignedInt64ValueOnly(buf, v2);
+                writeUnsignedInt32ValueOnly(buf, 1);
+                buf.flip();
+                assertEquals(v1, PbUtil.readUnsignedInt32(buf));
+                assertEquals(v2, PbUtil.readUnsignedInt64(buf));
+                assertEquals(1, PbUtil.readUnsignedInt32(buf));
+                assertEquals(0, buf.remaining());
+            }
+        }
+    }
+
     @Test
     public void testAccurateUnsignedIntSizeWithTag() {
         assertEquals(0, accurateUnsignedIntSize(100, 0));
@@ -22,9 +22,12 @@ import com.github.dtprj.dongting.common.Timestamp;
 import org.junit.jupiter.api.Test;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 /**
  * @author huangli
@@ -119,4 +122,52 @@ public class StrDecoderTest {
         s = decoder.decode(decodeContext, buf, buf.capacity(), 20);
         assertEquals(new String(bytes, 0, buf.capacity()), s);
     }
+
+    @Test
+    public void testIntern() {
+        DecodeContext c = new DecodeContext();
+        for (String str : new String[]{"key1", ""}) {
+            byte[] b = str.getBytes(StandardCharsets.UTF_8);
+            String s1 = StrDecoder.INTERN_INSTANCE.decode(c, ByteBuffer.wrap(b), b.length, 0);
+            // cached when seen twice
+            String s2 = StrDecoder.INTERN_INSTANCE.decode(c, ByteBuffer.wrap(b), b.length, 0);
+            String s3 = StrDecoder.INTERN_INSTANCE.decode(c, ByteBuffer.wrap(b), b.length, 0);
+            assertEquals(str, s1);
+            assertEquals(str, s2);
+            assertSame(s2, s3);
+            String s4 = StrDecoder.INSTANCE.decode(c, ByteBuffer.wrap(b), b.length, 0);
+            assertEquals(str, s4);
+        }
+        // non-ASCII strings are not cached
+        byte[] u = "键".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("键", StrDecoder.INTERN_INSTANCE.decode(c, ByteBuffer.wrap(u), u.length, 0));
+        }
+        byte[] b = "key2".getBytes(StandardCharsets.UTF_8);
+        String s1 = StrDecoder.INSTANCE.decode(c, ByteBuffer.wrap(b), b.length, 0);
+        String s2 = StrDecoder.INSTANCE.decode(c, ByteBuffer.wrap(b), b.length, 0);
+        assertNotSame(s1, s2);
+    }
+
+    @Test
+    public void testInternNotEvictedByOneShotStrings() {
+        DecodeContext c = new DecodeContext();
+        byte[] hot = "hotKey".getBytes(StandardCharsets.UTF_8);
+        StrDecoder.INTERN_INSTANCE.decode(c, ByteBuffer.wrap(hot), hot.length, 0);
+        String s1 = StrDecoder.INTERN_INSTANCE.decode(c, ByteBuffer.wrap(hot), hot.length, 0);
+        for (int i = 0; i < 10000; i++) {
+            byte[] b = ("key" + i).getBytes(StandardCharsets.UTF_8);
+            StrDecoder.INTERN_INSTANCE.decode(c, ByteBuffer.wrap(b), b.length, 0);
+        }
+        assertSame(s1, StrDecoder.INTERN_INSTANCE.decode(c, ByteBuffer.wrap(hot), hot.length, 0));
+    }
+
+    @Test
+    public void testDecodeUTF8() {
+        String str = "abc中文😀";
+        byte[] b = str.getBytes(StandardCharsets.UTF_8);
+        assertEquals(str, StrDecoder.decodeUTF8(b, 0, b.length));
+        assertEquals("abc", StrDecoder.decodeUTF8(b, 0, 3));
+        assertEquals("bc", StrDecoder.decodeAscii(b, 1, 2));
+    }
 }
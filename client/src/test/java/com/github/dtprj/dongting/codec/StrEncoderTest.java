@@ -0,0 +1,62 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author huangli
+ */
+public class StrEncoderTest {
+
+    private static void test(String str, boolean calcSizeFirst) {
+        byte[] expect = str.getBytes(StandardCharsets.UTF_8);
+        StrEncoder encoder = new StrEncoder();
+        if (calcSizeFirst) {
+            assertEquals(expect.length, encoder.actualSize(str));
+        }
+        ByteBuffer all = ByteBuffer.allocate(expect.length);
+        while (true) {
+            ByteBuffer buf = ByteBuffer.allocate(3);
+            boolean finish = encoder.encode(null, buf, str);
+            buf.flip();
+            all.put(buf);
+            if (finish) {
+                break;
+            }
+            assertFalse(buf.hasRemaining());
+        }
+        assertArrayEquals(expect, all.array());
+    }
+
+    @Test
+    public void testEncode() {
+        for (boolean b : new boolean[]{true, false}) {
+            test("", b);
+            test("abcdefghijk", b);
+            test("abc中文😀", b);
+        }
+        assertTrue(new StrEncoder().encode(null, ByteBuffer.allocate(0), null));
+    }
+}
@@ -17,6 +17,7 @@ package com.github.dtprj.dongting.common;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
@@ -158,4 +159,42 @@ public class IntObjMapTest {
             return true;
         }));
     }
+
+    @Test
+    public void testRandomOpsAndShrink() {
+        Random r = new Random();
+        IntObjMap<String> m = new IntObjMap<>();
+        HashMap<Integer, String> expect = new HashMap<>();
+        for (int loop = 0; loop < 5; loop++) {
+            // sequential keys, like raft index and seq
+            for (int i = 0; i < 3000; i++) {
+                int key = loop * 1000 + i;
+                assertEquals(expect.put(key, "v" + key), m.put(key, "v" + key));
+            }
+            for (int i = 0; i < 3000; i++) {
+                int key = r.nextInt(2000) - 1000;
+                if (r.nextBoolean()) {
+                    assertEquals(expect.remove(key), m.remove(key));
+                } else {
+                    assertEquals(expect.put(key, "x" + key), m.put(key, "x" + key));
+                }
+            }
+            m.forEach((k, v) -> {
+                assertEquals(expect.get(k), v);
+                if (r.nextInt(10) != 0) {
+                    expect.remove(k);
+                    return false;
+                }
+                return true;
+            });
+            assertEquals(expect.size(), m.size());
+            for (Integer k : expect.keySet()) {
+                assertEquals(expect.get(k), m.get(k));
+            }
+        }
+        expect.keySet().forEach(m::remove);
+        assertEquals(0, m.size());
+        m.put(1, "1");
+        assertEquals("1", m.get(1));
+    }
 }
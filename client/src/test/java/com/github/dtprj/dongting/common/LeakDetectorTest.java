@@ -0,0 +1,122 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.common;
+
+import com.github.dtprj.dongting.buf.RefBuffer;
+import com.github.dtprj.dongting.buf.RefBufferFactory;
+import com.github.dtprj.dongting.buf.SimpleByteBufferPool;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * @author huangli
+ */
+public class LeakDetectorTest {
+
+    private final RefBufferFactory factory = new RefBufferFactory(
+            new SimpleByteBufferPool(new Timestamp(), false, 0), 0);
+
+    @BeforeAll
+    public static void checkEnabled() {
+        // the leak-detect-test execution in pom.xml runs this test with -Ddt.leakDetect=true
+        assumeTrue(LeakDetector.ENABLED, "run with -Ddt.leakDetect=true -Ddt.leakDetectSampleInterval=1");
+    }
+
+    private static void gcAndReport(long oldCount) throws InterruptedException {
+        for (int i = 0; i < 50 && LeakDetector.getLeakCount() == oldCount; i++) {
+            System.gc();
+            Thread.sleep(10);
+            LeakDetector.reportLeaks();
+        }
+    }
+
+    @Test
+    public void testRefBufferLeak() throws Exception {
+        long oldCount = LeakDetector.getLeakCount();
+        RefBuffer rb = factory.create(1024);
+        rb.retain();
+        rb.release();
+        //noinspection UnusedAssignment
+        rb = null;
+        gcAndReport(oldCount);
+        assertEquals(oldCount + 1, LeakDetector.getLeakCount());
+    }
+
+    @Test
+    public void testRefBufferReleased() throws Exception {
+        long oldCount = LeakDetector.getLeakCount();
+        RefBuffer rb = factory.create(1024);
+        rb.release();
+        //noinspection UnusedAssignment
+        rb = null;
+        System.gc();
+        Thread.sleep(10);
+        LeakDetector.reportLeaks();
+        assertEquals(oldCount, LeakDetector.getLeakCount());
+    }
+
+    @Test
+    public void testRefBufferBadRelease() {
+        long oldCount = LeakDetector.getBadReleaseCount();
+        RefBuffer rb = factory.create(1024);
+        rb.release();
+        assertThrows(DtException.class, rb::release);
+        assertEquals(oldCount + 1, LeakDetector.getBadReleaseCount());
+    }
+
+    @Test
+    public void testLeak() throws Exception {
+        long oldCount = LeakDetector.getLeakCount();
+        LeakDetector.LeakTrace trace = LeakDetector.newTrace(new RefCount(true, false));
+        trace.touch();
+        gcAndReport(oldCount);
+        assertNull(trace.get());
+        assertEquals(oldCount + 1, LeakDetector.getLeakCount());
+    }
+
+    @Test
+    public void testReleased() throws Exception {
+        long oldCount = LeakDetector.getLeakCount();
+        RefCount rc = new RefCount(true, false);
+        LeakDetector.LeakTrace trace = LeakDetector.newTrace(rc);
+        rc.release();
+        trace.close();
+        //noinspection UnusedAssignment
+        rc = null;
+        System.gc();
+        Thread.sleep(10);
+        LeakDetector.reportLeaks();
+        assertEquals(oldCount, LeakDetector.getLeakCount());
+    }
+
+    @Test
+    public void testBadRelease() {
+        long oldCount = LeakDetector.getBadReleaseCount();
+        RefCount rc = new RefCount(true, false);
+        LeakDetector.LeakTrace trace = LeakDetector.newTrace(rc);
+        rc.release();
+        trace.close();
+        DtException e = assertThrows(DtException.class, rc::release);
+        trace.reportBadRelease(e);
+        assertTrue(LeakDetector.getBadReleaseCount() > oldCount);
+    }
+}
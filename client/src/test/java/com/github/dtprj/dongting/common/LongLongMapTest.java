@@ -0,0 +1,102 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author huangli
+ */
+public class LongLongMapTest {
+    @Test
+    public void simpleTest() {
+        LongLongMap m = new LongLongMap(8, 0.75f, -1);
+        assertEquals(-1, m.get(1));
+        assertEquals(-1, m.remove(1));
+        assertEquals(-1, m.put(1, 100));
+        assertEquals(-1, m.put(0, 200));
+        assertEquals(2, m.size());
+        assertTrue(m.containsKey(0));
+        assertTrue(m.containsKey(1));
+        assertFalse(m.containsKey(2));
+        assertEquals(100, m.get(1));
+        assertEquals(200, m.get(0));
+        assertEquals(100, m.put(1, 101));
+        assertEquals(200, m.remove(0));
+        assertFalse(m.containsKey(0));
+        assertEquals(101, m.remove(1));
+        assertEquals(0, m.size());
+    }
+
+    @Test
+    public void testRandomOps() {
+        Random r = new Random();
+        LongLongMap m = new LongLongMap();
+        HashMap<Long, Long> expect = new HashMap<>();
+        for (int loop = 0; loop < 5; loop++) {
+            for (int i = 0; i < 3000; i++) {
+                long key = loop * 1000 + i;
+                Long old = expect.put(key, key * 2);
+                assertEquals(old == null ? 0 : old, m.put(key, key * 2));
+            }
+            for (int i = 0; i < 3000; i++) {
+                long key = r.nextInt(2000) - 1000L;
+                Long old;
+                if (r.nextBoolean()) {
+                    old = expect.remove(key);
+                    assertEquals(old == null ? 0 : old, m.remove(key));
+                } else {
+                    old = expect.put(key, key + 1);
+                    assertEquals(old == null ? 0 : old, m.put(key, key + 1));
+                }
+            }
+            m.forEach((k, v) -> {
+                assertEquals(expect.get(k), v);
+                if (r.nextInt(10) != 0) {
+                    expect.remove(k);
+                    return false;
+                }
+                return true;
+            });
+            assertEquals(expect.size(), m.size());
+            for (Long k : expect.keySet()) {
+                assertEquals(expect.get(k), m.get(k));
+            }
+        }
+    }
+
+    @Test
+    public void testInVisitStatus() {
+        LongLongMap m = new LongLongMap();
+        m.put(1, 1);
+        assertThrows(IllegalStateException.class, () -> m.forEach((k, v) -> {
+            m.forEach((k2, v2) -> true);
+            return true;
+        }));
+        assertThrows(IllegalStateException.class, () -> m.forEach((k, v) -> {
+            m.put(2, 2);
+            return true;
+        }));
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.log;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author huangli
+ */
+public class AsyncLogTest {
+
+    private static class RecordFactory implements DtLogFactory {
+        final List<String> records = Collections.synchronizedList(new ArrayList<>());
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        volatile Thread writeThread;
+        volatile CountDownLatch blockLatch;
+        final CountDownLatch blockedLatch = new CountDownLatch(1);
+
+        @Override
+        public DtLog getLogger(String name) {
+            return (DtLog) Proxy.newProxyInstance(DtLog.class.getClassLoader(), new Class[]{DtLog.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().startsWith("is")) {
+                            return true;
+                        }
+                        if (name.equals(AsyncLogFactory.class.getName())) {
+                            return null;
+                        }
+                        CountDownLatch latch = blockLatch;
+                        if (latch != null) {
+                            blockedLatch.countDown();
+                            latch.await();
+                        }
+                        writeThread = Thread.currentThread();
+                        records.add(method.getName() + ":" + args[0]);
+                        if (args.length > 1) {
+                            errors.add((Throwable) args[1]);
+                        }
+                        return null;
+                    });
+        }
+
+        @Override
+        public DtLog getLogger(Class<?> clazz) {
+            return getLogger(clazz.getName());
+        }
+    }
+
+    @Test
+    public void testFormat() {
+        RecordFactory rf = new RecordFactory();
+        AsyncLogFactory f = new AsyncLogFactory(rf, 16, true);
+        DtLog log = f.getLogger(AsyncLogTest.class);
+        Exception ex = new Exception();
+        log.debug("d");
+        log.info("i {}", 1);
+        log.warn("w {} {}", 1, 2);
+        log.error("e {} {} {}", 1, 2, 3);
+        log.info("t", ex);
+        log.info("t {}", 1, ex);
+        assertTrue(f.flush(5, TimeUnit.SECONDS));
+        assertEquals(6, rf.records.size());
+        assertEquals("debug:d", rf.records.get(0));
+        assertEquals("info:i 1", rf.records.get(1));
+        assertEquals("warn:w 1 2", rf.records.get(2));
+        assertEquals("error:e 1 2 3", rf.records.get(3));
+        assertEquals("info:t", rf.records.get(4));
+        assertEquals("info:t 1", rf.records.get(5));
+        assertEquals(2, rf.errors.size());
+        assertSame(ex, rf.errors.get(0));
+        assertSame(ex, rf.errors.get(1));
+        assertNotEquals(Thread.currentThread(), rf.writeThread);
+
+        f.close();
+        log.info("after close");
+        assertEquals("info:after close", rf.records.get(6));
+        assertSame(Thread.currentThread(), rf.writeThread);
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        RecordFactory rf = new RecordFactory();
+        AsyncLogFactory f = new AsyncLogFactory(rf, 4, false);
+        DtLog log = f.getLogger(AsyncLogTest.class);
+        CountDownLatch latch = new CountDownLatch(1);
+        rf.blockLatch = latch;
+        log.info("0");
+        // wait the writer thread take the first event and block
+        assertTrue(rf.blockedLatch.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 10; i++) {
+            log.info("{}", i);
+        }
+        assertTrue(f.getDroppedCount() > 0);
+        rf.blockLatch = null;
+        latch.countDown();
+        assertTrue(f.flush(5, TimeUnit.SECONDS));
+        assertEquals(11 - f.getDroppedCount(), rf.records.size());
+        assertEquals("info:0", rf.records.get(0));
+        for (int i = 1; i < rf.records.size(); i++) {
+            int prev = Integer.parseInt(rf.records.get(i - 1).substring("info:".length()));
+            int cur = Integer.parseInt(rf.records.get(i).substring("info:".length()));
+            assertTrue(cur > prev);
+        }
+        f.close();
+    }
+
+    @Test
+    public void testBlockWhenFull() throws Exception {
+        RecordFactory rf = new RecordFactory();
+        AsyncLogFactory f = new AsyncLogFactory(rf, 4, true);
+        DtLog log = f.getLogger(AsyncLogTest.class);
+        int threads = 4;
+        int count = 2000;
+        Thread[] ts = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            int t = i;
+            ts[i] = new Thread(() -> {
+                for (int j = 0; j < count; j++) {
+                    log.info("{} {}", t, j);
+                }
+            });
+            ts[i].start();
+        }
+        for (Thread t : ts) {
+            t.join();
+        }
+        assertTrue(f.flush(5, TimeUnit.SECONDS));
+        assertEquals(0, f.getDroppedCount());
+        assertEquals(threads * count, rf.records.size());
+        int[] next = new int[threads];
+        for (String s : rf.records) {
+            String[] parts = s.substring("info:".length()).split(" ");
+            int t = Integer.parseInt(parts[0]);
+            assertEquals(next[t]++, Integer.parseInt(parts[1]));
+        }
+        f.close();
+    }
+
+    @Test
+    public void testJdkDelegate() {
+        AsyncLogFactory f = new AsyncLogFactory(JdkFactory.INSTANCE, 1024, true);
+        Logger.getLogger(AsyncLogTest.class.getName()).setLevel(Level.ALL);
+        JdkLogTest.testLog(f.getLogger(AsyncLogTest.class));
+        assertTrue(f.flush(5, TimeUnit.SECONDS));
+        f.close();
+    }
+}
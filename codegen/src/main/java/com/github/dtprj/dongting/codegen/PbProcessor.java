@@ -0,0 +1,408 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.codegen;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generate XxxCodec for the classes annotated by com.github.dtprj.dongting.codec.PbMessage.
+ * <p>
+ * The annotations are matched by name, so this processor has no dependency on dongting-client. The generated code
+ * use no reflection.
+ *
+ * @author huangli
+ */
+public class PbProcessor extends AbstractProcessor {
+
+    static final String MESSAGE_ANNOTATION = "com.github.dtprj.dongting.codec.PbMessage";
+    static final String FIELD_ANNOTATION = "com.github.dtprj.dongting.codec.PbField";
+
+    private static final int KIND_INT = 1;
+    private static final int KIND_LONG = 2;
+    private static final int KIND_BOOL = 3;
+    private static final int KIND_STRING = 4;
+    private static final int KIND_BYTES = 5;
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(MESSAGE_ANNOTATION);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element e : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (e.getKind() != ElementKind.CLASS) {
+                    error(e, "@PbMessage should be used on class");
+                    continue;
+                }
+                TypeElement type = (TypeElement) e;
+                List<FieldInfo> fields = parseFields(type);
+                if (fields != null) {
+                    generate(type, fields);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void error(Element e, String msg) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg, e);
+    }
+
+    private static final class FieldInfo {
+        String name;
+        int index;
+        boolean fixed;
+        int kind;
+        String getter;
+        String setter;
+    }
+
+    private List<FieldInfo> parseFields(TypeElement type) {
+        List<FieldInfo> list = new ArrayList<>();
+        Set<Integer> indexes = new HashSet<>();
+        boolean ok = true;
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.FIELD) {
+                continue;
+            }
+            AnnotationMirror am = findAnnotation(member, FIELD_ANNOTATION);
+            if (am == null) {
+                continue;
+            }
+            VariableElement field = (VariableElement) member;
+            FieldInfo fi = new FieldInfo();
+            fi.name = field.getSimpleName().toString();
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> en
+                    : processingEnv.getElementUtils().getElementValuesWithDefaults(am).entrySet()) {
+                String key = en.getKey().getSimpleName().toString();
+                if ("index".equals(key)) {
+                    fi.index = (Integer) en.getValue().getValue();
+                } else if ("fixed".equals(key)) {
+                    fi.fixed = (Boolean) en.getValue().getValue();
+                }
+            }
+            if (fi.index <= 0) {
+                error(field, "bad pb field index: " + fi.index);
+                ok = false;
+                continue;
+            }
+            if (!indexes.add(fi.index)) {
+                error(field, "duplicated pb field index: " + fi.index);
+                ok = false;
+                continue;
+            }
+            fi.kind = kindOf(field.asType());
+            if (fi.kind == 0) {
+                error(field, "pb field type not supported: " + field.asType());
+                ok = false;
+                continue;
+            }
+            if (fi.fixed && fi.kind != KIND_INT && fi.kind != KIND_LONG) {
+                error(field, "fixed is only supported by int and long field");
+                ok = false;
+                continue;
+            }
+            if (field.getModifiers().contains(Modifier.STATIC) || field.getModifiers().contains(Modifier.FINAL)) {
+                error(field, "pb field should not be static or final");
+                ok = false;
+                continue;
+            }
+            if (!initAccessor(type, field, fi)) {
+                ok = false;
+                continue;
+            }
+            list.add(fi);
+        }
+        return ok ? list : null;
+    }
+
+    private static AnnotationMirror findAnnotation(Element e, String name) {
+        for (AnnotationMirror am : e.getAnnotationMirrors()) {
+            TypeElement te = (TypeElement) am.getAnnotationType().asElement();
+            if (te.getQualifiedName().contentEquals(name)) {
+                return am;
+            }
+        }
+        return null;
+    }
+
+    private static int kindOf(TypeMirror t) {
+        switch (t.getKind()) {
+            case INT:
+                return KIND_INT;
+            case LONG:
+                return KIND_LONG;
+            case BOOLEAN:
+                return KIND_BOOL;
+            case ARRAY:
+                return ((ArrayType) t).getComponentType().getKind() == TypeKind.BYTE ? KIND_BYTES : 0;
+            case DECLARED:
+                return "java.lang.String".equals(t.toString()) ? KIND_STRING : 0;
+            default:
+                return 0;
+        }
+    }
+
+    private boolean initAccessor(TypeElement type, VariableElement field, FieldInfo fi) {
+        if (!field.getModifiers().contains(Modifier.PRIVATE)) {
+            fi.getter = fi.name;
+            fi.setter = null;
+            return true;
+        }
+        String cap = Character.toUpperCase(fi.name.charAt(0)) + fi.name.substring(1);
+        String getter = (fi.kind == KIND_BOOL ? "is" : "get") + cap;
+        String setter = "set" + cap;
+        boolean hasGetter = false;
+        boolean hasSetter = false;
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.METHOD || member.getModifiers().contains(Modifier.PRIVATE)) {
+                continue;
+            }
+            ExecutableElement m = (ExecutableElement) member;
+            String name = m.getSimpleName().toString();
+            if (name.equals(getter) && m.getParameters().isEmpty()) {
+                hasGetter = true;
+            } else if (name.equals(setter) && m.getParameters().size() == 1) {
+                hasSetter = true;
+            }
+        }
+        if (!hasGetter || !hasSetter) {
+            error(field, "private pb field should have " + getter + "() and " + setter + "()");
+            return false;
+        }
+        fi.getter = getter + "()";
+        fi.setter = setter;
+        return true;
+    }
+
+    private void generate(TypeElement type, List<FieldInfo> fields) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String pkgName = pkg.isUnnamed() ? null : pkg.getQualifiedName().toString();
+        String msgName = type.getSimpleName().toString();
+        String codecName = msgName + "Codec";
+        String msgType = type.getQualifiedName().toString();
+        StringBuilder sb = new StringBuilder(4096);
+        if (pkgName != null) {
+            sb.append("package ").append(pkgName).append(";\n\n");
+        }
+        sb.append("/**\n * Generated by dongting codegen from ").append(msgName).append(", do not edit.\n */\n");
+        sb.append("public final class ").append(codecName).append(" {\n\n");
+        sb.append("    private ").append(codecName).append("() {\n    }\n\n");
+
+        // size
+        sb.append("    public static int calcSize(").append(msgType).append(" m) {\n");
+        sb.append("        return 0");
+        for (FieldInfo f : fields) {
+            sb.append("\n                + ").append(sizeExpr(f));
+        }
+        sb.append(";\n    }\n\n");
+
+        // encode
+        sb.append("    /**\n     * the buf should have at least calcSize(m) bytes remaining.\n     */\n");
+        sb.append("    public static void encode(java.nio.ByteBuffer buf, ").append(msgType).append(" m) {\n");
+        for (FieldInfo f : fields) {
+            sb.append("        ").append(writeStatement(f)).append('\n');
+        }
+        sb.append("    }\n\n");
+
+        generateCallback(sb, msgType, fields);
+        generateWriteFrame(sb, codecName, msgName, msgType);
+        sb.append("}\n");
+
+        String fileName = pkgName == null ? codecName : pkgName + "." + codecName;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(fileName, type);
+            try (Writer w = file.openWriter()) {
+                w.write(sb.toString());
+            }
+        } catch (IOException e) {
+            error(type, "generate " + fileName + " fail: " + e);
+        }
+    }
+
+    private static String get(FieldInfo f) {
+        return "m." + f.getter;
+    }
+
+    private static String set(FieldInfo f, String value) {
+        if (f.setter == null) {
+            return "result." + f.name + " = " + value + ";";
+        } else {
+            return "result." + f.setter + "(" + value + ");";
+        }
+    }
+
+    private static String sizeExpr(FieldInfo f) {
+        String util = "com.github.dtprj.dongting.codec.PbUtil.";
+        switch (f.kind) {
+            case KIND_INT:
+                return util + (f.fixed ? "accurateFix32Size(" : "accurateUnsignedIntSize(") + f.index + ", " + get(f) + ")";
+            case KIND_LONG:
+                return util + (f.fixed ? "accurateFix64Size(" : "accurateUnsignedLongSize(") + f.index + ", " + get(f) + ")";
+            case KIND_BOOL:
+                return util + "accurateUnsignedIntSize(" + f.index + ", " + get(f) + " ? 1 : 0)";
+            case KIND_STRING:
+                return util + "accurateStrSizeUTF8(" + f.index + ", " + get(f) + ")";
+            case KIND_BYTES:
+                return "(" + get(f) + " == null ? 0 : " + util + "accurateLengthDelimitedSize(" + f.index + ", "
+                        + get(f) + ".length))";
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private static String writeStatement(FieldInfo f) {
+        String util = "com.github.dtprj.dongting.codec.PbUtil.";
+        switch (f.kind) {
+            case KIND_INT:
+                return util + (f.fixed ? "writeFix32(buf, " : "writeUnsignedInt32(buf, ") + f.index + ", " + get(f) + ");";
+            case KIND_LONG:
+                return util + (f.fixed ? "writeFix64(buf, " : "writeUnsignedInt64(buf, ") + f.index + ", " + get(f) + ");";
+            case KIND_BOOL:
+                return util + "writeUnsignedInt32(buf, " + f.index + ", " + get(f) + " ? 1 : 0);";
+            case KIND_STRING:
+                return util + "writeUTF8(buf, " + f.index + ", " + get(f) + ");";
+            case KIND_BYTES:
+                return util + "writeBytes(buf, " + f.index + ", " + get(f) + ");";
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private static void generateCallback(StringBuilder sb, String msgType, List<FieldInfo> fields) {
+        sb.append("    public static final class Callback extends com.github.dtprj.dongting.codec.PbCallback<")
+                .append(msgType).append("> {\n");
+        sb.append("        private final ").append(msgType).append(" result = new ").append(msgType).append("();\n\n");
+
+        StringBuilder varCases = new StringBuilder();
+        StringBuilder fix32Cases = new StringBuilder();
+        StringBuilder fix64Cases = new StringBuilder();
+        StringBuilder bytesCases = new StringBuilder();
+        for (FieldInfo f : fields) {
+            switch (f.kind) {
+                case KIND_INT:
+                    if (f.fixed) {
+                        appendCase(fix32Cases, f.index, set(f, "value"));
+                    } else {
+                        appendCase(varCases, f.index, set(f, "(int) value"));
+                    }
+                    break;
+                case KIND_LONG:
+                    appendCase(f.fixed ? fix64Cases : varCases, f.index, set(f, "value"));
+                    break;
+                case KIND_BOOL:
+                    appendCase(varCases, f.index, set(f, "value != 0"));
+                    break;
+                case KIND_STRING:
+                    appendBytesCase(bytesCases, f, "String", "parseUTF8");
+                    break;
+                case KIND_BYTES:
+                    appendBytesCase(bytesCases, f, "byte[]", "parseBytes");
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+        appendReadMethod(sb, "readVarNumber", "long", varCases);
+        appendReadMethod(sb, "readFix32", "int", fix32Cases);
+        appendReadMethod(sb, "readFix64", "long", fix64Cases);
+        if (bytesCases.length() > 0) {
+            sb.append("        @Override\n");
+            sb.append("        public boolean readBytes(int index, java.nio.ByteBuffer buf, int fieldLen, int currentPos) {\n");
+            sb.append("            switch (index) {\n").append(bytesCases).append("            }\n");
+            sb.append("            return true;\n        }\n\n");
+        }
+        sb.append("        @Override\n");
+        sb.append("        public ").append(msgType).append(" getResult() {\n");
+        sb.append("            return result;\n        }\n");
+        sb.append("    }\n\n");
+    }
+
+    private static void appendCase(StringBuilder sb, int index, String statement) {
+        sb.append("                case ").append(index).append(":\n");
+        sb.append("                    ").append(statement).append('\n');
+        sb.append("                    break;\n");
+    }
+
+    private static void appendBytesCase(StringBuilder sb, FieldInfo f, String type, String method) {
+        sb.append("                case ").append(f.index).append(": {\n");
+        sb.append("                    ").append(type).append(" v = ").append(method)
+                .append("(buf, fieldLen, currentPos);\n");
+        sb.append("                    if (v != null) {\n");
+        sb.append("                        ").append(set(f, "v")).append('\n');
+        sb.append("                    }\n");
+        sb.append("                    break;\n");
+        sb.append("                }\n");
+    }
+
+    private static void appendReadMethod(StringBuilder sb, String method, String valueType, StringBuilder cases) {
+        if (cases.length() == 0) {
+            return;
+        }
+        sb.append("        @Override\n");
+        sb.append("        public boolean ").append(method).append("(int index, ").append(valueType).append(" value) {\n");
+        sb.append("            switch (index) {\n").append(cases).append("            }\n");
+        sb.append("            return true;\n        }\n\n");
+    }
+
+    // named XxxWriteFrame, not to shadow com.github.dtprj.dongting.net.WriteFrame
+    private static void generateWriteFrame(StringBuilder sb, String codecName, String msgName, String msgType) {
+        String className = msgName + "WriteFrame";
+        sb.append("    public static final class ").append(className)
+                .append(" extends com.github.dtprj.dongting.net.SmallNoCopyWriteFrame {\n");
+        sb.append("        private final ").append(msgType).append(" data;\n\n");
+        sb.append("        public ").append(className).append("(").append(msgType).append(" data) {\n");
+        sb.append("            this.data = data;\n        }\n\n");
+        sb.append("        @Override\n");
+        sb.append("        protected int calcActualBodySize() {\n");
+        sb.append("            return ").append(codecName).append(".calcSize(data);\n        }\n\n");
+        sb.append("        @Override\n");
+        sb.append("        protected void encodeBody(java.nio.ByteBuffer buf) {\n");
+        sb.append("            ").append(codecName).append(".encode(buf, data);\n        }\n");
+        sb.append("    }\n");
+    }
+}
@@ -27,12 +27,15 @@ import com.github.dtprj.dongting.raft.server.RaftException;
 import com.github.dtprj.dongting.raft.server.RaftGroupConfigEx;
 import com.github.dtprj.dongting.raft.server.RaftInput;
 import com.github.dtprj.dongting.raft.server.RaftStatus;
+import com.github.dtprj.dongting.raft.sm.ExecBatchCallback;
 import com.github.dtprj.dongting.raft.sm.Snapshot;
 import com.github.dtprj.dongting.raft.sm.StateMachine;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
@@ -48,16 +51,28 @@ public class DtKV implements StateMachine {
     private final RaftGroupConfigEx groupConfig;
     private final RaftStatus raftStatus;
     private final ByteBufferPool heapPool;
+    private final StrDecoder keyDecoder;
 
+    // the writes may be executed in the apply executor while the snapshot is taken in raft thread, so the
+    // writes, the open snapshots and the gc bound are guarded by the lock of openSnapshots
     private final ArrayList<Snapshot> openSnapshots = new ArrayList<>();
     private long minOpenSnapshotIndex;
+    private long lastExecutedIndex;
 
     private volatile KvStatus kvStatus = new KvStatus(KvStatus.RUNNING, new Kv(), 0);
 
     public DtKV(RaftGroupConfigEx groupConfig) {
+        this(groupConfig, true);
+    }
+
+    /**
+     * @param internKey reuse the String instances of the repeated keys when decoding, see StrDecoder.INTERN_INSTANCE
+     */
+    public DtKV(RaftGroupConfigEx groupConfig, boolean internKey) {
         this.groupConfig = groupConfig;
         this.raftStatus = groupConfig.getRaftStatus();
         this.heapPool = groupConfig.getHeapPool().getPool();
+        this.keyDecoder = internKey ? StrDecoder.INTERN_INSTANCE : StrDecoder.INSTANCE;
     }
 
     @Override
@@ -65,9 +80,9 @@ public class DtKV implements StateMachine {
         switch (bizType) {
             case BIZ_TYPE_GET:
             case BIZ_TYPE_REMOVE:
-                return header ? StrDecoder.INSTANCE : null;
+                return header ? keyDecoder : null;
             case BIZ_TYPE_PUT:
-                return header ? StrDecoder.INSTANCE : ByteArrayDecoder.INSTANCE;
+                return header ? keyDecoder : ByteArrayDecoder.INSTANCE;
             default:
                 throw new IllegalArgumentException("unknown bizType " + bizType);
         }
@@ -90,15 +105,55 @@ public class DtKV implements StateMachine {
     public Object exec(long index, RaftInput input) {
         KvStatus kvStatus = this.kvStatus;
         ensureRunning(kvStatus);
+        return exec(kvStatus.kv, index, input);
+    }
+
+    @Override
+    public void execBatch(long[] indexes, List<RaftInput> inputs, ExecBatchCallback callback) {
+        int size = inputs.size();
+        Throwable[] errors = null;
+        // check status once per batch
+        KvStatus kvStatus = this.kvStatus;
+        try {
+            ensureRunning(kvStatus);
+        } catch (RaftException e) {
+            errors = new Throwable[size];
+            Arrays.fill(errors, e);
+            callback.finish(null, errors);
+            return;
+        }
+        Kv kv = kvStatus.kv;
+        Object[] results = new Object[size];
+        for (int i = 0; i < size; i++) {
+            try {
+                results[i] = exec(kv, indexes[i], inputs.get(i));
+            } catch (Exception e) {
+                if (errors == null) {
+                    errors = new Throwable[size];
+                }
+                errors[i] = e;
+            }
+        }
+        callback.finish(results, errors);
+    }
+
+    private Object exec(Kv kv, long index, RaftInput input) {
         String key = (String) input.getHeader();
         switch (input.getBizType()) {
             case BIZ_TYPE_GET:
-                return kvStatus.kv.get(key);
+                return kv.get(key);
             case BIZ_TYPE_PUT:
-                kvStatus.kv.put(index, key, (byte[]) input.getBody(), minOpenSnapshotIndex);
+                synchronized (openSnapshots) {
+                    kv.put(index, key, (byte[]) input.getBody(), minOpenSnapshotIndex);
+                    lastExecutedIndex = index;
+                }
                 return null;
             case BIZ_TYPE_REMOVE:
-                return kvStatus.kv.remove(index, key, minOpenSnapshotIndex);
+                synchronized (openSnapshots) {
+                    Boolean r = kv.remove(index, key, minOpenSnapshotIndex);
+                    lastExecutedIndex = index;
+                    return r;
+                }
             default:
                 throw new IllegalArgumentException("unknown bizType " + input.getBizType());
         }
@@ -107,6 +162,10 @@ public class DtKV implements StateMachine {
     @Override
     public void installSnapshot(long lastIncludeIndex, int lastIncludeTerm, long offset, boolean done, RefBuffer data) {
         newStatus(KvStatus.INSTALLING_SNAPSHOT, new Kv());
+        synchronized (openSnapshots) {
+            // the writes in the old kv are discarded
+            lastExecutedIndex = 0;
+        }
         ByteBuffer bb = data.getBuffer();
         Kv kv = kvStatus.kv;
         ConcurrentSkipListMap<String, Value> map = kv.map;
@@ -136,18 +195,26 @@ public class DtKV implements StateMachine {
     public Snapshot takeSnapshot(int currentTerm) {
         KvStatus kvStatus = this.kvStatus;
         ensureRunning(kvStatus);
-        KvSnapshot snapshot = new KvSnapshot(raftStatus.getLastApplied(), raftStatus.getCurrentTerm(), () -> kvStatus,
-                kvStatus, groupConfig.getHeapPool(), this::closeSnapshot);
-        openSnapshots.add(snapshot);
-        updateMaxMin();
-        return snapshot;
+        synchronized (openSnapshots) {
+            // the lastApplied may be behind the writes executed in the apply executor, the logs between them
+            // (if lastApplied is larger) don't change the kv
+            long index = Math.max(raftStatus.getLastApplied(), lastExecutedIndex);
+            KvSnapshot snapshot = new KvSnapshot(index, raftStatus.getCurrentTerm(), () -> kvStatus,
+                    kvStatus, groupConfig.getHeapPool(), this::closeSnapshot);
+            openSnapshots.add(snapshot);
+            updateMaxMin();
+            return snapshot;
+        }
     }
 
     private void closeSnapshot(Snapshot snapshot) {
-        openSnapshots.remove(snapshot);
-        updateMaxMin();
+        synchronized (openSnapshots) {
+            openSnapshots.remove(snapshot);
+            updateMaxMin();
+        }
     }
 
+    // in lock
     private void updateMaxMin() {
         long min = 0;
         for (Snapshot s : openSnapshots) {
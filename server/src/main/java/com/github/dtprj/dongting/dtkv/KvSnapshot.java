@@ -38,6 +38,9 @@ class KvSnapshot extends Snapshot {
     private final Iterator<Map.Entry<String, Value>> iterator;
     private final int epoch;
 
+    // the entry not fit in the last buffer
+    private Map.Entry<String, Value> pending;
+
     public KvSnapshot(long lastIncludedIndex, int lastIncludedTerm, Supplier<KvStatus> statusSupplier,
                       KvStatus kvStatus, RefBufferFactory heapPool,
                       Consumer<Snapshot> closeCallback) {
@@ -57,13 +60,15 @@ class KvSnapshot extends Snapshot {
         }
 
         RefBuffer refBuffer = null;
-        Map.Entry<String, Value> en;
-        while ((en = iterator.next()) != null) {
+        while (pending != null || iterator.hasNext()) {
+            Map.Entry<String, Value> en = pending != null ? pending : iterator.next();
+            pending = null;
             Value value = en.getValue();
             while (value != null && value.getRaftIndex() > lastIncludedIndex) {
                 value = value.getPrevious();
             }
-            if (value == null) {
+            if (value == null || value.getData() == null) {
+                // not exists or removed when the snapshot is taken
                 continue;
             }
             String key = en.getKey();
@@ -74,10 +79,12 @@ class KvSnapshot extends Snapshot {
                 return CompletableFuture.failedFuture(new RaftException("key + value overflow"));
             }
             if (refBuffer == null) {
-                refBuffer = heapPool.create(Math.min(128 * 1024, len));
+                refBuffer = heapPool.create(Math.max(128 * 1024, len));
             }
             ByteBuffer bb = refBuffer.getBuffer();
             if (bb.remaining() < len) {
+                pending = en;
+                bb.flip();
                 return CompletableFuture.completedFuture(refBuffer);
             }
             bb.putLong(value.getRaftIndex());
@@ -86,6 +93,9 @@ class KvSnapshot extends Snapshot {
             bb.putInt(data.length);
             bb.put(data);
         }
+        if (refBuffer != null) {
+            refBuffer.getBuffer().flip();
+        }
         return CompletableFuture.completedFuture(refBuffer);
     }
 
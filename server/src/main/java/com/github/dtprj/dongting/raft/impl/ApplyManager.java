@@ -24,6 +24,7 @@ import com.github.dtprj.dongting.log.BugLog;
 import com.github.dtprj.dongting.log.DtLog;
 import com.github.dtprj.dongting.log.DtLogs;
 import com.github.dtprj.dongting.raft.server.LogItem;
+import com.github.dtprj.dongting.raft.server.RaftException;
 import com.github.dtprj.dongting.raft.server.RaftExecTimeoutException;
 import com.github.dtprj.dongting.raft.server.RaftInput;
 import com.github.dtprj.dongting.raft.server.RaftOutput;
@@ -31,17 +32,31 @@ import com.github.dtprj.dongting.raft.sm.StateMachine;
 import com.github.dtprj.dongting.raft.store.RaftLog;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptySet;
 
 /**
+ * Apply the committed logs to the state machine in order. The committed logs found in one pass are executed by
+ * StateMachine.execBatch as a batch, in raft thread if the apply executor is null, otherwise in the apply
+ * executor. At most one batch of a group is in flight, so the logs are executed in order even if the executor
+ * has many threads. The lastApplied, read index and pending map cleanup are driven by the acknowledgements of
+ * the batches. The config change logs are still processed in raft thread when committed, only their lastApplied
+ * is acknowledged in order.
+ * <p>
+ * The snapshot install waits for the in flight batch by runWhenApplyIdle, no new batch is started while installing,
+ * and the queued logs covered by the snapshot are dropped by afterInstallSnapshot.
+ *
  * @author huangli
  */
 public class ApplyManager {
@@ -53,6 +68,9 @@ public class ApplyManager {
     private final Timestamp ts;
     private final EventBus eventBus;
     private final RaftStatusImpl raftStatus;
+    private final ReadIndexManager readIndexManager;
+    private final Executor applyExecutor;
+    private final int maxApplyingItems;
 
     private final DecodeContext decodeContext;
 
@@ -63,20 +81,43 @@ public class ApplyManager {
 
     private RaftLog.LogIterator logIterator;
 
+    // the entries wait for the next batch of apply executor
+    private ArrayList<ApplyEntry> applyQueue = new ArrayList<>();
+    private boolean applyRunning;
+    // the tasks (snapshot install) wait for the in flight batch, run in order
+    private ArrayList<Runnable> idleTasks;
+
+    private static final class ApplyEntry {
+        final long index;
+        final RaftTask rt;
+        final boolean read;
+
+        ApplyEntry(long index, RaftTask rt, boolean read) {
+            this.index = index;
+            this.rt = rt;
+            this.read = read;
+        }
+    }
+
     public ApplyManager(int selfNodeId, RaftLog raftLog, StateMachine stateMachine,
-                        RaftStatusImpl raftStatus, EventBus eventBus, RefBufferFactory heapPool) {
+                        RaftStatusImpl raftStatus, EventBus eventBus, RefBufferFactory heapPool,
+                        ReadIndexManager readIndexManager, Executor applyExecutor, int maxApplyingItems) {
         this.selfNodeId = selfNodeId;
         this.raftLog = raftLog;
         this.stateMachine = stateMachine;
         this.ts = raftStatus.getTs();
         this.raftStatus = raftStatus;
         this.eventBus = eventBus;
+        this.readIndexManager = readIndexManager;
+        this.applyExecutor = applyExecutor;
+        this.maxApplyingItems = maxApplyingItems;
         this.decodeContext = new DecodeContext();
         this.decodeContext.setHeapPool(heapPool);
     }
 
     public void apply(RaftStatusImpl raftStatus) {
         if (waiting) {
+            flushApplyQueue();
             return;
         }
         if (appliedIndex < raftStatus.getLastApplied()) {
@@ -85,17 +126,22 @@ public class ApplyManager {
         long diff = raftStatus.getCommitIndex() - appliedIndex;
         PendingMap pendingMap = raftStatus.getPendingRequests();
         while (diff > 0) {
+            if (appliedIndex - raftStatus.getLastApplied() >= maxApplyingItems) {
+                // back pressure, resume after the batch acknowledged
+                break;
+            }
             long index = appliedIndex + 1;
             RaftTask rt = pendingMap.get(index);
             if (rt == null || rt.input.isReadOnly()) {
                 waiting = true;
                 int limit = (int) Math.min(diff, 1024L);
+                limit = (int) Math.min(limit, maxApplyingItems - (appliedIndex - raftStatus.getLastApplied()));
                 if (logIterator == null) {
                     logIterator = raftLog.openIterator(raftStatus::isStop);
                 }
                 logIterator.next(index, limit, 16 * 1024 * 1024)
                         .whenCompleteAsync(this::resumeAfterLoad, raftStatus.getRaftExecutor());
-                return;
+                break;
             } else {
                 if (logIterator != null) {
                     DtUtil.close(logIterator);
@@ -107,6 +153,7 @@ public class ApplyManager {
                 diff--;
             }
         }
+        flushApplyQueue();
     }
 
     private void resumeAfterLoad(List<LogItem> items, Throwable ex) {
@@ -184,8 +231,7 @@ public class ApplyManager {
     private void execChain(long index, RaftTask rt) {
         switch (rt.type) {
             case LogItem.TYPE_NORMAL:
-                execWrite(index, rt);
-                afterExec(index, rt);
+                submit(index, rt);
                 break;
             case LogItem.TYPE_PREPARE_CONFIG_CHANGE:
                 doPrepare(index, rt);
@@ -193,33 +239,239 @@ public class ApplyManager {
             case LogItem.TYPE_DROP_CONFIG_CHANGE:
                 doAbort();
                 notifyConfigChange(index, rt);
-                afterExec(index, rt);
+                submit(index, rt);
                 break;
             case LogItem.TYPE_COMMIT_CONFIG_CHANGE:
                 doCommit();
                 notifyConfigChange(index, rt);
-                afterExec(index, rt);
+                submit(index, rt);
                 break;
             default:
-                afterExec(index, rt);
+                submit(index, rt);
                 // heartbeat etc.
                 break;
         }
     }
 
+    private void submit(long index, RaftTask rt) {
+        applyQueue.add(new ApplyEntry(index, rt, false));
+    }
+
+    private void flushApplyQueue() {
+        if (applyRunning || raftStatus.isInstallSnapshot() || applyQueue.size() == 0) {
+            return;
+        }
+        ArrayList<ApplyEntry> batch = applyQueue;
+        applyQueue = new ArrayList<>();
+        applyRunning = true;
+        if (applyExecutor == null) {
+            runBatch(batch);
+            return;
+        }
+        try {
+            applyExecutor.execute(() -> runBatch(batch));
+        } catch (RejectedExecutionException e) {
+            log.warn("apply executor rejected, retry after 1 second. groupId={}", raftStatus.getGroupId());
+            // put the batch back to the head of the queue, keep applyRunning true so nothing is flushed before retry
+            batch.addAll(applyQueue);
+            applyQueue = batch;
+            RaftUtil.SCHEDULED_SERVICE.schedule(() -> raftStatus.getRaftExecutor().execute(this::retryFlush),
+                    1, TimeUnit.SECONDS);
+        }
+    }
+
+    private void retryFlush() {
+        if (raftStatus.isStop()) {
+            return;
+        }
+        applyRunning = false;
+        runIdleTasks();
+        flushApplyQueue();
+    }
+
+    // run in apply executor, or in raft thread if the apply executor is null
+    @SuppressWarnings("ForLoopReplaceableByForEach")
+    private void runBatch(ArrayList<ApplyEntry> batch) {
+        int writeCount = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            ApplyEntry e = batch.get(i);
+            if (!e.read && e.rt.type == LogItem.TYPE_NORMAL) {
+                writeCount++;
+            }
+        }
+        if (writeCount == 0) {
+            afterExecBatch(batch, null, null);
+            return;
+        }
+        long[] indexes = new long[writeCount];
+        ArrayList<RaftInput> inputs = new ArrayList<>(writeCount);
+        for (int i = 0, j = 0; i < batch.size(); i++) {
+            ApplyEntry e = batch.get(i);
+            if (!e.read && e.rt.type == LogItem.TYPE_NORMAL) {
+                indexes[j++] = e.index;
+                inputs.add(e.rt.input);
+            }
+        }
+        try {
+            stateMachine.execBatch(indexes, inputs, (results, errors) -> afterExecBatch(batch, results, errors));
+        } catch (Throwable ex) {
+            log.warn("exec batch failed. {}", ex);
+            Throwable[] errors = new Throwable[writeCount];
+            Arrays.fill(errors, ex);
+            afterExecBatch(batch, null, errors);
+        }
+    }
+
+    // complete the writes and exec the reads of the batch, called by the callback of execBatch
+    @SuppressWarnings("ForLoopReplaceableByForEach")
+    private void afterExecBatch(ArrayList<ApplyEntry> batch, Object[] results, Throwable[] errors) {
+        try {
+            for (int i = 0, j = 0; i < batch.size(); i++) {
+                ApplyEntry e = batch.get(i);
+                if (e.read) {
+                    doExecRead(e.index, e.rt);
+                } else {
+                    if (e.rt.type == LogItem.TYPE_NORMAL) {
+                        completeWrite(e.index, e.rt, results, errors, j++);
+                    }
+                    execReaders(e.index, e.rt);
+                }
+            }
+        } finally {
+            RaftExecutor raftExecutor = raftStatus.getRaftExecutor();
+            if (raftExecutor.inRaftThread()) {
+                // executed inline, ack at once so lastApplied is exact when the state machine takes snapshot
+                ackBatch(batch);
+                if (raftStatus.getCommitIndex() > appliedIndex || applyQueue.size() > 0) {
+                    // resume if blocked by back pressure or queued, not recursively
+                    raftExecutor.execute(() -> apply(raftStatus));
+                }
+            } else {
+                raftExecutor.execute(() -> afterBatch(batch));
+            }
+        }
+    }
+
+    private void completeWrite(long index, RaftTask rt, Object[] results, Throwable[] errors, int i) {
+        Throwable ex = errors == null ? null : errors[i];
+        if (ex == null) {
+            rt.future.complete(new RaftOutput(index, results == null ? null : results[i]));
+        } else {
+            log.warn("exec write failed. {}", ex);
+            rt.future.completeExceptionally(ex);
+        }
+    }
+
+    private void afterBatch(ArrayList<ApplyEntry> batch) {
+        ackBatch(batch);
+        flushApplyQueue();
+        // resume if blocked by back pressure
+        apply(raftStatus);
+    }
+
+    @SuppressWarnings("ForLoopReplaceableByForEach")
+    private void ackBatch(ArrayList<ApplyEntry> batch) {
+        applyRunning = false;
+        for (int i = 0; i < batch.size(); i++) {
+            ApplyEntry e = batch.get(i);
+            if (!e.read) {
+                afterExec(e.index, e.rt);
+                // release reader memory
+                e.rt.nextReader = null;
+            }
+        }
+        runIdleTasks();
+    }
+
+    /**
+     * run the task in raft thread when no batch is executing in the state machine, called in raft thread.
+     * The snapshot install should use this, and set the installSnapshot flag of raft status before, so no new
+     * batch is started before it finished.
+     */
+    public void runWhenApplyIdle(Runnable task) {
+        if (applyRunning || idleTasks != null) {
+            if (idleTasks == null) {
+                idleTasks = new ArrayList<>();
+            }
+            idleTasks.add(task);
+        } else {
+            task.run();
+        }
+    }
+
+    @SuppressWarnings("ForLoopReplaceableByForEach")
+    private void runIdleTasks() {
+        ArrayList<Runnable> tasks = idleTasks;
+        if (tasks == null) {
+            return;
+        }
+        idleTasks = null;
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                tasks.get(i).run();
+            } catch (Throwable e) {
+                log.error("run task failed", e);
+            }
+        }
+    }
+
+    /**
+     * drop the queued logs covered by the installed snapshot and resume apply, called in raft thread.
+     */
+    @SuppressWarnings("ForLoopReplaceableByForEach")
+    public void afterInstallSnapshot(long lastIncludedIndex) {
+        ArrayList<ApplyEntry> old = applyQueue;
+        applyQueue = new ArrayList<>();
+        for (int i = 0; i < old.size(); i++) {
+            ApplyEntry e = old.get(i);
+            if (e.read || e.index > lastIncludedIndex) {
+                applyQueue.add(e);
+                continue;
+            }
+            // the state machine already contains the log, the reads can run on it
+            RaftTask reader = e.rt.nextReader;
+            while (reader != null) {
+                applyQueue.add(new ApplyEntry(e.index, reader, true));
+                reader = reader.nextReader;
+            }
+            e.rt.nextReader = null;
+            if (e.rt.future != null) {
+                e.rt.future.completeExceptionally(new RaftException("the log is covered by installed snapshot"));
+            }
+            afterExec(e.index, e.rt);
+        }
+        if (appliedIndex < lastIncludedIndex) {
+            appliedIndex = lastIncludedIndex;
+            if (logIterator != null) {
+                DtUtil.close(logIterator);
+                logIterator = null;
+            }
+        }
+        apply(raftStatus);
+    }
+
     private void afterExec(long index, RaftTask rt) {
-        raftStatus.setLastApplied(index);
+        RaftStatusImpl raftStatus = this.raftStatus;
+        // the lastApplied may be advanced by install snapshot
+        if (index > raftStatus.getLastApplied()) {
+            raftStatus.setLastApplied(index);
+        }
+        readIndexManager.afterApply(index);
+        if (rt.type == LogItem.TYPE_NORMAL) {
+            rt.item.release();
+            if (raftStatus.getFirstCommitOfApplied() != null && index >= raftStatus.getFirstIndexOfCurrentTerm()) {
+                raftStatus.getFirstCommitOfApplied().complete(null);
+                raftStatus.setFirstCommitOfApplied(null);
+            }
+        }
         rt.item.release();
-        execReaders(index, rt);
-
-        // release reader memory
-        rt.nextReader = null;
     }
 
     private void resumeAfterPrepare(long index, RaftTask rt) {
         waiting = false;
         notifyConfigChange(index, rt);
-        afterExec(index, rt);
+        submit(index, rt);
+        // flush the queue
         apply(raftStatus);
     }
 
@@ -232,36 +484,27 @@ public class ApplyManager {
     private void execReaders(long index, RaftTask rt) {
         RaftTask nextReader = rt.nextReader;
         while (nextReader != null) {
-            execRead(index, nextReader);
+            doExecRead(index, nextReader);
             nextReader = nextReader.nextReader;
         }
     }
 
-    private void execWrite(long index, RaftTask rt) {
-        RaftInput input = rt.input;
-        CompletableFuture<RaftOutput> future = rt.future;
-        try {
-            Object r = stateMachine.exec(index, input);
-            future.complete(new RaftOutput(index, r));
-        } catch (Exception ex) {
-            log.warn("exec write failed. {}", ex);
-            future.completeExceptionally(ex);
-        } finally {
-            rt.item.release();
-            RaftStatusImpl raftStatus = this.raftStatus;
-            if (raftStatus.getFirstCommitOfApplied() != null && index >= raftStatus.getFirstIndexOfCurrentTerm()) {
-                raftStatus.getFirstCommitOfApplied().complete(null);
-                raftStatus.setFirstCommitOfApplied(null);
-            }
-        }
+    /**
+     * exec the read of an applied index, called in raft thread.
+     */
+    public void execRead(long index, RaftTask rt) {
+        applyQueue.add(new ApplyEntry(index, rt, true));
+        flushApplyQueue();
     }
 
-    public void execRead(long index, RaftTask rt) {
+    private void doExecRead(long index, RaftTask rt) {
         RaftInput input = rt.input;
         CompletableFuture<RaftOutput> future = rt.future;
-        if (input.getDeadline() != null && input.getDeadline().isTimeout(ts)) {
+        // may run in apply executor, the ts is not thread safe
+        if (input.isTimeout()) {
             future.completeExceptionally(new RaftExecTimeoutException("timeout "
-                    + input.getDeadline().getTimeout(TimeUnit.MILLISECONDS) + "ms"));
+                    + input.getTimeoutMillis() + "ms"));
+            return;
         }
         try {
             Object r = stateMachine.exec(index, input);
@@ -0,0 +1,145 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.impl;
+
+import java.util.ArrayList;
+
+/**
+ * A hashed wheel timer without its own thread, all methods should be called in the owner thread. The task is
+ * fired at most one tick later than its deadline.
+ *
+ * @author huangli
+ */
+class HashedWheelTimer {
+
+    private final long tickNanos;
+    private final ArrayList<TimerTask>[] wheel;
+    private final int mask;
+    private final long startNanos;
+    // the first tick not processed
+    private long currentTick;
+    private int size;
+
+    private final ArrayList<TimerTask> expired = new ArrayList<>();
+
+    static final class TimerTask {
+        private final Runnable runnable;
+        private long deadlineNanos;
+        private boolean scheduled;
+
+        TimerTask(Runnable runnable) {
+            this.runnable = runnable;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    HashedWheelTimer(long tickNanos, int wheelSize, long nowNanos) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("tickNanos: " + tickNanos);
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 20)) {
+            throw new IllegalArgumentException("wheelSize: " + wheelSize);
+        }
+        int size = 1 << (32 - Integer.numberOfLeadingZeros(wheelSize - 1));
+        this.tickNanos = tickNanos;
+        this.wheel = new ArrayList[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+        this.mask = size - 1;
+        this.startNanos = nowNanos;
+    }
+
+    /**
+     * schedule the task, a task can't be scheduled again before it fired.
+     */
+    void schedule(TimerTask task, long delayNanos, long nowNanos) {
+        if (task.scheduled) {
+            throw new IllegalStateException("task already scheduled");
+        }
+        long deadline = nowNanos + Math.max(delayNanos, 0);
+        // the bucket of tick t is processed when the time reaches (t + 1) ticks
+        long tick = (deadline - startNanos + tickNanos - 1) / tickNanos - 1;
+        if (tick < currentTick) {
+            tick = currentTick;
+        }
+        task.deadlineNanos = deadline;
+        task.scheduled = true;
+        wheel[(int) (tick & mask)].add(task);
+        size++;
+    }
+
+    /**
+     * run the tasks of the passed ticks.
+     *
+     * @return the count of fired tasks
+     */
+    int expire(long nowNanos) {
+        long targetTick = (nowNanos - startNanos) / tickNanos;
+        if (targetTick <= currentTick) {
+            return 0;
+        }
+        // all the buckets are visited at most once, the tasks of further rounds are kept
+        long endTick = Math.min(targetTick, currentTick + wheel.length);
+        ArrayList<TimerTask> expired = this.expired;
+        for (long t = currentTick; t < endTick; t++) {
+            ArrayList<TimerTask> bucket = wheel[(int) (t & mask)];
+            int len = bucket.size();
+            int keep = 0;
+            for (int i = 0; i < len; i++) {
+                TimerTask task = bucket.get(i);
+                if (task.deadlineNanos - nowNanos <= 0) {
+                    expired.add(task);
+                } else {
+                    bucket.set(keep++, task);
+                }
+            }
+            for (int i = len - 1; i >= keep; i--) {
+                bucket.remove(i);
+            }
+        }
+        currentTick = targetTick;
+
+        // run after the wheel is updated, the tasks may schedule themselves again
+        int count = expired.size();
+        size -= count;
+        for (int i = 0; i < count; i++) {
+            expired.get(i).scheduled = false;
+        }
+        try {
+            for (int i = 0; i < count; i++) {
+                expired.get(i).runnable.run();
+            }
+        } finally {
+            expired.clear();
+        }
+        return count;
+    }
+
+    /**
+     * the nanos to wait before next tick, or -1 if there is no task.
+     */
+    long nanosToNextTick(long nowNanos) {
+        if (size == 0) {
+            return -1;
+        }
+        return Math.max(startNanos + (currentTick + 1) * tickNanos - nowNanos, 0);
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -54,15 +54,17 @@ public class MemberManager {
     private final RaftStatusImpl raftStatus;
     private final int groupId;
     private final NioClient client;
+    private final RaftRpcBatcher batcher;
     private final RaftExecutor executor;
 
     private final FutureEventSource futureEventSource;
     private final EventBus eventBus;
 
-    public MemberManager(RaftServerConfig serverConfig, NioClient client, RaftExecutor executor,
-                         RaftStatusImpl raftStatus, EventBus eventBus) {
+    public MemberManager(RaftServerConfig serverConfig, NioClient client, RaftRpcBatcher batcher,
+                         RaftExecutor executor, RaftStatusImpl raftStatus, EventBus eventBus) {
         this.serverConfig = serverConfig;
         this.client = client;
+        this.batcher = batcher;
         this.executor = executor;
         this.raftStatus = raftStatus;
         this.groupId = raftStatus.getGroupId();
@@ -171,10 +173,9 @@ public class MemberManager {
         }
 
         member.setPinging(true);
-        DtTime timeout = new DtTime(serverConfig.getRpcTimeout(), TimeUnit.MILLISECONDS);
         RaftPingWriteFrame f = new RaftPingWriteFrame(groupId, serverConfig.getNodeId(),
                 raftStatus.getNodeIdOfMembers(), raftStatus.getNodeIdOfObservers());
-        client.sendRequest(raftNodeEx.getPeer(), f, RaftPingProcessor.DECODER, timeout)
+        batcher.sendRequest(raftNodeEx.getPeer(), f, RaftPingProcessor.DECODER)
                 .whenCompleteAsync((rf, ex) -> processPingResult(raftNodeEx, member, rf, ex, nodeEpochWhenStartPing), executor);
     }
 
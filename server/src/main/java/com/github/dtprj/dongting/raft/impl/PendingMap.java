@@ -88,7 +88,8 @@ public class PendingMap extends LongObjMap<RaftTask> {
             for (RaftMember node : raftStatus.getPreparedMembers()) {
                 minMatchIndex = Math.min(node.getMatchIndex(), minMatchIndex);
             }
-            doClean(raftStatus, maxPending, maxPendingBytes, minMatchIndex);
+            // the apply executor may be behind the replication
+            doClean(raftStatus, maxPending, maxPendingBytes, Math.min(minMatchIndex, raftStatus.getLastApplied()));
         } else {
             doClean(raftStatus, maxPending, maxPendingBytes, raftStatus.getLastApplied());
         }
@@ -15,8 +15,9 @@
  */
 package com.github.dtprj.dongting.raft.impl;
 
-import com.github.dtprj.dongting.common.DtTime;
 import com.github.dtprj.dongting.common.Timestamp;
+import com.github.dtprj.dongting.log.DtLog;
+import com.github.dtprj.dongting.log.DtLogs;
 import com.github.dtprj.dongting.raft.server.LogItem;
 import com.github.dtprj.dongting.raft.server.NotLeaderException;
 import com.github.dtprj.dongting.raft.server.RaftExecTimeoutException;
@@ -27,17 +28,19 @@ import com.github.dtprj.dongting.raft.store.RaftLog;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 
 /**
  * @author huangli
  */
 public class Raft implements BiConsumer<EventType, Object> {
+    private static final DtLog log = DtLogs.getLogger(Raft.class);
 
     private final ReplicateManager replicateManager;
     private final ApplyManager applyManager;
     private final CommitManager commitManager;
+    private final ReadIndexManager readIndexManager;
 
     private final RaftLog raftLog;
     private final RaftStatusImpl raftStatus;
@@ -45,7 +48,7 @@ public class Raft implements BiConsumer<EventType, Object> {
     private final Timestamp ts;
 
     public Raft(RaftStatusImpl raftStatus, RaftLog raftLog, ApplyManager applyManager, CommitManager commitManager,
-                ReplicateManager replicateManager) {
+                ReplicateManager replicateManager, ReadIndexManager readIndexManager) {
         this.raftStatus = raftStatus;
         this.raftLog = raftLog;
         this.ts = raftStatus.getTs();
@@ -53,6 +56,7 @@ public class Raft implements BiConsumer<EventType, Object> {
         this.applyManager = applyManager;
         this.commitManager = commitManager;
         this.replicateManager = replicateManager;
+        this.readIndexManager = readIndexManager;
     }
 
     @Override
@@ -85,9 +89,9 @@ public class Raft implements BiConsumer<EventType, Object> {
             RaftTask rt = inputs.get(i);
             RaftInput input = rt.input;
 
-            if (input.getDeadline() != null && input.getDeadline().isTimeout(ts)) {
+            if (input.isTimeout(ts)) {
                 rt.future.completeExceptionally(new RaftExecTimeoutException("timeout "
-                        + input.getDeadline().getTimeout(TimeUnit.MILLISECONDS) + "ms"));
+                        + input.getTimeoutMillis() + "ms"));
                 continue;
             }
 
@@ -138,21 +142,80 @@ public class Raft implements BiConsumer<EventType, Object> {
 
         RaftMember self = raftStatus.getSelf();
         self.setNextIndex(newIndex + 1);
-        self.setMatchIndex(newIndex);
-        self.setLastConfirmReqNanos(ts.getNanoTime());
 
+        // the fsync runs in io thread, replicate to followers at the same time,
+        // the leader counts itself in quorum only after the logs are durable
+        long reqNanos = ts.getNanoTime();
+        raftLog.sync().whenComplete((durableIndex, ex) -> afterSync(currentTerm, reqNanos, durableIndex, ex));
+
+        replicateManager.replicateAfterRaftExec(raftStatus);
+    }
+
+    // run in raft thread
+    private void afterSync(int term, long reqNanos, Long durableIndex, Throwable ex) {
+        RaftStatusImpl raftStatus = this.raftStatus;
+        if (ex != null) {
+            log.error("sync raft log fail, groupId={}", raftStatus.getGroupId(), ex);
+            return;
+        }
+        if (raftStatus.getRole() != RaftRole.leader || raftStatus.getCurrentTerm() != term) {
+            return;
+        }
+        RaftMember self = raftStatus.getSelf();
+        if (durableIndex <= self.getMatchIndex()) {
+            return;
+        }
+        self.setMatchIndex(durableIndex);
+        if (reqNanos - self.getLastConfirmReqNanos() > 0) {
+            self.setLastConfirmReqNanos(reqNanos);
+        }
         // for single node mode
         if (raftStatus.getRwQuorum() == 1) {
             RaftUtil.updateLease(raftStatus);
-            commitManager.tryCommit(newIndex);
         }
-
-        replicateManager.replicateAfterRaftExec(raftStatus);
+        // the followers may respond before the leader fsync finished
+        commitManager.tryCommit(durableIndex);
     }
 
+    /**
+     * send heartbeat to the other members, no log is written.
+     */
     public void sendHeartBeat() {
-        DtTime deadline = new DtTime(ts, raftStatus.getElectTimeoutNanos(), TimeUnit.NANOSECONDS);
-        RaftInput input = new RaftInput(0, null, null, deadline, 0);
+        replicateManager.sendHeartBeat();
+    }
+
+    /**
+     * start a ReadIndex read, see ReadIndexManager.
+     */
+    public void readIndex(CompletableFuture<Long> f) {
+        readIndex(f, true);
+    }
+
+    /**
+     * @param waitApply false if the future completes once the leadership is confirmed, see ReadIndexManager
+     */
+    public void readIndex(CompletableFuture<Long> f, boolean waitApply) {
+        if (readIndexManager.addRead(f, waitApply)) {
+            replicateManager.sendHeartBeat();
+        }
+    }
+
+    public void waitApply(long index, CompletableFuture<Long> f) {
+        readIndexManager.waitApply(index, f);
+    }
+
+    public void checkReadIndex() {
+        if (readIndexManager.checkTimeout()) {
+            replicateManager.sendHeartBeat();
+        }
+    }
+
+    /**
+     * append a no-op log, called when this node becomes leader, so the logs of the previous terms can be
+     * committed by the log of current term.
+     */
+    public void appendNoopLog() {
+        RaftInput input = new RaftInput(0, null, null, ts.getNanoTime(), raftStatus.getElectTimeoutNanos(), 0);
         RaftTask rt = new RaftTask(ts, LogItem.TYPE_HEARTBEAT, input, null);
         raftExec(Collections.singletonList(rt));
     }
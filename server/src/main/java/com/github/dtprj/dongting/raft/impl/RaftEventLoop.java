@@ -0,0 +1,170 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.impl;
+
+import com.github.dtprj.dongting.buf.TwoLevelPool;
+import com.github.dtprj.dongting.common.Timestamp;
+import com.github.dtprj.dongting.log.BugLog;
+import com.github.dtprj.dongting.log.DtLog;
+import com.github.dtprj.dongting.log.DtLogs;
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueue;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A raft thread shared by many raft groups. Each group is pinned to one loop, so the states of the group are
+ * still accessed in a single thread. The idle tasks (heartbeat, election timeout, etc.) of the groups are
+ * driven by a hashed wheel timer of the loop, instead of polling in a thread per group.
+ *
+ * @author huangli
+ */
+public class RaftEventLoop extends Thread implements Executor {
+    private static final DtLog log = DtLogs.getLogger(RaftEventLoop.class);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int WHEEL_SIZE = 512;
+
+    // contains RaftGroupRunner (the group has tasks to process) and Runnable
+    private final MpscChunkedArrayQueue<Object> queue = MpscChunkedArrayQueue.newInstance();
+    private volatile boolean parked;
+    private volatile boolean stop;
+
+    private final Timestamp ts = new Timestamp();
+    private final HashedWheelTimer timer = new HashedWheelTimer(TICK_NANOS, WHEEL_SIZE, ts.getNanoTime());
+
+    // accessed in the loop thread
+    private final ArrayList<RaftGroupRunner> runners = new ArrayList<>();
+    private final ArrayList<Object> queueData = new ArrayList<>(64);
+    private final Consumer<Object> queueConsumer = queueData::add;
+
+    // shared by the groups in this loop
+    private TwoLevelPool heapPool;
+
+    public RaftEventLoop(String name) {
+        super(name);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        offer(command);
+    }
+
+    void offer(Object o) {
+        queue.offer(o);
+        if (parked) {
+            LockSupport.unpark(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!stop) {
+                ts.refresh(1);
+                queue.drain(queueConsumer, Integer.MAX_VALUE);
+                int len = queueData.size();
+                for (int i = 0; i < len; i++) {
+                    Object o = queueData.get(i);
+                    try {
+                        if (o instanceof RaftGroupRunner) {
+                            ((RaftGroupRunner) o).runQueueInLoop();
+                        } else {
+                            ((Runnable) o).run();
+                        }
+                    } catch (Throwable e) {
+                        BugLog.getLog().error("raft event loop task error", e);
+                    }
+                }
+                queueData.clear();
+                if (len > 0) {
+                    ts.refresh(1);
+                }
+                try {
+                    timer.expire(ts.getNanoTime());
+                } catch (Throwable e) {
+                    BugLog.getLog().error("raft event loop timer error", e);
+                }
+                if (heapPool != null) {
+                    heapPool.drainReleaseQueue();
+                }
+                if (len == 0) {
+                    park();
+                }
+            }
+        } finally {
+            // the runner removes itself from the list
+            for (int i = runners.size() - 1; i >= 0; i--) {
+                runners.get(i).stopInLoop();
+            }
+            log.info("raft event loop {} exit", getName());
+        }
+    }
+
+    private void park() {
+        long parkNanos = timer.nanosToNextTick(ts.getNanoTime());
+        if (parkNanos < 0 || parkNanos > MAX_PARK_NANOS) {
+            parkNanos = MAX_PARK_NANOS;
+        } else if (parkNanos < MIN_PARK_NANOS) {
+            // the coarse clock may not advance yet, don't spin
+            parkNanos = MIN_PARK_NANOS;
+        }
+        parked = true;
+        if (queue.isEmpty() && !stop) {
+            LockSupport.parkNanos(this, parkNanos);
+        }
+        parked = false;
+        // the loop is not stopped by interrupt, clear the flag to prevent busy loop
+        Thread.interrupted();
+    }
+
+    public void requestShutdown() {
+        stop = true;
+        LockSupport.unpark(this);
+        log.info("request raft event loop {} shutdown", getName());
+    }
+
+    /**
+     * the timestamp refreshed by the loop thread.
+     */
+    public Timestamp getTs() {
+        return ts;
+    }
+
+    HashedWheelTimer getTimer() {
+        return timer;
+    }
+
+    void addRunner(RaftGroupRunner runner) {
+        runners.add(runner);
+    }
+
+    void removeRunner(RaftGroupRunner runner) {
+        runners.remove(runner);
+    }
+
+    public TwoLevelPool getHeapPool() {
+        return heapPool;
+    }
+
+    public void setHeapPool(TwoLevelPool heapPool) {
+        this.heapPool = heapPool;
+    }
+}
@@ -15,19 +15,45 @@
  */
 package com.github.dtprj.dongting.raft.impl;
 
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueue;
+
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
 /**
  * @author huangli
  */
 public class RaftExecutor implements Executor {
-    private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
-    private final RaftGroupThread raftThread;
+    private final MpscChunkedArrayQueue<Object> queue = MpscChunkedArrayQueue.newInstance();
+    private final Thread raftThread;
+    // set by the raft thread before park, the producers skip unpark if the raft thread is running
+    private volatile boolean raftThreadParked;
+
+    // used when the group is hosted by a shared event loop
+    private final RaftEventLoop loop;
+    private final RaftGroupRunner runner;
+    // true if the runner is in the queue of the event loop, or is draining this queue
+    private final AtomicBoolean scheduled = new AtomicBoolean();
 
-    public RaftExecutor(RaftGroupThread raftThread) {
+    /**
+     * the tasks are executed by a dedicated raft thread, which calls drainOrPark.
+     */
+    public RaftExecutor(Thread raftThread) {
         this.raftThread = raftThread;
+        this.loop = null;
+        this.runner = null;
+    }
+
+    /**
+     * the tasks are executed by the runner in the event loop.
+     */
+    RaftExecutor(RaftEventLoop loop, RaftGroupRunner runner) {
+        this.raftThread = loop;
+        this.loop = loop;
+        this.runner = runner;
     }
 
     public void schedule(Runnable runnable, long delayMillis) {
@@ -48,11 +74,54 @@ public class RaftExecutor implements Executor {
 
     @Override
     public void execute(Runnable command) {
-        queue.offer(command);
+        offer(command);
+    }
+
+    void offer(Object o) {
+        queue.offer(o);
+        if (loop != null) {
+            if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+                loop.offer(runner);
+            }
+            return;
+        }
+        // the volatile read is after the producer index increment (full fence) in offer,
+        // and the raft thread checks isEmpty after set raftThreadParked, so no lost wakeup
+        if (raftThreadParked) {
+            LockSupport.unpark(raftThread);
+        }
+    }
+
+    /**
+     * called by the raft thread, drain all elements in the queue, if the queue is empty, park at most
+     * parkNanos and drain again.
+     *
+     * @return the count of drained elements
+     */
+    int drainOrPark(Consumer<Object> consumer, long parkNanos) throws InterruptedException {
+        int count = queue.drain(consumer, Integer.MAX_VALUE);
+        if (count > 0 || parkNanos <= 0) {
+            return count;
+        }
+        raftThreadParked = true;
+        if (queue.isEmpty()) {
+            LockSupport.parkNanos(this, parkNanos);
+        }
+        raftThreadParked = false;
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return queue.drain(consumer, Integer.MAX_VALUE);
     }
 
-    public LinkedBlockingQueue<Object> getQueue() {
-        return queue;
+    /**
+     * called by the event loop thread, drain all elements in the queue. The schedule flag is cleared before drain,
+     * so the producers which offer after the drain will schedule the runner again.
+     */
+    int drainInLoop(Consumer<Object> consumer) {
+        // getAndSet is a full fence, the drain can't be reordered before it
+        scheduled.getAndSet(false);
+        return queue.drain(consumer, Integer.MAX_VALUE);
     }
 
 }
@@ -43,11 +43,12 @@ import java.util.concurrent.TimeoutException;
  */
 public class RaftGroupImpl extends RaftGroup {
     private static final DtLog log = DtLogs.getLogger(RaftGroupImpl.class);
-    private final Timestamp readTimestamp = new Timestamp();
+    // compared with the lease end, so not use the coarse clock
+    private final Timestamp readTimestamp = new Timestamp(true);
 
     private RaftServerConfig serverConfig;
     private RaftGroupConfig groupConfig;
-    private RaftGroupThread raftGroupThread;
+    private RaftGroupRunner raftGroupRunner;
     private RaftStatusImpl raftStatus;
     private MemberManager memberManager;
     private VoteManager voteManager;
@@ -103,7 +104,7 @@ public class RaftGroupImpl extends RaftGroup {
             PendingStat.PENDING_BYTES.getAndAddRelease(serverStat, -size);
             throw new RaftException(msg);
         }
-        CompletableFuture f = raftGroupThread.submitRaftTask(input);
+        CompletableFuture f = raftGroupRunner.submitRaftTask(input);
         registerCallback(f, size);
         return f;
     }
@@ -146,6 +147,28 @@ public class RaftGroupImpl extends RaftGroup {
         return ss.lastApplied;
     }
 
+    @Override
+    public CompletableFuture<Long> readIndex() {
+        RaftStatusImpl raftStatus = this.raftStatus;
+        if (raftStatus.isError()) {
+            throw new RaftException("raft status error");
+        }
+        if (raftStatus.isStop()) {
+            throw new RaftException("raft group thread is stop");
+        }
+        CompletableFuture<Long> f = new CompletableFuture<>();
+        raftExecutor.execute(() -> raft.readIndex(f));
+        return f;
+    }
+
+    @Override
+    public CompletableFuture<Long> waitApplied(long index) {
+        checkStatus();
+        CompletableFuture<Long> f = new CompletableFuture<>();
+        raftExecutor.execute(() -> raft.waitApply(index, f));
+        return f;
+    }
+
     @Override
     public void markTruncateByIndex(long index, long delayMillis) {
         long finalIndex = Math.min(index, raftStatus.getLastApplied());
@@ -203,8 +226,8 @@ public class RaftGroupImpl extends RaftGroup {
         return snapshotManager.saveSnapshot(stateMachine, () -> raftStatus.isStop());
     }
 
-    public RaftGroupThread getRaftGroupThread() {
-        return raftGroupThread;
+    public RaftGroupRunner getRaftGroupRunner() {
+        return raftGroupRunner;
     }
 
     public RaftStatusImpl getRaftStatus() {
@@ -235,8 +258,8 @@ public class RaftGroupImpl extends RaftGroup {
         this.groupConfig = groupConfig;
     }
 
-    public void setRaftGroupThread(RaftGroupThread raftGroupThread) {
-        this.raftGroupThread = raftGroupThread;
+    public void setRaftGroupRunner(RaftGroupRunner raftGroupRunner) {
+        this.raftGroupRunner = raftGroupRunner;
     }
 
     public void setRaftStatus(RaftStatusImpl raftStatus) {
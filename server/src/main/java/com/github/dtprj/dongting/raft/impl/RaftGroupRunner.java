@@ -16,6 +16,7 @@
 package com.github.dtprj.dongting.raft.impl;
 
 import com.github.dtprj.dongting.buf.RefBuffer;
+import com.github.dtprj.dongting.buf.TwoLevelPool;
 import com.github.dtprj.dongting.common.DtUtil;
 import com.github.dtprj.dongting.common.Pair;
 import com.github.dtprj.dongting.common.Timestamp;
@@ -37,19 +38,32 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 /**
+ * Drives a raft group. All the states of the group are accessed in a single thread, the group has its own
+ * thread, or it is pinned to a shared {@link RaftEventLoop}.
+ *
  * @author huangli
  */
-public class RaftGroupThread extends Thread {
-    private static final DtLog log = DtLogs.getLogger(RaftGroupThread.class);
+public class RaftGroupRunner {
+    private static final DtLog log = DtLogs.getLogger(RaftGroupRunner.class);
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long IDLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final Runnable NOOP = () -> {
+    };
 
     private final Random random = new Random();
     private final Supplier<Boolean> cancelInit;
 
+    // one of the two is null
+    private final Thread thread;
+    private final RaftEventLoop loop;
+
+    private final RaftExecutor raftExecutor;
+
     private RaftServerConfig config;
     private RaftStatusImpl raftStatus;
     private Raft raft;
@@ -62,17 +76,48 @@ public class RaftGroupThread extends Thread {
     private long heartbeatIntervalNanos;
     private long electTimeoutNanos;
 
-    // TODO optimise blocking queue
-    private LinkedBlockingQueue<Object> queue;
+    private TwoLevelPool heapPool;
 
-    public RaftGroupThread(Supplier<Boolean> cancelInit) {
+    private final ArrayList<RaftTask> rwTasks = new ArrayList<>(32);
+    private final ArrayList<Runnable> runnables = new ArrayList<>(32);
+    private final ArrayList<Object> queueData = new ArrayList<>(32);
+    private final Consumer<Object> queueConsumer = queueData::add;
+
+    // used in event loop mode, accessed in the loop thread
+    private final HashedWheelTimer.TimerTask idleTask = new HashedWheelTimer.TimerTask(this::tickInLoop);
+    private long loopIdleIntervalNanos;
+    private boolean started;
+    private boolean finished;
+
+    /**
+     * @param loop the shared event loop to host this group, if null the group runs in its own thread
+     */
+    public RaftGroupRunner(Supplier<Boolean> cancelInit, RaftEventLoop loop) {
         this.cancelInit = cancelInit;
+        this.loop = loop;
+        if (loop == null) {
+            this.thread = new Thread(this::runInThread);
+            this.raftExecutor = new RaftExecutor(thread);
+        } else {
+            this.thread = null;
+            this.raftExecutor = new RaftExecutor(loop, this);
+        }
+    }
+
+    public RaftExecutor getRaftExecutor() {
+        return raftExecutor;
+    }
+
+    /**
+     * the thread which accesses the states of this group.
+     */
+    public Thread getRaftThread() {
+        return thread == null ? loop : thread;
     }
 
     public void init(RaftGroupImpl gc) {
         this.config = gc.getServerConfig();
         this.raftStatus = gc.getRaftStatus();
-        this.queue = gc.getRaftExecutor().getQueue();
         this.raft = gc.getRaft();
         this.memberManager = gc.getMemberManager();
         this.stateMachine = gc.getStateMachine();
@@ -83,9 +128,12 @@ public class RaftGroupThread extends Thread {
         electTimeoutNanos = Duration.ofMillis(config.getElectTimeout()).toNanos();
         raftStatus.setElectTimeoutNanos(electTimeoutNanos);
         heartbeatIntervalNanos = Duration.ofMillis(config.getHeartbeatInterval()).toNanos();
+        loopIdleIntervalNanos = Duration.ofMillis(config.getRaftLoopIdleInterval()).toNanos();
 
         RaftGroupConfig groupConfig = gc.getGroupConfig();
-        setName("raft-" + groupConfig.getGroupId());
+        if (thread != null) {
+            thread.setName("raft-" + groupConfig.getGroupId());
+        }
 
         try {
             StatusUtil.initStatusFileChannel(groupConfig.getDataDir(), groupConfig.getStatusFile(), raftStatus);
@@ -180,14 +228,25 @@ public class RaftGroupThread extends Thread {
         DtUtil.close(raftLog);
     }
 
-    @Override
-    public void run() {
+    public void start() {
+        if (thread != null) {
+            thread.start();
+        } else {
+            loop.execute(this::startInLoop);
+        }
+    }
+
+    private void startRaft() {
+        RaftUtil.checkInitCancel(cancelInit);
+        if (raftStatus.getElectQuorum() == 1 && raftStatus.getNodeIdOfMembers().contains(config.getNodeId())) {
+            RaftUtil.changeToLeader(raftStatus);
+            raft.appendNoopLog();
+        }
+    }
+
+    private void runInThread() {
         try {
-            RaftUtil.checkInitCancel(cancelInit);
-            if (raftStatus.getElectQuorum() == 1 && raftStatus.getNodeIdOfMembers().contains(config.getNodeId())) {
-                RaftUtil.changeToLeader(raftStatus);
-                raft.sendHeartBeat();
-            }
+            startRaft();
             run0();
         } catch (Throwable e) {
             BugLog.getLog().error("raft thread error", e);
@@ -199,9 +258,6 @@ public class RaftGroupThread extends Thread {
     private void run0() {
         Timestamp ts = raftStatus.getTs();
         long lastCleanTime = ts.getNanoTime();
-        ArrayList<RaftTask> rwTasks = new ArrayList<>(32);
-        ArrayList<Runnable> runnables = new ArrayList<>(32);
-        ArrayList<Object> queueData = new ArrayList<>(32);
         boolean poll = true;
         while (!raftStatus.isStop()) {
             if (raftStatus.getRole() != RaftRole.observer) {
@@ -209,25 +265,119 @@ public class RaftGroupThread extends Thread {
             }
 
             try {
-                poll = pollAndRefreshTs(ts, queueData, poll);
+                poll = pollAndRefreshTs(ts, poll);
             } catch (InterruptedException e) {
                 return;
             }
-            if (!process(rwTasks, runnables, queueData)) {
-                return;
+            processQueueData(ts);
+            if (ts.getNanoTime() - lastCleanTime > IDLE_INTERVAL_NANOS) {
+                idle(ts);
+                lastCleanTime = ts.getNanoTime();
             }
-            if (queueData.size() > 0) {
-                ts.refresh(1);
+        }
+    }
+
+    private void processQueueData(Timestamp ts) {
+        process(rwTasks, runnables, queueData);
+        if (heapPool != null) {
+            heapPool.drainReleaseQueue();
+        }
+        if (queueData.size() > 0) {
+            ts.refresh(1);
+            queueData.clear();
+        }
+    }
+
+    private void startInLoop() {
+        try {
+            startRaft();
+            started = true;
+            loop.addRunner(this);
+            // spread the idle ticks of the groups
+            long firstDelay = (long) (random.nextDouble() * loopIdleIntervalNanos);
+            loop.getTimer().schedule(idleTask, firstDelay, raftStatus.getTs().getNanoTime());
+        } catch (Throwable e) {
+            BugLog.getLog().error("start raft group error", e);
+            started = true;
+            stopInLoop();
+            return;
+        }
+        // process the tasks submitted before start
+        runQueueInLoop();
+    }
+
+    /**
+     * called by the event loop when there are tasks in the queue of the raft executor.
+     */
+    void runQueueInLoop() {
+        if (!started) {
+            // keep the schedule flag of the executor, startInLoop will process the queue
+            return;
+        }
+        raftExecutor.drainInLoop(queueConsumer);
+        if (finished) {
+            queueData.clear();
+            return;
+        }
+        try {
+            if (raftStatus.isStop()) {
                 queueData.clear();
+                stopInLoop();
+                return;
             }
-            if (ts.getNanoTime() - lastCleanTime > 5 * 1000 * 1000) {
-                idle(ts);
-                lastCleanTime = ts.getNanoTime();
+            if (raftStatus.getRole() != RaftRole.observer) {
+                memberManager.ensureRaftMemberStatus();
             }
+            Timestamp ts = raftStatus.getTs();
+            ts.refresh(1);
+            processQueueData(ts);
+        } catch (Throwable e) {
+            BugLog.getLog().error("raft thread error", e);
+            queueData.clear();
+            stopInLoop();
         }
     }
 
-    private boolean process(ArrayList<RaftTask> rwTasks, ArrayList<Runnable> runnables, ArrayList<Object> queueData) {
+    private void tickInLoop() {
+        if (finished) {
+            return;
+        }
+        try {
+            if (raftStatus.isStop()) {
+                stopInLoop();
+                return;
+            }
+            Timestamp ts = raftStatus.getTs();
+            ts.refresh(1);
+            if (raftStatus.getRole() != RaftRole.observer) {
+                memberManager.ensureRaftMemberStatus();
+            }
+            if (rwTasks.size() > 0) {
+                // the tasks hold in previous rounds
+                processQueueData(ts);
+            }
+            idle(ts);
+            loop.getTimer().schedule(idleTask, loopIdleIntervalNanos, ts.getNanoTime());
+        } catch (Throwable e) {
+            BugLog.getLog().error("raft thread error", e);
+            stopInLoop();
+        }
+    }
+
+    /**
+     * called in the loop thread when the group is stopped or the loop exits.
+     */
+    void stopInLoop() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        raftStatus.setStop(true);
+        loop.removeRunner(this);
+        clean();
+    }
+
+    private void process(ArrayList<RaftTask> rwTasks, ArrayList<Runnable> runnables, ArrayList<Object> queueData) {
         RaftStatusImpl raftStatus = this.raftStatus;
         int len = queueData.size();
         for (int i = 0; i < len; i++) {
@@ -255,29 +405,36 @@ public class RaftGroupThread extends Thread {
             runnables.clear();
             raftStatus.copyShareStatus();
         }
-        return true;
     }
 
-    private boolean pollAndRefreshTs(Timestamp ts, ArrayList<Object> queueData, boolean poll) throws InterruptedException {
+    private boolean pollAndRefreshTs(Timestamp ts, boolean poll) throws InterruptedException {
         long oldNanos = ts.getNanoTime();
-        if (poll) {
-            Object o = queue.poll(50, TimeUnit.MILLISECONDS);
-            if (o != null) {
-                queueData.add(o);
-            }
-        } else {
-            queue.drainTo(queueData);
-        }
+        raftExecutor.drainOrPark(queueConsumer, poll ? PARK_NANOS : 0);
 
         ts.refresh(1);
         return ts.getNanoTime() - oldNanos > 2 * 1000 * 1000 || queueData.size() == 0;
     }
 
+    public void setHeapPool(TwoLevelPool heapPool) {
+        this.heapPool = heapPool;
+    }
+
     public void requestShutdown() {
         raftStatus.setStop(true);
+        // wake up the raft thread or the event loop to check the stop flag
+        raftExecutor.execute(NOOP);
         log.info("request raft thread shutdown");
     }
 
+    /**
+     * interrupt the dedicated thread of this group, no effect if the group runs in a shared event loop.
+     */
+    public void interrupt() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
     private void idle(Timestamp ts) {
         RaftStatusImpl raftStatus = this.raftStatus;
         if (raftStatus.isError()) {
@@ -289,13 +446,15 @@ public class RaftGroupThread extends Thread {
 
         raftLog.doDelete();
 
+        raft.checkReadIndex();
+
         if (raftStatus.getElectQuorum() <= 1) {
             return;
         }
         long roundTimeNanos = ts.getNanoTime();
 
         RaftRole role = raftStatus.getRole();
-        if (roundTimeNanos - raftStatus.getHeartbeatTime() > heartbeatIntervalNanos) {
+        if (isHeartbeatDue(roundTimeNanos, raftStatus.getHeartbeatTime())) {
             if (role == RaftRole.leader) {
                 raftStatus.setHeartbeatTime(roundTimeNanos);
                 raft.sendHeartBeat();
@@ -310,11 +469,20 @@ public class RaftGroupThread extends Thread {
         }
     }
 
+    private boolean isHeartbeatDue(long now, long lastHeartbeatTime) {
+        if (config.isRpcBatch()) {
+            // align the heartbeats of all the groups to the interval boundary, so they are sent in same batch
+            return Math.floorDiv(now, heartbeatIntervalNanos) != Math.floorDiv(lastHeartbeatTime, heartbeatIntervalNanos);
+        } else {
+            return now - lastHeartbeatTime > heartbeatIntervalNanos;
+        }
+    }
+
     @SuppressWarnings({"unchecked", "rawtypes"})
     public CompletableFuture<RaftOutput> submitRaftTask(RaftInput input) {
         CompletableFuture f = new CompletableFuture<>();
         RaftTask t = new RaftTask(raftStatus.getTs(), LogItem.TYPE_NORMAL, input, f);
-        queue.offer(t);
+        raftExecutor.offer(t);
         return f;
     }
 }
@@ -37,6 +37,8 @@ public class RaftMember {
     private PendingStat pendingStat;
 
     private long lastConfirmReqNanos;
+    // the read index rounds up to this seq are confirmed by this member
+    private long lastConfirmReadSeq;
     private long lastFailNanos = System.nanoTime() - Duration.ofSeconds(30).toNanos();
 
     private boolean installSnapshot;
@@ -112,6 +114,14 @@ public class RaftMember {
         return lastConfirmReqNanos;
     }
 
+    public long getLastConfirmReadSeq() {
+        return lastConfirmReadSeq;
+    }
+
+    public void setLastConfirmReadSeq(long lastConfirmReadSeq) {
+        this.lastConfirmReadSeq = lastConfirmReadSeq;
+    }
+
     public boolean isInstallSnapshot() {
         return installSnapshot;
     }
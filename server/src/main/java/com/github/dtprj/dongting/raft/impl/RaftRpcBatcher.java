@@ -0,0 +1,244 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.impl;
+
+import com.github.dtprj.dongting.codec.Decoder;
+import com.github.dtprj.dongting.log.BugLog;
+import com.github.dtprj.dongting.log.DtLog;
+import com.github.dtprj.dongting.log.DtLogs;
+import com.github.dtprj.dongting.net.ByteBufferWriteFrame;
+import com.github.dtprj.dongting.net.CmdCodes;
+import com.github.dtprj.dongting.net.Commands;
+import com.github.dtprj.dongting.net.NetCodeException;
+import com.github.dtprj.dongting.net.NetException;
+import com.github.dtprj.dongting.net.NioClient;
+import com.github.dtprj.dongting.net.Peer;
+import com.github.dtprj.dongting.net.ReadFrame;
+import com.github.dtprj.dongting.net.WriteFrame;
+import com.github.dtprj.dongting.queue.MpscChunkedArrayQueue;
+import com.github.dtprj.dongting.raft.rpc.BatchCodec;
+import com.github.dtprj.dongting.raft.rpc.BatchSubFrame;
+import com.github.dtprj.dongting.raft.server.RaftServerConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Send the small raft requests of all the groups to the same node in one RAFT_BATCH frame, so the syscalls and
+ * wakeups of the network threads are shared when there are many groups. The order of the requests to the same
+ * node is kept. One instance per raft server.
+ * <p>
+ * The response of a batch is written after all the sub requests are processed, so only the requests replied
+ * synchronously by the receiver (ping, vote, heartbeat) should be batched. The others (append with logs, read
+ * index) may wait for fsync or log matching, they should be sent by sendRequestNoBatch(), otherwise the fast
+ * responses in the same batch are delayed.
+ * <p>
+ * All the requests to a node, batched or not, are put into the queue of the node and sent in order by the flush
+ * task in the raft schedule thread, so the caller (raft thread) never blocks in NioClient.sendRequest() when the
+ * max pending requests is reached.
+ *
+ * @author huangli
+ */
+public class RaftRpcBatcher {
+    private static final DtLog log = DtLogs.getLogger(RaftRpcBatcher.class);
+    private static final int MAX_BATCH_COUNT = 1024;
+
+    private final RaftServerConfig config;
+    private final NioClient client;
+    private final ConcurrentHashMap<Peer, PeerQueue> queues = new ConcurrentHashMap<>();
+
+    public RaftRpcBatcher(RaftServerConfig config, NioClient client) {
+        this.config = config;
+        this.client = client;
+        if (config.isRpcBatch() && config.getRpcBatchLinger() < 0) {
+            throw new IllegalArgumentException("rpcBatchLinger: " + config.getRpcBatchLinger());
+        }
+    }
+
+    private static class Item {
+        final WriteFrame frame;
+        final Decoder<?> decoder;
+        final boolean noBatch;
+        final CompletableFuture<ReadFrame<?>> future = new CompletableFuture<>();
+
+        Item(WriteFrame frame, Decoder<?> decoder, boolean noBatch) {
+            this.frame = frame;
+            this.decoder = decoder;
+            this.noBatch = noBatch;
+        }
+    }
+
+    private class PeerQueue implements Runnable {
+        private final Peer peer;
+        private final MpscChunkedArrayQueue<Item> queue = MpscChunkedArrayQueue.newInstance();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final ArrayList<Item> items = new ArrayList<>();
+
+        PeerQueue(Peer peer) {
+            this.peer = peer;
+        }
+
+        void schedule(boolean noBatch) {
+            if (noBatch) {
+                // not wait the linger, the extra run of a scheduled flush sends nothing
+                scheduled.set(true);
+                RaftUtil.SCHEDULED_SERVICE.execute(this);
+            } else if (scheduled.compareAndSet(false, true)) {
+                long linger = config.getRpcBatchLinger();
+                if (linger > 0) {
+                    RaftUtil.SCHEDULED_SERVICE.schedule(this, linger, TimeUnit.MILLISECONDS);
+                } else {
+                    RaftUtil.SCHEDULED_SERVICE.execute(this);
+                }
+            }
+        }
+
+        // run in the single raft schedule thread
+        @Override
+        public void run() {
+            scheduled.set(false);
+            ArrayList<Item> items = this.items;
+            try {
+                queue.drain(items::add, Integer.MAX_VALUE);
+                int size = items.size();
+                int start = 0;
+                for (int i = 0; i < size; i++) {
+                    if (items.get(i).noBatch) {
+                        // send the batched requests before it to keep the order
+                        sendBatch(peer, items.subList(start, i));
+                        sendBatch(peer, items.subList(i, i + 1));
+                        start = i + 1;
+                    } else if (i + 1 - start == MAX_BATCH_COUNT) {
+                        sendBatch(peer, items.subList(start, i + 1));
+                        start = i + 1;
+                    }
+                }
+                sendBatch(peer, items.subList(start, size));
+            } catch (Throwable e) {
+                BugLog.getLog().error("flush raft rpc batch error", e);
+            } finally {
+                items.clear();
+            }
+        }
+    }
+
+    /**
+     * send the request, batched with other requests to the same peer if it is small. The receiver should reply
+     * the request synchronously.
+     */
+    public <T> CompletableFuture<ReadFrame<T>> sendRequest(Peer peer, WriteFrame frame, Decoder<T> decoder) {
+        if (!config.isRpcBatch()) {
+            return client.sendRequest(peer, frame, decoder, config.getRpcTimeout(), TimeUnit.MILLISECONDS);
+        }
+        return enqueue(peer, frame, decoder, frame.calcMaxFrameSize() > config.getRpcBatchMaxFrameSize());
+    }
+
+    /**
+     * send the request in its own frame, for the requests which may be replied asynchronously by the receiver.
+     * The pending batched requests to the same peer are sent before it.
+     */
+    public <T> CompletableFuture<ReadFrame<T>> sendRequestNoBatch(Peer peer, WriteFrame frame, Decoder<T> decoder) {
+        if (!config.isRpcBatch()) {
+            return client.sendRequest(peer, frame, decoder, config.getRpcTimeout(), TimeUnit.MILLISECONDS);
+        }
+        return enqueue(peer, frame, decoder, true);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <T> CompletableFuture<ReadFrame<T>> enqueue(Peer peer, WriteFrame frame, Decoder<T> decoder,
+                                                        boolean noBatch) {
+        PeerQueue pq = queues.computeIfAbsent(peer, PeerQueue::new);
+        Item item = new Item(frame, decoder, noBatch);
+        pq.queue.offer(item);
+        pq.schedule(noBatch);
+        return (CompletableFuture) item.future;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void sendBatch(Peer peer, List<Item> items) {
+        int count = items.size();
+        if (count == 0) {
+            return;
+        }
+        if (count == 1) {
+            Item item = items.get(0);
+            CompletableFuture<ReadFrame<?>> f = (CompletableFuture) client.sendRequest(peer, item.frame,
+                    item.decoder, config.getRpcTimeout(), TimeUnit.MILLISECONDS);
+            f.whenComplete((rf, ex) -> {
+                if (ex != null) {
+                    item.future.completeExceptionally(ex);
+                } else {
+                    item.future.complete(rf);
+                }
+            });
+            return;
+        }
+        Item[] array = items.toArray(new Item[count]);
+        ArrayList<WriteFrame> frames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            WriteFrame f = array[i].frame;
+            // the seq of the sub request is the index in the batch
+            f.setSeq(i);
+            frames.add(f);
+        }
+        ByteBufferWriteFrame wf;
+        try {
+            wf = new ByteBufferWriteFrame(BatchCodec.encode(frames));
+        } catch (Throwable e) {
+            log.error("encode raft rpc batch fail", e);
+            for (Item item : array) {
+                item.future.completeExceptionally(e);
+            }
+            return;
+        }
+        wf.setCommand(Commands.RAFT_BATCH);
+        Decoder<List<BatchSubFrame>> decoder = BatchCodec.createDecoder(sub -> {
+            int seq = sub.getSeq();
+            return seq >= 0 && seq < count ? array[seq].decoder : null;
+        });
+        client.sendRequest(peer, wf, decoder, config.getRpcTimeout(), TimeUnit.MILLISECONDS)
+                .whenComplete((rf, ex) -> {
+                    if (ex != null) {
+                        for (Item item : array) {
+                            item.future.completeExceptionally(ex);
+                        }
+                    } else {
+                        for (BatchSubFrame sub : rf.getBody()) {
+                            int seq = sub.getSeq();
+                            if (seq < 0 || seq >= count) {
+                                log.warn("bad seq of batch response: {}", seq);
+                                continue;
+                            }
+                            if (sub.getRespCode() != CmdCodes.SUCCESS) {
+                                array[seq].future.completeExceptionally(
+                                        new NetCodeException(sub.getRespCode(), sub.getMsg()));
+                            } else {
+                                array[seq].future.complete(sub);
+                            }
+                        }
+                        for (Item item : array) {
+                            if (!item.future.isDone()) {
+                                item.future.completeExceptionally(new NetException("no response in batch"));
+                            }
+                        }
+                    }
+                });
+    }
+}
@@ -18,6 +18,7 @@ package com.github.dtprj.dongting.raft.impl;
 import com.github.dtprj.dongting.common.Timestamp;
 import com.github.dtprj.dongting.raft.server.RaftStatus;
 
+import java.util.ArrayDeque;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
@@ -34,7 +35,8 @@ public class RaftStatusImpl extends RaftStatus {
 
     private RaftRole role; // shared
     private RaftMember currentLeader; // shared
-    private final Timestamp ts = new Timestamp();
+    // the lease is computed from it, so not use the coarse clock
+    private final Timestamp ts = new Timestamp(true);
     private int electQuorum;
     private int rwQuorum;
 
@@ -73,6 +75,14 @@ public class RaftStatusImpl extends RaftStatus {
 
     private boolean holdRequest;
 
+    // the follower is finding the replicate position asynchronously, the append requests received
+    // during this time are processed in order after it finished
+    private boolean appendMatching;
+    private final ArrayDeque<Runnable> waitingAppends = new ArrayDeque<>();
+    // complete after the response of the last append waiting fsync is written, the appends may share
+    // one sync future whose callbacks are not run in order, so the responses are chained by it
+    private CompletableFuture<Void> lastAppendResp = CompletableFuture.completedFuture(null);
+
     public RaftStatusImpl() {
         lastElectTime = ts.getNanoTime();
         heartbeatTime = ts.getNanoTime();
@@ -328,6 +338,26 @@ public class RaftStatusImpl extends RaftStatus {
         return leaseStartNanos;
     }
 
+    public boolean isAppendMatching() {
+        return appendMatching;
+    }
+
+    public void setAppendMatching(boolean appendMatching) {
+        this.appendMatching = appendMatching;
+    }
+
+    public ArrayDeque<Runnable> getWaitingAppends() {
+        return waitingAppends;
+    }
+
+    public CompletableFuture<Void> getLastAppendResp() {
+        return lastAppendResp;
+    }
+
+    public void setLastAppendResp(CompletableFuture<Void> lastAppendResp) {
+        this.lastAppendResp = lastAppendResp;
+    }
+
     public boolean isHoldRequest() {
         return holdRequest;
     }
@@ -0,0 +1,322 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.impl;
+
+import com.github.dtprj.dongting.codec.Decoder;
+import com.github.dtprj.dongting.codec.PbNoCopyDecoder;
+import com.github.dtprj.dongting.common.Timestamp;
+import com.github.dtprj.dongting.net.Commands;
+import com.github.dtprj.dongting.raft.rpc.ReadIndexReq;
+import com.github.dtprj.dongting.raft.rpc.ReadIndexResp;
+import com.github.dtprj.dongting.raft.server.NotLeaderException;
+import com.github.dtprj.dongting.raft.server.RaftExecTimeoutException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The ReadIndex protocol of linearizable read (raft paper, section 6.4). The leader records the commit index
+ * as the read index, confirms it is still leader by a round of heartbeats, and serves the read after the state
+ * machine applied the read index. All the reads arrive during a round share the next round, so there is at most
+ * one round in flight. A round is confirmed by the responses of the heartbeats sent after it started, no clock
+ * assumption.
+ * <p>
+ * The follower and observer query the read index from leader (one query in flight, the reads arrive in the
+ * meantime share the next query), and serve the read after the local state machine applied it, so the read load
+ * is spread to all the replicas. The leader replies the query once the round is confirmed, without waiting for its
+ * own state machine.
+ * <p>
+ * All methods are called in raft thread.
+ *
+ * @author huangli
+ */
+public class ReadIndexManager {
+
+    private static final Decoder<ReadIndexResp> RESP_DECODER = new PbNoCopyDecoder<>(c -> new ReadIndexResp.Callback());
+
+    private final RaftStatusImpl raftStatus;
+    private final RaftRpcBatcher batcher;
+    private final Timestamp ts;
+
+    // the reads wait for the next round
+    private ArrayList<CompletableFuture<Long>> waitingReads = new ArrayList<>();
+    // the queries of the followers wait for the next round, they don't wait for the apply of the leader
+    private ArrayList<CompletableFuture<Long>> waitingQueries = new ArrayList<>();
+    // the round in flight
+    private Round round;
+    // the seq of the last started round
+    private long readSeq;
+    // the reads wait for apply, ordered by read index
+    private final PriorityQueue<Round> applyWaiting = new PriorityQueue<>(
+            (r1, r2) -> Long.compare(r1.readIndex, r2.readIndex));
+
+    // follower and observer, the reads wait for the next query of read index
+    private ArrayList<CompletableFuture<Long>> queryWaitingReads = new ArrayList<>();
+    private boolean querying;
+
+    private static final class Round {
+        final int term;
+        final long readIndex;
+        final long seq;
+        final long startNanos;
+        final List<CompletableFuture<Long>> reads;
+        final List<CompletableFuture<Long>> queries;
+
+        Round(int term, long readIndex, long seq, long startNanos, List<CompletableFuture<Long>> reads,
+              List<CompletableFuture<Long>> queries) {
+            this.term = term;
+            this.readIndex = readIndex;
+            this.seq = seq;
+            this.startNanos = startNanos;
+            this.reads = reads;
+            this.queries = queries;
+        }
+    }
+
+    public ReadIndexManager(RaftStatusImpl raftStatus, RaftRpcBatcher batcher) {
+        this.raftStatus = raftStatus;
+        this.batcher = batcher;
+        this.ts = raftStatus.getTs();
+    }
+
+    /**
+     * add a read, the future completes with the read index after the state machine applied it.
+     *
+     * @return true if a new round started, the caller should send heartbeat to the members
+     */
+    public boolean addRead(CompletableFuture<Long> f) {
+        return addRead(f, true);
+    }
+
+    /**
+     * @param waitApply false if the future completes once the leadership is confirmed, used by the query of
+     *                  the followers, which wait for the apply of their own state machine. Only leader accepts it.
+     * @return true if a new round started, the caller should send heartbeat to the members
+     */
+    public boolean addRead(CompletableFuture<Long> f, boolean waitApply) {
+        RaftRole role = raftStatus.getRole();
+        if (waitApply && (role == RaftRole.follower || role == RaftRole.observer)) {
+            queryLeader(f);
+            return false;
+        }
+        if (role != RaftRole.leader) {
+            f.completeExceptionally(new NotLeaderException(RaftUtil.getLeader(raftStatus.getCurrentLeader())));
+            return false;
+        }
+        if (waitApply) {
+            waitingReads.add(f);
+        } else {
+            waitingQueries.add(f);
+        }
+        if (round == null) {
+            startRound();
+            return true;
+        }
+        return false;
+    }
+
+    private void startRound() {
+        RaftStatusImpl raftStatus = this.raftStatus;
+        // the new leader doesn't know the commit index of previous term until the first log of its term committed
+        long readIndex = Math.max(raftStatus.getCommitIndex(), raftStatus.getFirstIndexOfCurrentTerm());
+        round = new Round(raftStatus.getCurrentTerm(), readIndex, ++readSeq, ts.getNanoTime(), waitingReads,
+                waitingQueries);
+        waitingReads = new ArrayList<>();
+        waitingQueries = new ArrayList<>();
+    }
+
+    /**
+     * The seq of the last started round. A heartbeat records it when sent, and the member confirms the rounds
+     * up to it by the success response. The nanos of the requests can't be used, the requests sent before the
+     * round in the same tick of the cached timestamp have the same nanos.
+     */
+    public long getReadSeq() {
+        return readSeq;
+    }
+
+    /**
+     * called after the lastConfirmReadSeq of members updated.
+     *
+     * @return true if a new round started, the caller should send heartbeat to the members
+     */
+    public boolean tryConfirm() {
+        Round r = this.round;
+        if (r == null) {
+            return false;
+        }
+        RaftStatusImpl raftStatus = this.raftStatus;
+        if (r.term != raftStatus.getCurrentTerm() || raftStatus.getRole() != RaftRole.leader) {
+            return failAll();
+        }
+        if (!confirmed(r.seq, raftStatus.getMembers(), raftStatus.getElectQuorum())) {
+            return false;
+        }
+        List<RaftMember> prepared = raftStatus.getPreparedMembers();
+        if (prepared.size() > 0 && !confirmed(r.seq, prepared, RaftUtil.getElectQuorum(prepared.size()))) {
+            return false;
+        }
+        round = null;
+        complete(r.queries, r.readIndex);
+        waitApply(r);
+        if (hasWaiting()) {
+            startRound();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean hasWaiting() {
+        return waitingReads.size() > 0 || waitingQueries.size() > 0;
+    }
+
+    @SuppressWarnings("ForLoopReplaceableByForEach")
+    private static boolean confirmed(long seq, List<RaftMember> members, int quorum) {
+        int count = 0;
+        for (int i = 0; i < members.size(); i++) {
+            if (members.get(i).getLastConfirmReadSeq() >= seq) {
+                count++;
+            }
+        }
+        return count >= quorum;
+    }
+
+    private void queryLeader(CompletableFuture<Long> f) {
+        if (raftStatus.getCurrentLeader() == null) {
+            f.completeExceptionally(new NotLeaderException(null));
+            return;
+        }
+        queryWaitingReads.add(f);
+        if (!querying) {
+            sendQuery();
+        }
+    }
+
+    private void sendQuery() {
+        RaftStatusImpl raftStatus = this.raftStatus;
+        List<CompletableFuture<Long>> reads = queryWaitingReads;
+        queryWaitingReads = new ArrayList<>();
+        RaftMember leader = raftStatus.getCurrentLeader();
+        if (leader == null) {
+            fail(reads, new NotLeaderException(null));
+            return;
+        }
+        querying = true;
+        ReadIndexReq req = new ReadIndexReq();
+        req.groupId = raftStatus.getGroupId();
+        ReadIndexReq.ReadIndexReqWriteFrame wf = new ReadIndexReq.ReadIndexReqWriteFrame(req);
+        wf.setCommand(Commands.RAFT_QUERY_READ_INDEX);
+        // the leader replies after a heartbeat round, don't delay the other requests in a batch
+        batcher.sendRequestNoBatch(leader.getNode().getPeer(), wf, RESP_DECODER).whenCompleteAsync((rf, ex) -> {
+            querying = false;
+            if (ex != null) {
+                fail(reads, ex);
+            } else {
+                waitApply(new Round(0, rf.getBody().readIndex, 0, 0, reads, Collections.emptyList()));
+            }
+            if (queryWaitingReads.size() > 0) {
+                sendQuery();
+            }
+        }, raftStatus.getRaftExecutor());
+    }
+
+    /**
+     * wait the state machine applied the index, for session consistency, no leadership confirmation.
+     */
+    public void waitApply(long index, CompletableFuture<Long> f) {
+        waitApply(new Round(0, index, 0, 0, Collections.singletonList(f), Collections.emptyList()));
+    }
+
+    private void waitApply(Round r) {
+        if (raftStatus.getLastApplied() >= r.readIndex) {
+            complete(r);
+        } else {
+            applyWaiting.add(r);
+        }
+    }
+
+    /**
+     * called after the state machine applied the log.
+     */
+    public void afterApply(long lastApplied) {
+        Round r;
+        while ((r = applyWaiting.peek()) != null && r.readIndex <= lastApplied) {
+            applyWaiting.poll();
+            complete(r);
+        }
+    }
+
+    private static void complete(Round r) {
+        complete(r.reads, r.readIndex);
+    }
+
+    @SuppressWarnings("ForLoopReplaceableByForEach")
+    private static void complete(List<CompletableFuture<Long>> reads, long readIndex) {
+        for (int i = 0; i < reads.size(); i++) {
+            reads.get(i).complete(readIndex);
+        }
+    }
+
+    /**
+     * called periodically, fail the reads if the leadership is lost or can't be confirmed in election timeout.
+     *
+     * @return true if a new round started, the caller should send heartbeat to the members
+     */
+    public boolean checkTimeout() {
+        Round r = this.round;
+        if (r == null) {
+            return false;
+        }
+        if (r.term != raftStatus.getCurrentTerm() || raftStatus.getRole() != RaftRole.leader) {
+            return failAll();
+        }
+        if (ts.getNanoTime() - r.startNanos > raftStatus.getElectTimeoutNanos()) {
+            round = null;
+            RaftExecTimeoutException ex = new RaftExecTimeoutException("read index not confirmed in election timeout");
+            fail(r.reads, ex);
+            fail(r.queries, ex);
+            if (hasWaiting()) {
+                startRound();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the confirmed rounds are not failed, the read index is still valid after the leadership lost
+    private boolean failAll() {
+        NotLeaderException ex = new NotLeaderException(RaftUtil.getLeader(raftStatus.getCurrentLeader()));
+        if (round != null) {
+            fail(round.reads, ex);
+            fail(round.queries, ex);
+            round = null;
+        }
+        fail(waitingReads, ex);
+        waitingReads = new ArrayList<>();
+        fail(waitingQueries, ex);
+        waitingQueries = new ArrayList<>();
+        return false;
+    }
+
+    @SuppressWarnings("ForLoopReplaceableByForEach")
+    private static void fail(List<CompletableFuture<Long>> reads, Throwable ex) {
+        for (int i = 0; i < reads.size(); i++) {
+            reads.get(i).completeExceptionally(ex);
+        }
+    }
+}
@@ -17,7 +17,6 @@ package com.github.dtprj.dongting.raft.impl;
 
 import com.github.dtprj.dongting.buf.RefBuffer;
 import com.github.dtprj.dongting.codec.PbNoCopyDecoder;
-import com.github.dtprj.dongting.common.DtTime;
 import com.github.dtprj.dongting.common.DtUtil;
 import com.github.dtprj.dongting.common.Pair;
 import com.github.dtprj.dongting.common.Timestamp;
@@ -41,6 +40,7 @@ import com.github.dtprj.dongting.raft.store.RaftLog;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
@@ -61,8 +61,10 @@ public class ReplicateManager {
     private final RaftLog raftLog;
     private final StateMachine stateMachine;
     private final NioClient client;
+    private final RaftRpcBatcher batcher;
     private final RaftExecutor raftExecutor;
     private final CommitManager commitManager;
+    private final ReadIndexManager readIndexManager;
     private final Timestamp ts;
 
     private final int maxReplicateItems;
@@ -75,16 +77,18 @@ public class ReplicateManager {
     private static final PbNoCopyDecoder<InstallSnapshotResp> INSTALL_SNAPSHOT_RESP_DECODER = new PbNoCopyDecoder<>(c -> new InstallSnapshotResp.Callback());
 
     public ReplicateManager(RaftServerConfig config, RaftGroupConfigEx groupConfig, RaftStatusImpl raftStatus, RaftLog raftLog,
-                            StateMachine stateMachine, NioClient client, RaftExecutor executor,
-                            CommitManager commitManager) {
+                            StateMachine stateMachine, NioClient client, RaftRpcBatcher batcher,
+                            RaftExecutor executor, CommitManager commitManager, ReadIndexManager readIndexManager) {
         this.groupId = groupConfig.getGroupId();
         this.raftStatus = raftStatus;
         this.config = config;
         this.raftLog = raftLog;
         this.stateMachine = stateMachine;
         this.client = client;
+        this.batcher = batcher;
         this.raftExecutor = executor;
         this.commitManager = commitManager;
+        this.readIndexManager = readIndexManager;
         this.ts = raftStatus.getTs();
 
         this.maxReplicateItems = config.getMaxReplicateItems();
@@ -117,6 +121,73 @@ public class ReplicateManager {
         }
     }
 
+    /**
+     * send an append request without logs to the other members. It carries the term and the commit index,
+     * resets the election timer of the followers and extends the lease, but writes nothing to the raft log.
+     */
+    @SuppressWarnings("ForLoopReplaceableByForEach")
+    public void sendHeartBeat() {
+        if (raftStatus.getRole() != RaftRole.leader) {
+            return;
+        }
+        long reqNanos = ts.getNanoTime();
+        long readSeq = readIndexManager.getReadSeq();
+        RaftMember self = raftStatus.getSelf();
+        if (self != null) {
+            if (reqNanos - self.getLastConfirmReqNanos() > 0) {
+                self.setLastConfirmReqNanos(reqNanos);
+            }
+            self.setLastConfirmReadSeq(readSeq);
+        }
+        List<RaftMember> list = raftStatus.getReplicateList();
+        int len = list.size();
+        for (int i = 0; i < len; i++) {
+            RaftMember member = list.get(i);
+            if (member.getNode().isSelf() || !member.isReady()) {
+                continue;
+            }
+            sendHeartBeat(member, reqNanos, readSeq);
+        }
+        // single node mode
+        afterConfirm();
+    }
+
+    private void sendHeartBeat(RaftMember member, long reqNanos, long readSeq) {
+        AppendReqWriteFrame req = new AppendReqWriteFrame(stateMachine);
+        req.setCommand(Commands.RAFT_APPEND_ENTRIES);
+        req.setGroupId(groupId);
+        int reqTerm = raftStatus.getCurrentTerm();
+        req.setTerm(reqTerm);
+        req.setLeaderId(config.getNodeId());
+        req.setLeaderCommit(raftStatus.getCommitIndex());
+        req.setLogs(Collections.emptyList());
+        CompletableFuture<ReadFrame<AppendRespCallback>> f = batcher.sendRequest(member.getNode().getPeer(),
+                req, APPEND_RESP_DECODER);
+        f.whenCompleteAsync((rf, ex) -> {
+            if (ex != null) {
+                log.debug("heartbeat fail. remoteId={}, groupId={}, ex={}", member.getNode().getNodeId(),
+                        groupId, ex.toString());
+                return;
+            }
+            if (checkTermFailed(rf.getBody().getTerm())) {
+                return;
+            }
+            if (reqTerm != raftStatus.getCurrentTerm() || raftStatus.getRole() != RaftRole.leader) {
+                return;
+            }
+            if (rf.getBody().isSuccess()) {
+                if (readSeq > member.getLastConfirmReadSeq()) {
+                    member.setLastConfirmReadSeq(readSeq);
+                }
+                if (reqNanos - member.getLastConfirmReqNanos() > 0) {
+                    member.setLastConfirmReqNanos(reqNanos);
+                    RaftUtil.updateLease(raftStatus);
+                }
+                afterConfirm();
+            }
+        }, raftExecutor);
+    }
+
     @SuppressWarnings("StatementWithEmptyBody")
     private void replicate(RaftMember member) {
         if (raftStatus.getRole() != RaftRole.leader) {
@@ -283,9 +354,9 @@ public class ReplicateManager {
 
         member.setNextIndex(prevLogIndex + 1 + logs.size());
 
-        DtTime timeout = new DtTime(config.getRpcTimeout(), TimeUnit.MILLISECONDS);
-        CompletableFuture<ReadFrame<AppendRespCallback>> f = client.sendRequest(member.getNode().getPeer(),
-                req, APPEND_RESP_DECODER, timeout);
+        // the follower replies after fsync, so the append is not batched with other small requests
+        CompletableFuture<ReadFrame<AppendRespCallback>> f = batcher.sendRequestNoBatch(member.getNode().getPeer(),
+                req, APPEND_RESP_DECODER);
         registerAppendResultCallback(member, prevLogIndex, prevLogTerm, f, logs, bytes);
     }
 
@@ -398,6 +469,14 @@ public class ReplicateManager {
     private void updateLease(RaftMember member, long reqNanos, RaftStatusImpl raftStatus) {
         member.setLastConfirmReqNanos(reqNanos);
         RaftUtil.updateLease(raftStatus);
+        afterConfirm();
+    }
+
+    private void afterConfirm() {
+        if (readIndexManager.tryConfirm()) {
+            // the reads arrived during last round start a new round
+            sendHeartBeat();
+        }
     }
 
     private void processLogNotMatch(RaftMember member, long prevLogIndex, int prevLogTerm, AppendRespCallback body, RaftStatusImpl raftStatus) {
@@ -576,9 +655,8 @@ public class ReplicateManager {
 
         InstallSnapshotReq.InstallReqWriteFrame wf = new InstallSnapshotReq.InstallReqWriteFrame(req);
         wf.setCommand(Commands.RAFT_INSTALL_SNAPSHOT);
-        DtTime timeout = new DtTime(config.getRpcTimeout(), TimeUnit.MILLISECONDS);
         CompletableFuture<ReadFrame<InstallSnapshotResp>> future = client.sendRequest(
-                member.getNode().getPeer(), wf, INSTALL_SNAPSHOT_RESP_DECODER, timeout);
+                member.getNode().getPeer(), wf, INSTALL_SNAPSHOT_RESP_DECODER, config.getRpcTimeout(), TimeUnit.MILLISECONDS);
         int bytes = data == null ? 0 : data.getBuffer().remaining();
         si.offset += bytes;
         registerInstallSnapshotCallback(future, member, si, req.term, req.offset, bytes, req.done, req.lastIncludedIndex);
@@ -17,15 +17,15 @@ package com.github.dtprj.dongting.raft.impl;
 
 import com.github.dtprj.dongting.codec.Decoder;
 import com.github.dtprj.dongting.codec.PbNoCopyDecoder;
-import com.github.dtprj.dongting.common.DtTime;
 import com.github.dtprj.dongting.log.BugLog;
 import com.github.dtprj.dongting.log.DtLog;
 import com.github.dtprj.dongting.log.DtLogs;
 import com.github.dtprj.dongting.net.Commands;
-import com.github.dtprj.dongting.net.NioClient;
 import com.github.dtprj.dongting.net.ReadFrame;
 import com.github.dtprj.dongting.raft.rpc.VoteReq;
+import com.github.dtprj.dongting.raft.rpc.VoteReqCodec;
 import com.github.dtprj.dongting.raft.rpc.VoteResp;
+import com.github.dtprj.dongting.raft.rpc.VoteRespCodec;
 import com.github.dtprj.dongting.raft.server.RaftServerConfig;
 
 import java.util.Collection;
@@ -43,13 +43,13 @@ public class VoteManager implements BiConsumer<EventType, Object> {
 
     private static final DtLog log = DtLogs.getLogger(VoteManager.class);
     private final Raft raft;
-    private final NioClient client;
+    private final RaftRpcBatcher batcher;
     private final RaftStatusImpl raftStatus;
     private final RaftServerConfig config;
     private final int groupId;
     private final RaftExecutor raftExecutor;
 
-    private static final Decoder<VoteResp> RESP_DECODER = new PbNoCopyDecoder<>(c -> new VoteResp.Callback());
+    private static final Decoder<VoteResp> RESP_DECODER = new PbNoCopyDecoder<>(c -> new VoteRespCodec.Callback());
 
     private boolean voting;
     private HashSet<Integer> votes;
@@ -57,9 +57,9 @@ public class VoteManager implements BiConsumer<EventType, Object> {
     private int currentVoteId;
 
     public VoteManager(RaftServerConfig serverConfig, int groupId, RaftStatusImpl raftStatus,
-                       NioClient client, RaftExecutor executor, Raft raft) {
+                       RaftRpcBatcher batcher, RaftExecutor executor, Raft raft) {
         this.raft = raft;
-        this.client = client;
+        this.batcher = batcher;
         this.raftStatus = raftStatus;
         this.config = serverConfig;
         this.groupId = groupId;
@@ -172,13 +172,12 @@ public class VoteManager implements BiConsumer<EventType, Object> {
         req.setLastLogIndex(raftStatus.getLastLogIndex());
         req.setLastLogTerm(raftStatus.getLastLogTerm());
         req.setPreVote(preVote);
-        VoteReq.VoteReqWriteFrame wf = new VoteReq.VoteReqWriteFrame(req);
+        VoteReqCodec.VoteReqWriteFrame wf = new VoteReqCodec.VoteReqWriteFrame(req);
         wf.setCommand(Commands.RAFT_REQUEST_VOTE);
-        DtTime timeout = new DtTime(config.getRpcTimeout(), TimeUnit.MILLISECONDS);
 
         final int voteIdOfRequest = this.currentVoteId;
 
-        CompletableFuture<ReadFrame<VoteResp>> f = client.sendRequest(member.getNode().getPeer(), wf, RESP_DECODER, timeout);
+        CompletableFuture<ReadFrame<VoteResp>> f = batcher.sendRequest(member.getNode().getPeer(), wf, RESP_DECODER);
         log.info("send {} request. remoteNode={}, groupId={}, term={}, lastLogIndex={}, lastLogTerm={}",
                 preVote ? "pre-vote" : "vote", member.getNode().getNodeId(), groupId,
                 currentTerm, req.getLastLogIndex(), req.getLastLogTerm());
@@ -343,7 +342,7 @@ public class VoteManager implements BiConsumer<EventType, Object> {
                         RaftUtil.changeToLeader(raftStatus);
                         RaftUtil.updateLease(raftStatus);
                         cancelVote();
-                        raft.sendHeartBeat();
+                        raft.appendNoopLog();
                     }
                 }
             }
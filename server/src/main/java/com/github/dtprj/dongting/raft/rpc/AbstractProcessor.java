@@ -41,8 +41,13 @@ abstract class AbstractProcessor<T> extends ReqProcessor<T> {
 
     protected abstract int getGroupId(ReadFrame<T> frame);
 
+    /**
+     * invoked in raft thread.
+     *
+     * @return the response, or null if the response is written by writeResp() later
+     */
     protected abstract WriteFrame doProcess(ReadFrame<T> frame, ChannelContext channelContext,
-                                            RaftGroupImpl gc);
+                                            ReqContext reqContext, RaftGroupImpl gc);
 
     @Override
     public final WriteFrame process(ReadFrame<T> frame, ChannelContext channelContext, ReqContext reqContext) {
@@ -66,9 +71,19 @@ abstract class AbstractProcessor<T> extends ReqProcessor<T> {
     }
 
     private void process(ReadFrame<T> frame, ChannelContext channelContext, ReqContext reqContext, RaftGroupImpl gc) {
-        WriteFrame wf = doProcess(frame, channelContext, gc);
+        WriteFrame wf = doProcess(frame, channelContext, reqContext, gc);
         if (wf != null) {
-            channelContext.getRespWriter().writeRespInBizThreads(frame, wf, reqContext.getTimeout());
+            writeResp(frame, channelContext, reqContext, wf);
+        }
+    }
+
+    protected void writeResp(ReadFrame<T> frame, ChannelContext channelContext, ReqContext reqContext, WriteFrame wf) {
+        if (frame instanceof BatchSubFrame) {
+            // the request is a part of RAFT_BATCH, the response is written with other sub responses
+            BatchSubFrame sub = (BatchSubFrame) frame;
+            sub.collector.complete(sub.index, sub, wf);
+        } else {
+            channelContext.getRespWriter().writeRespInBizThreads(frame, wf, reqContext);
         }
     }
 
@@ -24,9 +24,11 @@ import com.github.dtprj.dongting.log.DtLogs;
 import com.github.dtprj.dongting.net.ChannelContext;
 import com.github.dtprj.dongting.net.CmdCodes;
 import com.github.dtprj.dongting.net.ReadFrame;
+import com.github.dtprj.dongting.net.ReqContext;
 import com.github.dtprj.dongting.net.WriteFrame;
 import com.github.dtprj.dongting.raft.impl.RaftGroupImpl;
 import com.github.dtprj.dongting.raft.impl.RaftGroups;
+import com.github.dtprj.dongting.raft.impl.RaftMember;
 import com.github.dtprj.dongting.raft.impl.RaftRole;
 import com.github.dtprj.dongting.raft.impl.RaftStatusImpl;
 import com.github.dtprj.dongting.raft.impl.RaftTask;
@@ -83,133 +85,286 @@ public class AppendProcessor extends AbstractProcessor<AppendReqCallback> {
     }
 
     @Override
-    protected WriteFrame doProcess(ReadFrame<AppendReqCallback> rf, ChannelContext channelContext, RaftGroupImpl gc) {
-        AppendRespWriteFrame resp = new AppendRespWriteFrame();
-        AppendReqCallback req = rf.getBody();
+    protected WriteFrame doProcess(ReadFrame<AppendReqCallback> rf, ChannelContext channelContext,
+                                   ReqContext reqContext, RaftGroupImpl gc) {
+        AppendTask task = new AppendTask(rf, channelContext, reqContext, gc);
         RaftStatusImpl raftStatus = gc.getRaftStatus();
-        if (raftStatus.isError()) {
-            resp.setSuccess(false);
-            resp.setAppendCode(CODE_SERVER_ERROR);
-            resp.setMsg("server in error state");
-        } else if (gc.getMemberManager().checkLeader(req.getLeaderId())) {
-            int remoteTerm = req.getTerm();
-            int localTerm = raftStatus.getCurrentTerm();
-            if (remoteTerm == localTerm) {
-                if (raftStatus.getRole() == RaftRole.follower) {
-                    RaftUtil.resetElectTimer(raftStatus);
-                    RaftUtil.updateLeader(raftStatus, req.getLeaderId());
-                    append(gc, raftStatus, req, resp);
-                } else if (raftStatus.getRole() == RaftRole.observer) {
-                    RaftUtil.updateLeader(raftStatus, req.getLeaderId());
-                    append(gc, raftStatus, req, resp);
-                } else if (raftStatus.getRole() == RaftRole.candidate) {
-                    RaftUtil.changeToFollower(raftStatus, req.getLeaderId());
-                    append(gc, raftStatus, req, resp);
+        if (raftStatus.isAppendMatching() && !isHeartBeat(rf.getBody())) {
+            // the append from current leader proves it alive, don't start a needless election while matching
+            if (isFromCurrentLeader(raftStatus, rf.getBody())) {
+                RaftUtil.resetElectTimer(raftStatus);
+            }
+            // keep the order of the append requests
+            raftStatus.getWaitingAppends().addLast(task::processAndWriteResp);
+            return null;
+        }
+        return task.process();
+    }
+
+    private static boolean isFromCurrentLeader(RaftStatusImpl raftStatus, AppendReqCallback req) {
+        RaftMember leader = raftStatus.getCurrentLeader();
+        return raftStatus.getRole() == RaftRole.follower && req.getTerm() == raftStatus.getCurrentTerm()
+                && leader != null && leader.getNode().getNodeId() == req.getLeaderId();
+    }
+
+    private static boolean isHeartBeat(AppendReqCallback req) {
+        return req.getLogs() == null || req.getLogs().size() == 0;
+    }
+
+    private static void processWaitingAppends(RaftStatusImpl raftStatus) {
+        while (!raftStatus.isAppendMatching() && raftStatus.getWaitingAppends().size() > 0) {
+            raftStatus.getWaitingAppends().removeFirst().run();
+        }
+    }
+
+    private class AppendTask {
+        private final ReadFrame<AppendReqCallback> rf;
+        private final ChannelContext channelContext;
+        private final ReqContext reqContext;
+        private final RaftGroupImpl gc;
+        private final AppendReqCallback req;
+        private final RaftStatusImpl raftStatus;
+        private final AppendRespWriteFrame resp = new AppendRespWriteFrame();
+
+        AppendTask(ReadFrame<AppendReqCallback> rf, ChannelContext channelContext, ReqContext reqContext,
+                   RaftGroupImpl gc) {
+            this.rf = rf;
+            this.channelContext = channelContext;
+            this.reqContext = reqContext;
+            this.gc = gc;
+            this.req = rf.getBody();
+            this.raftStatus = gc.getRaftStatus();
+        }
+
+        void processAndWriteResp() {
+            WriteFrame wf = process();
+            if (wf != null) {
+                writeResp(rf, channelContext, reqContext, wf);
+            }
+        }
+
+        /**
+         * @return the response, or null if the response will be written asynchronously
+         */
+        WriteFrame process() {
+            RaftStatusImpl raftStatus = this.raftStatus;
+            boolean async = false;
+            if (raftStatus.isError()) {
+                resp.setSuccess(false);
+                resp.setAppendCode(CODE_SERVER_ERROR);
+                resp.setMsg("server in error state");
+            } else if (gc.getMemberManager().checkLeader(req.getLeaderId())) {
+                int remoteTerm = req.getTerm();
+                int localTerm = raftStatus.getCurrentTerm();
+                if (remoteTerm == localTerm) {
+                    if (raftStatus.getRole() == RaftRole.follower) {
+                        RaftUtil.resetElectTimer(raftStatus);
+                        RaftUtil.updateLeader(raftStatus, req.getLeaderId());
+                        async = append();
+                    } else if (raftStatus.getRole() == RaftRole.observer) {
+                        RaftUtil.updateLeader(raftStatus, req.getLeaderId());
+                        async = append();
+                    } else if (raftStatus.getRole() == RaftRole.candidate) {
+                        RaftUtil.changeToFollower(raftStatus, req.getLeaderId());
+                        async = append();
+                    } else {
+                        BugLog.getLog().error("leader receive raft append request. term={}, remote={}, groupId={}",
+                                remoteTerm, channelContext.getRemoteAddr(), raftStatus.getGroupId());
+                        resp.setSuccess(false);
+                    }
+                } else if (remoteTerm > localTerm) {
+                    RaftUtil.incrTerm(remoteTerm, raftStatus, req.getLeaderId());
+                    StatusUtil.persist(raftStatus);// if failed, next append will retry
+                    async = append();
                 } else {
-                    BugLog.getLog().error("leader receive raft append request. term={}, remote={}, groupId={}",
-                            remoteTerm, channelContext.getRemoteAddr(), raftStatus.getGroupId());
+                    log.debug("receive append request with a smaller term, ignore, remoteTerm={}, localTerm={}, groupId={}",
+                            remoteTerm, localTerm, raftStatus.getGroupId());
                     resp.setSuccess(false);
                 }
-            } else if (remoteTerm > localTerm) {
-                RaftUtil.incrTerm(remoteTerm, raftStatus, req.getLeaderId());
-                StatusUtil.persist(raftStatus);// if failed, next append will retry
-                append(gc, raftStatus, req, resp);
             } else {
-                log.debug("receive append request with a smaller term, ignore, remoteTerm={}, localTerm={}, groupId={}",
-                        remoteTerm, localTerm, raftStatus.getGroupId());
+                log.warn("receive append request from a non-member, ignore, remoteId={}, groupId={}, remote={}",
+                        req.getLeaderId(), req.getGroupId(), channelContext.getRemoteAddr());
                 resp.setSuccess(false);
+                resp.setAppendCode(CODE_NOT_MEMBER_IN_GROUP);
+            }
+            if (async) {
+                return null;
             }
-        } else {
-            log.warn("receive append request from a non-member, ignore, remoteId={}, groupId={}, remote={}",
-                    req.getLeaderId(), req.getGroupId(), channelContext.getRemoteAddr());
-            resp.setSuccess(false);
-            resp.setAppendCode(CODE_NOT_MEMBER_IN_GROUP);
+            resp.setTerm(raftStatus.getCurrentTerm());
+            resp.setRespCode(CmdCodes.SUCCESS);
+            return resp;
         }
 
-        resp.setTerm(raftStatus.getCurrentTerm());
-        resp.setRespCode(CmdCodes.SUCCESS);
-        return resp;
-    }
+        private void writeAsyncResp() {
+            resp.setTerm(raftStatus.getCurrentTerm());
+            resp.setRespCode(CmdCodes.SUCCESS);
+            writeResp(rf, channelContext, reqContext, resp);
+        }
 
-    @SuppressWarnings("ForLoopReplaceableByForEach")
-    private void append(RaftGroupImpl gc, RaftStatusImpl raftStatus, AppendReqCallback req, AppendRespWriteFrame resp) {
-        if (raftStatus.isInstallSnapshot()) {
-            resp.setSuccess(false);
-            resp.setAppendCode(CODE_INSTALL_SNAPSHOT);
-            return;
+        /**
+         * @return true if the response will be written asynchronously
+         */
+        private boolean append() {
+            RaftStatusImpl raftStatus = this.raftStatus;
+            if (isHeartBeat(req)) {
+                heartBeat();
+                return false;
+            }
+            if (raftStatus.isInstallSnapshot()) {
+                resp.setSuccess(false);
+                resp.setAppendCode(CODE_INSTALL_SNAPSHOT);
+                return false;
+            }
+            gc.getVoteManager().cancelVote();
+            if (req.getPrevLogIndex() != raftStatus.getLastLogIndex() || req.getPrevLogTerm() != raftStatus.getLastLogTerm()) {
+                log.info("log not match. prevLogIndex={}, localLastLogIndex={}, prevLogTerm={}, localLastLogTerm={}, leaderId={}, groupId={}",
+                        req.getPrevLogIndex(), raftStatus.getLastLogIndex(), req.getPrevLogTerm(),
+                        raftStatus.getLastLogTerm(), req.getLeaderId(), raftStatus.getGroupId());
+                // don't block the raft thread, the subsequent append requests wait in queue
+                raftStatus.setAppendMatching(true);
+                int term = raftStatus.getCurrentTerm();
+                CompletableFuture<Pair<Integer, Long>> replicatePos = gc.getRaftLog().findReplicatePos(
+                        req.getPrevLogTerm(), req.getPrevLogIndex(), raftStatus.getLastLogTerm(),
+                        raftStatus.getLastLogIndex(), raftStatus::isStop);
+                replicatePos.whenCompleteAsync((pos, ex) -> {
+                    raftStatus.setAppendMatching(false);
+                    if (!afterFindReplicatePos(term, pos, ex) || !appendAfterMatch()) {
+                        writeAsyncResp();
+                    }
+                    processWaitingAppends(raftStatus);
+                }, gc.getRaftExecutor());
+                return true;
+            }
+            return appendAfterMatch();
         }
-        gc.getVoteManager().cancelVote();
-        if (req.getPrevLogIndex() != raftStatus.getLastLogIndex() || req.getPrevLogTerm() != raftStatus.getLastLogTerm()) {
-            log.info("log not match. prevLogIndex={}, localLastLogIndex={}, prevLogTerm={}, localLastLogTerm={}, leaderId={}, groupId={}",
-                    req.getPrevLogIndex(), raftStatus.getLastLogIndex(), req.getPrevLogTerm(),
-                    raftStatus.getLastLogTerm(), req.getLeaderId(), raftStatus.getGroupId());
-            CompletableFuture<Pair<Integer, Long>> replicatePos = gc.getRaftLog().findReplicatePos(
-                    req.getPrevLogTerm(), req.getPrevLogIndex(), raftStatus.getLastLogTerm(),
-                    raftStatus.getLastLogIndex(), raftStatus::isStop);
-            try {
-                Pair<Integer, Long> pos = replicatePos.get();
-                if (pos == null) {
-                    log.info("follower has no suggest index, will install snapshot. groupId={}", raftStatus.getGroupId());
-                    resp.setSuccess(false);
-                    resp.setAppendCode(CODE_LOG_NOT_MATCH);
-                    resp.setSuggestTerm(0);
-                    resp.setSuggestIndex(0);
-                    return;
-                } else if (pos.getLeft() == req.getPrevLogTerm() && pos.getRight() == req.getPrevLogIndex()) {
-                    log.info("local log truncate to prevLogIndex={}, prevLogTerm={}, groupId={}",
-                            req.getPrevLogIndex(), req.getPrevLogTerm(), raftStatus.getGroupId());
-                    // not return here
-                } else {
-                    log.info("follower suggest term={}, index={}, groupId={}", pos.getLeft(), pos.getRight(), raftStatus.getGroupId());
-                    resp.setSuccess(false);
-                    resp.setAppendCode(CODE_LOG_NOT_MATCH);
-                    resp.setSuggestTerm(pos.getLeft());
-                    resp.setSuggestIndex(pos.getRight());
-                    return;
+
+        private void heartBeat() {
+            RaftStatusImpl raftStatus = this.raftStatus;
+            gc.getVoteManager().cancelVote();
+            resp.setSuccess(true);
+            if (raftStatus.isInstallSnapshot() || raftStatus.isAppendMatching()) {
+                return;
+            }
+            // the last log of current term is written by current leader, so the logs before it (include)
+            // match the logs of leader, and can be committed by the commit index of leader
+            if (raftStatus.getLastLogTerm() == raftStatus.getCurrentTerm()) {
+                long newCommitIndex = Math.min(raftStatus.getLastLogIndex(), req.getLeaderCommit());
+                if (newCommitIndex > raftStatus.getCommitIndex()) {
+                    raftStatus.setCommitIndex(newCommitIndex);
+                    gc.getApplyManager().apply(raftStatus);
                 }
-            } catch (Exception ex) {
+            }
+        }
+
+        /**
+         * @return true if the local log is truncated to prevLogIndex and should continue to append
+         */
+        private boolean afterFindReplicatePos(int term, Pair<Integer, Long> pos, Throwable ex) {
+            RaftStatusImpl raftStatus = this.raftStatus;
+            if (ex != null) {
                 log.error("find replicate pos error", ex);
                 resp.setSuccess(false);
                 resp.setAppendCode(CODE_SERVER_ERROR);
-                return;
+                return false;
+            }
+            if (term != raftStatus.getCurrentTerm() || raftStatus.getRole() == RaftRole.leader
+                    || raftStatus.isInstallSnapshot()) {
+                log.info("raft status changed when finding replicate pos, groupId={}", raftStatus.getGroupId());
+                resp.setSuccess(false);
+                resp.setAppendCode(CODE_SERVER_ERROR);
+                return false;
+            }
+            if (pos == null) {
+                log.info("follower has no suggest index, will install snapshot. groupId={}", raftStatus.getGroupId());
+                resp.setSuccess(false);
+                resp.setAppendCode(CODE_LOG_NOT_MATCH);
+                resp.setSuggestTerm(0);
+                resp.setSuggestIndex(0);
+                return false;
+            } else if (pos.getLeft() == req.getPrevLogTerm() && pos.getRight() == req.getPrevLogIndex()) {
+                log.info("local log truncate to prevLogIndex={}, prevLogTerm={}, groupId={}",
+                        req.getPrevLogIndex(), req.getPrevLogTerm(), raftStatus.getGroupId());
+                return true;
+            } else {
+                log.info("follower suggest term={}, index={}, groupId={}", pos.getLeft(), pos.getRight(), raftStatus.getGroupId());
+                resp.setSuccess(false);
+                resp.setAppendCode(CODE_LOG_NOT_MATCH);
+                resp.setSuggestTerm(pos.getLeft());
+                resp.setSuggestIndex(pos.getRight());
+                return false;
             }
-        }
-        if (req.getPrevLogIndex() < raftStatus.getCommitIndex()) {
-            BugLog.getLog().error("leader append request prevLogIndex less than local commit index. leaderId={}, prevLogIndex={}, commitIndex={}, groupId={}",
-                    req.getLeaderId(), req.getPrevLogIndex(), raftStatus.getCommitIndex(), raftStatus.getGroupId());
-            resp.setSuccess(false);
-            resp.setAppendCode(CODE_PREV_LOG_INDEX_LESS_THAN_LOCAL_COMMIT);
-            return;
-        }
-        ArrayList<LogItem> logs = req.getLogs();
-        if (logs == null || logs.size() == 0) {
-            log.error("bad request: no logs");
-            resp.setSuccess(false);
-            resp.setAppendCode(CODE_REQ_ERROR);
-            return;
         }
 
-        RaftUtil.append(gc.getRaftLog(), raftStatus, logs);
+        /**
+         * @return true if the response will be written asynchronously
+         */
+        @SuppressWarnings("ForLoopReplaceableByForEach")
+        private boolean appendAfterMatch() {
+            RaftStatusImpl raftStatus = this.raftStatus;
+            if (req.getPrevLogIndex() < raftStatus.getCommitIndex()) {
+                BugLog.getLog().error("leader append request prevLogIndex less than local commit index. leaderId={}, prevLogIndex={}, commitIndex={}, groupId={}",
+                        req.getLeaderId(), req.getPrevLogIndex(), raftStatus.getCommitIndex(), raftStatus.getGroupId());
+                resp.setSuccess(false);
+                resp.setAppendCode(CODE_PREV_LOG_INDEX_LESS_THAN_LOCAL_COMMIT);
+                return false;
+            }
+            ArrayList<LogItem> logs = req.getLogs();
+            if (logs == null || logs.size() == 0) {
+                log.error("bad request: no logs");
+                resp.setSuccess(false);
+                resp.setAppendCode(CODE_REQ_ERROR);
+                return false;
+            }
 
-        for (int i = 0; i < logs.size(); i++) {
-            LogItem li = logs.get(i);
-            RaftInput raftInput = new RaftInput(li.getBizType(), li.getHeader(), li.getBody(), null, li.getActualBodySize());
-            RaftTask task = new RaftTask(raftStatus.getTs(), li.getType(), raftInput, null);
-            task.item = li;
-            raftStatus.getPendingRequests().put(li.getIndex(), task);
-        }
+            RaftUtil.append(gc.getRaftLog(), raftStatus, logs);
+
+            for (int i = 0; i < logs.size(); i++) {
+                LogItem li = logs.get(i);
+                RaftInput raftInput = new RaftInput(li.getBizType(), li.getHeader(), li.getBody(), null, li.getActualBodySize());
+                RaftTask task = new RaftTask(raftStatus.getTs(), li.getType(), raftInput, null);
+                task.item = li;
+                raftStatus.getPendingRequests().put(li.getIndex(), task);
+            }
+
+            long newIndex = req.getPrevLogIndex() + logs.size();
+            raftStatus.setLastLogIndex(newIndex);
+            raftStatus.setLastLogTerm(logs.get(logs.size() - 1).getTerm());
+            if (req.getLeaderCommit() > raftStatus.getCommitIndex()) {
+                raftStatus.setCommitIndex(Math.min(newIndex, req.getLeaderCommit()));
+                gc.getApplyManager().apply(raftStatus);
+            } else if (req.getLeaderCommit() < raftStatus.getCommitIndex()) {
+                log.info("leader commitIndex less than local, maybe leader restart recently. leaderId={}, leaderTerm={}, leaderCommitIndex={}, localCommitIndex={}, groupId={}",
+                        req.getLeaderId(), req.getTerm(), req.getLeaderCommit(), raftStatus.getCommitIndex(), raftStatus.getGroupId());
+            }
 
-        long newIndex = req.getPrevLogIndex() + logs.size();
-        raftStatus.setLastLogIndex(newIndex);
-        raftStatus.setLastLogTerm(logs.get(logs.size() - 1).getTerm());
-        if (req.getLeaderCommit() > raftStatus.getCommitIndex()) {
-            raftStatus.setCommitIndex(Math.min(newIndex, req.getLeaderCommit()));
-            gc.getApplyManager().apply(raftStatus);
-        } else if (req.getLeaderCommit() < raftStatus.getCommitIndex()) {
-            log.info("leader commitIndex less than local, maybe leader restart recently. leaderId={}, leaderTerm={}, leaderCommitIndex={}, localCommitIndex={}, groupId={}",
-                    req.getLeaderId(), req.getTerm(), req.getLeaderCommit(), raftStatus.getCommitIndex(), raftStatus.getGroupId());
+            // respond after the logs are durable, the successive requests appended before the fsync
+            // finished share one fsync, the responses are written in order of the requests
+            int term = raftStatus.getCurrentTerm();
+            CompletableFuture<Long> syncFuture = gc.getRaftLog().sync();
+            raftStatus.setLastAppendResp(raftStatus.getLastAppendResp().thenCompose(v ->
+                    syncFuture.handle((durableIndex, ex) -> {
+                        if (ex != null) {
+                            log.error("sync raft log fail, groupId={}", raftStatus.getGroupId(), ex);
+                            resp.setSuccess(false);
+                            resp.setAppendCode(CODE_SERVER_ERROR);
+                        } else if (term != raftStatus.getCurrentTerm() || durableIndex < newIndex) {
+                            // term changed (the leader will check the term in response first),
+                            // or the logs are truncated by the later request
+                            resp.setSuccess(false);
+                            resp.setAppendCode(CODE_SERVER_ERROR);
+                        } else {
+                            resp.setSuccess(true);
+                        }
+                        try {
+                            writeAsyncResp();
+                        } catch (Throwable e) {
+                            // don't break the chain of the later responses
+                            BugLog.getLog().error("write append resp fail", e);
+                        }
+                        return null;
+                    })));
+            return true;
         }
-        resp.setSuccess(true);
     }
 
     @Override
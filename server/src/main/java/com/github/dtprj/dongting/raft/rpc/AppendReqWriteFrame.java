@@ -138,12 +138,14 @@ public class AppendReqWriteFrame extends WriteFrame {
                     } else {
                         return true;
                     }
-                    int require = PbUtil.accurateLengthDelimitedSize(7, computeItemSize(currentItem))
+                    // item size is cached in LogItem, computed once and shared by all followers
+                    int itemSize = computeItemSize(currentItem);
+                    int require = PbUtil.accurateLengthDelimitedPrefixSize(7, itemSize)
                             + currentItem.getPbHeaderSize();
                     if (buf.remaining() < require) {
                         return false;
                     }
-                    PbUtil.writeLengthDelimitedPrefix(buf, 7, computeItemSize(currentItem));
+                    PbUtil.writeLengthDelimitedPrefix(buf, 7, itemSize);
 
                     PbUtil.writeUnsignedInt32(buf, 1, currentItem.getType());
                     PbUtil.writeUnsignedInt32(buf, 2, currentItem.getBizType());
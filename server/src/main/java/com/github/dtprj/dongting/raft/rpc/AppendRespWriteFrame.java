@@ -54,6 +54,18 @@ public class AppendRespWriteFrame extends SmallNoCopyWriteFrame {
         PbUtil.writeFix64(buf, 5, suggestIndex);
     }
 
+    public int getTerm() {
+        return term;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public int getAppendCode() {
+        return appendCode;
+    }
+
     public void setTerm(int term) {
         this.term = term;
     }
@@ -0,0 +1,210 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.rpc;
+
+import com.github.dtprj.dongting.codec.DecodeContext;
+import com.github.dtprj.dongting.codec.Decoder;
+import com.github.dtprj.dongting.codec.EncodeContext;
+import com.github.dtprj.dongting.codec.PbCallback;
+import com.github.dtprj.dongting.codec.PbException;
+import com.github.dtprj.dongting.codec.PbNoCopyDecoder;
+import com.github.dtprj.dongting.codec.PbParser;
+import com.github.dtprj.dongting.codec.PbUtil;
+import com.github.dtprj.dongting.net.Frame;
+import com.github.dtprj.dongting.net.NetException;
+import com.github.dtprj.dongting.net.WriteFrame;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The codec of RAFT_BATCH body.
+ * <pre>
+ * message Batch {
+ *   // each is a complete frame (include the 4 bytes length prefix) of the sub request or response
+ *   repeated bytes frames = 1;
+ * }
+ * </pre>
+ * The sub frames are small, so they are encoded into a heap buffer when the batch is created.
+ *
+ * @author huangli
+ */
+public class BatchCodec {
+
+    /**
+     * encode the frames and clean them, the seq and command of the frames should be set before call.
+     */
+    public static ByteBuffer encode(List<? extends WriteFrame> frames) {
+        int len = frames.size();
+        int bodySize = 0;
+        try {
+            for (int i = 0; i < len; i++) {
+                WriteFrame f = frames.get(i);
+                bodySize += PbUtil.accurateLengthDelimitedSize(1, f.actualSize(f));
+            }
+            ByteBuffer buf = ByteBuffer.allocate(bodySize);
+            EncodeContext context = new EncodeContext(null);
+            for (int i = 0; i < len; i++) {
+                WriteFrame f = frames.get(i);
+                PbUtil.writeLengthDelimitedPrefix(buf, 1, f.actualSize(f));
+                if (!f.encode(context, buf, f)) {
+                    throw new NetException("encode sub frame failed: " + f);
+                }
+            }
+            buf.flip();
+            return buf;
+        } finally {
+            for (int i = 0; i < len; i++) {
+                frames.get(i).clean();
+            }
+        }
+    }
+
+    /**
+     * @param decoderChooser choose the body decoder of the sub frame, the command and seq of the frame is parsed
+     *                       before the body. If it returns null the body is skipped.
+     */
+    public static Decoder<List<BatchSubFrame>> createDecoder(Function<BatchSubFrame, Decoder<?>> decoderChooser) {
+        return new PbNoCopyDecoder<>(context -> new BatchCallback(context, decoderChooser));
+    }
+
+    private static class BatchCallback extends PbCallback<List<BatchSubFrame>> {
+        private final DecodeContext context;
+        private final Function<BatchSubFrame, Decoder<?>> decoderChooser;
+        private final ArrayList<BatchSubFrame> result = new ArrayList<>();
+        private final SubFrameCallback subCallback = new SubFrameCallback();
+        private PbParser subParser;
+
+        BatchCallback(DecodeContext context, Function<BatchSubFrame, Decoder<?>> decoderChooser) {
+            this.context = context;
+            this.decoderChooser = decoderChooser;
+        }
+
+        @Override
+        public boolean readBytes(int index, ByteBuffer buf, int fieldLen, int currentPos) {
+            if (index != 1) {
+                return true;
+            }
+            byte[] bytes = parseBytes(buf, fieldLen, currentPos);
+            if (bytes == null) {
+                return true;
+            }
+            if (bytes.length < 4) {
+                throw new PbException("bad sub frame length: " + bytes.length);
+            }
+            int pbLen = bytes.length - 4;
+            if (subParser == null) {
+                subParser = PbParser.singleParser(subCallback, pbLen);
+            } else {
+                subParser.resetSingle(subCallback, pbLen);
+            }
+            // protobuf is little endian, same as the read buffer of NioWorker
+            subParser.parse(ByteBuffer.wrap(bytes, 4, pbLen).order(ByteOrder.LITTLE_ENDIAN));
+            if (!subCallback.success) {
+                throw new PbException("parse sub frame failed");
+            }
+            result.add(subCallback.frame);
+            return true;
+        }
+
+        @Override
+        public List<BatchSubFrame> getResult() {
+            return result;
+        }
+
+        private class SubFrameCallback extends PbCallback<Object> {
+            private BatchSubFrame frame;
+            private Decoder<?> decoder;
+            private boolean success;
+
+            @Override
+            public void begin(int len, PbParser parser) {
+                super.begin(len, parser);
+                frame = new BatchSubFrame();
+                decoder = null;
+                success = false;
+            }
+
+            @Override
+            public void end(boolean success) {
+                this.success = success;
+                super.end(success);
+            }
+
+            @Override
+            public boolean readVarNumber(int index, long value) {
+                switch (index) {
+                    case Frame.IDX_COMMAND:
+                        frame.setCommand((int) value);
+                        break;
+                    case Frame.IDX_RESP_CODE:
+                        frame.setRespCode((int) value);
+                        break;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean readFix32(int index, int value) {
+                if (index == Frame.IDX_SEQ) {
+                    frame.setSeq(value);
+                }
+                return true;
+            }
+
+            @Override
+            public boolean readFix64(int index, long value) {
+                if (index == Frame.IDX_TIMOUT) {
+                    frame.setTimeout(value);
+                }
+                return true;
+            }
+
+            @Override
+            public boolean readBytes(int index, ByteBuffer buf, int fieldLen, int currentPos) {
+                switch (index) {
+                    case Frame.IDX_MSG: {
+                        String msg = parseUTF8(buf, fieldLen, currentPos);
+                        if (msg != null) {
+                            frame.setMsg(msg);
+                        }
+                        return true;
+                    }
+                    case Frame.IDX_BODY: {
+                        if (currentPos == 0) {
+                            decoder = decoderChooser.apply(frame);
+                        }
+                        if (decoder == null) {
+                            return true;
+                        }
+                        boolean end = buf.remaining() >= fieldLen - currentPos;
+                        // the pb parser of the context is in use by the batch frame
+                        DecodeContext c = context.createOrGetNestedContext(currentPos == 0);
+                        Object o = decoder.decode(c, buf, fieldLen, currentPos);
+                        if (end) {
+                            frame.setBody(o);
+                        }
+                        return true;
+                    }
+                }
+                return true;
+            }
+        }
+    }
+}
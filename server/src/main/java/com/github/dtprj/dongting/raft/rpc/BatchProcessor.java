@@ -0,0 +1,140 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.rpc;
+
+import com.github.dtprj.dongting.codec.Decoder;
+import com.github.dtprj.dongting.common.IntObjMap;
+import com.github.dtprj.dongting.log.DtLog;
+import com.github.dtprj.dongting.log.DtLogs;
+import com.github.dtprj.dongting.net.ByteBufferWriteFrame;
+import com.github.dtprj.dongting.net.ChannelContext;
+import com.github.dtprj.dongting.net.CmdCodes;
+import com.github.dtprj.dongting.net.EmptyBodyRespFrame;
+import com.github.dtprj.dongting.net.ReadFrame;
+import com.github.dtprj.dongting.net.ReqContext;
+import com.github.dtprj.dongting.net.ReqProcessor;
+import com.github.dtprj.dongting.net.WriteFrame;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process the RAFT_BATCH request, which contains small raft requests of many groups sent to this node. Each sub
+ * request is dispatched to the processor of its command, the batch response is written after all the sub
+ * responses are ready. So the sender only batches the requests replied synchronously by the processors (ping,
+ * vote, heartbeat), see RaftRpcBatcher.
+ *
+ * @author huangli
+ */
+public class BatchProcessor extends ReqProcessor<List<BatchSubFrame>> {
+    private static final DtLog log = DtLogs.getLogger(BatchProcessor.class);
+
+    private final IntObjMap<AbstractProcessor<?>> processors = new IntObjMap<>();
+    private final Decoder<List<BatchSubFrame>> decoder;
+
+    public BatchProcessor() {
+        this.decoder = BatchCodec.createDecoder(sub -> {
+            AbstractProcessor<?> p = processors.get(sub.getCommand());
+            return p == null ? null : p.createDecoder();
+        });
+    }
+
+    /**
+     * register the processor of the sub request, should be called before the server start.
+     */
+    public void register(int command, ReqProcessor<?> processor) {
+        if (!(processor instanceof AbstractProcessor)) {
+            throw new IllegalArgumentException("not a raft group processor: " + processor);
+        }
+        processors.put(command, (AbstractProcessor<?>) processor);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Override
+    public WriteFrame process(ReadFrame<List<BatchSubFrame>> frame, ChannelContext channelContext,
+                              ReqContext reqContext) {
+        List<BatchSubFrame> subs = frame.getBody();
+        if (subs == null || subs.isEmpty()) {
+            EmptyBodyRespFrame wf = new EmptyBodyRespFrame(CmdCodes.BIZ_ERROR);
+            wf.setMsg("empty batch");
+            return wf;
+        }
+        int len = subs.size();
+        RespCollector collector = new RespCollector(frame, channelContext, reqContext, len);
+        for (int i = 0; i < len; i++) {
+            BatchSubFrame sub = subs.get(i);
+            sub.collector = collector;
+            sub.index = i;
+            AbstractProcessor p = processors.get(sub.getCommand());
+            if (p == null) {
+                EmptyBodyRespFrame wf = new EmptyBodyRespFrame(CmdCodes.COMMAND_NOT_SUPPORT);
+                wf.setMsg("command not supported in batch: " + sub.getCommand());
+                collector.complete(i, sub, wf);
+                continue;
+            }
+            WriteFrame resp;
+            try {
+                resp = p.process(sub, channelContext, reqContext);
+            } catch (Throwable e) {
+                log.error("process sub request fail. command={}", sub.getCommand(), e);
+                EmptyBodyRespFrame wf = new EmptyBodyRespFrame(CmdCodes.BIZ_ERROR);
+                wf.setMsg(e.toString());
+                resp = wf;
+            }
+            if (resp != null) {
+                collector.complete(i, sub, resp);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Decoder<List<BatchSubFrame>> createDecoder() {
+        return decoder;
+    }
+
+    static class RespCollector {
+        private final ReadFrame<?> batchReq;
+        private final ChannelContext channelContext;
+        private final ReqContext reqContext;
+        private final WriteFrame[] resps;
+        private final AtomicInteger remaining;
+
+        RespCollector(ReadFrame<?> batchReq, ChannelContext channelContext, ReqContext reqContext, int count) {
+            this.batchReq = batchReq;
+            this.channelContext = channelContext;
+            this.reqContext = reqContext;
+            this.resps = new WriteFrame[count];
+            this.remaining = new AtomicInteger(count);
+        }
+
+        /**
+         * may be called in different raft threads, the last one writes the batch response.
+         */
+        void complete(int index, BatchSubFrame sub, WriteFrame resp) {
+            resp.setSeq(sub.getSeq());
+            resp.setCommand(sub.getCommand());
+            // the array element is published by the atomic decrement
+            resps[index] = resp;
+            if (remaining.decrementAndGet() == 0) {
+                ByteBufferWriteFrame wf = new ByteBufferWriteFrame(BatchCodec.encode(Arrays.asList(resps)));
+                wf.setRespCode(CmdCodes.SUCCESS);
+                channelContext.getRespWriter().writeRespInBizThreads(batchReq, wf, reqContext);
+            }
+        }
+    }
+}
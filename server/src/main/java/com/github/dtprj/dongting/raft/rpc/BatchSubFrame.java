@@ -0,0 +1,29 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.rpc;
+
+import com.github.dtprj.dongting.net.ReadFrame;
+
+/**
+ * A request or response frame inside a RAFT_BATCH frame, the seq is the index in the batch.
+ *
+ * @author huangli
+ */
+public class BatchSubFrame extends ReadFrame<Object> {
+    // set in the receiver side, the response of the sub request is collected instead of written to channel
+    BatchProcessor.RespCollector collector;
+    int index;
+}
@@ -23,6 +23,7 @@ import com.github.dtprj.dongting.log.DtLogs;
 import com.github.dtprj.dongting.net.ChannelContext;
 import com.github.dtprj.dongting.net.CmdCodes;
 import com.github.dtprj.dongting.net.ReadFrame;
+import com.github.dtprj.dongting.net.ReqContext;
 import com.github.dtprj.dongting.net.WriteFrame;
 import com.github.dtprj.dongting.raft.impl.RaftGroupImpl;
 import com.github.dtprj.dongting.raft.impl.RaftGroups;
@@ -30,7 +31,6 @@ import com.github.dtprj.dongting.raft.impl.RaftRole;
 import com.github.dtprj.dongting.raft.impl.RaftStatusImpl;
 import com.github.dtprj.dongting.raft.impl.RaftUtil;
 import com.github.dtprj.dongting.raft.impl.StatusUtil;
-import com.github.dtprj.dongting.raft.sm.StateMachine;
 
 /**
  * @author huangli
@@ -51,74 +51,85 @@ public class InstallSnapshotProcessor extends AbstractProcessor<InstallSnapshotR
     }
 
     @Override
-    protected WriteFrame doProcess(ReadFrame<InstallSnapshotReq> frame, ChannelContext channelContext, RaftGroupImpl gc) {
+    protected WriteFrame doProcess(ReadFrame<InstallSnapshotReq> frame, ChannelContext channelContext, ReqContext reqContext, RaftGroupImpl gc) {
         InstallSnapshotReq req = frame.getBody();
-        try {
-            InstallSnapshotResp resp = new InstallSnapshotResp();
-            InstallSnapshotResp.InstallRespWriteFrame respFrame = new InstallSnapshotResp.InstallRespWriteFrame(resp);
-            int remoteTerm = req.term;
-            RaftStatusImpl raftStatus = gc.getRaftStatus();
+        InstallSnapshotResp resp = new InstallSnapshotResp();
+        int remoteTerm = req.term;
+        RaftStatusImpl raftStatus = gc.getRaftStatus();
+        boolean install = false;
 
-            if (raftStatus.isError()) {
-                resp.success = false;
-            } else if (gc.getMemberManager().checkLeader(req.leaderId)) {
-                int localTerm = raftStatus.getCurrentTerm();
-                if (remoteTerm == localTerm) {
-                    if (raftStatus.getRole() == RaftRole.follower) {
-                        RaftUtil.resetElectTimer(raftStatus);
-                        RaftUtil.updateLeader(raftStatus, req.leaderId);
-                        installSnapshot(raftStatus, gc.getStateMachine(), req, resp);
-                    } else if (raftStatus.getRole() == RaftRole.observer) {
-                        RaftUtil.updateLeader(raftStatus, req.leaderId);
-                        installSnapshot(raftStatus, gc.getStateMachine(), req, resp);
-                    } else if (raftStatus.getRole() == RaftRole.candidate) {
-                        RaftUtil.changeToFollower(raftStatus, req.leaderId);
-                        installSnapshot(raftStatus, gc.getStateMachine(), req, resp);
-                    } else {
-                        BugLog.getLog().error("leader receive raft install snapshot request. term={}, remote={}",
-                                remoteTerm, channelContext.getRemoteAddr());
-                        resp.success = false;
-                    }
-                } else if (remoteTerm > localTerm) {
-                    RaftUtil.incrTerm(remoteTerm, raftStatus, req.leaderId);
-                    StatusUtil.persist(raftStatus); // if failed next install/append will retry
-                    installSnapshot(raftStatus, gc.getStateMachine(), req, resp);
+        if (raftStatus.isError()) {
+            resp.success = false;
+        } else if (gc.getMemberManager().checkLeader(req.leaderId)) {
+            int localTerm = raftStatus.getCurrentTerm();
+            if (remoteTerm == localTerm) {
+                if (raftStatus.getRole() == RaftRole.follower) {
+                    RaftUtil.resetElectTimer(raftStatus);
+                    RaftUtil.updateLeader(raftStatus, req.leaderId);
+                    install = true;
+                } else if (raftStatus.getRole() == RaftRole.observer) {
+                    RaftUtil.updateLeader(raftStatus, req.leaderId);
+                    install = true;
+                } else if (raftStatus.getRole() == RaftRole.candidate) {
+                    RaftUtil.changeToFollower(raftStatus, req.leaderId);
+                    install = true;
                 } else {
-                    log.debug("receive raft install snapshot request with a smaller term, ignore, remoteTerm={}, localTerm={}", remoteTerm, localTerm);
+                    BugLog.getLog().error("leader receive raft install snapshot request. term={}, remote={}",
+                            remoteTerm, channelContext.getRemoteAddr());
                     resp.success = false;
                 }
+            } else if (remoteTerm > localTerm) {
+                RaftUtil.incrTerm(remoteTerm, raftStatus, req.leaderId);
+                StatusUtil.persist(raftStatus); // if failed next install/append will retry
+                install = true;
             } else {
+                log.debug("receive raft install snapshot request with a smaller term, ignore, remoteTerm={}, localTerm={}", remoteTerm, localTerm);
                 resp.success = false;
-                log.warn("receive raft install snapshot request from a non-member, ignore. remoteId={}, group={}, remote={}",
-                        req.leaderId, req.groupId, channelContext.getRemoteAddr());
             }
+        } else {
+            resp.success = false;
+            log.warn("receive raft install snapshot request from a non-member, ignore. remoteId={}, group={}, remote={}",
+                    req.leaderId, req.groupId, channelContext.getRemoteAddr());
+        }
 
-            resp.term = raftStatus.getCurrentTerm();
-            respFrame.setRespCode(CmdCodes.SUCCESS);
-            return respFrame;
-        } finally {
-            if (req.data != null) {
-                req.data.release();
+        if (install) {
+            if (req.offset == 0) {
+                // no new batch is started by apply manager since now
+                raftStatus.setInstallSnapshot(true);
+                raftStatus.setLastLogTerm(req.lastIncludedTerm);
+                raftStatus.setLastLogIndex(req.lastIncludedIndex);
             }
+            // the state machine may be executing a batch in apply executor, install after it finished
+            gc.getApplyManager().runWhenApplyIdle(() -> {
+                installSnapshot(raftStatus, gc, req, resp);
+                writeResp(frame, channelContext, reqContext, createRespFrame(raftStatus, resp));
+            });
+            return null;
+        }
+        if (req.data != null) {
+            req.data.release();
         }
+        return createRespFrame(raftStatus, resp);
     }
 
-    private void installSnapshot(RaftStatusImpl raftStatus, StateMachine stateMachine,
+    private static WriteFrame createRespFrame(RaftStatusImpl raftStatus, InstallSnapshotResp resp) {
+        resp.term = raftStatus.getCurrentTerm();
+        InstallSnapshotResp.InstallRespWriteFrame respFrame = new InstallSnapshotResp.InstallRespWriteFrame(resp);
+        respFrame.setRespCode(CmdCodes.SUCCESS);
+        return respFrame;
+    }
+
+    private void installSnapshot(RaftStatusImpl raftStatus, RaftGroupImpl gc,
                                  InstallSnapshotReq req, InstallSnapshotResp resp) {
-        boolean start = req.offset == 0;
         boolean finish = req.done;
-        if (start) {
-            raftStatus.setInstallSnapshot(true);
-            raftStatus.setLastLogTerm(req.lastIncludedTerm);
-            raftStatus.setLastLogIndex(req.lastIncludedIndex);
-        }
         try {
-            stateMachine.installSnapshot(req.lastIncludedIndex, req.lastIncludedTerm, req.offset, finish, req.data);
+            gc.getStateMachine().installSnapshot(req.lastIncludedIndex, req.lastIncludedTerm, req.offset, finish, req.data);
             resp.success = true;
             if (finish) {
                 raftStatus.setInstallSnapshot(false);
                 raftStatus.setLastApplied(req.lastIncludedIndex);
                 raftStatus.setCommitIndex(req.lastIncludedIndex);
+                gc.getApplyManager().afterInstallSnapshot(req.lastIncludedIndex);
             }
         } catch (Exception e) {
             log.error("install snapshot error", e);
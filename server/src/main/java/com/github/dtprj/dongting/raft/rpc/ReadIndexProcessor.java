@@ -0,0 +1,77 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.rpc;
+
+import com.github.dtprj.dongting.codec.Decoder;
+import com.github.dtprj.dongting.codec.PbNoCopyDecoder;
+import com.github.dtprj.dongting.net.ChannelContext;
+import com.github.dtprj.dongting.net.CmdCodes;
+import com.github.dtprj.dongting.net.EmptyBodyRespFrame;
+import com.github.dtprj.dongting.net.ReadFrame;
+import com.github.dtprj.dongting.net.ReqContext;
+import com.github.dtprj.dongting.net.WriteFrame;
+import com.github.dtprj.dongting.raft.impl.RaftGroupImpl;
+import com.github.dtprj.dongting.raft.impl.RaftGroups;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The follower or observer query the read index from leader, see ReadIndexManager.
+ *
+ * @author huangli
+ */
+public class ReadIndexProcessor extends AbstractProcessor<ReadIndexReq> {
+
+    private static final Decoder<ReadIndexReq> DECODER = new PbNoCopyDecoder<>(context -> new ReadIndexReq.Callback());
+
+    public ReadIndexProcessor(RaftGroups raftGroups) {
+        super(raftGroups);
+    }
+
+    @Override
+    protected int getGroupId(ReadFrame<ReadIndexReq> frame) {
+        return frame.getBody().groupId;
+    }
+
+    @Override
+    protected WriteFrame doProcess(ReadFrame<ReadIndexReq> frame, ChannelContext channelContext,
+                                   ReqContext reqContext, RaftGroupImpl gc) {
+        CompletableFuture<Long> f = new CompletableFuture<>();
+        // the follower waits for the apply of its own state machine, not the apply of leader
+        gc.getRaft().readIndex(f, false);
+        // complete in raft thread
+        f.whenComplete((index, ex) -> {
+            WriteFrame wf;
+            if (ex != null) {
+                EmptyBodyRespFrame ef = new EmptyBodyRespFrame(CmdCodes.BIZ_ERROR);
+                ef.setMsg(ex.toString());
+                wf = ef;
+            } else {
+                ReadIndexResp resp = new ReadIndexResp();
+                resp.readIndex = index;
+                wf = new ReadIndexResp.ReadIndexRespWriteFrame(resp);
+                wf.setRespCode(CmdCodes.SUCCESS);
+            }
+            writeResp(frame, channelContext, reqContext, wf);
+        });
+        return null;
+    }
+
+    @Override
+    public Decoder<ReadIndexReq> createDecoder() {
+        return DECODER;
+    }
+}
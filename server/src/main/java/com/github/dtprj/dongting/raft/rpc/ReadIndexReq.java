@@ -0,0 +1,67 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.rpc;
+
+import com.github.dtprj.dongting.codec.PbCallback;
+import com.github.dtprj.dongting.codec.PbUtil;
+import com.github.dtprj.dongting.net.SmallNoCopyWriteFrame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author huangli
+ */
+//message ReadIndexReq {
+//  uint32 group_id = 1;
+//}
+public class ReadIndexReq {
+    public int groupId;
+
+    public static class Callback extends PbCallback<ReadIndexReq> {
+        private final ReadIndexReq result = new ReadIndexReq();
+
+        @Override
+        public boolean readVarNumber(int index, long value) {
+            if (index == 1) {
+                result.groupId = (int) value;
+            }
+            return true;
+        }
+
+        @Override
+        public ReadIndexReq getResult() {
+            return result;
+        }
+    }
+
+    public static class ReadIndexReqWriteFrame extends SmallNoCopyWriteFrame {
+        private final ReadIndexReq req;
+
+        public ReadIndexReqWriteFrame(ReadIndexReq req) {
+            this.req = req;
+        }
+
+        @Override
+        protected int calcActualBodySize() {
+            return PbUtil.accurateUnsignedIntSize(1, req.groupId);
+        }
+
+        @Override
+        protected void encodeBody(ByteBuffer buf) {
+            PbUtil.writeUnsignedInt32(buf, 1, req.groupId);
+        }
+    }
+}
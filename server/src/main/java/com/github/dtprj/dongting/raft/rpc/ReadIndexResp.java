@@ -0,0 +1,67 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.rpc;
+
+import com.github.dtprj.dongting.codec.PbCallback;
+import com.github.dtprj.dongting.codec.PbUtil;
+import com.github.dtprj.dongting.net.SmallNoCopyWriteFrame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author huangli
+ */
+//message ReadIndexResp {
+//  fixed64 read_index = 1;
+//}
+public class ReadIndexResp {
+    public long readIndex;
+
+    public static class Callback extends PbCallback<ReadIndexResp> {
+        private final ReadIndexResp result = new ReadIndexResp();
+
+        @Override
+        public boolean readFix64(int index, long value) {
+            if (index == 1) {
+                result.readIndex = value;
+            }
+            return true;
+        }
+
+        @Override
+        public ReadIndexResp getResult() {
+            return result;
+        }
+    }
+
+    public static class ReadIndexRespWriteFrame extends SmallNoCopyWriteFrame {
+        private final ReadIndexResp resp;
+
+        public ReadIndexRespWriteFrame(ReadIndexResp resp) {
+            this.resp = resp;
+        }
+
+        @Override
+        protected int calcActualBodySize() {
+            return PbUtil.accurateFix64Size(1, resp.readIndex);
+        }
+
+        @Override
+        protected void encodeBody(ByteBuffer buf) {
+            PbUtil.writeFix64(buf, 1, resp.readIndex);
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.github.dtprj.dongting.net.CmdCodes;
 import com.github.dtprj.dongting.net.EmptyBodyRespFrame;
 import com.github.dtprj.dongting.net.NetCodeException;
 import com.github.dtprj.dongting.net.ReadFrame;
+import com.github.dtprj.dongting.net.ReqContext;
 import com.github.dtprj.dongting.net.WriteFrame;
 import com.github.dtprj.dongting.raft.impl.RaftGroupImpl;
 import com.github.dtprj.dongting.raft.impl.RaftGroups;
@@ -51,7 +52,7 @@ public class TransferLeaderProcessor extends AbstractProcessor<TransferLeaderReq
 
     @Override
     protected WriteFrame doProcess(ReadFrame<TransferLeaderReq> frame, ChannelContext channelContext,
-                                   RaftGroupImpl gc) {
+                                   ReqContext reqContext, RaftGroupImpl gc) {
         TransferLeaderReq req = frame.getBody();
         RaftStatusImpl raftStatus = gc.getRaftStatus();
         if (raftStatus.isError()) {
@@ -81,7 +82,7 @@ public class TransferLeaderProcessor extends AbstractProcessor<TransferLeaderReq
 
         RaftUtil.changeToLeader(raftStatus);
         gc.getVoteManager().cancelVote();
-        gc.getRaft().sendHeartBeat();
+        gc.getRaft().appendNoopLog();
         return new EmptyBodyRespFrame(CmdCodes.SUCCESS);
     }
 
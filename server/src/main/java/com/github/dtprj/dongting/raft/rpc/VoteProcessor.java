@@ -22,6 +22,7 @@ import com.github.dtprj.dongting.log.DtLogs;
 import com.github.dtprj.dongting.net.ChannelContext;
 import com.github.dtprj.dongting.net.CmdCodes;
 import com.github.dtprj.dongting.net.ReadFrame;
+import com.github.dtprj.dongting.net.ReqContext;
 import com.github.dtprj.dongting.net.WriteFrame;
 import com.github.dtprj.dongting.raft.impl.MemberManager;
 import com.github.dtprj.dongting.raft.impl.RaftGroupImpl;
@@ -36,7 +37,7 @@ import com.github.dtprj.dongting.raft.impl.StatusUtil;
 public class VoteProcessor extends AbstractProcessor<VoteReq> {
     private static final DtLog log = DtLogs.getLogger(VoteProcessor.class);
 
-    private static final PbNoCopyDecoder<VoteReq> decoder = new PbNoCopyDecoder<>(c -> new VoteReq.Callback());
+    private static final PbNoCopyDecoder<VoteReq> decoder = new PbNoCopyDecoder<>(c -> new VoteReqCodec.Callback());
 
     public VoteProcessor(RaftGroups raftGroups) {
         super(raftGroups);
@@ -48,7 +49,7 @@ public class VoteProcessor extends AbstractProcessor<VoteReq> {
     }
 
     @Override
-    protected WriteFrame doProcess(ReadFrame<VoteReq> rf, ChannelContext channelContext, RaftGroupImpl gc) {
+    protected WriteFrame doProcess(ReadFrame<VoteReq> rf, ChannelContext channelContext, ReqContext reqContext, RaftGroupImpl gc) {
         VoteReq voteReq = rf.getBody();
         VoteResp resp = new VoteResp();
         RaftStatusImpl raftStatus = gc.getRaftStatus();
@@ -69,7 +70,7 @@ public class VoteProcessor extends AbstractProcessor<VoteReq> {
         }
 
         resp.setTerm(raftStatus.getCurrentTerm());
-        VoteResp.VoteRespWriteFrame wf = new VoteResp.VoteRespWriteFrame(resp);
+        VoteRespCodec.VoteRespWriteFrame wf = new VoteRespCodec.VoteRespWriteFrame(resp);
         wf.setRespCode(CmdCodes.SUCCESS);
         return wf;
     }
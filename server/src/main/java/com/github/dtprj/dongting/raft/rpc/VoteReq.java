@@ -15,11 +15,8 @@
  */
 package com.github.dtprj.dongting.raft.rpc;
 
-import com.github.dtprj.dongting.codec.PbCallback;
-import com.github.dtprj.dongting.codec.PbUtil;
-import com.github.dtprj.dongting.net.SmallNoCopyWriteFrame;
-
-import java.nio.ByteBuffer;
+import com.github.dtprj.dongting.codec.PbField;
+import com.github.dtprj.dongting.codec.PbMessage;
 
 /**
  * @author huangli
@@ -30,82 +27,21 @@ import java.nio.ByteBuffer;
 //  fixed64 last_log_index = 4;
 //  uint32 last_log_term = 5;
 //  uint32 pre_vote = 6;
+@PbMessage
 public class VoteReq {
+    @PbField(index = 1)
     private int groupId;
+    @PbField(index = 2)
     private int term;
+    @PbField(index = 3)
     private int candidateId;
+    @PbField(index = 4, fixed = true)
     private long lastLogIndex;
+    @PbField(index = 5)
     private int lastLogTerm;
+    @PbField(index = 6)
     private boolean preVote;
 
-    public static class Callback extends PbCallback<VoteReq> {
-        private final VoteReq result = new VoteReq();
-
-        @Override
-        public boolean readVarNumber(int index, long value) {
-            switch (index) {
-                case 1:
-                    result.groupId = (int) value;
-                    break;
-                case 2:
-                    result.term = (int) value;
-                    break;
-                case 3:
-                    result.candidateId = (int) value;
-                    break;
-                case 5:
-                    result.lastLogTerm = (int) value;
-                    break;
-                case 6:
-                    result.preVote = value == 1;
-                    break;
-            }
-            return true;
-        }
-
-        @Override
-        public boolean readFix64(int index, long value) {
-            if (index == 4) {
-                result.lastLogIndex = value;
-            }
-            return true;
-        }
-
-        @Override
-        public VoteReq getResult() {
-            return result;
-        }
-    }
-
-    public static class VoteReqWriteFrame extends SmallNoCopyWriteFrame {
-
-        private final VoteReq data;
-
-        public VoteReqWriteFrame(VoteReq data) {
-            this.data = data;
-        }
-
-        @Override
-        protected int calcActualBodySize() {
-            return PbUtil.accurateUnsignedLongSize(1, data.groupId)
-                    + PbUtil.accurateUnsignedLongSize(2, data.term)
-                    + PbUtil.accurateUnsignedIntSize(3, data.candidateId)
-                    + PbUtil.accurateFix64Size(4, data.lastLogIndex)
-                    + PbUtil.accurateUnsignedIntSize(5, data.lastLogTerm)
-                    + PbUtil.accurateUnsignedIntSize(6, data.preVote ? 1 : 0);
-        }
-
-        @Override
-        protected void encodeBody(ByteBuffer buf) {
-            PbUtil.writeUnsignedInt32(buf, 1, data.groupId);
-            PbUtil.writeUnsignedInt32(buf, 2, data.term);
-            PbUtil.writeUnsignedInt32(buf, 3, data.candidateId);
-            PbUtil.writeFix64(buf, 4, data.lastLogIndex);
-            PbUtil.writeUnsignedInt32(buf, 5, data.lastLogTerm);
-            PbUtil.writeUnsignedInt32(buf, 6, data.preVote ? 1 : 0);
-        }
-    }
-
     public int getTerm() {
         return term;
     }
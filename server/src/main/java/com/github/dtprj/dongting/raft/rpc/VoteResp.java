@@ -15,64 +15,21 @@
  */
 package com.github.dtprj.dongting.raft.rpc;
 
-import com.github.dtprj.dongting.codec.PbCallback;
-import com.github.dtprj.dongting.codec.PbUtil;
-import com.github.dtprj.dongting.net.SmallNoCopyWriteFrame;
-
-import java.nio.ByteBuffer;
+import com.github.dtprj.dongting.codec.PbField;
+import com.github.dtprj.dongting.codec.PbMessage;
 
 /**
  * @author huangli
  */
 //  uint32 term = 1;
 //  uint32 vote_granted = 2;
+@PbMessage
 public class VoteResp {
+    @PbField(index = 1)
     private int term;
+    @PbField(index = 2)
     private boolean voteGranted;
 
-    public static class Callback extends PbCallback<VoteResp> {
-        private final VoteResp result = new VoteResp();
-
-        @Override
-        public boolean readVarNumber(int index, long value) {
-            switch (index) {
-                case 1:
-                    result.term = (int) value;
-                    break;
-                case 2:
-                    result.voteGranted = value != 0;
-                    break;
-            }
-            return true;
-        }
-
-        @Override
-        public VoteResp getResult() {
-            return result;
-        }
-    }
-
-    public static class VoteRespWriteFrame extends SmallNoCopyWriteFrame {
-
-        private final VoteResp data;
-
-        public VoteRespWriteFrame(VoteResp data) {
-            this.data = data;
-        }
-
-        @Override
-        protected int calcActualBodySize() {
-            return PbUtil.accurateUnsignedIntSize(1, data.term)
-                    + PbUtil.accurateUnsignedIntSize(2, data.voteGranted ? 1 : 0);
-        }
-
-        @Override
-        protected void encodeBody(ByteBuffer buf) {
-            PbUtil.writeUnsignedInt32(buf, 1, data.term);
-            PbUtil.writeUnsignedInt32(buf, 2, data.voteGranted ? 1 : 0);
-        }
-    }
-
     public int getTerm() {
         return term;
     }
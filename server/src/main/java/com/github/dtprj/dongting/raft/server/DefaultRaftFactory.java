@@ -21,7 +21,11 @@ import com.github.dtprj.dongting.raft.sm.SnapshotManager;
 import com.github.dtprj.dongting.raft.sm.StateMachine;
 import com.github.dtprj.dongting.raft.store.DefaultRaftLog;
 import com.github.dtprj.dongting.raft.store.RaftLog;
+import com.github.dtprj.dongting.raft.store.SharedLogStore;
+import com.github.dtprj.dongting.raft.store.SharedRaftLog;
 
+import java.io.File;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -33,6 +37,8 @@ public class DefaultRaftFactory extends AbstractLifeCircle implements RaftFactor
 
     private final RaftServerConfig serverConfig;
     private ExecutorService ioExecutor;
+    private ExecutorService applyExecutor;
+    private SharedLogStore sharedLogStore;
 
     public DefaultRaftFactory(RaftServerConfig serverConfig) {
         this.serverConfig = serverConfig;
@@ -41,6 +47,15 @@ public class DefaultRaftFactory extends AbstractLifeCircle implements RaftFactor
     @Override
     protected void doStart() {
         ioExecutor = createIoExecutor();
+        if (serverConfig.getApplyThreads() > 0) {
+            AtomicInteger count = new AtomicInteger();
+            applyExecutor = Executors.newFixedThreadPool(serverConfig.getApplyThreads(),
+                    r -> new Thread(r, "raft-apply-" + count.incrementAndGet()));
+        }
+        if (serverConfig.getSharedLogDir() != null) {
+            sharedLogStore = new SharedLogStore(new File(serverConfig.getSharedLogDir()),
+                    serverConfig.getSharedLogFileSize(), ioExecutor);
+        }
     }
 
     protected ExecutorService createIoExecutor() {
@@ -51,9 +66,15 @@ public class DefaultRaftFactory extends AbstractLifeCircle implements RaftFactor
 
     @Override
     protected void doStop() {
+        if (sharedLogStore != null) {
+            sharedLogStore.close();
+        }
         if (ioExecutor != null) {
             ioExecutor.shutdown();
         }
+        if (applyExecutor != null) {
+            applyExecutor.shutdown();
+        }
     }
 
     @Override
@@ -63,6 +84,9 @@ public class DefaultRaftFactory extends AbstractLifeCircle implements RaftFactor
 
     @Override
     public RaftLog createRaftLog(RaftGroupConfigEx groupConfig) {
+        if (sharedLogStore != null) {
+            return new SharedRaftLog(groupConfig, sharedLogStore);
+        }
         return new DefaultRaftLog(groupConfig, ioExecutor);
     }
 
@@ -70,4 +94,9 @@ public class DefaultRaftFactory extends AbstractLifeCircle implements RaftFactor
     public SnapshotManager createSnapshotManager(RaftGroupConfigEx groupConfig) {
         return new DefaultSnapshotManager(groupConfig, ioExecutor);
     }
+
+    @Override
+    public Executor createApplyExecutor(RaftGroupConfigEx groupConfig) {
+        return applyExecutor;
+    }
 }
@@ -4,10 +4,19 @@ import com.github.dtprj.dongting.raft.sm.SnapshotManager;
 import com.github.dtprj.dongting.raft.sm.StateMachine;
 import com.github.dtprj.dongting.raft.store.RaftLog;
 
+import java.util.concurrent.Executor;
+
 public interface RaftFactory {
     StateMachine createStateMachine(RaftGroupConfigEx groupConfig);
 
     RaftLog createRaftLog(RaftGroupConfigEx groupConfig);
 
     SnapshotManager createSnapshotManager(RaftGroupConfigEx groupConfig);
+
+    /**
+     * the executor to exec the state machine, null means exec in raft thread.
+     */
+    default Executor createApplyExecutor(RaftGroupConfigEx groupConfig) {
+        return null;
+    }
 }
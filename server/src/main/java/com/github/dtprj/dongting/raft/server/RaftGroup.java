@@ -43,6 +43,26 @@ public abstract class RaftGroup {
     public abstract long getLogIndexForRead(DtTime deadline)
             throws RaftException, InterruptedException, TimeoutException;
 
+    /**
+     * Linearizable read by the ReadIndex protocol, without the assumption of clock drift. The leadership of
+     * leader is confirmed by a round of heartbeats, shared by all the reads arrived in the meantime. On follower
+     * or observer, the read index is queried from the leader, and the read is served by this node.
+     * @return the future complete with the read index after the state machine of this node applied it, then the
+     * read on the state machine is linearizable. Complete exceptionally with NotLeaderException if the leader
+     * is unknown.
+     */
+    @SuppressWarnings("unused")
+    public abstract CompletableFuture<Long> readIndex();
+
+    /**
+     * Wait the state machine of this node applied the index, for example the index returned by the last write
+     * of a client session, then the read on the state machine can see the write (session consistency).
+     * Works on all the roles.
+     * @return the future complete with the index after the state machine applied it
+     */
+    @SuppressWarnings("unused")
+    public abstract CompletableFuture<Long> waitApplied(long index);
+
 
     /**
      * ADMIN API.
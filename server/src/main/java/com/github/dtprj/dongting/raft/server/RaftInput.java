@@ -15,20 +15,45 @@
  */
 package com.github.dtprj.dongting.raft.server;
 
+import com.github.dtprj.dongting.common.CoarseClock;
 import com.github.dtprj.dongting.common.DtTime;
+import com.github.dtprj.dongting.common.Timestamp;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author huangli
  */
 public final class RaftInput {
     private final int bizType;
-    private final DtTime deadline;
+    private final boolean hasDeadline;
+    private final long createNanos;
+    private final long timeoutNanos;
     private final boolean readOnly;
     private final Object header;
     private final Object body;
     private final int flowControlSize;
 
+    /**
+     * @param deadline null means no deadline, a DtTime with non-positive timeout is already timeout
+     */
     public RaftInput(int bizType, Object header, Object body, DtTime deadline, int flowControlSize) {
+        this(bizType, header, body, deadline != null, deadline == null ? 0 : deadline.getCreateNanos(),
+                deadline == null ? 0 : deadline.getDeadlineNanos() - deadline.getCreateNanos(), flowControlSize);
+    }
+
+    /**
+     * create input with a primitive deadline, no DtTime object needed.
+     *
+     * @param createNanos  the start nano time of the deadline
+     * @param timeoutNanos the timeout from createNanos, already timeout if it's not positive (same as DtTime)
+     */
+    public RaftInput(int bizType, Object header, Object body, long createNanos, long timeoutNanos, int flowControlSize) {
+        this(bizType, header, body, true, createNanos, timeoutNanos, flowControlSize);
+    }
+
+    private RaftInput(int bizType, Object header, Object body, boolean hasDeadline, long createNanos,
+                      long timeoutNanos, int flowControlSize) {
         if (bizType < 0 || bizType > 127) {
             // we use 1 byte to store bizType in raft log
             throw new IllegalArgumentException("bizType must be in [0, 127]");
@@ -36,7 +61,9 @@ public final class RaftInput {
         this.bizType = bizType;
         this.body = body;
         this.header = header;
-        this.deadline = deadline;
+        this.hasDeadline = hasDeadline;
+        this.createNanos = createNanos;
+        this.timeoutNanos = timeoutNanos;
         this.readOnly = false;
         this.flowControlSize = flowControlSize;
     }
@@ -45,8 +72,36 @@ public final class RaftInput {
         return flowControlSize;
     }
 
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    /**
+     * @deprecated allocates a DtTime, use {@link #hasDeadline()}, {@link #getDeadlineNanos()} and
+     * {@link #isTimeout(Timestamp)} instead.
+     */
+    @Deprecated
     public DtTime getDeadline() {
-        return deadline;
+        return hasDeadline ? new DtTime(createNanos, timeoutNanos, TimeUnit.NANOSECONDS) : null;
+    }
+
+    public long getDeadlineNanos() {
+        return createNanos + timeoutNanos;
+    }
+
+    public long getTimeoutMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(timeoutNanos);
+    }
+
+    /**
+     * check the deadline by CoarseClock, can be called in any thread.
+     */
+    public boolean isTimeout() {
+        return hasDeadline && createNanos + timeoutNanos - CoarseClock.nanoTime() <= 0;
+    }
+
+    public boolean isTimeout(Timestamp ts) {
+        return hasDeadline && createNanos + timeoutNanos - ts.getNanoTime() <= 0;
     }
 
     public Object getBody() {
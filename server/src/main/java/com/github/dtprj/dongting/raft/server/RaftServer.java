@@ -36,19 +36,24 @@ import com.github.dtprj.dongting.raft.impl.MemberManager;
 import com.github.dtprj.dongting.raft.impl.NodeManager;
 import com.github.dtprj.dongting.raft.impl.PendingStat;
 import com.github.dtprj.dongting.raft.impl.Raft;
+import com.github.dtprj.dongting.raft.impl.RaftEventLoop;
 import com.github.dtprj.dongting.raft.impl.RaftExecutor;
 import com.github.dtprj.dongting.raft.impl.RaftGroupImpl;
-import com.github.dtprj.dongting.raft.impl.RaftGroupThread;
+import com.github.dtprj.dongting.raft.impl.RaftGroupRunner;
 import com.github.dtprj.dongting.raft.impl.RaftGroups;
 import com.github.dtprj.dongting.raft.impl.RaftNodeEx;
+import com.github.dtprj.dongting.raft.impl.RaftRpcBatcher;
 import com.github.dtprj.dongting.raft.impl.RaftStatusImpl;
 import com.github.dtprj.dongting.raft.impl.RaftUtil;
+import com.github.dtprj.dongting.raft.impl.ReadIndexManager;
 import com.github.dtprj.dongting.raft.impl.ReplicateManager;
 import com.github.dtprj.dongting.raft.impl.VoteManager;
 import com.github.dtprj.dongting.raft.rpc.AppendProcessor;
+import com.github.dtprj.dongting.raft.rpc.BatchProcessor;
 import com.github.dtprj.dongting.raft.rpc.InstallSnapshotProcessor;
 import com.github.dtprj.dongting.raft.rpc.NodePingProcessor;
 import com.github.dtprj.dongting.raft.rpc.RaftPingProcessor;
+import com.github.dtprj.dongting.raft.rpc.ReadIndexProcessor;
 import com.github.dtprj.dongting.raft.rpc.TransferLeaderProcessor;
 import com.github.dtprj.dongting.raft.rpc.VoteProcessor;
 import com.github.dtprj.dongting.raft.sm.StateMachine;
@@ -73,6 +78,7 @@ public class RaftServer extends AbstractLifeCircle {
 
     private final NioServer raftServer;
     private final NioClient raftClient;
+    private final RaftRpcBatcher rpcBatcher;
 
     private final RaftGroups raftGroups = new RaftGroups();
 
@@ -84,6 +90,9 @@ public class RaftServer extends AbstractLifeCircle {
 
     private final PendingStat serverStat = new PendingStat();
 
+    // null if each raft group has its own thread
+    private final RaftEventLoop[] raftLoops;
+
     public RaftServer(Supplier<Boolean> cancelInitIndicator, RaftServerConfig serverConfig,
                       List<RaftGroupConfig> groupConfig, RaftFactory raftFactory) {
         Objects.requireNonNull(serverConfig);
@@ -115,7 +124,9 @@ public class RaftServer extends AbstractLifeCircle {
         nioClientConfig.setName("RaftClient");
         setupNioConfig(nioClientConfig);
         raftClient = new NioClient(nioClientConfig);
+        rpcBatcher = new RaftRpcBatcher(serverConfig, raftClient);
 
+        raftLoops = createRaftLoops(serverConfig);
         createRaftGroups(cancelInitIndicator, serverConfig, groupConfig, allNodeIds);
         nodeManager = new NodeManager(serverConfig, allRaftServers, raftClient, raftGroups);
         raftGroups.forEach((id, gc) -> {
@@ -131,13 +142,49 @@ public class RaftServer extends AbstractLifeCircle {
         setupNioConfig(nioServerConfig);
         raftServer = new NioServer(nioServerConfig);
         raftServer.register(Commands.NODE_PING, new NodePingProcessor(serverConfig.getNodeId(), nodeManager.getUuid()));
-        raftServer.register(Commands.RAFT_PING, new RaftPingProcessor(raftGroups));
-        raftServer.register(Commands.RAFT_APPEND_ENTRIES, new AppendProcessor(raftGroups));
-        raftServer.register(Commands.RAFT_REQUEST_VOTE, new VoteProcessor(raftGroups));
+        RaftPingProcessor raftPingProcessor = new RaftPingProcessor(raftGroups);
+        AppendProcessor appendProcessor = new AppendProcessor(raftGroups);
+        VoteProcessor voteProcessor = new VoteProcessor(raftGroups);
+        raftServer.register(Commands.RAFT_PING, raftPingProcessor);
+        raftServer.register(Commands.RAFT_APPEND_ENTRIES, appendProcessor);
+        raftServer.register(Commands.RAFT_REQUEST_VOTE, voteProcessor);
+        // always registered, the peer may enable batch
+        BatchProcessor batchProcessor = new BatchProcessor();
+        batchProcessor.register(Commands.RAFT_PING, raftPingProcessor);
+        batchProcessor.register(Commands.RAFT_APPEND_ENTRIES, appendProcessor);
+        batchProcessor.register(Commands.RAFT_REQUEST_VOTE, voteProcessor);
+        ReadIndexProcessor readIndexProcessor = new ReadIndexProcessor(raftGroups);
+        raftServer.register(Commands.RAFT_QUERY_READ_INDEX, readIndexProcessor);
+        raftServer.register(Commands.RAFT_BATCH, batchProcessor);
         raftServer.register(Commands.RAFT_INSTALL_SNAPSHOT, new InstallSnapshotProcessor(raftGroups));
         raftServer.register(Commands.RAFT_LEADER_TRANSFER, new TransferLeaderProcessor(raftGroups));
     }
 
+    private RaftEventLoop[] createRaftLoops(RaftServerConfig serverConfig) {
+        int count = serverConfig.getRaftLoops();
+        if (count < 0) {
+            throw new IllegalArgumentException("raftLoops: " + count);
+        }
+        if (count == 0) {
+            return null;
+        }
+        DtUtil.checkPositive(serverConfig.getRaftLoopIdleInterval(), "raftLoopIdleInterval");
+        RaftEventLoop[] loops = new RaftEventLoop[count];
+        for (int i = 0; i < count; i++) {
+            RaftEventLoop loop = new RaftEventLoop("raft-loop-" + i);
+            // the pool is shared by the groups in the loop
+            TwoLevelPool heapPool = (TwoLevelPool) serverConfig.getPoolFactory().apply(loop.getTs(), false);
+            TwoLevelPool releaseSafePool = heapPool.toReleaseInOtherThreadInstance(loop, byteBuffer -> {
+                if (byteBuffer != null) {
+                    loop.execute(() -> heapPool.release(byteBuffer));
+                }
+            });
+            loop.setHeapPool(releaseSafePool);
+            loops[i] = loop;
+        }
+        return loops;
+    }
+
     private void createRaftGroups(Supplier<Boolean> cancelInitIndicator, RaftServerConfig serverConfig,
                                   List<RaftGroupConfig> groupConfig, HashSet<Integer> allNodeIds) {
         for (RaftGroupConfig rgc : groupConfig) {
@@ -177,8 +224,9 @@ public class RaftServer extends AbstractLifeCircle {
             throw new IllegalArgumentException("self id not found in group members/observers list: " + serverConfig.getNodeId());
         }
 
-        RaftGroupThread raftGroupThread = new RaftGroupThread(cancelInitIndicator);
-        RaftExecutor raftExecutor = new RaftExecutor(raftGroupThread);
+        RaftEventLoop loop = raftLoops == null ? null : raftLoops[Math.floorMod(rgc.getGroupId(), raftLoops.length)];
+        RaftGroupRunner raftGroupRunner = new RaftGroupRunner(cancelInitIndicator, loop);
+        RaftExecutor raftExecutor = raftGroupRunner.getRaftExecutor();
 
         RaftStatusImpl raftStatus = new RaftStatusImpl();
         raftStatus.setRaftExecutor(raftExecutor);
@@ -186,22 +234,25 @@ public class RaftServer extends AbstractLifeCircle {
         raftStatus.setNodeIdOfObservers(nodeIdOfObservers);
         raftStatus.setGroupId(rgc.getGroupId());
 
-        RaftGroupConfigEx rgcEx = createGroupConfigEx(rgc, raftStatus, raftExecutor, raftGroupThread);
+        RaftGroupConfigEx rgcEx = createGroupConfigEx(rgc, raftStatus, raftExecutor, raftGroupRunner, loop);
 
 
         StateMachine stateMachine = raftFactory.createStateMachine(rgcEx);
         rgcEx.setCodecFactory(stateMachine);
         RaftLog raftLog = raftFactory.createRaftLog(rgcEx);
 
-        MemberManager memberManager = new MemberManager(serverConfig, raftClient, raftExecutor,
+        MemberManager memberManager = new MemberManager(serverConfig, raftClient, rpcBatcher, raftExecutor,
                 raftStatus, eventBus);
-        ApplyManager applyManager = new ApplyManager(serverConfig.getNodeId(), raftLog, stateMachine, raftStatus, eventBus, rgcEx.getHeapPool());
+        ReadIndexManager readIndexManager = new ReadIndexManager(raftStatus, rpcBatcher);
+        ApplyManager applyManager = new ApplyManager(serverConfig.getNodeId(), raftLog, stateMachine, raftStatus,
+                eventBus, rgcEx.getHeapPool(), readIndexManager, raftFactory.createApplyExecutor(rgcEx),
+                serverConfig.getMaxApplyingItems());
         CommitManager commitManager = new CommitManager(raftStatus, applyManager);
         ReplicateManager replicateManager = new ReplicateManager(serverConfig, rgcEx, raftStatus, raftLog,
-                stateMachine, raftClient, raftExecutor, commitManager);
+                stateMachine, raftClient, rpcBatcher, raftExecutor, commitManager, readIndexManager);
 
-        Raft raft = new Raft(raftStatus, raftLog, applyManager, commitManager, replicateManager);
-        VoteManager voteManager = new VoteManager(serverConfig, rgc.getGroupId(), raftStatus, raftClient, raftExecutor, raft);
+        Raft raft = new Raft(raftStatus, raftLog, applyManager, commitManager, replicateManager, readIndexManager);
+        VoteManager voteManager = new VoteManager(serverConfig, rgc.getGroupId(), raftStatus, rpcBatcher, raftExecutor, raft);
 
         eventBus.register(raft);
         eventBus.register(voteManager);
@@ -211,7 +262,7 @@ public class RaftServer extends AbstractLifeCircle {
         gc.setGroupConfig(rgc);
         gc.setRaftLog(raftLog);
         gc.setStateMachine(stateMachine);
-        gc.setRaftGroupThread(raftGroupThread);
+        gc.setRaftGroupRunner(raftGroupRunner);
         gc.setRaftStatus(raftStatus);
         gc.setMemberManager(memberManager);
         gc.setVoteManager(voteManager);
@@ -225,14 +276,19 @@ public class RaftServer extends AbstractLifeCircle {
     }
 
     private RaftGroupConfigEx createGroupConfigEx(RaftGroupConfig rgc, RaftStatusImpl raftStatus,
-                                                  RaftExecutor raftExecutor, RaftGroupThread raftGroupThread) {
+                                                  RaftExecutor raftExecutor, RaftGroupRunner raftGroupRunner,
+                                                  RaftEventLoop loop) {
         RaftGroupConfigEx rgcEx = new RaftGroupConfigEx(rgc.getGroupId(), rgc.getNodeIdOfMembers(),
                 rgc.getNodeIdOfObservers());
         rgcEx.setDataDir(rgc.getDataDir());
         rgcEx.setStatusFile(rgc.getStatusFile());
 
         rgcEx.setTs(raftStatus.getTs());
-        rgcEx.setHeapPool(createHeapPoolFactory(raftStatus.getTs(), raftExecutor, raftGroupThread));
+        if (loop == null) {
+            rgcEx.setHeapPool(createHeapPoolFactory(raftStatus.getTs(), raftExecutor, raftGroupRunner));
+        } else {
+            rgcEx.setHeapPool(new RefBufferFactory(loop.getHeapPool(), 800));
+        }
         rgcEx.setDirectPool(serverConfig.getPoolFactory().apply(raftStatus.getTs(), true));
         rgcEx.setRaftExecutor(raftExecutor);
         rgcEx.setStopIndicator(raftStatus::isStop);
@@ -241,13 +297,15 @@ public class RaftServer extends AbstractLifeCircle {
         return rgcEx;
     }
 
-    private RefBufferFactory createHeapPoolFactory(Timestamp ts, RaftExecutor raftExecutor, RaftGroupThread raftGroupThread) {
+    private RefBufferFactory createHeapPoolFactory(Timestamp ts, RaftExecutor raftExecutor, RaftGroupRunner raftGroupRunner) {
         TwoLevelPool heapPool = (TwoLevelPool) serverConfig.getPoolFactory().apply(ts, false);
-        TwoLevelPool releaseSafePool = heapPool.toReleaseInOtherThreadInstance(raftGroupThread, byteBuffer -> {
+        // the buffers released in other threads are drained by raft thread, the callback is used when the queue is full
+        TwoLevelPool releaseSafePool = heapPool.toReleaseInOtherThreadInstance(raftGroupRunner.getRaftThread(), byteBuffer -> {
             if (byteBuffer != null) {
                 raftExecutor.execute(() -> heapPool.release(byteBuffer));
             }
         });
+        raftGroupRunner.setHeapPool(releaseSafePool);
         return new RefBufferFactory(releaseSafePool, 800);
     }
 
@@ -276,8 +334,13 @@ public class RaftServer extends AbstractLifeCircle {
     @Override
     protected void doStart() {
         try {
+            if (raftLoops != null) {
+                for (RaftEventLoop loop : raftLoops) {
+                    loop.start();
+                }
+            }
             raftGroups.forEach((groupId, gc) -> {
-                gc.getRaftGroupThread().init(gc);
+                gc.getRaftGroupRunner().init(gc);
                 return true;
             });
 
@@ -291,12 +354,12 @@ public class RaftServer extends AbstractLifeCircle {
 
             raftGroups.forEach((groupId, gc) -> {
                 gc.getMemberManager().init(nodeManager.getAllNodesEx());
-                gc.getRaftGroupThread().start();
+                gc.getRaftGroupRunner().start();
                 return true;
             });
 
             raftGroups.forEach((groupId, gc) -> {
-                gc.getRaftGroupThread().waitReady();
+                gc.getRaftGroupRunner().waitReady();
                 log.info("raft group {} is ready", groupId);
                 return true;
             });
@@ -310,11 +373,16 @@ public class RaftServer extends AbstractLifeCircle {
     protected void doStop() {
         try {
             raftGroups.forEach((groupId, gc) -> {
-                RaftGroupThread raftGroupThread = gc.getRaftGroupThread();
-                raftGroupThread.requestShutdown();
-                raftGroupThread.interrupt();
+                RaftGroupRunner raftGroupRunner = gc.getRaftGroupRunner();
+                raftGroupRunner.requestShutdown();
+                raftGroupRunner.interrupt();
                 return true;
             });
+            if (raftLoops != null) {
+                for (RaftEventLoop loop : raftLoops) {
+                    loop.requestShutdown();
+                }
+            }
             raftServer.stop();
             raftClient.stop();
         } catch (RuntimeException | Error e) {
@@ -405,9 +473,9 @@ public class RaftServer extends AbstractLifeCircle {
                 });
 
                 RaftGroupImpl gc = f.get(5, TimeUnit.SECONDS);
-                gc.getRaftGroupThread().init(gc);
+                gc.getRaftGroupRunner().init(gc);
 
-                gc.getRaftGroupThread().start();
+                gc.getRaftGroupRunner().start();
                 raftGroups.put(groupConfig.getGroupId(), gc);
             } catch (Exception e) {
                 throw new RaftException(e);
@@ -426,7 +494,7 @@ public class RaftServer extends AbstractLifeCircle {
                 log.warn("removeGroup failed: group not exist, groupId={}", groupId);
                 return;
             }
-            gc.getRaftGroupThread().requestShutdown();
+            gc.getRaftGroupRunner().requestShutdown();
             raftGroups.remove(groupId);
         });
     }
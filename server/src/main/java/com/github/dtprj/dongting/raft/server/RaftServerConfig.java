@@ -45,6 +45,29 @@ public class RaftServerConfig {
 
     private int ioThreads = Math.max(Runtime.getRuntime().availableProcessors() * 5, 30);
 
+    // 0 means each raft group has its own thread, otherwise the groups share the fixed count of event loops
+    private int raftLoops = 0;
+    // the interval of the idle tick (heartbeat, election timeout, etc.) of each group in the event loop
+    private long raftLoopIdleInterval = 10;
+
+    // coalesce the small raft requests (ping, vote, heartbeat) of all groups to the same node
+    private boolean rpcBatch = false;
+    // the frames larger than this are not batched
+    private int rpcBatchMaxFrameSize = 4096;
+    // millis to wait for more requests before send a batch, 0 means send as soon as possible
+    private long rpcBatchLinger = 0;
+
+    // if set, the logs of all groups are appended to the segment files in this dir, instead of the log files of
+    // each group, so the fsync is shared by the groups
+    private String sharedLogDir;
+    private long sharedLogFileSize = 64 * 1024 * 1024;
+
+    // threads to exec the state machine, 0 means exec in raft thread. the logs of a group are still applied in
+    // order, but the state machine should allow takeSnapshot concurrent with exec
+    private int applyThreads = 0;
+    // max committed logs submitted to the apply threads but not acknowledged
+    private int maxApplyingItems = 4096;
+
     private BiFunction<Timestamp, Boolean, ByteBufferPool> poolFactory = TwoLevelPool.getDefaultFactory();
 
     public String getServers() {
@@ -174,4 +197,76 @@ public class RaftServerConfig {
     public void setIoThreads(int ioThreads) {
         this.ioThreads = ioThreads;
     }
+
+    public int getRaftLoops() {
+        return raftLoops;
+    }
+
+    public void setRaftLoops(int raftLoops) {
+        this.raftLoops = raftLoops;
+    }
+
+    public int getApplyThreads() {
+        return applyThreads;
+    }
+
+    public void setApplyThreads(int applyThreads) {
+        this.applyThreads = applyThreads;
+    }
+
+    public int getMaxApplyingItems() {
+        return maxApplyingItems;
+    }
+
+    public void setMaxApplyingItems(int maxApplyingItems) {
+        this.maxApplyingItems = maxApplyingItems;
+    }
+
+    public long getRaftLoopIdleInterval() {
+        return raftLoopIdleInterval;
+    }
+
+    public void setRaftLoopIdleInterval(long raftLoopIdleInterval) {
+        this.raftLoopIdleInterval = raftLoopIdleInterval;
+    }
+
+    public boolean isRpcBatch() {
+        return rpcBatch;
+    }
+
+    public void setRpcBatch(boolean rpcBatch) {
+        this.rpcBatch = rpcBatch;
+    }
+
+    public int getRpcBatchMaxFrameSize() {
+        return rpcBatchMaxFrameSize;
+    }
+
+    public void setRpcBatchMaxFrameSize(int rpcBatchMaxFrameSize) {
+        this.rpcBatchMaxFrameSize = rpcBatchMaxFrameSize;
+    }
+
+    public long getRpcBatchLinger() {
+        return rpcBatchLinger;
+    }
+
+    public void setRpcBatchLinger(long rpcBatchLinger) {
+        this.rpcBatchLinger = rpcBatchLinger;
+    }
+
+    public String getSharedLogDir() {
+        return sharedLogDir;
+    }
+
+    public void setSharedLogDir(String sharedLogDir) {
+        this.sharedLogDir = sharedLogDir;
+    }
+
+    public long getSharedLogFileSize() {
+        return sharedLogFileSize;
+    }
+
+    public void setSharedLogFileSize(long sharedLogFileSize) {
+        this.sharedLogFileSize = sharedLogFileSize;
+    }
 }
@@ -0,0 +1,31 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.sm;
+
+/**
+ * @author huangli
+ */
+@FunctionalInterface
+public interface ExecBatchCallback {
+
+    /**
+     * called once after all the inputs of the batch are executed.
+     *
+     * @param results the result of each input, in the same order of the inputs, null if all results are null
+     * @param errors the error of each input, null element means success, null if all inputs are success
+     */
+    void finish(Object[] results, Throwable[] errors);
+}
@@ -18,18 +18,49 @@ package com.github.dtprj.dongting.raft.sm;
 import com.github.dtprj.dongting.buf.RefBuffer;
 import com.github.dtprj.dongting.raft.server.RaftInput;
 
+import java.util.List;
+
 /**
  * All method defined in this class is called in raft thread except createEncoder/createDecoder method.
+ * If the apply executor is configured (see RaftFactory.createApplyExecutor), the exec method is called in the
+ * apply executor, in log order, and may run concurrently with takeSnapshot. The lastApplied of raft status is
+ * updated after the batch is acknowledged in raft thread, so the snapshot should be taken at the last index the
+ * state machine executed.
  *
  * @author huangli
  */
 public interface StateMachine extends AutoCloseable, RaftCodecFactory {
 
     /**
-     * this method is called in raft thread.
+     * this method is called in raft thread, or in the apply executor if configured.
      */
     Object exec(long index, RaftInput input);
 
+    /**
+     * exec the committed logs in batch, so the state machine can share the lock, index update and gc of the batch.
+     * The indexes are increasing but may be not continuous, since the raft internal logs are skipped. The callback
+     * must be called once after all inputs executed, it may be called in other thread, and the next batch is not
+     * started until it called.
+     * <p>
+     * This method is called in the same thread of exec. The default implementation calls exec one by one.
+     */
+    default void execBatch(long[] indexes, List<RaftInput> inputs, ExecBatchCallback callback) {
+        int size = inputs.size();
+        Object[] results = new Object[size];
+        Throwable[] errors = null;
+        for (int i = 0; i < size; i++) {
+            try {
+                results[i] = exec(indexes[i], inputs.get(i));
+            } catch (Exception e) {
+                if (errors == null) {
+                    errors = new Throwable[size];
+                }
+                errors[i] = e;
+            }
+        }
+        callback.finish(results, errors);
+    }
+
     /**
      * this method is called in raft thread.
      */
@@ -33,12 +33,12 @@ class ByteBufferEncoder implements Encoder<ByteBuffer> {
 
     @Override
     public boolean encode(EncodeContext context, ByteBuffer buffer, ByteBuffer data) {
-        int markedPos = 0;
+        int markedPos = -1;
         Integer s = (Integer) context.getStatus();
         if (s != null) {
             markedPos = s;
         }
-        markedPos = ByteBufferWriteFrame.copy(buffer, data, markedPos);
+        markedPos = ByteBufferWriteFrame.copy(data, buffer, markedPos);
         boolean result = markedPos == data.limit();
         if (!result) {
             context.setStatus(markedPos);
@@ -97,7 +97,8 @@ public class DefaultRaftLog implements RaftLog {
                 if (parts.length == 2) {
                     long start = Long.parseLong(parts[0]);
                     long end = Long.parseLong(parts[1]);
-                    logFiles.syncTruncateTail(start, end);
+                    // the last index is set by restore
+                    logFiles.syncTruncateTail(start, end, 0);
                     statusFile.getProperties().remove(KEY_TRUNCATE);
                     statusFile.update();
                 }
@@ -142,7 +143,7 @@ public class DefaultRaftLog implements RaftLog {
 
             statusFile.getProperties().setProperty(KEY_TRUNCATE, dataPosition + "," + logFiles.getWritePos());
             statusFile.update();
-            logFiles.syncTruncateTail(dataPosition, logFiles.getWritePos());
+            logFiles.syncTruncateTail(dataPosition, logFiles.getWritePos(), firstIndex - 1);
             statusFile.getProperties().remove(KEY_TRUNCATE);
             statusFile.update();
 
@@ -152,6 +153,11 @@ public class DefaultRaftLog implements RaftLog {
         }
     }
 
+    @Override
+    public CompletableFuture<Long> sync() {
+        return logFiles.sync();
+    }
+
     @Override
     public LogIterator openIterator(Supplier<Boolean> cancelIndicator) {
         return new DefaultLogIterator(idxFiles, logFiles, groupConfig, cancelIndicator);
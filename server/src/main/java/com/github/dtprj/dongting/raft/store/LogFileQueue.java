@@ -34,10 +34,12 @@ import com.github.dtprj.dongting.raft.sm.RaftCodecFactory;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.zip.CRC32C;
@@ -63,6 +65,18 @@ class LogFileQueue extends FileQueue implements FileOps {
 
     private long writePos;
 
+    // the fields below are accessed in raft thread, used by the fsync stage
+    private long writeIndex;
+    private long syncedPos;
+    private long syncedIndex;
+    private CompletableFuture<Long> syncingFuture;
+    private long syncingIndex;
+    // fsync requests issued while syncingFuture is running, merged into one fsync
+    private CompletableFuture<Long> nextSyncFuture;
+    // the tail is truncated while syncing, the result of the running fsync should be capped
+    private long syncingIndexCap = Long.MAX_VALUE;
+    private long syncingPosCap = Long.MAX_VALUE;
+
     public LogFileQueue(File dir, ExecutorService ioExecutor, RaftGroupConfigEx groupConfig, IdxOps idxOps) {
         super(dir, ioExecutor, groupConfig);
         this.idxOps = idxOps;
@@ -104,7 +118,14 @@ class LogFileQueue extends FileQueue implements FileOps {
             }
             log.info("restore finished. lastTerm={}, lastIndex={}, lastPos={}, lastFile={}",
                     restorer.previousTerm, restorer.previousIndex, writePos, queue.get(queue.size() - 1).file.getPath());
+            // the restored data may be in page cache only (the process crashed before fsync)
+            for (int i = 0; i < queue.size(); i++) {
+                queue.get(i).channel.force(false);
+            }
         }
+        writeIndex = restorer.previousIndex;
+        syncedIndex = writeIndex;
+        syncedPos = writePos;
         return restorer.previousTerm;
     }
 
@@ -118,8 +139,8 @@ class LogFileQueue extends FileQueue implements FileOps {
         for (int i = 0; i < logs.size(); i++) {
             LogItem log = logs.get(i);
             long posOfFile = (pos + writeBuffer.position()) & FILE_LEN_MASK;
-            Encoder headerEncoder = initEncoderAndSize(log, true);
-            Encoder bodyEncoder = initEncoderAndSize(log, false);
+            Encoder headerEncoder = initEncoderAndSize(codecFactory, log, true);
+            Encoder bodyEncoder = initEncoderAndSize(codecFactory, log, false);
 
             int totalLen = LogHeader.computeTotalLen(0, log.getActualHeaderSize(), log.getActualBodySize());
             if (posOfFile == 0) {
@@ -178,8 +199,123 @@ class LogFileQueue extends FileQueue implements FileOps {
             idxOps.put(log.getIndex(), itemStartPos);
         }
         pos = writeAndClearBuffer(writeBuffer, file, pos);
-        file.channel.force(false);
         this.writePos = pos;
+        this.writeIndex = logs.get(logs.size() - 1).getIndex();
+    }
+
+    /**
+     * Force the appended data to the storage device in io executor, at most one fsync is running. The requests
+     * issued while a fsync is running are merged and handled by the next fsync (group commit).
+     *
+     * @return the future complete in raft thread with the last durable index
+     */
+    public CompletableFuture<Long> sync() {
+        if (syncingFuture == null) {
+            if (writeIndex <= syncedIndex) {
+                return CompletableFuture.completedFuture(syncedIndex);
+            }
+            syncingFuture = new CompletableFuture<>();
+            CompletableFuture<Long> f = syncingFuture;
+            startSync();
+            return f;
+        }
+        if (writeIndex <= syncingIndex) {
+            return syncingFuture;
+        }
+        if (nextSyncFuture == null) {
+            nextSyncFuture = new CompletableFuture<>();
+        }
+        return nextSyncFuture;
+    }
+
+    private void startSync() {
+        long index = writeIndex;
+        long pos = writePos;
+        syncingIndex = index;
+        ArrayList<LogFile> files = new ArrayList<>(2);
+        for (int i = 0; i < queue.size(); i++) {
+            LogFile lf = queue.get(i);
+            if (lf.endPos > syncedPos && lf.startPos < pos) {
+                files.add(lf);
+            }
+        }
+        ioExecutor.execute(() -> {
+            Throwable ex = null;
+            try {
+                for (int i = 0; i < files.size(); i++) {
+                    files.get(i).channel.force(false);
+                }
+            } catch (Throwable e) {
+                ex = e;
+            }
+            Throwable finalEx = ex;
+            raftExecutor.execute(() -> afterSync(index, pos, finalEx));
+        });
+    }
+
+    private void afterSync(long index, long pos, Throwable ex) {
+        if (ex != null) {
+            if (stopIndicator.get()) {
+                failSync(ex);
+                return;
+            }
+            log.error("fsync fail, retry after 1 second", ex);
+            RaftUtil.SCHEDULED_SERVICE.schedule(() -> raftExecutor.execute(this::retrySync), 1, TimeUnit.SECONDS);
+            return;
+        }
+        index = Math.min(index, syncingIndexCap);
+        pos = Math.min(pos, syncingPosCap);
+        syncingIndexCap = Long.MAX_VALUE;
+        syncingPosCap = Long.MAX_VALUE;
+        if (index > syncedIndex) {
+            syncedIndex = index;
+        }
+        if (pos > syncedPos) {
+            syncedPos = pos;
+        }
+        CompletableFuture<Long> f = syncingFuture;
+        syncingFuture = nextSyncFuture;
+        nextSyncFuture = null;
+        if (syncingFuture != null) {
+            if (writeIndex <= syncedIndex) {
+                // the tail is truncated, nothing to sync
+                CompletableFuture<Long> next = syncingFuture;
+                syncingFuture = null;
+                f.complete(syncedIndex);
+                next.complete(syncedIndex);
+                return;
+            }
+            startSync();
+        }
+        f.complete(syncedIndex);
+    }
+
+    private void retrySync() {
+        if (stopIndicator.get()) {
+            failSync(new RaftException("raft group is stopped"));
+            return;
+        }
+        syncingIndexCap = Long.MAX_VALUE;
+        syncingPosCap = Long.MAX_VALUE;
+        startSync();
+    }
+
+    private void failSync(Throwable ex) {
+        CompletableFuture<Long> f = syncingFuture;
+        CompletableFuture<Long> next = nextSyncFuture;
+        syncingFuture = null;
+        nextSyncFuture = null;
+        f.completeExceptionally(ex);
+        if (next != null) {
+            next.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * the index of the last log forced to the storage device.
+     */
+    public long getSyncedIndex() {
+        return syncedIndex;
     }
 
     @Override
@@ -188,7 +324,7 @@ class LogFileQueue extends FileQueue implements FileOps {
     }
 
     @SuppressWarnings({"rawtypes", "unchecked"})
-    private Encoder initEncoderAndSize(LogItem item, boolean header) {
+    static Encoder initEncoderAndSize(RaftCodecFactory codecFactory, LogItem item, boolean header) {
         if (header) {
             if (item.getHeaderBuffer() != null) {
                 return ByteBufferEncoder.INSTANCE;
@@ -253,11 +389,23 @@ class LogFileQueue extends FileQueue implements FileOps {
         return pos + count;
     }
 
-    public void syncTruncateTail(long startPosition, long endPosition) throws IOException {
+    /**
+     * @param lastIndex the last log index after truncate
+     */
+    public void syncTruncateTail(long startPosition, long endPosition, long lastIndex) throws IOException {
         DtUtil.checkNotNegative(startPosition, "startPosition");
         DtUtil.checkNotNegative(endPosition, "endPosition");
         log.info("truncate tail from {} to {}, currentWritePos={}", startPosition, endPosition, writePos);
         writePos = startPosition;
+        writeIndex = lastIndex;
+        syncedPos = Math.min(syncedPos, startPosition);
+        syncedIndex = Math.min(syncedIndex, lastIndex);
+        if (syncingFuture != null) {
+            syncingPosCap = Math.min(syncingPosCap, startPosition);
+            syncingIndexCap = Math.min(syncingIndexCap, lastIndex);
+            // the logs appended after truncate are not covered by the running fsync, they should wait next fsync
+            syncingIndex = Math.min(syncingIndex, lastIndex);
+        }
         int startQueueIndex = (int) ((startPosition - queueStartPosition) >>> FILE_LEN_SHIFT_BITS);
         ByteBuffer buffer = directPool.borrow(64 * 1024);
         while (buffer.hasRemaining()) {
@@ -272,21 +420,23 @@ class LogFileQueue extends FileQueue implements FileOps {
                     lf.firstIndex = 0;
                     lf.firstTimestamp = 0;
                 }
-                fillWithZero(buffer, lf, startPosition, endPosition);
+                if (fillWithZero(buffer, lf, startPosition, endPosition)) {
+                    lf.channel.force(false);
+                }
             }
         } finally {
             directPool.release(buffer);
         }
     }
 
-    private void fillWithZero(ByteBuffer buffer, LogFile lf, long startPosition, long endPosition) throws IOException {
+    private boolean fillWithZero(ByteBuffer buffer, LogFile lf, long startPosition, long endPosition) throws IOException {
         if (lf.startPos >= endPosition) {
-            return;
+            return false;
         }
         long start = Math.max(lf.startPos, startPosition);
         long end = Math.min(lf.endPos, endPosition);
         if (start >= end) {
-            return;
+            return false;
         }
         start = start & FILE_LEN_MASK;
         end = end & FILE_LEN_MASK;
@@ -301,6 +451,7 @@ class LogFileQueue extends FileQueue implements FileOps {
             FileUtil.syncWriteFull(lf.channel, buffer, i);
             i += count;
         }
+        return true;
     }
 
     private void checkPos(long pos) {
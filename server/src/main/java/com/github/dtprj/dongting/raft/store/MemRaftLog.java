@@ -78,6 +78,13 @@ public class MemRaftLog implements RaftLog {
         }
     }
 
+    @Override
+    public CompletableFuture<Long> sync() {
+        IndexedQueue<MemLog> logs = this.logs;
+        long index = logs.size() == 0 ? 0 : logs.get(logs.size() - 1).item.getIndex();
+        return CompletableFuture.completedFuture(index);
+    }
+
     @Override
     public LogIterator openIterator(Supplier<Boolean> cancelIndicator) {
         return new LogIterator() {
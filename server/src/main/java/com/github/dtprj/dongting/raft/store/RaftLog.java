@@ -32,10 +32,19 @@ public interface RaftLog extends AutoCloseable {
     Pair<Integer, Long> init(Supplier<Boolean> cancelInit) throws Exception;
 
     /**
-     * Batch append logs.
+     * Batch append logs. The logs may not be persisted to the storage device when this method returns,
+     * use sync() to wait them durable.
      */
     void append(List<LogItem> logs) throws Exception;
 
+    /**
+     * Force the appended logs to the storage device asynchronously, the implementation may merge the
+     * concurrent requests into one fsync.
+     *
+     * @return the future complete in raft thread with the last durable index
+     */
+    CompletableFuture<Long> sync();
+
     LogIterator openIterator(Supplier<Boolean> cancelIndicator);
 
     /**
@@ -0,0 +1,203 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.store;
+
+import java.util.Arrays;
+
+/**
+ * The in-memory index of a raft group in the shared log: the position of each log and the first index of each
+ * term. The position increases with the index, since the logs after a truncation are written to the tail.
+ * <p>
+ * Built by the restore scan of SharedLogStore, and then accessed in the raft thread of the group, except
+ * firstPos which is read by the store to find the segments that can be deleted.
+ *
+ * @author huangli
+ */
+class SharedLogIndex {
+    private LongLongSeqMap positions = new LongLongSeqMap();
+
+    // term runs, termStartIndex[i] is the first index of termOfRun[i]
+    private long[] termStartIndex = new long[4];
+    private int[] termOfRun = new int[4];
+    private int runCount;
+
+    // the position of the first log, Long.MAX_VALUE if there is no log
+    private volatile long firstPos = Long.MAX_VALUE;
+
+    /**
+     * add a log, the logs after index are truncated. If the log does not follow the existing logs (the
+     * prefix of the group is deleted, or there is a gap), the index is reset.
+     */
+    void put(long index, int term, long pos) {
+        LongLongSeqMap positions = this.positions;
+        if (positions.size() == 0 || index < positions.getFirstKey() || index > positions.getLastKey() + 1) {
+            reset();
+            positions = this.positions;
+        } else if (index <= positions.getLastKey()) {
+            truncate(index);
+        }
+        positions.put(index, pos);
+        if (runCount == 0 || termOfRun[runCount - 1] != term) {
+            if (runCount == termOfRun.length) {
+                termStartIndex = Arrays.copyOf(termStartIndex, runCount << 1);
+                termOfRun = Arrays.copyOf(termOfRun, runCount << 1);
+            }
+            termStartIndex[runCount] = index;
+            termOfRun[runCount] = term;
+            runCount++;
+        }
+        if (positions.size() == 1) {
+            firstPos = pos;
+        }
+    }
+
+    private void reset() {
+        positions = new LongLongSeqMap();
+        runCount = 0;
+        firstPos = Long.MAX_VALUE;
+    }
+
+    /**
+     * remove the logs from index (include) to the tail.
+     */
+    void truncate(long index) {
+        if (positions.size() == 0 || index > positions.getLastKey()) {
+            return;
+        }
+        if (index <= positions.getFirstKey()) {
+            reset();
+            return;
+        }
+        positions.truncate(index);
+        while (runCount > 0 && termStartIndex[runCount - 1] >= index) {
+            runCount--;
+        }
+    }
+
+    /**
+     * remove the logs before index (exclude), the last log is kept.
+     */
+    void removeBefore(long index) {
+        LongLongSeqMap positions = this.positions;
+        if (positions.size() <= 1) {
+            return;
+        }
+        index = Math.min(index, positions.getLastKey());
+        if (index <= positions.getFirstKey()) {
+            return;
+        }
+        positions.remove((int) (index - positions.getFirstKey()));
+        int keepFrom = findRun(index);
+        if (keepFrom > 0) {
+            System.arraycopy(termStartIndex, keepFrom, termStartIndex, 0, runCount - keepFrom);
+            System.arraycopy(termOfRun, keepFrom, termOfRun, 0, runCount - keepFrom);
+            runCount -= keepFrom;
+        }
+        termStartIndex[0] = index;
+        firstPos = positions.get(index);
+    }
+
+    /**
+     * the last index whose position is less than pos, or 0 if not found.
+     */
+    long lastIndexBeforePos(long pos) {
+        LongLongSeqMap positions = this.positions;
+        if (positions.size() == 0 || positions.get(positions.getFirstKey()) >= pos) {
+            return 0;
+        }
+        long left = positions.getFirstKey();
+        long right = positions.getLastKey();
+        while (left < right) {
+            long mid = (left + right + 1) >>> 1;
+            if (positions.get(mid) < pos) {
+                left = mid;
+            } else {
+                right = mid - 1;
+            }
+        }
+        return left;
+    }
+
+    // the run contains the index, the index should be in [firstIndex, lastIndex]
+    private int findRun(long index) {
+        int left = 0;
+        int right = runCount - 1;
+        while (left < right) {
+            int mid = (left + right + 1) >>> 1;
+            if (termStartIndex[mid] <= index) {
+                left = mid;
+            } else {
+                right = mid - 1;
+            }
+        }
+        return left;
+    }
+
+    int termOf(long index) {
+        if (index < getFirstIndex() || index > getLastIndex()) {
+            return 0;
+        }
+        return termOfRun[findRun(index)];
+    }
+
+    /**
+     * the same semantic as LogFileQueue.nextIndexToReplicate, but searched in memory.
+     *
+     * @return index of the last log that both (term less than suggestTerm and index less than suggestIndex)
+     * or (term equals suggestTerm and index equals suggestIndex), -1 if not found
+     */
+    long findReplicateIndex(int suggestTerm, long suggestIndex) {
+        if (positions.size() == 0 || suggestIndex < getFirstIndex()) {
+            return -1;
+        }
+        if (suggestIndex <= getLastIndex() && termOf(suggestIndex) == suggestTerm) {
+            return suggestIndex;
+        }
+        long index = Math.min(suggestIndex - 1, getLastIndex());
+        if (index < getFirstIndex()) {
+            return -1;
+        }
+        int run = findRun(index);
+        while (termOfRun[run] >= suggestTerm) {
+            index = termStartIndex[run] - 1;
+            run--;
+            if (run < 0 || index < getFirstIndex()) {
+                return -1;
+            }
+        }
+        return index;
+    }
+
+    long getPos(long index) {
+        return positions.get(index);
+    }
+
+    long getFirstIndex() {
+        return positions.size() == 0 ? 0 : positions.getFirstKey();
+    }
+
+    long getLastIndex() {
+        return positions.size() == 0 ? 0 : positions.getLastKey();
+    }
+
+    int getLastTerm() {
+        return runCount == 0 ? 0 : termOfRun[runCount - 1];
+    }
+
+    long getFirstPos() {
+        return firstPos;
+    }
+}
@@ -0,0 +1,759 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.store;
+
+import com.github.dtprj.dongting.common.BitUtil;
+import com.github.dtprj.dongting.common.DtUtil;
+import com.github.dtprj.dongting.log.BugLog;
+import com.github.dtprj.dongting.log.DtLog;
+import com.github.dtprj.dongting.log.DtLogs;
+import com.github.dtprj.dongting.raft.impl.FileUtil;
+import com.github.dtprj.dongting.raft.impl.RaftUtil;
+import com.github.dtprj.dongting.raft.server.LogItem;
+import com.github.dtprj.dongting.raft.server.RaftException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * A write-ahead log shared by many raft groups on the same disk. The logs of all the groups are interleaved in
+ * the same segment files, so the disk sees one sequential write stream and one fsync stream, and the segments
+ * are preallocated once for all the groups. Each group keeps its own in-memory index (SharedLogIndex), which is
+ * rebuilt by scanning the segments when the first group is initialized.
+ * <p>
+ * A truncation of a group is not written to the file, the logs written later override the logs with the same
+ * index when the segments are replayed. So only the whole head segments are deleted, after all the groups have
+ * deleted their logs in them.
+ * <p>
+ * The write and the bookkeeping are protected by the lock of this object, the fsync and the file allocation
+ * are executed in io executor.
+ *
+ * @author huangli
+ */
+public class SharedLogStore implements AutoCloseable {
+    private static final DtLog log = DtLogs.getLogger(SharedLogStore.class);
+    private static final Pattern PATTERN = Pattern.compile("^(\\d{20})$");
+
+    // total len 4 bytes
+    // group id 4 bytes
+    // biz header len 4 bytes
+    // body len 4 bytes
+    // type 1 byte
+    // bizType 1 byte
+    // term 4 bytes
+    // prevLogTerm 4 bytes
+    // index 8 bytes
+    // timestamp 8 bytes
+    // header crc 4 bytes
+    static final int RECORD_HEADER_SIZE = 4 + 4 + 4 + 4 + 1 + 1 + 4 + 4 + 8 + 8 + 4;
+    // negative value means end of segment
+    private static final int END_LEN_MAGIC = 0xF19A7BCB;
+
+    private final File dir;
+    private final long fileSize;
+    private final int fileLenShiftBits;
+    private final ExecutorService ioExecutor;
+
+    private final ArrayList<Segment> segments = new ArrayList<>();
+    private CompletableFuture<Segment> allocateFuture;
+
+    private final HashMap<Integer, SharedLogIndex> indexes = new HashMap<>();
+    private boolean inited;
+    private boolean closed;
+    private boolean deleting;
+
+    private long writePos;
+    private long syncedPos;
+    private boolean syncing;
+    private final ArrayList<SyncWaiter> waiters = new ArrayList<>();
+
+    private final ByteBuffer endRecord = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+    static final class Segment {
+        final File file;
+        final FileChannel channel;
+        final long startPos;
+        final long endPos;
+        // max timestamp of the logs in this segment, used by time based deletion
+        long maxTimestamp;
+
+        Segment(File file, FileChannel channel, long startPos, long endPos) {
+            this.file = file;
+            this.channel = channel;
+            this.startPos = startPos;
+            this.endPos = endPos;
+        }
+    }
+
+    private static final class SyncWaiter {
+        final long pos;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        SyncWaiter(long pos) {
+            this.pos = pos;
+        }
+    }
+
+    static final class RecordHeader {
+        private final CRC32C crc32c = new CRC32C();
+        int totalLen;
+        int groupId;
+        int bizHeaderLen;
+        int bodyLen;
+        int type;
+        int bizType;
+        int term;
+        int prevLogTerm;
+        long index;
+        long timestamp;
+
+        /**
+         * read the header from the current position of buf.
+         *
+         * @return false if the crc not match or the data is illegal, which means the end of valid data
+         */
+        boolean read(ByteBuffer buf) {
+            int start = buf.position();
+            totalLen = buf.getInt();
+            groupId = buf.getInt();
+            bizHeaderLen = buf.getInt();
+            bodyLen = buf.getInt();
+            type = buf.get();
+            bizType = buf.get();
+            term = buf.getInt();
+            prevLogTerm = buf.getInt();
+            index = buf.getLong();
+            timestamp = buf.getLong();
+            int crc = buf.getInt();
+            crc32c.reset();
+            RaftUtil.updateCrc(crc32c, buf, start, RECORD_HEADER_SIZE - 4);
+            if (crc != (int) crc32c.getValue()) {
+                return false;
+            }
+            return isEnd() || (bizHeaderLen >= 0 && bodyLen >= 0 && index > 0 && type >= 0
+                    && totalLen == computeTotalLen(bizHeaderLen, bodyLen));
+        }
+
+        boolean isEnd() {
+            return totalLen == END_LEN_MAGIC;
+        }
+    }
+
+    public SharedLogStore(File dir, long fileSize, ExecutorService ioExecutor) {
+        if (Long.bitCount(fileSize) != 1 || fileSize < 64 * 1024) {
+            throw new IllegalArgumentException("fileSize should be power of 2 and not less than 64KB: " + fileSize);
+        }
+        this.dir = dir;
+        this.fileSize = fileSize;
+        this.fileLenShiftBits = BitUtil.zeroCountOfBinary(fileSize);
+        this.ioExecutor = ioExecutor;
+        writeHeader(new CRC32C(), endRecord, END_LEN_MAGIC, 0, 0, 0, null);
+        endRecord.flip();
+    }
+
+    static int computeTotalLen(int bizHeaderLen, int bodyLen) {
+        return RECORD_HEADER_SIZE + (bizHeaderLen == 0 ? 0 : bizHeaderLen + 4) + (bodyLen == 0 ? 0 : bodyLen + 4);
+    }
+
+    static void writeHeader(CRC32C crc, ByteBuffer buf, int totalLen, int groupId, int bizHeaderLen,
+                            int bodyLen, LogItem item) {
+        int start = buf.position();
+        buf.putInt(totalLen);
+        buf.putInt(groupId);
+        buf.putInt(bizHeaderLen);
+        buf.putInt(bodyLen);
+        if (item == null) {
+            buf.put((byte) 0);
+            buf.put((byte) 0);
+            buf.putInt(0);
+            buf.putInt(0);
+            buf.putLong(0);
+            buf.putLong(0);
+        } else {
+            buf.put((byte) item.getType());
+            buf.put((byte) item.getBizType());
+            buf.putInt(item.getTerm());
+            buf.putInt(item.getPrevLogTerm());
+            buf.putLong(item.getIndex());
+            buf.putLong(item.getTimestamp());
+        }
+        crc.reset();
+        RaftUtil.updateCrc(crc, buf, start, RECORD_HEADER_SIZE - 4);
+        buf.putInt((int) crc.getValue());
+    }
+
+    /**
+     * get the index of the group, the segments are scanned when the first group call this method.
+     */
+    synchronized SharedLogIndex claim(int groupId, Supplier<Boolean> cancelInit) throws IOException {
+        if (closed) {
+            throw new RaftException("shared log store closed");
+        }
+        if (!inited) {
+            restore(cancelInit);
+            inited = true;
+        }
+        return indexes.computeIfAbsent(groupId, k -> new SharedLogIndex());
+    }
+
+    /**
+     * called when the group is closed. The logs of the group don't block the deletion of the head segments
+     * any more, so the group can't be claimed again in this process.
+     */
+    synchronized void release(int groupId, SharedLogIndex index) {
+        indexes.remove(groupId, index);
+    }
+
+    private void restore(Supplier<Boolean> cancelInit) throws IOException {
+        File[] files = FileUtil.ensureDir(dir).listFiles();
+        ArrayList<Segment> list = new ArrayList<>();
+        try {
+            if (files != null) {
+                Arrays.sort(files);
+                for (File f : files) {
+                    if (!f.isFile() || !PATTERN.matcher(f.getName()).matches()) {
+                        continue;
+                    }
+                    long startPos = Long.parseLong(f.getName());
+                    if ((startPos & (fileSize - 1)) != 0
+                            || (list.size() > 0 && list.get(list.size() - 1).endPos != startPos)) {
+                        throw new RaftException("bad segment start position: " + f.getPath());
+                    }
+                    if (f.length() != fileSize) {
+                        if (f != files[files.length - 1]) {
+                            throw new RaftException("bad segment size: " + f.getPath() + ", size=" + f.length());
+                        }
+                        // the allocation of the last file is not finished
+                        log.warn("delete incomplete segment: {}, size={}", f.getPath(), f.length());
+                        if (!f.delete()) {
+                            throw new RaftException("delete file failed: " + f.getPath());
+                        }
+                        break;
+                    }
+                    log.info("load shared log segment: {}", f.getPath());
+                    FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    list.add(new Segment(f, channel, startPos, startPos + fileSize));
+                }
+            }
+            HashMap<Integer, SharedLogIndex> map = new HashMap<>();
+            long pos = list.isEmpty() ? 0 : list.get(0).startPos;
+            ByteBuffer buf = ByteBuffer.allocateDirect(1024 * 1024);
+            for (int i = 0; i < list.size(); i++) {
+                RaftUtil.checkInitCancel(cancelInit);
+                Segment seg = list.get(i);
+                long end = scanSegment(seg, buf, map);
+                if (end < seg.endPos) {
+                    // reach the end of valid data
+                    pos = end;
+                    truncateTail(list, i, end);
+                    break;
+                }
+                pos = seg.endPos;
+            }
+            for (Segment seg : list) {
+                seg.channel.force(false);
+            }
+            if (list.isEmpty()) {
+                list.add(createSegment(0));
+            } else if (pos == list.get(list.size() - 1).endPos) {
+                list.add(createSegment(pos));
+            }
+            segments.addAll(list);
+            indexes.putAll(map);
+            writePos = pos;
+            syncedPos = pos;
+            log.info("shared log restored. groups={}, segments={}, writePos={}", map.size(), list.size(), pos);
+        } catch (Throwable e) {
+            for (Segment seg : list) {
+                DtUtil.close(seg.channel);
+            }
+            throw e;
+        }
+    }
+
+    // return the position after the last valid record, or seg.endPos if the segment is complete
+    private long scanSegment(Segment seg, ByteBuffer buf, HashMap<Integer, SharedLogIndex> map) throws IOException {
+        RecordHeader header = new RecordHeader();
+        CRC32C crc = new CRC32C();
+        long filePos = 0;
+        while (true) {
+            long rest = fileSize - filePos;
+            if (rest < RECORD_HEADER_SIZE) {
+                return seg.endPos;
+            }
+            buf.clear();
+            buf.limit((int) Math.min(RECORD_HEADER_SIZE, rest));
+            readFull(seg.channel, buf, filePos);
+            buf.flip();
+            if (!header.read(buf)) {
+                return seg.startPos + filePos;
+            }
+            if (header.isEnd()) {
+                return seg.endPos;
+            }
+            if (header.totalLen > rest) {
+                return seg.startPos + filePos;
+            }
+            if (!checkData(seg, buf, filePos + RECORD_HEADER_SIZE, header, crc)) {
+                return seg.startPos + filePos;
+            }
+            map.computeIfAbsent(header.groupId, k -> new SharedLogIndex())
+                    .put(header.index, header.term, seg.startPos + filePos);
+            seg.maxTimestamp = Math.max(seg.maxTimestamp, header.timestamp);
+            filePos += header.totalLen;
+        }
+    }
+
+    private boolean checkData(Segment seg, ByteBuffer buf, long filePos, RecordHeader header,
+                              CRC32C crc) throws IOException {
+        int[] lens = {header.bizHeaderLen, header.bodyLen};
+        for (int len : lens) {
+            if (len == 0) {
+                continue;
+            }
+            crc.reset();
+            int rest = len;
+            while (rest > 0) {
+                buf.clear();
+                buf.limit(Math.min(rest, buf.capacity()));
+                readFull(seg.channel, buf, filePos);
+                buf.flip();
+                RaftUtil.updateCrc(crc, buf, 0, buf.remaining());
+                filePos += buf.remaining();
+                rest -= buf.remaining();
+            }
+            buf.clear();
+            buf.limit(4);
+            readFull(seg.channel, buf, filePos);
+            buf.flip();
+            if (buf.getInt() != (int) crc.getValue()) {
+                return false;
+            }
+            filePos += 4;
+        }
+        return true;
+    }
+
+    // the data after the last valid record is not durable, so it is never acknowledged. Clear it to prevent the
+    // stale records are parsed as valid after new records are written.
+    private void truncateTail(ArrayList<Segment> list, int segIndex, long pos) throws IOException {
+        Segment seg = list.get(segIndex);
+        log.info("truncate shared log tail from {}, segment={}", pos, seg.file.getPath());
+        ByteBuffer zero = ByteBuffer.allocateDirect(64 * 1024);
+        ByteBuffer read = ByteBuffer.allocateDirect(64 * 1024);
+        long filePos = pos - seg.startPos;
+        while (filePos < fileSize) {
+            int len = (int) Math.min(zero.capacity(), fileSize - filePos);
+            read.clear();
+            read.limit(len);
+            readFull(seg.channel, read, filePos);
+            read.flip();
+            if (isZero(read)) {
+                // the preallocated space, skip write
+                filePos += len;
+                continue;
+            }
+            zero.clear();
+            zero.limit(len);
+            while (zero.hasRemaining()) {
+                filePos += seg.channel.write(zero, filePos);
+            }
+        }
+        while (list.size() > segIndex + 1) {
+            Segment s = list.remove(list.size() - 1);
+            DtUtil.close(s.channel);
+            if (!s.file.delete()) {
+                throw new RaftException("delete file failed: " + s.file.getPath());
+            }
+        }
+    }
+
+    private static boolean isZero(ByteBuffer buf) {
+        while (buf.remaining() >= 8) {
+            if (buf.getLong() != 0) {
+                return false;
+            }
+        }
+        while (buf.hasRemaining()) {
+            if (buf.get() != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void readFull(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int c = channel.read(buf, pos);
+            if (c < 0) {
+                throw new RaftException("read end of file");
+            }
+            pos += c;
+        }
+    }
+
+    private Segment createSegment(long startPos) throws IOException {
+        File f = new File(dir, String.format("%020d", startPos));
+        FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            ByteBuffer buf = ByteBuffer.allocate(1);
+            channel.write(buf, fileSize - 1);
+            channel.force(true);
+            log.info("shared log segment created: {}", f.getPath());
+            return new Segment(f, channel, startPos, startPos + fileSize);
+        } catch (Throwable e) {
+            DtUtil.close(channel);
+            throw e;
+        }
+    }
+
+    /**
+     * write the encoded records, the records don't cross the segments.
+     *
+     * @param buf the records, from position to limit
+     * @param lens the length of each record
+     * @param positions output, the position of each record
+     * @return the position after the last record
+     */
+    long write(ByteBuffer buf, int[] lens, int count, long[] positions, long maxTimestamp) throws IOException {
+        // wait the preallocated segment out of the lock, the other groups can write to current segment meanwhile
+        CompletableFuture<Segment> f = nextSegmentIfNeeded(buf.remaining());
+        if (f != null) {
+            try {
+                f.join();
+            } catch (Throwable e) {
+                // segmentForWrite() will retry
+            }
+        }
+        return write0(buf, lens, count, positions, maxTimestamp);
+    }
+
+    /**
+     * @return the allocate future of next segment if the write may cross current segment
+     */
+    private synchronized CompletableFuture<Segment> nextSegmentIfNeeded(int len) {
+        if (closed) {
+            return null;
+        }
+        // include the end record
+        if (writePos + len + RECORD_HEADER_SIZE <= segments.get(segments.size() - 1).endPos) {
+            return null;
+        }
+        preAllocate();
+        return allocateFuture;
+    }
+
+    private synchronized long write0(ByteBuffer buf, int[] lens, int count, long[] positions,
+                                     long maxTimestamp) throws IOException {
+        if (closed) {
+            throw new RaftException("shared log store closed");
+        }
+        long pos = writePos;
+        Segment seg = segmentForWrite(pos);
+        int recordStart = buf.position();
+        int runStart = recordStart;
+        long runPos = pos;
+        for (int i = 0; i < count; i++) {
+            int len = lens[i];
+            if (len > fileSize) {
+                throw new RaftException("log too large: " + len);
+            }
+            long rest = seg.endPos - pos;
+            if (rest < len) {
+                writeRun(seg, buf, runStart, recordStart, runPos);
+                if (rest >= RECORD_HEADER_SIZE) {
+                    writeRun(seg, endRecord, 0, RECORD_HEADER_SIZE, pos);
+                }
+                seg.maxTimestamp = Math.max(seg.maxTimestamp, maxTimestamp);
+                seg = segmentForWrite(seg.endPos);
+                pos = seg.startPos;
+                runStart = recordStart;
+                runPos = pos;
+            }
+            positions[i] = pos;
+            pos += len;
+            recordStart += len;
+        }
+        writeRun(seg, buf, runStart, recordStart, runPos);
+        seg.maxTimestamp = Math.max(seg.maxTimestamp, maxTimestamp);
+        writePos = pos;
+        preAllocate();
+        return pos;
+    }
+
+    private void writeRun(Segment seg, ByteBuffer buf, int start, int end, long pos) throws IOException {
+        if (end == start) {
+            return;
+        }
+        ByteBuffer b = buf.duplicate();
+        b.limit(end);
+        b.position(start);
+        long filePos = pos - seg.startPos;
+        while (b.hasRemaining()) {
+            filePos += seg.channel.write(b, filePos);
+        }
+    }
+
+    private Segment segmentForWrite(long pos) throws IOException {
+        Segment last = segments.get(segments.size() - 1);
+        if (pos < last.endPos) {
+            return getSegment0(pos);
+        }
+        Segment s;
+        if (allocateFuture != null) {
+            try {
+                s = allocateFuture.join();
+            } catch (Throwable e) {
+                log.error("allocate segment fail, retry", e);
+                s = createSegment(last.endPos);
+            } finally {
+                allocateFuture = null;
+            }
+        } else {
+            s = createSegment(last.endPos);
+        }
+        segments.add(s);
+        return s;
+    }
+
+    private void preAllocate() {
+        Segment last = segments.get(segments.size() - 1);
+        if (allocateFuture == null && writePos >= last.startPos) {
+            long startPos = last.endPos;
+            CompletableFuture<Segment> f = new CompletableFuture<>();
+            allocateFuture = f;
+            ioExecutor.execute(() -> {
+                try {
+                    f.complete(createSegment(startPos));
+                } catch (Throwable e) {
+                    f.completeExceptionally(e);
+                }
+            });
+        }
+    }
+
+    private Segment getSegment0(long pos) {
+        if (segments.isEmpty()) {
+            return null;
+        }
+        long index = (pos - segments.get(0).startPos) >>> fileLenShiftBits;
+        if (pos < segments.get(0).startPos || index >= segments.size()) {
+            return null;
+        }
+        return segments.get((int) index);
+    }
+
+    /**
+     * get the segment to read, return null if it is deleted.
+     */
+    synchronized Segment getSegment(long pos) {
+        return getSegment0(pos);
+    }
+
+    /**
+     * force the data before pos to the storage device, at most one fsync is running. The requests issued while
+     * a fsync is running are merged and handled by the next fsync (group commit across the groups).
+     *
+     * @return the future complete in io thread
+     */
+    synchronized CompletableFuture<Void> sync(long pos) {
+        if (pos <= syncedPos) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (closed) {
+            return CompletableFuture.failedFuture(new RaftException("shared log store closed"));
+        }
+        SyncWaiter w = new SyncWaiter(pos);
+        waiters.add(w);
+        if (!syncing) {
+            startSync();
+        }
+        return w.future;
+    }
+
+    // in lock
+    private void startSync() {
+        syncing = true;
+        long target = writePos;
+        ArrayList<Segment> files = new ArrayList<>(2);
+        for (Segment seg : segments) {
+            if (seg.endPos > syncedPos && seg.startPos < target) {
+                files.add(seg);
+            }
+        }
+        ioExecutor.execute(() -> {
+            Throwable ex = null;
+            try {
+                for (Segment seg : files) {
+                    seg.channel.force(false);
+                }
+            } catch (Throwable e) {
+                ex = e;
+            }
+            afterSync(target, ex);
+        });
+    }
+
+    private void afterSync(long target, Throwable ex) {
+        ArrayList<SyncWaiter> done = new ArrayList<>();
+        synchronized (this) {
+            if (ex != null) {
+                if (closed) {
+                    syncing = false;
+                    done.addAll(waiters);
+                    waiters.clear();
+                } else {
+                    log.error("fsync fail, retry after 1 second", ex);
+                    // keep syncing true, so no other fsync is started before retry
+                    RaftUtil.SCHEDULED_SERVICE.schedule(this::retrySync, 1, TimeUnit.SECONDS);
+                    return;
+                }
+            } else {
+                syncing = false;
+                syncedPos = Math.max(syncedPos, target);
+                for (int i = 0; i < waiters.size(); i++) {
+                    SyncWaiter w = waiters.get(i);
+                    if (w.pos <= syncedPos) {
+                        done.add(w);
+                    }
+                }
+                waiters.removeAll(done);
+                if (!waiters.isEmpty()) {
+                    startSync();
+                }
+            }
+        }
+        for (SyncWaiter w : done) {
+            if (ex == null) {
+                w.future.complete(null);
+            } else {
+                w.future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private synchronized void retrySync() {
+        syncing = false;
+        if (closed) {
+            RaftException ex = new RaftException("shared log store closed");
+            for (SyncWaiter w : waiters) {
+                w.future.completeExceptionally(ex);
+            }
+            waiters.clear();
+        } else if (!waiters.isEmpty()) {
+            startSync();
+        }
+    }
+
+    /**
+     * the end position of the head segments whose logs are all earlier than the timestamp.
+     */
+    synchronized long posBeforeTimestamp(long timestampMillis) {
+        long pos = 0;
+        for (int i = 0; i < segments.size() - 1; i++) {
+            Segment seg = segments.get(i);
+            if (seg.maxTimestamp < timestampMillis && seg.endPos <= writePos) {
+                pos = seg.endPos;
+            } else {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * delete the head segments which are not used by any group.
+     */
+    synchronized void tryDelete() {
+        if (deleting || closed || segments.size() <= 1) {
+            return;
+        }
+        long minPos = Long.MAX_VALUE;
+        for (SharedLogIndex idx : indexes.values()) {
+            minPos = Math.min(minPos, idx.getFirstPos());
+        }
+        // the last segment contains the write position, or it is preallocated
+        minPos = Math.min(minPos, Math.min(syncedPos, writePos));
+        ArrayList<Segment> list = new ArrayList<>();
+        while (segments.size() > 1 && segments.get(0).endPos <= minPos) {
+            list.add(segments.remove(0));
+        }
+        if (list.isEmpty()) {
+            return;
+        }
+        deleting = true;
+        ioExecutor.execute(() -> {
+            try {
+                for (Segment seg : list) {
+                    DtUtil.close(seg.channel);
+                    log.info("delete shared log segment: {}", seg.file.getPath());
+                    if (!seg.file.delete()) {
+                        log.warn("delete shared log segment failed: {}", seg.file.getPath());
+                    }
+                }
+            } catch (Throwable e) {
+                BugLog.log(e);
+            } finally {
+                synchronized (this) {
+                    deleting = false;
+                }
+            }
+        });
+    }
+
+    ExecutorService getIoExecutor() {
+        return ioExecutor;
+    }
+
+    long getFileSize() {
+        return fileSize;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (allocateFuture != null) {
+            allocateFuture.thenAccept(s -> DtUtil.close(s.channel));
+            allocateFuture = null;
+        }
+        for (Segment seg : segments) {
+            DtUtil.close(seg.channel);
+        }
+        RaftException ex = new RaftException("shared log store closed");
+        if (!syncing) {
+            for (SyncWaiter w : waiters) {
+                w.future.completeExceptionally(ex);
+            }
+            waiters.clear();
+        }
+    }
+}
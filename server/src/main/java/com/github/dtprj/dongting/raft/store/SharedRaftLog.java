@@ -0,0 +1,453 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.store;
+
+import com.github.dtprj.dongting.buf.ByteBufferPool;
+import com.github.dtprj.dongting.codec.EncodeContext;
+import com.github.dtprj.dongting.codec.Encoder;
+import com.github.dtprj.dongting.common.DtUtil;
+import com.github.dtprj.dongting.common.Pair;
+import com.github.dtprj.dongting.common.Timestamp;
+import com.github.dtprj.dongting.log.BugLog;
+import com.github.dtprj.dongting.raft.impl.RaftUtil;
+import com.github.dtprj.dongting.raft.server.ChecksumException;
+import com.github.dtprj.dongting.raft.server.LogItem;
+import com.github.dtprj.dongting.raft.server.RaftException;
+import com.github.dtprj.dongting.raft.server.RaftGroupConfigEx;
+import com.github.dtprj.dongting.raft.server.RaftStatus;
+import com.github.dtprj.dongting.raft.server.UnrecoverableException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+/**
+ * The raft log of a group in SharedLogStore.
+ *
+ * @author huangli
+ */
+public class SharedRaftLog implements RaftLog {
+
+    private static final long TASK_INTERVAL_NANOS = 10 * 1000 * 1000 * 1000L;
+
+    private final RaftGroupConfigEx groupConfig;
+    private final SharedLogStore store;
+    private final Timestamp ts;
+    private final RaftStatus raftStatus;
+    private final Executor raftExecutor;
+    private final int groupId;
+    private final CRC32C crc32c = new CRC32C();
+    private final EncodeContext encodeContext;
+
+    private SharedLogIndex index;
+
+    private int[] lens = new int[16];
+    private long[] positions = new long[16];
+
+    // the end position of the last write of this group
+    private long writePos;
+    private long syncedIndex;
+    // the sync requests not finished, capped when the tail is truncated
+    private final ArrayList<long[]> pendingSyncs = new ArrayList<>();
+
+    private long deleteIndex;
+    private long deleteTimestamp;
+    private long lastTaskNanos;
+
+    public SharedRaftLog(RaftGroupConfigEx groupConfig, SharedLogStore store) {
+        this.groupConfig = groupConfig;
+        this.store = store;
+        this.ts = groupConfig.getTs();
+        this.raftStatus = groupConfig.getRaftStatus();
+        this.raftExecutor = groupConfig.getRaftExecutor();
+        this.groupId = groupConfig.getGroupId();
+        this.encodeContext = new EncodeContext(groupConfig.getHeapPool());
+        this.lastTaskNanos = ts.getNanoTime();
+    }
+
+    @Override
+    public Pair<Integer, Long> init(Supplier<Boolean> cancelInit) throws Exception {
+        index = store.claim(groupId, cancelInit);
+        syncedIndex = index.getLastIndex();
+        return new Pair<>(index.getLastTerm(), index.getLastIndex());
+    }
+
+    @Override
+    public void append(List<LogItem> logs) throws Exception {
+        if (logs == null || logs.size() == 0) {
+            BugLog.getLog().error("append log with empty logs");
+            return;
+        }
+        long firstIndex = logs.get(0).getIndex();
+        DtUtil.checkPositive(firstIndex, "firstIndex");
+        SharedLogIndex index = this.index;
+        if (index.getLastIndex() > 0) {
+            if (firstIndex > index.getLastIndex() + 1) {
+                throw new UnrecoverableException("bad index: " + firstIndex);
+            }
+            if (firstIndex <= index.getLastIndex()) {
+                if (firstIndex < index.getFirstIndex()) {
+                    throw new RaftException("bad index: " + firstIndex);
+                }
+                truncateTail(firstIndex);
+            }
+        }
+        int count = logs.size();
+        if (lens.length < count) {
+            lens = new int[count];
+            positions = new long[count];
+        }
+        int totalLen = 0;
+        long maxTimestamp = 0;
+        for (int i = 0; i < count; i++) {
+            LogItem li = logs.get(i);
+            LogFileQueue.initEncoderAndSize(groupConfig.getCodecFactory(), li, true);
+            LogFileQueue.initEncoderAndSize(groupConfig.getCodecFactory(), li, false);
+            int len = SharedLogStore.computeTotalLen(li.getActualHeaderSize(), li.getActualBodySize());
+            lens[i] = len;
+            totalLen += len;
+            maxTimestamp = Math.max(maxTimestamp, li.getTimestamp());
+        }
+        ByteBufferPool directPool = groupConfig.getDirectPool();
+        ByteBuffer buf = directPool.borrow(totalLen);
+        try {
+            buf.clear();
+            for (int i = 0; i < count; i++) {
+                encode(buf, logs.get(i), lens[i]);
+            }
+            buf.flip();
+            writePos = store.write(buf, lens, count, positions, maxTimestamp);
+        } finally {
+            directPool.release(buf);
+        }
+        for (int i = 0; i < count; i++) {
+            LogItem li = logs.get(i);
+            index.put(li.getIndex(), li.getTerm(), positions[i]);
+        }
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private void encode(ByteBuffer buf, LogItem li, int totalLen) {
+        int headerLen = li.getActualHeaderSize();
+        int bodyLen = li.getActualBodySize();
+        SharedLogStore.writeHeader(crc32c, buf, totalLen, groupId, headerLen, bodyLen, li);
+        if (headerLen > 0) {
+            Encoder encoder = LogFileQueue.initEncoderAndSize(groupConfig.getCodecFactory(), li, true);
+            Object data = li.getHeaderBuffer() != null ? li.getHeaderBuffer() : li.getHeader();
+            writeData(buf, encoder, data);
+        }
+        if (bodyLen > 0) {
+            Encoder encoder = LogFileQueue.initEncoderAndSize(groupConfig.getCodecFactory(), li, false);
+            Object data = li.getBodyBuffer() != null ? li.getBodyBuffer() : li.getBody();
+            writeData(buf, encoder, data);
+        }
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private void writeData(ByteBuffer buf, Encoder encoder, Object data) {
+        int start = buf.position();
+        try {
+            // the buffer is large enough
+            if (!encoder.encode(encodeContext, buf, data)) {
+                throw new RaftException("encode not finished");
+            }
+        } finally {
+            encodeContext.setStatus(null);
+        }
+        crc32c.reset();
+        RaftUtil.updateCrc(crc32c, buf, start, buf.position() - start);
+        buf.putInt((int) crc32c.getValue());
+    }
+
+    private void truncateTail(long firstIndex) {
+        index.truncate(firstIndex);
+        long lastIndex = firstIndex - 1;
+        syncedIndex = Math.min(syncedIndex, lastIndex);
+        // the running sync doesn't cover the logs written after the truncation
+        for (int i = 0; i < pendingSyncs.size(); i++) {
+            long[] req = pendingSyncs.get(i);
+            req[0] = Math.min(req[0], lastIndex);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Long> sync() {
+        long lastIndex = index.getLastIndex();
+        if (lastIndex <= syncedIndex) {
+            return CompletableFuture.completedFuture(syncedIndex);
+        }
+        long[] req = new long[]{lastIndex};
+        pendingSyncs.add(req);
+        CompletableFuture<Long> f = new CompletableFuture<>();
+        store.sync(writePos).whenCompleteAsync((v, ex) -> {
+            pendingSyncs.remove(req);
+            if (ex != null) {
+                f.completeExceptionally(ex);
+            } else {
+                syncedIndex = Math.max(syncedIndex, req[0]);
+                f.complete(syncedIndex);
+            }
+        }, raftExecutor);
+        return f;
+    }
+
+    @Override
+    public LogIterator openIterator(Supplier<Boolean> cancelIndicator) {
+        return new SharedLogIterator(cancelIndicator);
+    }
+
+    @Override
+    public CompletableFuture<Pair<Integer, Long>> findReplicatePos(int suggestTerm, long suggestIndex,
+                                                                   int lastTerm, long lastIndex,
+                                                                   Supplier<Boolean> cancelIndicator) {
+        long i = index.findReplicateIndex(suggestTerm, suggestIndex);
+        if (i < 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.completedFuture(new Pair<>(index.termOf(i), i));
+    }
+
+    @Override
+    public void markTruncateByIndex(long index, long delayMillis) {
+        if (index > deleteIndex) {
+            deleteIndex = index;
+            deleteTimestamp = ts.getWallClockMillis() + delayMillis;
+        }
+    }
+
+    @Override
+    public void markTruncateByTimestamp(long timestampMillis, long delayMillis) {
+        // the timestamp of the logs is not indexed, use the max timestamp of the segments instead
+        long pos = store.posBeforeTimestamp(timestampMillis);
+        long i = index.lastIndexBeforePos(pos);
+        if (i > 0) {
+            markTruncateByIndex(Math.min(i + 1, raftStatus.getLastApplied()), delayMillis);
+        }
+    }
+
+    @Override
+    public void doDelete() {
+        if (deleteIndex > 0 && ts.getWallClockMillis() > deleteTimestamp) {
+            index.removeBefore(deleteIndex);
+            deleteIndex = 0;
+        }
+        if (ts.getNanoTime() - lastTaskNanos > TASK_INTERVAL_NANOS) {
+            store.tryDelete();
+            lastTaskNanos = ts.getNanoTime();
+        }
+    }
+
+    @Override
+    public void close() {
+        // the segments are closed by the store
+        if (index != null) {
+            store.release(groupId, index);
+        }
+    }
+
+    private class SharedLogIterator implements LogIterator {
+        private final Supplier<Boolean> cancelIndicator;
+        private final ByteBuffer readBuffer;
+        private final SharedLogStore.RecordHeader header = new SharedLogStore.RecordHeader();
+        private final CRC32C crc = new CRC32C();
+        private boolean running;
+        private boolean close;
+
+        SharedLogIterator(Supplier<Boolean> cancelIndicator) {
+            this.cancelIndicator = cancelIndicator;
+            this.readBuffer = groupConfig.getDirectPool().borrow(1024 * 1024);
+        }
+
+        @Override
+        public CompletableFuture<List<LogItem>> next(long startIndex, int limit, int bytesLimit) {
+            if (close || running) {
+                BugLog.getLog().error("iterator state error: {},{}", close, running);
+                return CompletableFuture.failedFuture(new RaftException("iterator state error"));
+            }
+            if (cancelIndicator.get()) {
+                return CompletableFuture.failedFuture(new CancellationException());
+            }
+            SharedLogIndex index = SharedRaftLog.this.index;
+            if (startIndex < index.getFirstIndex() || startIndex > index.getLastIndex()) {
+                return CompletableFuture.failedFuture(new RaftException("bad index " + startIndex
+                        + ", first index is " + index.getFirstIndex()));
+            }
+            int count = (int) Math.min(limit, index.getLastIndex() - startIndex + 1);
+            long[] poss = new long[count];
+            for (int i = 0; i < count; i++) {
+                poss[i] = index.getPos(startIndex + i);
+            }
+            running = true;
+            CompletableFuture<List<LogItem>> f = new CompletableFuture<>();
+            store.getIoExecutor().execute(() -> {
+                ByteBuffer buf;
+                int readCount;
+                Throwable ex = null;
+                try {
+                    buf = readBuffer;
+                    buf.clear();
+                    readCount = read(buf, poss, bytesLimit);
+                    if (readCount == 0) {
+                        // the first record is larger than the read buffer
+                        buf = ByteBuffer.allocate(recordLen(poss[0]));
+                        readCount = read(buf, poss, bytesLimit);
+                    }
+                    buf.flip();
+                } catch (Throwable e) {
+                    buf = null;
+                    readCount = 0;
+                    ex = e;
+                }
+                ByteBuffer finalBuf = buf;
+                int finalCount = readCount;
+                Throwable finalEx = ex;
+                raftExecutor.execute(() -> afterRead(f, finalBuf, finalCount, startIndex, finalEx));
+            });
+            return f;
+        }
+
+        // in io thread
+        private int recordLen(long pos) throws Exception {
+            ByteBuffer b = ByteBuffer.allocate(SharedLogStore.RECORD_HEADER_SIZE);
+            readRecord(b, pos, SharedLogStore.RECORD_HEADER_SIZE);
+            b.flip();
+            if (!header.read(b) || header.isEnd()) {
+                throw new ChecksumException("bad log header, pos=" + pos);
+            }
+            return header.totalLen;
+        }
+
+        // in io thread, return the count of records read
+        private int read(ByteBuffer buf, long[] poss, int bytesLimit) throws Exception {
+            int bytes = 0;
+            for (int i = 0; i < poss.length; i++) {
+                if (cancelIndicator.get()) {
+                    throw new CancellationException();
+                }
+                if (buf.remaining() < SharedLogStore.RECORD_HEADER_SIZE) {
+                    return i;
+                }
+                int start = buf.position();
+                readRecord(buf, poss[i], SharedLogStore.RECORD_HEADER_SIZE);
+                buf.position(start);
+                if (!header.read(buf) || header.isEnd()) {
+                    throw new ChecksumException("bad log header, pos=" + poss[i]);
+                }
+                bytes += header.bodyLen;
+                int restLen = header.totalLen - SharedLogStore.RECORD_HEADER_SIZE;
+                if (buf.remaining() < restLen || (i > 0 && bytesLimit > 0 && bytes > bytesLimit)) {
+                    buf.position(start);
+                    return i;
+                }
+                readRecord(buf, poss[i] + SharedLogStore.RECORD_HEADER_SIZE, restLen);
+            }
+            return poss.length;
+        }
+
+        private void readRecord(ByteBuffer buf, long pos, int len) throws Exception {
+            SharedLogStore.Segment seg = store.getSegment(pos);
+            if (seg == null) {
+                throw new RaftException("log is deleted, pos=" + pos);
+            }
+            int oldLimit = buf.limit();
+            buf.limit(buf.position() + len);
+            long filePos = pos - seg.startPos;
+            while (buf.hasRemaining()) {
+                int c = seg.channel.read(buf, filePos);
+                if (c < 0) {
+                    throw new RaftException("read end of file");
+                }
+                filePos += c;
+            }
+            buf.limit(oldLimit);
+        }
+
+        // in raft thread
+        private void afterRead(CompletableFuture<List<LogItem>> f, ByteBuffer buf, int count,
+                               long startIndex, Throwable ex) {
+            running = false;
+            if (ex != null) {
+                f.completeExceptionally(ex);
+                return;
+            }
+            if (cancelIndicator.get()) {
+                f.completeExceptionally(new CancellationException());
+                return;
+            }
+            ByteBufferPool heapPool = groupConfig.getHeapPool().getPool();
+            ArrayList<LogItem> list = new ArrayList<>(count);
+            try {
+                for (int i = 0; i < count; i++) {
+                    SharedLogStore.RecordHeader h = header;
+                    if (!h.read(buf) || h.isEnd() || h.groupId != groupId || h.index != startIndex + i) {
+                        throw new ChecksumException("bad log header, index=" + (startIndex + i));
+                    }
+                    LogItem li = new LogItem(heapPool);
+                    list.add(li);
+                    li.setIndex(h.index);
+                    li.setType(h.type);
+                    li.setBizType(h.bizType);
+                    li.setTerm(h.term);
+                    li.setPrevLogTerm(h.prevLogTerm);
+                    li.setTimestamp(h.timestamp);
+                    li.setActualHeaderSize(h.bizHeaderLen);
+                    li.setActualBodySize(h.bodyLen);
+                    if (h.bizHeaderLen > 0) {
+                        li.setHeaderBuffer(readData(buf, heapPool, h.bizHeaderLen));
+                    }
+                    if (h.bodyLen > 0) {
+                        li.setBodyBuffer(readData(buf, heapPool, h.bodyLen));
+                    }
+                }
+                f.complete(list);
+            } catch (Throwable e) {
+                for (LogItem li : list) {
+                    li.release();
+                }
+                f.completeExceptionally(e);
+            }
+        }
+
+        private ByteBuffer readData(ByteBuffer buf, ByteBufferPool heapPool, int len) {
+            crc.reset();
+            RaftUtil.updateCrc(crc, buf, buf.position(), len);
+            ByteBuffer dest = heapPool.borrow(len);
+            buf.get(dest.array(), 0, len);
+            dest.position(len);
+            dest.flip();
+            if (buf.getInt() != (int) crc.getValue()) {
+                heapPool.release(dest);
+                throw new ChecksumException("crc32c not match");
+            }
+            return dest;
+        }
+
+        @Override
+        public void close() {
+            if (close) {
+                BugLog.getLog().error("iterator has closed");
+            } else {
+                groupConfig.getDirectPool().release(readBuffer);
+            }
+            close = true;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.dtkv;
+
+import com.github.dtprj.dongting.buf.RefBuffer;
+import com.github.dtprj.dongting.buf.RefBufferFactory;
+import com.github.dtprj.dongting.buf.SimpleByteBufferPool;
+import com.github.dtprj.dongting.common.Timestamp;
+import com.github.dtprj.dongting.raft.impl.RaftStatusImpl;
+import com.github.dtprj.dongting.raft.server.RaftGroupConfigEx;
+import com.github.dtprj.dongting.raft.server.RaftInput;
+import com.github.dtprj.dongting.raft.sm.Snapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * @author huangli
+ */
+public class DtKVTest {
+
+    private RaftStatusImpl raftStatus;
+    private DtKV kv;
+
+    @BeforeEach
+    public void setup() {
+        Timestamp ts = new Timestamp();
+        raftStatus = new RaftStatusImpl();
+        RaftGroupConfigEx c = new RaftGroupConfigEx(1, "1", "");
+        c.setTs(ts);
+        c.setHeapPool(new RefBufferFactory(new SimpleByteBufferPool(ts, false), 0));
+        c.setRaftStatus(raftStatus);
+        kv = new DtKV(c);
+    }
+
+    private static RaftInput put(String key, String value) {
+        return new RaftInput(DtKV.BIZ_TYPE_PUT, key, value.getBytes(StandardCharsets.UTF_8), null, 0);
+    }
+
+    private static RaftInput remove(String key) {
+        return new RaftInput(DtKV.BIZ_TYPE_REMOVE, key, null, null, 0);
+    }
+
+    private static Map<String, String> read(Snapshot snapshot) throws Exception {
+        HashMap<String, String> map = new HashMap<>();
+        RefBuffer rb = snapshot.readNext().get(1, TimeUnit.SECONDS);
+        if (rb == null) {
+            return map;
+        }
+        ByteBuffer bb = rb.getBuffer();
+        while (bb.hasRemaining()) {
+            bb.getLong();
+            byte[] key = new byte[bb.getInt()];
+            bb.get(key);
+            byte[] value = new byte[bb.getInt()];
+            bb.get(value);
+            map.put(new String(key, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8));
+        }
+        rb.release();
+        return map;
+    }
+
+    @Test
+    public void testSnapshotBeforeAck() throws Exception {
+        Object[][] results = new Object[1][];
+        kv.execBatch(new long[]{1, 2, 3}, List.of(put("k1", "v1"), put("k2", "v2"), put("k3", "v3")),
+                (r, errors) -> {
+                    assertNull(errors);
+                    results[0] = r;
+                });
+        assertEquals(3, results[0].length);
+        // the batch is executed in apply executor, the ack to raft thread (lastApplied) is not arrived
+        assertEquals(0, raftStatus.getLastApplied());
+
+        Snapshot snapshot = kv.takeSnapshot(1);
+        assertEquals(3, snapshot.getLastIncludedIndex());
+
+        // the writes after the snapshot are invisible to it
+        kv.exec(4, put("k1", "v1_new"));
+        kv.exec(5, remove("k2"));
+        kv.exec(6, put("k4", "v4"));
+        assertArrayEquals("v1_new".getBytes(StandardCharsets.UTF_8), (byte[]) kv.exec(7,
+                new RaftInput(DtKV.BIZ_TYPE_GET, "k1", null, null, 0)));
+
+        Map<String, String> m = read(snapshot);
+        assertEquals(Map.of("k1", "v1", "k2", "v2", "k3", "v3"), m);
+        snapshot.close();
+
+        Snapshot snapshot2 = kv.takeSnapshot(1);
+        assertEquals(6, snapshot2.getLastIncludedIndex());
+        assertEquals(Map.of("k1", "v1_new", "k3", "v3", "k4", "v4"), read(snapshot2));
+        snapshot2.close();
+    }
+}
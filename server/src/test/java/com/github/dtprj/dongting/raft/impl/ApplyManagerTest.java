@@ -0,0 +1,360 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.impl;
+
+import com.github.dtprj.dongting.buf.RefBuffer;
+import com.github.dtprj.dongting.codec.Decoder;
+import com.github.dtprj.dongting.codec.Encoder;
+import com.github.dtprj.dongting.raft.server.LogItem;
+import com.github.dtprj.dongting.raft.server.RaftException;
+import com.github.dtprj.dongting.raft.server.RaftExecTimeoutException;
+import com.github.dtprj.dongting.raft.server.RaftInput;
+import com.github.dtprj.dongting.raft.server.RaftOutput;
+import com.github.dtprj.dongting.raft.sm.ExecBatchCallback;
+import com.github.dtprj.dongting.raft.sm.Snapshot;
+import com.github.dtprj.dongting.raft.sm.StateMachine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author huangli
+ */
+public class ApplyManagerTest {
+
+    private RaftStatusImpl raftStatus;
+    private Thread raftThread;
+    private ExecutorService applyExecutor;
+    private final CountDownLatch blockLatch = new CountDownLatch(1);
+    private final List<Long> execIndexes = new ArrayList<>();
+    private final List<String> execThreads = new ArrayList<>();
+    private final List<long[]> batches = new ArrayList<>();
+
+    private class MockStateMachine implements StateMachine {
+        @Override
+        public Object exec(long index, RaftInput input) {
+            try {
+                blockLatch.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            synchronized (execIndexes) {
+                execIndexes.add(index);
+                execThreads.add(Thread.currentThread().getName());
+            }
+            return index;
+        }
+
+        @Override
+        public void execBatch(long[] indexes, List<RaftInput> inputs, ExecBatchCallback callback) {
+            synchronized (execIndexes) {
+                batches.add(indexes);
+            }
+            StateMachine.super.execBatch(indexes, inputs, callback);
+        }
+
+        @Override
+        public void installSnapshot(long lastIncludeIndex, int lastIncludeTerm, long offset, boolean done,
+                                    RefBuffer data) {
+        }
+
+        @Override
+        public Snapshot takeSnapshot(int currentTerm) {
+            return null;
+        }
+
+        @Override
+        public Decoder<?> createDecoder(int bizType, boolean header) {
+            return null;
+        }
+
+        @Override
+        public Encoder<?> createEncoder(int bizType, boolean header) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @BeforeEach
+    public void setup() {
+        raftStatus = new RaftStatusImpl();
+        RaftExecutor[] holder = new RaftExecutor[1];
+        raftThread = new Thread(() -> {
+            try {
+                //noinspection InfiniteLoopStatement
+                while (true) {
+                    holder[0].drainOrPark(o -> ((Runnable) o).run(), TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            } catch (InterruptedException e) {
+                // exit
+            }
+        }, "raft");
+        holder[0] = new RaftExecutor(raftThread);
+        raftStatus.setRaftExecutor(holder[0]);
+        raftThread.start();
+        applyExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "apply"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        blockLatch.countDown();
+        raftThread.interrupt();
+        applyExecutor.shutdown();
+    }
+
+    private <T> T inRaftThread(Callable<T> c) throws Exception {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        raftStatus.getRaftExecutor().execute(() -> {
+            try {
+                f.complete(c.call());
+            } catch (Throwable e) {
+                f.completeExceptionally(e);
+            }
+        });
+        return f.get(5, TimeUnit.SECONDS);
+    }
+
+    private CompletableFuture<RaftOutput> addWrite(long index) {
+        return addTask(index, LogItem.TYPE_NORMAL);
+    }
+
+    private CompletableFuture<RaftOutput> addTask(long index, int type) {
+        CompletableFuture<RaftOutput> f = new CompletableFuture<>();
+        RaftInput input = new RaftInput(0, null, null, null, 0);
+        RaftTask rt = new RaftTask(raftStatus.getTs(), type, input, f);
+        LogItem item = new LogItem(null);
+        item.setIndex(index);
+        item.setType(type);
+        rt.item = item;
+        raftStatus.getPendingRequests().put(index, rt);
+        return f;
+    }
+
+    @Test
+    public void testApplyInExecutor() throws Exception {
+        ApplyManager am = new ApplyManager(1, null, new MockStateMachine(), raftStatus, null, null,
+                new ReadIndexManager(raftStatus, null), applyExecutor, 2);
+        ArrayList<CompletableFuture<RaftOutput>> futures = new ArrayList<>();
+        inRaftThread(() -> {
+            for (int i = 1; i <= 5; i++) {
+                futures.add(addWrite(i));
+            }
+            raftStatus.setCommitIndex(5);
+            am.apply(raftStatus);
+            return null;
+        });
+        // the state machine is blocked, the raft thread is not
+        assertEquals(0L, (long) inRaftThread(raftStatus::getLastApplied));
+        assertFalse(futures.get(0).isDone());
+
+        blockLatch.countDown();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1L, futures.get(i).get(5, TimeUnit.SECONDS).getResult());
+        }
+        // the ack of the last batch may be still in the queue of raft thread
+        long lastApplied = 0;
+        for (int i = 0; i < 100 && lastApplied < 5; i++) {
+            lastApplied = inRaftThread(raftStatus::getLastApplied);
+        }
+        assertEquals(5, lastApplied);
+        synchronized (execIndexes) {
+            assertEquals(List.of(1L, 2L, 3L, 4L, 5L), execIndexes);
+            for (String s : execThreads) {
+                assertEquals("apply", s);
+            }
+        }
+    }
+
+    @Test
+    public void testExecBatchInRaftThread() throws Exception {
+        blockLatch.countDown();
+        ApplyManager am = new ApplyManager(1, null, new MockStateMachine(), raftStatus, null, null,
+                new ReadIndexManager(raftStatus, null), null, 100);
+        ArrayList<CompletableFuture<RaftOutput>> futures = new ArrayList<>();
+        inRaftThread(() -> {
+            futures.add(addWrite(1));
+            futures.add(addWrite(2));
+            addTask(3, LogItem.TYPE_HEARTBEAT);
+            futures.add(addWrite(4));
+            raftStatus.setCommitIndex(4);
+            am.apply(raftStatus);
+            return null;
+        });
+        assertEquals(4L, futures.get(2).get(5, TimeUnit.SECONDS).getResult());
+        assertEquals(4L, (long) inRaftThread(raftStatus::getLastApplied));
+        synchronized (execIndexes) {
+            // the heartbeat is skipped, the writes are executed in one batch
+            assertEquals(1, batches.size());
+            assertArrayEquals(new long[]{1, 2, 4}, batches.get(0));
+            for (String s : execThreads) {
+                assertEquals("raft", s);
+            }
+        }
+    }
+
+    @Test
+    public void testLastAppliedExactInRaftThread() throws Exception {
+        blockLatch.countDown();
+        ApplyManager am = new ApplyManager(1, null, new MockStateMachine(), raftStatus, null, null,
+                new ReadIndexManager(raftStatus, null), null, 2);
+        ArrayList<CompletableFuture<RaftOutput>> futures = new ArrayList<>();
+        long lastApplied = inRaftThread(() -> {
+            for (int i = 1; i <= 5; i++) {
+                futures.add(addWrite(i));
+            }
+            raftStatus.setCommitIndex(5);
+            am.apply(raftStatus);
+            // a snapshot taken now sees the lastApplied of the executed batch, not a stale one
+            return raftStatus.getLastApplied();
+        });
+        assertEquals(2, lastApplied);
+        // the rest batches are not blocked by the back pressure
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1L, futures.get(i).get(5, TimeUnit.SECONDS).getResult());
+        }
+        assertEquals(5L, (long) inRaftThread(raftStatus::getLastApplied));
+    }
+
+    @Test
+    public void testReadTimeoutInExecutor() throws Exception {
+        blockLatch.countDown();
+        ApplyManager am = new ApplyManager(1, null, new MockStateMachine(), raftStatus, null, null,
+                new ReadIndexManager(raftStatus, null), applyExecutor, 100);
+        CompletableFuture<RaftOutput> f = new CompletableFuture<>();
+        // already timeout
+        RaftInput input = new RaftInput(0, null, null, System.nanoTime(), 0, 0);
+        inRaftThread(() -> {
+            am.execRead(0, new RaftTask(raftStatus.getTs(), LogItem.TYPE_NORMAL, input, f));
+            return null;
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, () -> f.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RaftExecTimeoutException.class, e.getCause());
+        // the ack of the batch is processed in raft thread after the batch
+        inRaftThread(() -> null);
+        synchronized (execIndexes) {
+            assertTrue(execIndexes.isEmpty());
+        }
+    }
+
+    @Test
+    public void testInstallSnapshotDuringBatch() throws Exception {
+        ApplyManager am = new ApplyManager(1, null, new MockStateMachine(), raftStatus, null, null,
+                new ReadIndexManager(raftStatus, null), applyExecutor, 100);
+        ArrayList<CompletableFuture<RaftOutput>> futures = new ArrayList<>();
+        CompletableFuture<List<Long>> installed = new CompletableFuture<>();
+        inRaftThread(() -> {
+            futures.add(addWrite(1));
+            futures.add(addWrite(2));
+            raftStatus.setCommitIndex(2);
+            am.apply(raftStatus);
+            // the batch is blocked in the state machine, index 3 is queued
+            futures.add(addWrite(3));
+            raftStatus.setCommitIndex(3);
+            am.apply(raftStatus);
+
+            raftStatus.setInstallSnapshot(true);
+            am.runWhenApplyIdle(() -> {
+                synchronized (execIndexes) {
+                    installed.complete(new ArrayList<>(execIndexes));
+                }
+                raftStatus.setInstallSnapshot(false);
+                raftStatus.setLastApplied(10);
+                raftStatus.setCommitIndex(10);
+                am.afterInstallSnapshot(10);
+            });
+            return null;
+        });
+        Thread.sleep(10);
+        assertFalse(installed.isDone());
+
+        blockLatch.countDown();
+        // installed after the in flight batch finished
+        assertEquals(List.of(1L, 2L), installed.get(5, TimeUnit.SECONDS));
+        assertEquals(1L, futures.get(0).get(5, TimeUnit.SECONDS).getResult());
+        assertEquals(2L, futures.get(1).get(5, TimeUnit.SECONDS).getResult());
+        // the queued log covered by the snapshot is dropped
+        ExecutionException e = assertThrows(ExecutionException.class, () -> futures.get(2).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RaftException.class, e.getCause());
+
+        CompletableFuture<RaftOutput> f = inRaftThread(() -> {
+            CompletableFuture<RaftOutput> f11 = addWrite(11);
+            raftStatus.setCommitIndex(11);
+            am.apply(raftStatus);
+            return f11;
+        });
+        assertEquals(11L, f.get(5, TimeUnit.SECONDS).getResult());
+        synchronized (execIndexes) {
+            assertEquals(List.of(1L, 2L, 11L), execIndexes);
+        }
+    }
+
+    @Test
+    public void testRetryAfterRejected() throws Exception {
+        blockLatch.countDown();
+        AtomicInteger rejectCount = new AtomicInteger();
+        Executor executor = r -> {
+            if (rejectCount.getAndIncrement() == 0) {
+                throw new RejectedExecutionException();
+            }
+            applyExecutor.execute(r);
+        };
+        ApplyManager am = new ApplyManager(1, null, new MockStateMachine(), raftStatus, null, null,
+                new ReadIndexManager(raftStatus, null), executor, 100);
+        ArrayList<CompletableFuture<RaftOutput>> futures = new ArrayList<>();
+        inRaftThread(() -> {
+            futures.add(addWrite(1));
+            futures.add(addWrite(2));
+            raftStatus.setCommitIndex(2);
+            am.apply(raftStatus);
+            // committed during the retry
+            futures.add(addWrite(3));
+            raftStatus.setCommitIndex(3);
+            am.apply(raftStatus);
+            return null;
+        });
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i + 1L, futures.get(i).get(5, TimeUnit.SECONDS).getResult());
+        }
+        synchronized (execIndexes) {
+            // the rejected batch is not lost, and the order is kept
+            assertEquals(List.of(1L, 2L, 3L), execIndexes);
+            assertArrayEquals(new long[]{1, 2, 3}, batches.get(0));
+        }
+    }
+}
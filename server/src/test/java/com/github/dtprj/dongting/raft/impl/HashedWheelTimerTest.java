@@ -0,0 +1,91 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author huangli
+ */
+public class HashedWheelTimerTest {
+
+    @Test
+    public void testExpire() {
+        long start = 1000;
+        HashedWheelTimer timer = new HashedWheelTimer(10, 4, start);
+        ArrayList<String> fired = new ArrayList<>();
+        timer.schedule(new HashedWheelTimer.TimerTask(() -> fired.add("a")), 15, start);
+        // more than one round
+        timer.schedule(new HashedWheelTimer.TimerTask(() -> fired.add("b")), 55, start);
+        timer.schedule(new HashedWheelTimer.TimerTask(() -> fired.add("c")), 0, start);
+        assertEquals(3, timer.size());
+        assertEquals(10, timer.nanosToNextTick(start));
+
+        assertEquals(0, timer.expire(start + 9));
+        assertEquals(1, timer.expire(start + 10));
+        assertEquals("c", fired.get(0));
+        // deadline is 1015, fired in next tick
+        assertEquals(0, timer.expire(start + 19));
+        assertEquals(1, timer.expire(start + 20));
+        assertEquals("a", fired.get(1));
+        assertEquals(0, timer.expire(start + 50));
+        assertEquals(1, timer.expire(start + 60));
+        assertEquals("b", fired.get(2));
+        assertEquals(0, timer.size());
+        assertEquals(-1, timer.nanosToNextTick(start + 60));
+    }
+
+    @Test
+    public void testLongPause() {
+        long start = -1000;
+        HashedWheelTimer timer = new HashedWheelTimer(10, 4, start);
+        ArrayList<Integer> fired = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int v = i;
+            timer.schedule(new HashedWheelTimer.TimerTask(() -> fired.add(v)), i * 10, start);
+        }
+        // skip many rounds
+        assertEquals(20, timer.expire(start + 1000));
+        assertEquals(20, fired.size());
+    }
+
+    @Test
+    public void testReschedule() {
+        long start = 0;
+        HashedWheelTimer timer = new HashedWheelTimer(10, 8, start);
+        long[] now = new long[1];
+        int[] count = new int[1];
+        HashedWheelTimer.TimerTask[] holder = new HashedWheelTimer.TimerTask[1];
+        holder[0] = new HashedWheelTimer.TimerTask(() -> {
+            count[0]++;
+            timer.schedule(holder[0], 10, now[0]);
+        });
+        timer.schedule(holder[0], 10, start);
+        assertThrows(IllegalStateException.class, () -> timer.schedule(holder[0], 10, start));
+        for (int i = 1; i <= 100; i++) {
+            now[0] = i * 10;
+            timer.expire(now[0]);
+        }
+        // fired once per tick
+        assertEquals(100, count[0]);
+        assertEquals(1, timer.size());
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A raft thread runs the tasks of its RaftExecutor, for the tests outside this package. Stop it by interrupt().
+ *
+ * @author huangli
+ */
+public class MockRaftThread extends Thread {
+
+    private final RaftExecutor executor;
+
+    public MockRaftThread() {
+        super("raft");
+        this.executor = new RaftExecutor(this);
+    }
+
+    @Override
+    public void run() {
+        try {
+            //noinspection InfiniteLoopStatement
+            while (true) {
+                executor.drainOrPark(o -> ((Runnable) o).run(), TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        } catch (InterruptedException e) {
+            // exit
+        }
+    }
+
+    public RaftExecutor getExecutor() {
+        return executor;
+    }
+}
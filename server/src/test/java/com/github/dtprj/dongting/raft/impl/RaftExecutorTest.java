@@ -0,0 +1,109 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author huangli
+ */
+public class RaftExecutorTest {
+
+    @Test
+    public void testWakeup() throws Exception {
+        int producers = 3;
+        int count = 5000;
+        // the park timeout is large, the test finishes in time only if the producers unpark the raft thread
+        long parkNanos = TimeUnit.SECONDS.toNanos(100);
+        ArrayList<Object> received = new ArrayList<>();
+        CountDownLatch finish = new CountDownLatch(1);
+        RaftExecutor[] holder = new RaftExecutor[1];
+        Thread raftThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (received.size() < producers * count) {
+                        holder[0].drainOrPark(received::add, parkNanos);
+                    }
+                    finish.countDown();
+                } catch (InterruptedException e) {
+                    // exit
+                }
+            }
+        };
+        RaftExecutor executor = new RaftExecutor(raftThread);
+        holder[0] = executor;
+        raftThread.start();
+
+        Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i++) {
+            int p = i;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < count; j++) {
+                    executor.offer(p * count + j);
+                    if (j % 1000 == 0) {
+                        // let the raft thread park
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        assertTrue(finish.await(10, TimeUnit.SECONDS));
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(producers * count, received.size());
+        int[] next = new int[producers];
+        for (Object o : received) {
+            int v = (Integer) o;
+            int p = v / count;
+            assertEquals(p * count + next[p]++, v);
+        }
+    }
+
+    @Test
+    public void testInterrupt() throws Exception {
+        CountDownLatch finish = new CountDownLatch(1);
+        RaftExecutor[] holder = new RaftExecutor[1];
+        Thread raftThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    holder[0].drainOrPark(o -> {
+                    }, TimeUnit.SECONDS.toNanos(100));
+                } catch (InterruptedException e) {
+                    finish.countDown();
+                }
+            }
+        };
+        holder[0] = new RaftExecutor(raftThread);
+        raftThread.start();
+        raftThread.interrupt();
+        assertTrue(finish.await(10, TimeUnit.SECONDS));
+    }
+}
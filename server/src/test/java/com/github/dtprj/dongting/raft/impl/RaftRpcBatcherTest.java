@@ -0,0 +1,202 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.impl;
+
+import com.github.dtprj.dongting.codec.ByteArrayDecoder;
+import com.github.dtprj.dongting.codec.Decoder;
+import com.github.dtprj.dongting.common.DtTime;
+import com.github.dtprj.dongting.common.DtUtil;
+import com.github.dtprj.dongting.net.ByteBufferWriteFrame;
+import com.github.dtprj.dongting.net.ChannelContext;
+import com.github.dtprj.dongting.net.CmdCodes;
+import com.github.dtprj.dongting.net.Commands;
+import com.github.dtprj.dongting.net.EmptyBodyRespFrame;
+import com.github.dtprj.dongting.net.HostPort;
+import com.github.dtprj.dongting.net.NioClient;
+import com.github.dtprj.dongting.net.NioClientConfig;
+import com.github.dtprj.dongting.net.NioServer;
+import com.github.dtprj.dongting.net.NioServerConfig;
+import com.github.dtprj.dongting.net.Peer;
+import com.github.dtprj.dongting.net.ReadFrame;
+import com.github.dtprj.dongting.net.ReqContext;
+import com.github.dtprj.dongting.net.ReqProcessor;
+import com.github.dtprj.dongting.net.WriteFrame;
+import com.github.dtprj.dongting.raft.rpc.BatchCodec;
+import com.github.dtprj.dongting.raft.rpc.BatchSubFrame;
+import com.github.dtprj.dongting.raft.server.RaftServerConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author huangli
+ */
+public class RaftRpcBatcherTest {
+
+    private static final int PORT = 9431;
+
+    private NioServer server;
+    private NioClient client;
+    private Peer peer;
+    private final List<Integer> batchedCommands = Collections.synchronizedList(new ArrayList<>());
+    private final LinkedBlockingQueue<Runnable> slowResps = new LinkedBlockingQueue<>();
+
+    // reply the sub requests at once
+    private class FastBatchProcessor extends ReqProcessor<List<BatchSubFrame>> {
+        @Override
+        public WriteFrame process(ReadFrame<List<BatchSubFrame>> frame, ChannelContext channelContext,
+                                  ReqContext reqContext) {
+            ArrayList<WriteFrame> resps = new ArrayList<>();
+            for (BatchSubFrame sub : frame.getBody()) {
+                batchedCommands.add(sub.getCommand());
+                EmptyBodyRespFrame resp = new EmptyBodyRespFrame(CmdCodes.SUCCESS);
+                resp.setSeq(sub.getSeq());
+                resp.setCommand(sub.getCommand());
+                resps.add(resp);
+            }
+            ByteBufferWriteFrame wf = new ByteBufferWriteFrame(BatchCodec.encode(resps));
+            wf.setRespCode(CmdCodes.SUCCESS);
+            return wf;
+        }
+
+        @Override
+        public Decoder<List<BatchSubFrame>> createDecoder() {
+            return BatchCodec.createDecoder(sub -> null);
+        }
+    }
+
+    // reply later, like the read index processor which waits for a heartbeat round
+    private class SlowProcessor extends ReqProcessor<byte[]> {
+        @Override
+        public WriteFrame process(ReadFrame<byte[]> frame, ChannelContext channelContext, ReqContext reqContext) {
+            slowResps.add(() -> channelContext.getRespWriter().writeRespInBizThreads(frame,
+                    new EmptyBodyRespFrame(CmdCodes.SUCCESS), reqContext));
+            return null;
+        }
+
+        @Override
+        public Decoder<byte[]> createDecoder() {
+            return ByteArrayDecoder.INSTANCE;
+        }
+    }
+
+    @BeforeEach
+    public void setup() throws Exception {
+        NioServerConfig serverConfig = new NioServerConfig();
+        serverConfig.setPort(PORT);
+        serverConfig.setIoThreads(1);
+        serverConfig.setBizThreads(0);
+        server = new NioServer(serverConfig);
+        server.register(Commands.RAFT_BATCH, new FastBatchProcessor());
+        server.register(Commands.RAFT_QUERY_READ_INDEX, new SlowProcessor());
+        server.start();
+
+        NioClientConfig clientConfig = new NioClientConfig();
+        clientConfig.setHostPorts(new ArrayList<>());
+        client = new NioClient(clientConfig);
+        client.start();
+        client.waitStart();
+        peer = client.addPeer(new HostPort("127.0.0.1", PORT)).get();
+        client.connect(peer, new DtTime(5, TimeUnit.SECONDS)).get();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        DtUtil.close(client, server);
+    }
+
+    private static WriteFrame frame(int command) {
+        ByteBufferWriteFrame wf = new ByteBufferWriteFrame(ByteBuffer.wrap(new byte[]{1}));
+        wf.setCommand(command);
+        return wf;
+    }
+
+    @Test
+    public void testSlowRequestNotDelayBatch() throws Exception {
+        RaftServerConfig config = new RaftServerConfig();
+        config.setRpcBatch(true);
+        // wait a while so the pings are sent in one batch
+        config.setRpcBatchLinger(10);
+        RaftRpcBatcher batcher = new RaftRpcBatcher(config, client);
+
+        CompletableFuture<ReadFrame<byte[]>> slow = batcher.sendRequestNoBatch(peer,
+                frame(Commands.RAFT_QUERY_READ_INDEX), ByteArrayDecoder.INSTANCE);
+        CompletableFuture<ReadFrame<Object>> p1 = batcher.sendRequest(peer, frame(Commands.RAFT_PING), null);
+        CompletableFuture<ReadFrame<Object>> p2 = batcher.sendRequest(peer, frame(Commands.RAFT_PING), null);
+
+        Runnable writeSlowResp = slowResps.poll(5, TimeUnit.SECONDS);
+        // the pings are replied while the slow request is still pending
+        p1.get(5, TimeUnit.SECONDS);
+        p2.get(5, TimeUnit.SECONDS);
+        assertFalse(slow.isDone());
+        synchronized (batchedCommands) {
+            assertEquals(List.of(Commands.RAFT_PING, Commands.RAFT_PING), batchedCommands);
+        }
+
+        writeSlowResp.run();
+        assertEquals(CmdCodes.SUCCESS, slow.get(5, TimeUnit.SECONDS).getRespCode());
+    }
+
+    @Test
+    public void testNotBlockWhenMaxOutRequestsReached() throws Exception {
+        NioClientConfig clientConfig = new NioClientConfig();
+        clientConfig.setHostPorts(new ArrayList<>());
+        clientConfig.setMaxOutRequests(1);
+        NioClient client2 = new NioClient(clientConfig);
+        try {
+            client2.start();
+            client2.waitStart();
+            Peer peer2 = client2.addPeer(new HostPort("127.0.0.1", PORT)).get();
+            client2.connect(peer2, new DtTime(5, TimeUnit.SECONDS)).get();
+
+            RaftServerConfig config = new RaftServerConfig();
+            config.setRpcBatch(true);
+            config.setRpcTimeout(3000);
+            RaftRpcBatcher batcher = new RaftRpcBatcher(config, client2);
+
+            CompletableFuture<ReadFrame<byte[]>> slow1 = batcher.sendRequestNoBatch(peer2,
+                    frame(Commands.RAFT_QUERY_READ_INDEX), ByteArrayDecoder.INSTANCE);
+            Runnable writeResp1 = slowResps.poll(5, TimeUnit.SECONDS);
+
+            // the only permit is held by slow1, the caller (raft thread) should not wait for it
+            long t = System.nanoTime();
+            CompletableFuture<ReadFrame<byte[]>> slow2 = batcher.sendRequestNoBatch(peer2,
+                    frame(Commands.RAFT_QUERY_READ_INDEX), ByteArrayDecoder.INSTANCE);
+            assertTrue(System.nanoTime() - t < TimeUnit.MILLISECONDS.toNanos(500));
+            assertFalse(slow2.isDone());
+
+            writeResp1.run();
+            assertEquals(CmdCodes.SUCCESS, slow1.get(5, TimeUnit.SECONDS).getRespCode());
+            // sent in order after the permit released
+            slowResps.poll(5, TimeUnit.SECONDS).run();
+            assertEquals(CmdCodes.SUCCESS, slow2.get(5, TimeUnit.SECONDS).getRespCode());
+        } finally {
+            DtUtil.close(client2);
+        }
+    }
+}
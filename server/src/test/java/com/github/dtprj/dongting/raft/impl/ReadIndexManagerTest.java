@@ -0,0 +1,215 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.impl;
+
+import com.github.dtprj.dongting.raft.server.NotLeaderException;
+import com.github.dtprj.dongting.raft.server.RaftExecTimeoutException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author huangli
+ */
+public class ReadIndexManagerTest {
+
+    private RaftStatusImpl raftStatus;
+    private ReadIndexManager manager;
+    private final ArrayList<RaftMember> members = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() {
+        raftStatus = new RaftStatusImpl();
+        for (int i = 1; i <= 3; i++) {
+            RaftMember m = new RaftMember(new RaftNodeEx(i, null, i == 1, null));
+            m.setLastConfirmReqNanos(raftStatus.getTs().getNanoTime() - 1000);
+            members.add(m);
+        }
+        raftStatus.setMembers(members);
+        raftStatus.setPreparedMembers(Collections.emptyList());
+        raftStatus.setElectQuorum(2);
+        raftStatus.setRole(RaftRole.leader);
+        raftStatus.setCurrentTerm(2);
+        raftStatus.setCommitIndex(10);
+        raftStatus.setLastApplied(8);
+        raftStatus.setElectTimeoutNanos(1000 * 1000 * 1000L);
+        manager = new ReadIndexManager(raftStatus, null);
+    }
+
+    // the member acks a heartbeat sent now
+    private void confirm(int memberIndex) {
+        members.get(memberIndex).setLastConfirmReadSeq(manager.getReadSeq());
+    }
+
+    private void tick() throws InterruptedException {
+        Thread.sleep(1);
+        raftStatus.getTs().refresh(0);
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        CompletableFuture<Long> f1 = new CompletableFuture<>();
+        CompletableFuture<Long> f2 = new CompletableFuture<>();
+        CompletableFuture<Long> f3 = new CompletableFuture<>();
+        tick();
+        assertTrue(manager.addRead(f1));
+        // share the next round
+        assertFalse(manager.addRead(f2));
+        assertFalse(manager.addRead(f3));
+
+        confirm(0);
+        assertFalse(manager.tryConfirm());
+        raftStatus.setCommitIndex(12);
+        confirm(1);
+        tick();
+        // f2 and f3 start the next round
+        assertTrue(manager.tryConfirm());
+        assertFalse(f1.isDone());
+
+        // wait apply
+        manager.afterApply(9);
+        assertFalse(f1.isDone());
+        raftStatus.setLastApplied(10);
+        manager.afterApply(10);
+        assertEquals(10, f1.get(1, TimeUnit.SECONDS));
+
+        // the confirmations before the round started don't count
+        assertFalse(manager.tryConfirm());
+        assertFalse(f2.isDone());
+        raftStatus.setLastApplied(12);
+        confirm(0);
+        confirm(2);
+        assertFalse(manager.tryConfirm());
+        assertEquals(12, f2.get(1, TimeUnit.SECONDS));
+        assertEquals(12, f3.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testHeartbeatBeforeRead() throws Exception {
+        // a heartbeat is sent in the same tick before the read arrives
+        long readSeq = manager.getReadSeq();
+        long reqNanos = raftStatus.getTs().getNanoTime();
+        CompletableFuture<Long> f = new CompletableFuture<>();
+        assertTrue(manager.addRead(f));
+        confirm(0);
+        // the ack of the heartbeat arrives after the read
+        RaftMember m = members.get(1);
+        m.setLastConfirmReadSeq(readSeq);
+        m.setLastConfirmReqNanos(reqNanos);
+        assertFalse(manager.tryConfirm());
+        raftStatus.setLastApplied(10);
+        manager.afterApply(10);
+        assertFalse(f.isDone());
+
+        // the heartbeat sent by the read
+        confirm(1);
+        assertFalse(manager.tryConfirm());
+        assertEquals(10, f.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testQueryNotWaitApply() throws Exception {
+        CompletableFuture<Long> read = new CompletableFuture<>();
+        CompletableFuture<Long> query = new CompletableFuture<>();
+        assertTrue(manager.addRead(query, false));
+        confirm(0);
+        confirm(1);
+        // the read shares the next round
+        assertFalse(manager.addRead(read));
+        assertTrue(manager.tryConfirm());
+        // the leader applied 8, the follower waits for 10 itself
+        assertEquals(10, query.get(1, TimeUnit.SECONDS));
+        confirm(0);
+        confirm(2);
+        assertFalse(manager.tryConfirm());
+        assertFalse(read.isDone());
+        raftStatus.setLastApplied(10);
+        manager.afterApply(10);
+        assertEquals(10, read.get(1, TimeUnit.SECONDS));
+
+        raftStatus.setRole(RaftRole.follower);
+        CompletableFuture<Long> query3 = new CompletableFuture<>();
+        assertFalse(manager.addRead(query3, false));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> query3.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(NotLeaderException.class, e.getCause());
+    }
+
+    @Test
+    public void testNotLeader() {
+        CompletableFuture<Long> f1 = new CompletableFuture<>();
+        CompletableFuture<Long> f2 = new CompletableFuture<>();
+        assertTrue(manager.addRead(f1));
+        raftStatus.setRole(RaftRole.follower);
+        assertFalse(manager.checkTimeout());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> f1.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(NotLeaderException.class, e.getCause());
+
+        assertFalse(manager.addRead(f2));
+        e = assertThrows(ExecutionException.class, () -> f2.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(NotLeaderException.class, e.getCause());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        CompletableFuture<Long> f1 = new CompletableFuture<>();
+        CompletableFuture<Long> f2 = new CompletableFuture<>();
+        assertTrue(manager.addRead(f1));
+        assertFalse(manager.addRead(f2));
+        raftStatus.setElectTimeoutNanos(1);
+        Thread.sleep(2);
+        raftStatus.getTs().refresh(0);
+        assertTrue(manager.checkTimeout());
+        ExecutionException e = assertThrows(ExecutionException.class, () -> f1.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(RaftExecTimeoutException.class, e.getCause());
+        assertFalse(f2.isDone());
+    }
+
+    @Test
+    public void testWaitApply() throws Exception {
+        CompletableFuture<Long> f1 = new CompletableFuture<>();
+        CompletableFuture<Long> f2 = new CompletableFuture<>();
+        CompletableFuture<Long> f3 = new CompletableFuture<>();
+        manager.waitApply(15, f1);
+        manager.waitApply(11, f2);
+        manager.waitApply(8, f3);
+        assertEquals(8, f3.get(1, TimeUnit.SECONDS));
+        manager.afterApply(12);
+        assertEquals(11, f2.get(1, TimeUnit.SECONDS));
+        assertFalse(f1.isDone());
+        manager.afterApply(15);
+        assertEquals(15, f1.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFollowerWithoutLeader() {
+        raftStatus.setRole(RaftRole.follower);
+        CompletableFuture<Long> f = new CompletableFuture<>();
+        assertFalse(manager.addRead(f));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> f.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(NotLeaderException.class, e.getCause());
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.rpc;
+
+import com.github.dtprj.dongting.common.Pair;
+import com.github.dtprj.dongting.net.ChannelContext;
+import com.github.dtprj.dongting.net.ReadFrame;
+import com.github.dtprj.dongting.net.ReqContext;
+import com.github.dtprj.dongting.net.WriteFrame;
+import com.github.dtprj.dongting.raft.impl.ApplyManager;
+import com.github.dtprj.dongting.raft.impl.MemberManager;
+import com.github.dtprj.dongting.raft.impl.MockRaftThread;
+import com.github.dtprj.dongting.raft.impl.RaftExecutor;
+import com.github.dtprj.dongting.raft.impl.RaftGroupImpl;
+import com.github.dtprj.dongting.raft.impl.RaftGroups;
+import com.github.dtprj.dongting.raft.impl.RaftMember;
+import com.github.dtprj.dongting.raft.impl.RaftNodeEx;
+import com.github.dtprj.dongting.raft.impl.RaftRole;
+import com.github.dtprj.dongting.raft.impl.RaftStatusImpl;
+import com.github.dtprj.dongting.raft.impl.VoteManager;
+import com.github.dtprj.dongting.raft.server.LogItem;
+import com.github.dtprj.dongting.raft.server.RaftServerConfig;
+import com.github.dtprj.dongting.raft.store.RaftLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author huangli
+ */
+public class AppendProcessorTest {
+
+    private static final int GROUP_ID = 1;
+    private static final int LEADER_ID = 2;
+
+    private MockRaftThread raftThread;
+    private RaftStatusImpl raftStatus;
+    private MockRaftLog raftLog;
+    private AppendProcessor processor;
+    private int applyCount;
+    private final List<Long> appendIndexes = new ArrayList<>();
+    private final List<AppendRespWriteFrame> resps = new ArrayList<>();
+    private final List<Long> respIndexes = new ArrayList<>();
+
+    private class MockRaftLog implements RaftLog {
+        CompletableFuture<Pair<Integer, Long>> replicatePos;
+        CompletableFuture<Long> syncFuture;
+
+        @Override
+        public Pair<Integer, Long> init(Supplier<Boolean> cancelInit) {
+            return null;
+        }
+
+        @Override
+        public void append(List<LogItem> logs) {
+            for (LogItem li : logs) {
+                appendIndexes.add(li.getIndex());
+            }
+        }
+
+        @Override
+        public CompletableFuture<Long> sync() {
+            // the concurrent requests share the pending fsync
+            if (syncFuture == null || syncFuture.isDone()) {
+                syncFuture = new CompletableFuture<>();
+            }
+            return syncFuture;
+        }
+
+        @Override
+        public LogIterator openIterator(Supplier<Boolean> cancelIndicator) {
+            return null;
+        }
+
+        @Override
+        public CompletableFuture<Pair<Integer, Long>> findReplicatePos(int suggestTerm, long suggestIndex,
+                                                                       int lastTerm, long lastIndex,
+                                                                       Supplier<Boolean> cancelIndicator) {
+            replicatePos = new CompletableFuture<>();
+            return replicatePos;
+        }
+
+        @Override
+        public void markTruncateByIndex(long index, long delayMillis) {
+        }
+
+        @Override
+        public void markTruncateByTimestamp(long timestampMillis, long delayMillis) {
+        }
+
+        @Override
+        public void doDelete() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @BeforeEach
+    public void setup() {
+        raftStatus = new RaftStatusImpl();
+        raftThread = new MockRaftThread();
+        RaftExecutor executor = raftThread.getExecutor();
+        raftThread.start();
+
+        raftStatus.setGroupId(GROUP_ID);
+        raftStatus.setRaftExecutor(executor);
+        List<RaftMember> members = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            members.add(new RaftMember(new RaftNodeEx(i, null, i == 1, null)));
+        }
+        raftStatus.setMembers(members);
+        raftStatus.setPreparedMembers(Collections.emptyList());
+        raftStatus.setNodeIdOfMembers(new HashSet<>(Arrays.asList(1, 2, 3)));
+        raftStatus.setNodeIdOfPreparedMembers(Collections.emptySet());
+        raftStatus.setRole(RaftRole.follower);
+        raftStatus.setCurrentTerm(2);
+        raftStatus.setLastLogTerm(1);
+        raftStatus.setLastLogIndex(12);
+
+        RaftServerConfig serverConfig = new RaftServerConfig();
+        raftLog = new MockRaftLog();
+        RaftGroupImpl gc = new RaftGroupImpl();
+        gc.setServerConfig(serverConfig);
+        gc.setRaftStatus(raftStatus);
+        gc.setRaftExecutor(executor);
+        gc.setRaftLog(raftLog);
+        gc.setMemberManager(new MemberManager(serverConfig, null, null, executor, raftStatus, null));
+        gc.setVoteManager(new VoteManager(serverConfig, GROUP_ID, raftStatus, null, executor, null));
+        gc.setApplyManager(new ApplyManager(1, raftLog, null, raftStatus, null, null,
+                null, null, 100) {
+            @Override
+            public void apply(RaftStatusImpl raftStatus) {
+                applyCount++;
+            }
+        });
+        RaftGroups raftGroups = new RaftGroups();
+        raftGroups.put(GROUP_ID, gc);
+
+        processor = new AppendProcessor(raftGroups) {
+            @Override
+            protected void writeResp(ReadFrame<AppendReqCallback> frame, ChannelContext channelContext,
+                                     ReqContext reqContext, WriteFrame wf) {
+                resps.add((AppendRespWriteFrame) wf);
+                ArrayList<LogItem> logs = frame.getBody().getLogs();
+                respIndexes.add(logs.isEmpty() ? -1L : logs.get(0).getIndex());
+            }
+        };
+    }
+
+    @AfterEach
+    public void tearDown() {
+        raftThread.interrupt();
+    }
+
+    private <T> T inRaftThread(Callable<T> callable) throws Exception {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        raftStatus.getRaftExecutor().execute(() -> {
+            try {
+                f.complete(callable.call());
+            } catch (Throwable e) {
+                f.completeExceptionally(e);
+            }
+        });
+        return f.get(5, TimeUnit.SECONDS);
+    }
+
+    private void process(int prevLogTerm, long prevLogIndex, long leaderCommit, long... indexes) throws Exception {
+        AppendReqCallback req = new AppendReqCallback(null, null);
+        req.readVarNumber(1, GROUP_ID);
+        req.readVarNumber(2, 2);
+        req.readVarNumber(3, LEADER_ID);
+        req.readVarNumber(5, prevLogTerm);
+        req.readFix64(4, prevLogIndex);
+        req.readFix64(6, leaderCommit);
+        for (long index : indexes) {
+            LogItem li = new LogItem(null);
+            li.setIndex(index);
+            li.setTerm(2);
+            req.getLogs().add(li);
+        }
+        ReadFrame<AppendReqCallback> rf = new ReadFrame<>();
+        rf.setBody(req);
+        processor.process(rf, null, null);
+        // wait the request processed in raft thread
+        inRaftThread(() -> null);
+    }
+
+    @Test
+    public void testQueuedAppendsWhenFindReplicatePos() throws Exception {
+        // local last log is (term 1, index 12), the leader's prev log is (term 2, index 12)
+        process(2, 12, 0, 13);
+        assertTrue(raftStatus.isAppendMatching());
+        process(2, 13, 0, 14);
+        assertEquals(1, raftStatus.getWaitingAppends().size());
+        assertTrue(appendIndexes.isEmpty());
+        assertTrue(resps.isEmpty());
+
+        // the heartbeat is not queued
+        process(2, 13, 0);
+        assertEquals(1, resps.size());
+        assertTrue(resps.get(0).isSuccess());
+        assertEquals(1, raftStatus.getWaitingAppends().size());
+
+        // the local log is truncated to the prev log of the leader
+        inRaftThread(() -> raftLog.replicatePos.complete(new Pair<>(2, 12L)));
+        inRaftThread(() -> null);
+        assertFalse(raftStatus.isAppendMatching());
+        assertEquals(0, raftStatus.getWaitingAppends().size());
+        assertEquals(Arrays.asList(13L, 14L), appendIndexes);
+        assertEquals(14, raftStatus.getLastLogIndex());
+        assertEquals(2, raftStatus.getLastLogTerm());
+
+        inRaftThread(() -> raftLog.syncFuture.complete(14L));
+        assertEquals(Arrays.asList(-1L, 13L, 14L), respIndexes);
+        assertTrue(resps.get(1).isSuccess());
+        assertTrue(resps.get(2).isSuccess());
+    }
+
+    @Test
+    public void testReplicatePosNotMatch() throws Exception {
+        process(2, 12, 0, 13);
+        process(2, 13, 0, 14);
+        inRaftThread(() -> raftLog.replicatePos.complete(new Pair<>(1, 10L)));
+        inRaftThread(() -> null);
+
+        assertEquals(1, resps.size());
+        assertFalse(resps.get(0).isSuccess());
+        assertEquals(AppendProcessor.CODE_LOG_NOT_MATCH, resps.get(0).getAppendCode());
+        // the queued request is processed after the first one, and start a new matching
+        assertTrue(raftStatus.isAppendMatching());
+        assertTrue(appendIndexes.isEmpty());
+    }
+
+    @Test
+    public void testSharedSyncComplete() throws Exception {
+        raftStatus.setLastLogTerm(2);
+        process(2, 12, 0, 13);
+        process(2, 13, 0, 14);
+        process(2, 14, 0, 15);
+        assertEquals(Arrays.asList(13L, 14L, 15L), appendIndexes);
+        // respond after fsync
+        assertTrue(resps.isEmpty());
+
+        // the fsync finished before the last append
+        inRaftThread(() -> raftLog.syncFuture.complete(14L));
+        assertEquals(Arrays.asList(13L, 14L, 15L), respIndexes);
+        assertTrue(resps.get(0).isSuccess());
+        assertTrue(resps.get(1).isSuccess());
+        assertFalse(resps.get(2).isSuccess());
+        assertEquals(AppendProcessor.CODE_SERVER_ERROR, resps.get(2).getAppendCode());
+    }
+
+    @Test
+    public void testTermChangeWhenSync() throws Exception {
+        raftStatus.setLastLogTerm(2);
+        process(2, 12, 0, 13);
+        inRaftThread(() -> {
+            raftStatus.setCurrentTerm(3);
+            return raftLog.syncFuture.complete(13L);
+        });
+        assertEquals(1, resps.size());
+        assertFalse(resps.get(0).isSuccess());
+        assertEquals(3, resps.get(0).getTerm());
+    }
+
+    @Test
+    public void testHeartBeat() throws Exception {
+        raftStatus.setLastLogTerm(2);
+        raftStatus.setCommitIndex(10);
+        raftStatus.getTs().refresh(0);
+        long oldElectTime = raftStatus.getTs().getNanoTime() - TimeUnit.SECONDS.toNanos(10);
+        raftStatus.setLastElectTime(oldElectTime);
+
+        process(2, 12, 11);
+
+        // replied synchronously without append and fsync
+        assertEquals(1, resps.size());
+        assertTrue(resps.get(0).isSuccess());
+        assertEquals(2, resps.get(0).getTerm());
+        assertTrue(appendIndexes.isEmpty());
+        assertEquals(null, raftLog.syncFuture);
+        // the leader is alive, so the elect timer is reset
+        assertTrue(raftStatus.getLastElectTime() > oldElectTime);
+        assertEquals(LEADER_ID, raftStatus.getCurrentLeader().getNode().getNodeId());
+        assertEquals(11, raftStatus.getCommitIndex());
+        assertEquals(1, applyCount);
+
+        // the commit index of leader is bigger than local last log
+        process(2, 12, 20);
+        assertEquals(12, raftStatus.getCommitIndex());
+        assertEquals(2, applyCount);
+    }
+
+    @Test
+    public void testHeartBeatNotCommitLogsOfOldTerm() throws Exception {
+        raftStatus.setCommitIndex(10);
+        process(2, 12, 11);
+        assertEquals(1, resps.size());
+        assertTrue(resps.get(0).isSuccess());
+        // the last local log is written by old leader, it may not match the log of current leader
+        assertEquals(10, raftStatus.getCommitIndex());
+        assertEquals(0, applyCount);
+        assertTrue(appendIndexes.isEmpty());
+    }
+}
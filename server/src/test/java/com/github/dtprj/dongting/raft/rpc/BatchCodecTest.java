@@ -0,0 +1,97 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.rpc;
+
+import com.github.dtprj.dongting.codec.DecodeContext;
+import com.github.dtprj.dongting.codec.Decoder;
+import com.github.dtprj.dongting.net.CmdCodes;
+import com.github.dtprj.dongting.net.Commands;
+import com.github.dtprj.dongting.net.EmptyBodyRespFrame;
+import com.github.dtprj.dongting.net.WriteFrame;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * @author huangli
+ */
+public class BatchCodecTest {
+
+    private ByteBuffer encode() {
+        ArrayList<WriteFrame> frames = new ArrayList<>();
+        RaftPingWriteFrame ping = new RaftPingWriteFrame(100, 2, null, null);
+        ping.setCommand(Commands.RAFT_PING);
+        ping.setSeq(0);
+        frames.add(ping);
+        EmptyBodyRespFrame resp = new EmptyBodyRespFrame(CmdCodes.BIZ_ERROR);
+        resp.setCommand(Commands.RAFT_APPEND_ENTRIES);
+        resp.setSeq(1);
+        resp.setMsg("group not found");
+        frames.add(resp);
+        // the read buffer of NioWorker is little endian
+        return BatchCodec.encode(frames).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private Decoder<List<BatchSubFrame>> createDecoder() {
+        return BatchCodec.createDecoder(sub -> sub.getCommand() == Commands.RAFT_PING ? RaftPingProcessor.DECODER : null);
+    }
+
+    private void check(List<BatchSubFrame> list) {
+        assertEquals(2, list.size());
+        BatchSubFrame f0 = list.get(0);
+        assertEquals(Commands.RAFT_PING, f0.getCommand());
+        assertEquals(0, f0.getSeq());
+        RaftPingFrameCallback ping = (RaftPingFrameCallback) f0.getBody();
+        assertEquals(100, ping.groupId);
+        assertEquals(2, ping.nodeId);
+
+        BatchSubFrame f1 = list.get(1);
+        assertEquals(Commands.RAFT_APPEND_ENTRIES, f1.getCommand());
+        assertEquals(1, f1.getSeq());
+        assertEquals(CmdCodes.BIZ_ERROR, f1.getRespCode());
+        assertEquals("group not found", f1.getMsg());
+        assertNull(f1.getBody());
+    }
+
+    @Test
+    public void testEncodeDecode() {
+        ByteBuffer buf = encode();
+        List<BatchSubFrame> list = createDecoder().decode(new DecodeContext(), buf, buf.remaining(), 0);
+        check(list);
+    }
+
+    @Test
+    public void testHalfDecode() {
+        ByteBuffer buf = encode();
+        int len = buf.remaining();
+        Decoder<List<BatchSubFrame>> decoder = createDecoder();
+        DecodeContext context = new DecodeContext();
+        for (int split = 1; split < len; split++) {
+            ByteBuffer b1 = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            b1.limit(split);
+            assertNull(decoder.decode(context, b1, len, 0));
+            ByteBuffer b2 = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            b2.position(split);
+            check(decoder.decode(context, b2, len, split));
+        }
+    }
+}
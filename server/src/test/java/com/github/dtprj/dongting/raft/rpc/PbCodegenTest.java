@@ -0,0 +1,131 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.rpc;
+
+import com.github.dtprj.dongting.codec.PbField;
+import com.github.dtprj.dongting.codec.PbMessage;
+import com.github.dtprj.dongting.codec.PbParser;
+import com.github.dtprj.dongting.net.SmallNoCopyWriteFrame;
+import com.github.dtprj.dongting.net.WriteFrame;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author huangli
+ */
+public class PbCodegenTest {
+
+    @PbMessage
+    static class TestMsg {
+        @PbField(index = 1)
+        int f1;
+        @PbField(index = 2)
+        long f2;
+        @PbField(index = 3, fixed = true)
+        int f3;
+        @PbField(index = 4, fixed = true)
+        long f4;
+        @PbField(index = 5)
+        boolean f5;
+        @PbField(index = 6)
+        String f6;
+        @PbField(index = 7)
+        byte[] f7;
+    }
+
+    private static TestMsg parse(ByteBuffer buf, int step) {
+        TestMsgCodec.Callback callback = new TestMsgCodec.Callback();
+        PbParser parser = PbParser.singleParser(callback, buf.remaining());
+        while (buf.hasRemaining()) {
+            ByteBuffer part = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+            part.limit(Math.min(step, buf.remaining()));
+            parser.parse(part);
+            buf.position(buf.position() + part.limit());
+        }
+        return callback.getResult();
+    }
+
+    @Test
+    public void testCodec() {
+        TestMsg m = new TestMsg();
+        m.f1 = -1;
+        m.f2 = Long.MAX_VALUE;
+        m.f3 = 100;
+        m.f4 = -200;
+        m.f5 = true;
+        m.f6 = "abc中文😀";
+        m.f7 = new byte[]{1, 2, 3};
+        int size = TestMsgCodec.calcSize(m);
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        TestMsgCodec.encode(buf, m);
+        assertEquals(size, buf.position());
+
+        for (int step = 1; step <= size; step++) {
+            buf.flip();
+            TestMsg m2 = parse(buf, step);
+            assertEquals(m.f1, m2.f1);
+            assertEquals(m.f2, m2.f2);
+            assertEquals(m.f3, m2.f3);
+            assertEquals(m.f4, m2.f4);
+            assertTrue(m2.f5);
+            assertEquals(m.f6, m2.f6);
+            assertArrayEquals(m.f7, m2.f7);
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        TestMsg m = new TestMsg();
+        assertEquals(0, TestMsgCodec.calcSize(m));
+        TestMsg m2 = parse(ByteBuffer.allocate(0), 1);
+        assertNull(m2.f6);
+    }
+
+    @Test
+    public void testVoteReq() {
+        VoteReq req = new VoteReq();
+        req.setGroupId(1);
+        req.setTerm(2);
+        req.setCandidateId(3);
+        req.setLastLogIndex(4);
+        req.setLastLogTerm(5);
+        req.setPreVote(true);
+        ByteBuffer buf = ByteBuffer.allocate(VoteReqCodec.calcSize(req));
+        VoteReqCodec.encode(buf, req);
+        buf.flip();
+        VoteReqCodec.Callback callback = new VoteReqCodec.Callback();
+        PbParser.singleParser(callback, buf.remaining()).parse(buf.order(ByteOrder.LITTLE_ENDIAN));
+        VoteReq req2 = callback.getResult();
+        assertEquals(1, req2.getGroupId());
+        assertEquals(2, req2.getTerm());
+        assertEquals(3, req2.getCandidateId());
+        assertEquals(4, req2.getLastLogIndex());
+        assertEquals(5, req2.getLastLogTerm());
+        assertTrue(req2.isPreVote());
+
+        // the generated frame is named XxxWriteFrame, does not shadow net.WriteFrame
+        WriteFrame wf = new VoteReqCodec.VoteReqWriteFrame(req);
+        assertInstanceOf(SmallNoCopyWriteFrame.class, wf);
+    }
+}
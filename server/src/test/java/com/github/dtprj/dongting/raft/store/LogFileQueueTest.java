@@ -0,0 +1,193 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.store;
+
+import com.github.dtprj.dongting.buf.RefBufferFactory;
+import com.github.dtprj.dongting.buf.SimpleByteBufferPool;
+import com.github.dtprj.dongting.common.Timestamp;
+import com.github.dtprj.dongting.raft.server.LogItem;
+import com.github.dtprj.dongting.raft.server.RaftGroupConfigEx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author huangli
+ */
+public class LogFileQueueTest {
+
+    private File dir;
+    private ExecutorService raftExecutor;
+    private ExecutorService ioExecutor;
+    private LogFileQueue logFiles;
+    private final ArrayList<Long> idxPositions = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("dt-log-test").toFile();
+        raftExecutor = Executors.newSingleThreadExecutor();
+        ioExecutor = Executors.newFixedThreadPool(2);
+        Timestamp ts = new Timestamp();
+        RaftGroupConfigEx c = new RaftGroupConfigEx(1, "1", "");
+        c.setTs(ts);
+        c.setHeapPool(new RefBufferFactory(new SimpleByteBufferPool(ts, false), 0));
+        c.setDirectPool(new SimpleByteBufferPool(ts, true));
+        c.setRaftExecutor(raftExecutor);
+        c.setStopIndicator(() -> false);
+        IdxOps idxOps = new IdxOps() {
+            @Override
+            public void put(long index, long position) {
+                idxPositions.add(position);
+            }
+
+            @Override
+            public long syncLoadLogPos(long itemIndex) {
+                return idxPositions.get((int) itemIndex - 1);
+            }
+        };
+        logFiles = new LogFileQueue(dir, ioExecutor, c, idxOps);
+        inRaftThread(() -> {
+            logFiles.init();
+            logFiles.restore(0, 0, () -> false);
+            return null;
+        });
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        inRaftThread(() -> {
+            logFiles.close();
+            return null;
+        });
+        raftExecutor.shutdown();
+        ioExecutor.shutdown();
+        try (Stream<Path> s = Files.walk(dir.toPath())) {
+            s.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private interface Callable<T> {
+        T call() throws Exception;
+    }
+
+    private <T> T inRaftThread(Callable<T> c) throws Exception {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        raftExecutor.execute(() -> {
+            try {
+                f.complete(c.call());
+            } catch (Throwable e) {
+                f.completeExceptionally(e);
+            }
+        });
+        return f.get(10, TimeUnit.SECONDS);
+    }
+
+    private static ArrayList<LogItem> logs(long startIndex, int count) {
+        ArrayList<LogItem> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            LogItem li = new LogItem(null);
+            li.setIndex(startIndex + i);
+            li.setTerm(1);
+            li.setPrevLogTerm(1);
+            li.setBodyBuffer(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+            li.setActualBodySize(3);
+            list.add(li);
+        }
+        return list;
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Long>[] futures = inRaftThread(() -> {
+            CompletableFuture<Long> f0 = logFiles.sync();
+            // nothing to sync
+            assertTrue(f0.isDone());
+            logFiles.append(logs(1, 2));
+            CompletableFuture<Long> f1 = logFiles.sync();
+            assertSame(f1, logFiles.sync());
+            // the completion of f1 runs in raft thread, so f1 is still running
+            assertFalse(f1.isDone());
+            logFiles.append(logs(3, 1));
+            CompletableFuture<Long> f2 = logFiles.sync();
+            logFiles.append(logs(4, 1));
+            CompletableFuture<Long> f3 = logFiles.sync();
+            assertNotSame(f1, f2);
+            // merged
+            assertSame(f2, f3);
+            return new CompletableFuture[]{f1, f2};
+        });
+        assertEquals(2L, futures[0].get(10, TimeUnit.SECONDS));
+        assertEquals(4L, futures[1].get(10, TimeUnit.SECONDS));
+        assertEquals(4L, (long) inRaftThread(() -> logFiles.getSyncedIndex()));
+        CompletableFuture<Long> f = inRaftThread(() -> logFiles.sync());
+        assertTrue(f.isDone());
+        assertEquals(4L, f.get());
+    }
+
+    @Test
+    public void testTruncateWhileSyncing() throws Exception {
+        CompletableFuture<Long> f = inRaftThread(() -> {
+            logFiles.append(logs(1, 5));
+            CompletableFuture<Long> f1 = logFiles.sync();
+            long pos = idxPositions.get(3);
+            // truncate index 4 and 5
+            logFiles.syncTruncateTail(pos, logFiles.getWritePos(), 3);
+            return f1;
+        });
+        assertEquals(3L, f.get(10, TimeUnit.SECONDS));
+        assertEquals(3L, (long) inRaftThread(() -> logFiles.getSyncedIndex()));
+    }
+
+    @Test
+    public void testAppendAfterTruncateWhileSyncing() throws Exception {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Long>[] futures = inRaftThread(() -> {
+            logFiles.append(logs(1, 5));
+            CompletableFuture<Long> f1 = logFiles.sync();
+            long pos = idxPositions.get(2);
+            // truncate index 3, 4 and 5, then append new 3 and 4, which are less than the syncing index 5
+            logFiles.syncTruncateTail(pos, logFiles.getWritePos(), 2);
+            idxPositions.subList(2, idxPositions.size()).clear();
+            logFiles.append(logs(3, 2));
+            CompletableFuture<Long> f2 = logFiles.sync();
+            // the running fsync doesn't cover the new logs
+            assertNotSame(f1, f2);
+            return new CompletableFuture[]{f1, f2};
+        });
+        assertEquals(2L, futures[0].get(10, TimeUnit.SECONDS));
+        assertEquals(4L, futures[1].get(10, TimeUnit.SECONDS));
+        assertEquals(4L, (long) inRaftThread(() -> logFiles.getSyncedIndex()));
+    }
+}
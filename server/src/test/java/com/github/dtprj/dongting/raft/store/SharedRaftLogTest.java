@@ -0,0 +1,265 @@
+/*
+ * Copyright The Dongting Project
+ *
+ * The Dongting Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.dtprj.dongting.raft.store;
+
+import com.github.dtprj.dongting.buf.RefBufferFactory;
+import com.github.dtprj.dongting.buf.SimpleByteBufferPool;
+import com.github.dtprj.dongting.common.Pair;
+import com.github.dtprj.dongting.common.Timestamp;
+import com.github.dtprj.dongting.raft.server.LogItem;
+import com.github.dtprj.dongting.raft.server.RaftGroupConfigEx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author huangli
+ */
+public class SharedRaftLogTest {
+
+    private static final int FILE_SIZE = 64 * 1024;
+
+    private File dir;
+    private ExecutorService raftExecutor;
+    private ExecutorService ioExecutor;
+    private SharedLogStore store;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("dt-shared-log-test").toFile();
+        raftExecutor = Executors.newSingleThreadExecutor();
+        ioExecutor = Executors.newFixedThreadPool(2);
+        store = new SharedLogStore(dir, FILE_SIZE, ioExecutor);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        store.close();
+        raftExecutor.shutdown();
+        ioExecutor.shutdown();
+        try (Stream<Path> s = Files.walk(dir.toPath())) {
+            s.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private interface Callable<T> {
+        T call() throws Exception;
+    }
+
+    private <T> T inRaftThread(Callable<T> c) throws Exception {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        raftExecutor.execute(() -> {
+            try {
+                f.complete(c.call());
+            } catch (Throwable e) {
+                f.completeExceptionally(e);
+            }
+        });
+        return f.get(10, TimeUnit.SECONDS);
+    }
+
+    private SharedRaftLog createLog(int groupId) throws Exception {
+        Timestamp ts = new Timestamp();
+        RaftGroupConfigEx c = new RaftGroupConfigEx(groupId, String.valueOf(groupId), "");
+        c.setTs(ts);
+        c.setHeapPool(new RefBufferFactory(new SimpleByteBufferPool(ts, false), 0));
+        c.setDirectPool(new SimpleByteBufferPool(ts, true));
+        c.setRaftExecutor(raftExecutor);
+        c.setStopIndicator(() -> false);
+        return new SharedRaftLog(c, store);
+    }
+
+    private static ArrayList<LogItem> logs(long startIndex, int count, int term, int bodySize) {
+        ArrayList<LogItem> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            LogItem li = new LogItem(null);
+            li.setIndex(startIndex + i);
+            li.setTerm(term);
+            li.setPrevLogTerm(term);
+            byte[] body = new byte[bodySize];
+            body[0] = (byte) (startIndex + i);
+            li.setBodyBuffer(ByteBuffer.wrap(body));
+            li.setActualBodySize(bodySize);
+            list.add(li);
+        }
+        return list;
+    }
+
+    private List<LogItem> read(SharedRaftLog log, long startIndex, int limit) throws Exception {
+        CompletableFuture<List<LogItem>> f = inRaftThread(() -> {
+            RaftLog.LogIterator it = log.openIterator(() -> false);
+            CompletableFuture<List<LogItem>> r = it.next(startIndex, limit, 0);
+            return r.whenCompleteAsync((v, ex) -> {
+                try {
+                    it.close();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }, raftExecutor);
+        });
+        return f.get(10, TimeUnit.SECONDS);
+    }
+
+    private void check(SharedRaftLog log, long startIndex, long lastIndex, int term) throws Exception {
+        List<LogItem> list = read(log, startIndex, (int) (lastIndex - startIndex + 1));
+        assertEquals(lastIndex - startIndex + 1, list.size());
+        for (int i = 0; i < list.size(); i++) {
+            LogItem li = list.get(i);
+            assertEquals(startIndex + i, li.getIndex());
+            assertEquals(term, li.getTerm());
+            assertEquals((byte) (startIndex + i), li.getBodyBuffer().get(0));
+            li.release();
+        }
+    }
+
+    @Test
+    public void testAppendAndRestore() throws Exception {
+        SharedRaftLog log1 = createLog(1);
+        SharedRaftLog log2 = createLog(2);
+        inRaftThread(() -> {
+            assertEquals(0L, log1.init(() -> false).getRight());
+            log2.init(() -> false);
+            // 2 groups interleaved, cross several segments
+            for (int i = 0; i < 20; i++) {
+                log1.append(logs(i * 10 + 1, 10, 1, 500));
+                log2.append(logs(i * 5 + 1, 5, 1, 700));
+            }
+            // overwrite the tail of group 2
+            log2.append(logs(91, 3, 2, 100));
+            return null;
+        });
+        long synced = inRaftThread(log1::sync).get(10, TimeUnit.SECONDS);
+        assertEquals(200, synced);
+        synced = inRaftThread(log2::sync).get(10, TimeUnit.SECONDS);
+        assertEquals(93, synced);
+
+        check(log1, 1, 200, 1);
+        check(log1, 150, 160, 1);
+        check(log2, 91, 93, 2);
+
+        store.close();
+        store = new SharedLogStore(dir, FILE_SIZE, ioExecutor);
+        SharedRaftLog r1 = createLog(1);
+        SharedRaftLog r2 = createLog(2);
+        Pair<Integer, Long> p1 = inRaftThread(() -> r1.init(() -> false));
+        Pair<Integer, Long> p2 = inRaftThread(() -> r2.init(() -> false));
+        assertEquals(1, p1.getLeft());
+        assertEquals(200, p1.getRight());
+        assertEquals(2, p2.getLeft());
+        assertEquals(93, p2.getRight());
+        check(r1, 1, 200, 1);
+        check(r2, 1, 90, 1);
+        check(r2, 91, 93, 2);
+
+        // append after restore
+        inRaftThread(() -> {
+            r2.append(logs(94, 2, 2, 100));
+            return null;
+        });
+        check(r2, 90, 90, 1);
+        check(r2, 91, 95, 2);
+    }
+
+    @Test
+    public void testFindReplicatePos() throws Exception {
+        SharedRaftLog log = createLog(1);
+        inRaftThread(() -> {
+            log.init(() -> false);
+            log.append(logs(1, 10, 1, 10));
+            log.append(logs(11, 10, 3, 10));
+            return null;
+        });
+        Pair<Integer, Long> p = inRaftThread(() -> log.findReplicatePos(3, 15, 3, 20, () -> false))
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(3, p.getLeft());
+        assertEquals(15, p.getRight());
+        p = inRaftThread(() -> log.findReplicatePos(2, 15, 3, 20, () -> false)).get(10, TimeUnit.SECONDS);
+        assertEquals(1, p.getLeft());
+        assertEquals(10, p.getRight());
+        p = inRaftThread(() -> log.findReplicatePos(1, 1, 3, 20, () -> false)).get(10, TimeUnit.SECONDS);
+        assertEquals(1, p.getRight());
+
+        SharedRaftLog empty = createLog(2);
+        inRaftThread(() -> empty.init(() -> false));
+        assertNull(inRaftThread(() -> empty.findReplicatePos(1, 1, 3, 20, () -> false)).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCloseReleaseSegments() throws Exception {
+        SharedRaftLog log1 = createLog(1);
+        SharedRaftLog log2 = createLog(2);
+        inRaftThread(() -> {
+            log1.init(() -> false);
+            log2.init(() -> false);
+            // group 1 fill several segments, then group 2 write to the last one
+            log1.append(logs(1, 200, 1, 1000));
+            log2.append(logs(1, 5, 1, 100));
+            return null;
+        });
+        inRaftThread(log1::sync).get(10, TimeUnit.SECONDS);
+        inRaftThread(log2::sync).get(10, TimeUnit.SECONDS);
+        File first = new File(dir, String.format("%020d", 0));
+
+        store.tryDelete();
+        Thread.sleep(100);
+        assertTrue(first.exists());
+
+        // the group is removed
+        inRaftThread(() -> {
+            log1.close();
+            return null;
+        });
+        for (int i = 0; i < 100 && first.exists(); i++) {
+            store.tryDelete();
+            Thread.sleep(10);
+        }
+        assertFalse(first.exists());
+        check(log2, 1, 5, 1);
+    }
+
+    @Test
+    public void testBadIndex() throws Exception {
+        SharedRaftLog log = createLog(1);
+        inRaftThread(() -> {
+            log.init(() -> false);
+            log.append(logs(1, 10, 1, 10));
+            return null;
+        });
+        assertThrows(Exception.class, () -> inRaftThread(() -> {
+            log.append(logs(12, 1, 1, 10));
+            return null;
+        }));
+    }
+}